@@ -0,0 +1,83 @@
+package org.dom4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the cost of creating uncached QNames with the regular expressions
+ * previously used for name validation, with the hand written character class
+ * checks of {@link QName} and without any validation (trusted names from a
+ * parser). Run with <code>-prof gc</code> to see the allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QNameValidationBenchmark {
+
+    private static final String NAME_START_CHAR = "_A-Za-z\u00C0-\u00D6\u00D8-\u00F6\u00F8-\u02FF\u0370-\u037D\u037F-\u1FFF\u200C-\u200D\u2070-\u218F\u2C00-\u2FEF\u3001-\uD7FF\uF900-\uFDCF\uFDF0-\uFFFD";
+
+    private static final String NAME_CHAR = NAME_START_CHAR + "-.0-9\u00B7\u0300-\u036F\u203F-\u2040";
+
+    private static final String NCNAME = "[" + NAME_START_CHAR + "][" + NAME_CHAR + "]*";
+
+    private static final Pattern RE_NCNAME = Pattern.compile(NCNAME);
+
+    private static final Pattern RE_QNAME = Pattern.compile("(?:" + NCNAME + ":)?" + NCNAME);
+
+    private final String[] localNames = {"Envelope", "Header", "Body",
+            "getStockQuoteResponse", "price", "x", "item-id", "\u00E9l\u00E9ment"};
+
+    private Namespace namespace;
+
+    private int index;
+
+    @Setup
+    public void setUp() {
+        namespace = Namespace.get("soap", "http://schemas.xmlsoap.org/soap/envelope/");
+    }
+
+    private String nextName() {
+        String name = localNames[index];
+        index = (index + 1) & 7;
+        return name;
+    }
+
+    @Benchmark
+    public QName regex() {
+        String name = nextName();
+        String qualifiedName = namespace.getPrefix() + ":" + name;
+
+        if (!RE_NCNAME.matcher(name).matches()
+                || !RE_QNAME.matcher(qualifiedName).matches()) {
+            throw new IllegalArgumentException(name);
+        }
+
+        return new QName(name, namespace, qualifiedName, false);
+    }
+
+    @Benchmark
+    public QName validated() {
+        String name = nextName();
+        return new QName(name, namespace, namespace.getPrefix() + ":" + name);
+    }
+
+    @Benchmark
+    public QName trusted() {
+        String name = nextName();
+        return new QName(name, namespace, namespace.getPrefix() + ":" + name, false);
+    }
+}
@@ -0,0 +1,33 @@
+package org.dom4j.benchmark;
+
+import java.io.File;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all the benchmarks of this package with the <code>gc</code> profiler,
+ * so that the allocation rate is reported next to the throughput, and
+ * writes the results as JSON to the file given as first argument, or to
+ * <code>build/reports/jmh/benchmarks.json</code>.
+ */
+public final class Benchmarks {
+    private Benchmarks() {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        String result = (args.length > 0) ? args[0]
+                : "build/reports/jmh/benchmarks.json";
+        new File(result).getAbsoluteFile().getParentFile().mkdirs();
+
+        new Runner(new OptionsBuilder()
+                .include(Benchmarks.class.getPackage().getName() + ".")
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result)
+                .build()).run();
+    }
+}
@@ -0,0 +1,93 @@
+package org.dom4j.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.io.BinaryReader;
+import org.dom4j.io.BinaryWriter;
+import org.dom4j.io.SAXReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares building a tree from the binary encoding of {@link BinaryWriter}
+ * with parsing the XML text and with Java deserialization, for each
+ * {@link Corpus} document. The sizes of the three encodings are printed
+ * during the setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryBenchmark {
+    @Param
+    public Corpus corpus;
+
+    private byte[] text;
+
+    private byte[] binary;
+
+    private byte[] serialized;
+
+    private SAXReader saxReader;
+
+    private BinaryReader binaryReader;
+
+    @Setup
+    public void setUp() throws IOException {
+        Document document = corpus.parse();
+        text = corpus.getBytes();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryWriter().write(document, out);
+        binary = out.toByteArray();
+
+        out = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream objects = new ObjectOutputStream(out)) {
+            objects.writeObject(document);
+        }
+
+        serialized = out.toByteArray();
+        saxReader = new SAXReader();
+        binaryReader = new BinaryReader();
+        System.out.println(corpus + ": text " + text.length + " bytes, binary "
+                + binary.length + " bytes, serialized " + serialized.length
+                + " bytes");
+    }
+
+    @Benchmark
+    public Document parse() throws DocumentException {
+        return saxReader.read(new ByteArrayInputStream(text));
+    }
+
+    @Benchmark
+    public Document readBinary() throws DocumentException, IOException {
+        return binaryReader.read(new ByteArrayInputStream(binary));
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(serialized))) {
+            return in.readObject();
+        }
+    }
+}
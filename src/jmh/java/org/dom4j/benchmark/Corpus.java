@@ -0,0 +1,155 @@
+package org.dom4j.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.io.SAXReader;
+
+/**
+ * The documents the benchmarks of this package run on: some of the sample
+ * documents in the <code>xml</code> directory of the project and synthetic
+ * wide, deep and large documents. Each document comes with the name of an
+ * element that occurs throughout it and with a few typical XPath queries.
+ * The sample documents are looked up in the directory given by the
+ * <code>dom4j.xml.dir</code> system property, which defaults to
+ * <code>xml</code> as the benchmarks are run from the project directory.
+ */
+public enum Corpus {
+    MUCH_ADO("much_ado.xml", "LINE", "/PLAY/ACT/SCENE/TITLE",
+            "//SPEECH[SPEAKER='BENEDICK']", "count(//LINE)",
+            "//SCENE[@*]/SPEECH"),
+
+    PERIODIC_TABLE("periodic_table.xml", "ATOM", "/PERIODIC_TABLE/ATOM/NAME",
+            "//ATOM[SYMBOL='Fe']/NAME", "//BOILING_POINT/@UNITS",
+            "sum(//ATOMIC_NUMBER)"),
+
+    NITF("nitf/sample.xml", "p", "/nitf/head/meta/@content", "//p",
+            "//meta[@name='ap-cycle']/@content", "string(//hl1)"),
+
+    WIDE(null, "item", "/root/item", "//item[@id='item-5000']",
+            "count(/root/item)", "/root/item/@id"),
+
+    DEEP(null, "item", "//item", "//node[@level='250']/item",
+            "count(//node)", "//node/@level"),
+
+    LARGE(null, "title", "/feed/entry/title", "//entry[@type='news']/@id",
+            "//entry[author='author7']", "count(//a:link)");
+
+    private final String fileName;
+
+    private final String elementName;
+
+    private final String[] xpaths;
+
+    private byte[] bytes;
+
+    Corpus(String fileName, String elementName, String... xpaths) {
+        this.fileName = fileName;
+        this.elementName = elementName;
+        this.xpaths = xpaths;
+    }
+
+    /**
+     * @return the name of an element found throughout the document
+     */
+    public String getElementName() {
+        return elementName;
+    }
+
+    /**
+     * @return typical XPath queries for the document
+     */
+    public String[] getXPaths() {
+        return xpaths.clone();
+    }
+
+    /**
+     * @return the document as UTF-8 encoded bytes
+     */
+    public synchronized byte[] getBytes() {
+        if (bytes == null) {
+            bytes = (fileName != null) ? read(fileName) : generate()
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Parses the document with a new {@link SAXReader}.
+     *
+     * @return the parsed document
+     */
+    public Document parse() {
+        try {
+            return new SAXReader().read(new ByteArrayInputStream(getBytes()));
+        } catch (DocumentException e) {
+            throw new IllegalStateException("Cannot parse " + this, e);
+        }
+    }
+
+    private static byte[] read(String fileName) {
+        File file = new File(System.getProperty("dom4j.xml.dir", "xml"),
+                fileName);
+
+        try {
+            return Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + file, e);
+        }
+    }
+
+    private String generate() {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\"?>\n");
+
+        switch (this) {
+            case WIDE:
+                xml.append("<root>");
+
+                for (int i = 0; i < 10000; i++) {
+                    xml.append("<item id=\"item-").append(i).append(
+                            "\" type=\"t").append(i % 7).append("\">Item ")
+                            .append(i).append("</item>");
+                }
+
+                xml.append("</root>");
+
+                break;
+
+            case DEEP:
+                for (int i = 0; i < 500; i++) {
+                    xml.append("<node level=\"").append(i).append(
+                            "\"><item>Level ").append(i).append("</item>");
+                }
+
+                for (int i = 0; i < 500; i++) {
+                    xml.append("</node>");
+                }
+
+                break;
+
+            default:
+                xml.append("<feed xmlns:a=\"urn:a\">");
+
+                for (int i = 0; i < 20000; i++) {
+                    xml.append("<entry id=\"e").append(i).append(
+                            "\" type=\"").append((i % 10 == 0) ? "news"
+                            : "post").append("\"><title>Title ").append(i)
+                            .append("</title><author>author").append(i % 100)
+                            .append("</author><a:link href=\"http://example.com/")
+                            .append(i).append("\"/><summary>A short summary &amp; ")
+                            .append("some &lt;escaped&gt; text</summary></entry>");
+                }
+
+                xml.append("</feed>");
+        }
+
+        return xml.toString();
+    }
+}
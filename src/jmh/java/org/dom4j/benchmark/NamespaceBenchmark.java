@@ -0,0 +1,77 @@
+package org.dom4j.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.io.SAXReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures parsing a namespace heavy document: a batch of SOAP envelopes
+ * like <code>xml/soap.xml</code>, each declaring its namespaces again. With
+ * the <code>gc</code> profiler (<code>-prof gc</code>), dividing the
+ * allocation per operation by {@link #ELEMENTS} gives the allocation per
+ * element.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NamespaceBenchmark {
+    private static final int ENVELOPES = 2000;
+
+    /** The number of elements in the document */
+    public static final int ELEMENTS = 1 + (ENVELOPES * 8);
+
+    private byte[] bytes;
+
+    private SAXReader reader;
+
+    @Setup
+    public void setUp() {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\"?>\n");
+        xml.append("<batch>");
+
+        for (int i = 0; i < ENVELOPES; i++) {
+            xml.append("<SOAP-ENV:Envelope xmlns:SOAP-ENV=")
+                    .append("\"http://schemas.xmlsoap.org/soap/envelope/\" ")
+                    .append("SOAP-ENV:encodingStyle=")
+                    .append("\"http://schemas.xmlsoap.org/soap/encoding/\">")
+                    .append("<SOAP-ENV:Header><t:Transaction ")
+                    .append("xmlns:t=\"urn:transaction\" ")
+                    .append("SOAP-ENV:mustUnderstand=\"1\">").append(i)
+                    .append("</t:Transaction></SOAP-ENV:Header>")
+                    .append("<SOAP-ENV:Body>")
+                    .append("<m:BabelFish xmlns:m=\"urn:xmethodsBabelFish\">")
+                    .append("<m:translationmode>en_fr</m:translationmode>")
+                    .append("<m:sourcedata>SOAP is quite easy with JSP ")
+                    .append("&amp; dom4j!</m:sourcedata>")
+                    .append("<m:target/>")
+                    .append("</m:BabelFish></SOAP-ENV:Body>")
+                    .append("</SOAP-ENV:Envelope>");
+        }
+
+        xml.append("</batch>");
+        bytes = xml.toString().getBytes(StandardCharsets.UTF_8);
+        reader = new SAXReader();
+    }
+
+    @Benchmark
+    public Document parse() throws DocumentException {
+        return reader.read(new ByteArrayInputStream(bytes));
+    }
+}
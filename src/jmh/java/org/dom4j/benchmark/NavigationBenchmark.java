@@ -0,0 +1,62 @@
+package org.dom4j.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.dom4j.Document;
+import org.dom4j.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures walking each {@link Corpus} document with
+ * {@link Element#elements()} and looking up the children of every element
+ * with {@link Element#elements(String)} and {@link Element#element(String)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NavigationBenchmark {
+    @Param
+    public Corpus corpus;
+
+    private Document document;
+
+    private String name;
+
+    @Setup
+    public void setUp() {
+        document = corpus.parse();
+        name = corpus.getElementName();
+    }
+
+    @Benchmark
+    public int elementsByName() {
+        return count(document.getRootElement());
+    }
+
+    private int count(Element element) {
+        int answer = element.elements(name).size();
+
+        if (element.element(name) != null) {
+            answer++;
+        }
+
+        for (Element child : element.elements()) {
+            answer += count(child);
+        }
+
+        return answer;
+    }
+}
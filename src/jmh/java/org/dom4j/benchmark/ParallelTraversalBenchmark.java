@@ -0,0 +1,109 @@
+package org.dom4j.benchmark;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+import org.dom4j.Document;
+import org.dom4j.Element;
+import org.dom4j.Node;
+import org.dom4j.VisitorSupport;
+import org.dom4j.tree.ParallelTreeWalker;
+import org.dom4j.xpath.CompiledXPath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how per record work on the {@link Corpus#LARGE} document, an XPath
+ * evaluation for each of its 20000 entries, scales with the number of threads
+ * of a {@link ParallelTreeWalker}. The <code>sequential</code> benchmark is
+ * the single threaded {@link Element#accept(org.dom4j.Visitor)} baseline. The
+ * results only show the scaling up to the number of available cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelTraversalBenchmark {
+    private static final CompiledXPath RECORD = new CompiledXPath(
+            "concat(@id, ' ', title, ' ', author)");
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    private Element root;
+
+    private ForkJoinPool pool;
+
+    private ParallelTreeWalker walker;
+
+    private RecordVisitor visitor;
+
+    @Setup
+    public void setUp() {
+        Document document = Corpus.LARGE.parse();
+        root = document.getRootElement();
+        pool = new ForkJoinPool(parallelism);
+        walker = new ParallelTreeWalker(pool,
+                ParallelTreeWalker.DEFAULT_MIN_SPLIT_SIZE);
+        visitor = new RecordVisitor();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public long sequential() {
+        visitor.total.reset();
+        root.accept(visitor);
+
+        return visitor.total.sum();
+    }
+
+    @Benchmark
+    public long walk() {
+        visitor.total.reset();
+        walker.walk(root, visitor);
+
+        return visitor.total.sum();
+    }
+
+    @Benchmark
+    public long stream() {
+        return pool.submit(new Callable<Long>() {
+            public Long call() {
+                return walker.stream(root).mapToLong(new ToLongFunction<Node>() {
+                    public long applyAsLong(Node node) {
+                        return RECORD.valueOf(node).length();
+                    }
+                }).sum();
+            }
+        }).join();
+    }
+
+    private static final class RecordVisitor extends VisitorSupport {
+        private final LongAdder total = new LongAdder();
+
+        public void visit(Element node) {
+            if (node.getName().equals("entry")) {
+                total.add(RECORD.valueOf(node).length());
+            }
+        }
+    }
+}
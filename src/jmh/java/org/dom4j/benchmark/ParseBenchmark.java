@@ -0,0 +1,50 @@
+package org.dom4j.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.io.SAXReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures parsing each {@link Corpus} document into a tree with
+ * {@link SAXReader}. The reader is reused, as an application parsing many
+ * documents would do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+    @Param
+    public Corpus corpus;
+
+    private byte[] bytes;
+
+    private SAXReader reader;
+
+    @Setup
+    public void setUp() {
+        bytes = corpus.getBytes();
+        reader = new SAXReader();
+    }
+
+    @Benchmark
+    public Document parse() throws DocumentException {
+        return reader.read(new ByteArrayInputStream(bytes));
+    }
+}
@@ -0,0 +1,65 @@
+package org.dom4j.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.dom4j.Document;
+import org.dom4j.io.SAXEventRecorder;
+import org.dom4j.io.SAXWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Measures recording the SAX events of each {@link Corpus} document with a
+ * {@link SAXEventRecorder} and replaying them to a handler which ignores
+ * them. With the <code>gc</code> profiler (<code>-prof gc</code>), the
+ * allocation of the recording is the size of the recorded events.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SAXEventRecorderBenchmark {
+    @Param
+    public Corpus corpus;
+
+    private Document document;
+
+    private SAXEventRecorder recorder;
+
+    private DefaultHandler handler;
+
+    @Setup
+    public void setUp() throws SAXException {
+        document = corpus.parse();
+        recorder = record();
+        handler = new DefaultHandler();
+    }
+
+    @Benchmark
+    public SAXEventRecorder record() throws SAXException {
+        SAXEventRecorder events = new SAXEventRecorder();
+        new SAXWriter(events, events).write(document);
+
+        return events;
+    }
+
+    @Benchmark
+    public DefaultHandler replay() throws SAXException {
+        recorder.replay(handler);
+
+        return handler;
+    }
+}
@@ -0,0 +1,79 @@
+package org.dom4j.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.Element;
+import org.dom4j.io.ElementModifier;
+import org.dom4j.io.SAXModifier;
+import org.dom4j.io.XMLWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures rewriting every entry of the {@link Corpus#LARGE} feed with a
+ * {@link SAXModifier}, copying each entry or modifying it in place, and
+ * keeping the document or streaming it to an {@link XMLWriter} which
+ * discards its output.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SAXModifierBenchmark {
+    @Param({ "false", "true" })
+    public boolean inPlace;
+
+    @Param({ "false", "true" })
+    public boolean prune;
+
+    private byte[] bytes;
+
+    private SAXModifier modifier;
+
+    @Setup
+    public void setUp() {
+        bytes = Corpus.LARGE.getBytes();
+        modifier = new SAXModifier(prune);
+        modifier.setInPlace(inPlace);
+        modifier.addModifier("/feed/entry", new ElementModifier() {
+            public Element modifyElement(Element element) {
+                element.addAttribute("seen", "true");
+
+                return element;
+            }
+        });
+
+        if (prune) {
+            modifier.setXMLWriter(new XMLWriter(new Writer() {
+                public void write(char[] buffer, int offset, int length) {
+                }
+
+                public void flush() {
+                }
+
+                public void close() {
+                }
+            }));
+        }
+    }
+
+    @Benchmark
+    public Document modify() throws DocumentException {
+        return modifier.modify(new ByteArrayInputStream(bytes));
+    }
+}
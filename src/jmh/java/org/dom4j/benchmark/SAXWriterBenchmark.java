@@ -0,0 +1,54 @@
+package org.dom4j.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.dom4j.Document;
+import org.dom4j.io.SAXWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Measures replaying each {@link Corpus} document as SAX events with a
+ * {@link SAXWriter}, as done when a document is the source of a
+ * transformation, to a handler which ignores them. With the <code>gc</code>
+ * profiler (<code>-prof gc</code>), the allocation per operation is the cost
+ * of the replay itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SAXWriterBenchmark {
+    @Param
+    public Corpus corpus;
+
+    private Document document;
+
+    private SAXWriter writer;
+
+    @Setup
+    public void setUp() {
+        document = corpus.parse();
+        writer = new SAXWriter(new DefaultHandler());
+    }
+
+    @Benchmark
+    public SAXWriter write() throws SAXException {
+        writer.write(document);
+
+        return writer;
+    }
+}
@@ -0,0 +1,109 @@
+package org.dom4j.benchmark;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.dom4j.Document;
+import org.dom4j.Element;
+import org.dom4j.VisitorSupport;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.XMLWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the operations which walk a whole subtree: visiting it, taking its
+ * string value, looking up a missing ID, normalizing it and writing it. The
+ * {@link Corpus#DEEP} document nests its elements 500 levels deep, the
+ * {@link Corpus#WIDE} document has 10000 siblings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TraversalBenchmark {
+    @Param({"DEEP", "WIDE"})
+    public Corpus corpus;
+
+    private Document document;
+
+    private Element root;
+
+    private CountingVisitor visitor;
+
+    private XMLWriter writer;
+
+    @Setup
+    public void setUp() {
+        document = corpus.parse();
+        root = document.getRootElement();
+        visitor = new CountingVisitor();
+        writer = new XMLWriter(new NullWriter(), new OutputFormat());
+    }
+
+    @Benchmark
+    public int accept() {
+        visitor.count = 0;
+        root.accept(visitor);
+
+        return visitor.count;
+    }
+
+    @Benchmark
+    public String stringValue() {
+        return root.getStringValue();
+    }
+
+    @Benchmark
+    public Element elementByID() {
+        return document.elementByID("missing");
+    }
+
+    @Benchmark
+    public Element normalize() {
+        root.normalize();
+
+        return root;
+    }
+
+    @Benchmark
+    public XMLWriter write() throws IOException {
+        writer.write(root);
+
+        return writer;
+    }
+
+    private static final class CountingVisitor extends VisitorSupport {
+        private int count;
+
+        public void visit(Element node) {
+            count++;
+        }
+    }
+
+    private static final class NullWriter extends Writer {
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        public void write(String str, int off, int len) {
+        }
+
+        public void flush() {
+        }
+
+        public void close() {
+        }
+    }
+}
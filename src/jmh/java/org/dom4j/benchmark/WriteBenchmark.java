@@ -0,0 +1,83 @@
+package org.dom4j.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.dom4j.Document;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.XMLWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures serializing each {@link Corpus} document with
+ * {@link Document#asXML()}, with an {@link XMLWriter} writing characters and
+ * with an {@link XMLWriter} writing UTF-8 bytes to a stream.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriteBenchmark {
+    @Param
+    public Corpus corpus;
+
+    private Document document;
+
+    private OutputFormat format;
+
+    @Setup
+    public void setUp() {
+        document = corpus.parse();
+        format = new OutputFormat();
+    }
+
+    @Benchmark
+    public String asXML() {
+        return document.asXML();
+    }
+
+    @Benchmark
+    public int writeChars() throws IOException {
+        StringWriter out = new StringWriter();
+        new XMLWriter(out, format).write(document);
+
+        return out.getBuffer().length();
+    }
+
+    @Benchmark
+    public int writeBytes() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        new XMLWriter(out, format).write(document);
+
+        return out.count;
+    }
+
+    /**
+     * Counts and discards the bytes written.
+     */
+    private static final class CountingOutputStream extends OutputStream {
+        private int count;
+
+        public void write(int b) {
+            count++;
+        }
+
+        public void write(byte[] bytes, int offset, int length) {
+            count += length;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package org.dom4j.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.dom4j.Document;
+import org.dom4j.XPath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the typical XPath queries of each {@link Corpus} document, both
+ * through the {@link org.dom4j.Node#selectNodes(String)} convenience method
+ * and through precompiled {@link XPath} instances.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XPathBenchmark {
+    @Param
+    public Corpus corpus;
+
+    private Document document;
+
+    private String[] queries;
+
+    private XPath[] xpaths;
+
+    @Setup
+    public void setUp() {
+        document = corpus.parse();
+        queries = corpus.getXPaths();
+        xpaths = new XPath[queries.length];
+
+        for (int i = 0; i < queries.length; i++) {
+            xpaths[i] = document.createXPath(queries[i]);
+        }
+    }
+
+    @Benchmark
+    public void selectNodes(Blackhole blackhole) {
+        for (String query : queries) {
+            blackhole.consume(document.selectObject(query));
+        }
+    }
+
+    @Benchmark
+    public void compiled(Blackhole blackhole) {
+        for (XPath xpath : xpaths) {
+            blackhole.consume(xpath.evaluate(document));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.dom4j.dom;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.dom4j.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.NodeList;
+
+/**
+ * Compares reading the first element and all the elements of
+ * <code>getElementsByTagName()</code> on a document of 10000 records, with
+ * the live list and with a list collected up front by
+ * {@link DOMNodeHelper#appendElementsByTagName}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DOMElementListBenchmark {
+    private DOMDocument document;
+
+    @Setup
+    public void setUp() {
+        document = new DOMDocument("root");
+
+        org.w3c.dom.Element root = document.createElement("root");
+        document.appendChild(root);
+
+        for (int i = 0; i < 10000; i++) {
+            org.w3c.dom.Element record = document.createElement("record");
+            record.appendChild(document.createElement("name"));
+            record.appendChild(document.createElement("value"));
+            root.appendChild(record);
+        }
+    }
+
+    @Benchmark
+    public org.w3c.dom.Node firstItem() {
+        return document.getElementsByTagName("value").item(0);
+    }
+
+    @Benchmark
+    public org.w3c.dom.Node firstItemCollected() {
+        ArrayList<Node> list = new ArrayList<Node>();
+        DOMNodeHelper.appendElementsByTagName(list, document, "value");
+
+        return DOMNodeHelper.createNodeList(list).item(0);
+    }
+
+    @Benchmark
+    public int allItems() {
+        NodeList list = document.getElementsByTagName("value");
+        int count = 0;
+
+        for (int i = 0; i < list.getLength(); i++) {
+            if (list.item(i) != null) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    @Benchmark
+    public int allItemsCollected() {
+        ArrayList<Node> collected = new ArrayList<Node>();
+        DOMNodeHelper.appendElementsByTagName(collected, document, "value");
+
+        NodeList list = DOMNodeHelper.createNodeList(collected);
+        int count = 0;
+
+        for (int i = 0; i < list.getLength(); i++) {
+            if (list.item(i) != null) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,70 @@
+package org.dom4j.dom;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Node;
+
+/**
+ * Measures walking the children of a {@link DOMElement} with the W3C DOM
+ * sibling links, as DOM libraries do, forwards with
+ * <code>getNextSibling()</code> and backwards with
+ * <code>getPreviousSibling()</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DOMSiblingBenchmark {
+    @Param({"1000", "100000"})
+    public int children;
+
+    private DOMElement parent;
+
+    @Setup
+    public void setUp() {
+        DOMDocument document = new DOMDocument("root");
+        parent = (DOMElement) document.createElement("parent");
+        document.appendChild(parent);
+
+        for (int i = 0; i < children; i++) {
+            parent.appendChild(document.createElement("child"));
+        }
+    }
+
+    @Benchmark
+    public int nextSibling() {
+        int count = 0;
+
+        for (Node n = parent.getFirstChild(); n != null; n = n
+                .getNextSibling()) {
+            count++;
+        }
+
+        return count;
+    }
+
+    @Benchmark
+    public int previousSibling() {
+        int count = 0;
+
+        for (Node n = parent.getLastChild(); n != null; n = n
+                .getPreviousSibling()) {
+            count++;
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,89 @@
+package org.dom4j.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares writing a document to an <code>OutputStream</code> through a
+ * <code>BufferedWriter</code> and an <code>OutputStreamWriter</code> with the
+ * direct encoding enabled by {@link OutputFormat#setDirectEncoding(boolean)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DirectEncodingBenchmark {
+    @Param({"UTF-8", "ISO-8859-1"})
+    public String encoding;
+
+    private Document document;
+
+    private OutputFormat writerFormat;
+
+    private OutputFormat directFormat;
+
+    @Setup
+    public void setUp() {
+        document = DocumentHelper.createDocument();
+        Element feed = document.addElement("feed", "http://www.w3.org/2005/Atom");
+
+        for (int i = 0; i < 1000; i++) {
+            Element entry = feed.addElement("entry");
+            entry.addAttribute("id", "urn:entry:" + i);
+            entry.addElement("title").setText("Entry number " + i);
+            entry.addElement("summary").setText(
+                    "A short summary of the entry, café " + i);
+            entry.addElement("link").addAttribute("href",
+                    "http://example.com/entries/" + i);
+        }
+
+        writerFormat = new OutputFormat();
+        writerFormat.setEncoding(encoding);
+        directFormat = new OutputFormat();
+        directFormat.setEncoding(encoding);
+        directFormat.setDirectEncoding(true);
+    }
+
+    @Benchmark
+    public void outputStreamWriter() throws IOException {
+        new XMLWriter(new NullOutputStream(), writerFormat).write(document);
+    }
+
+    @Benchmark
+    public void directEncoding() throws IOException {
+        new XMLWriter(new NullOutputStream(), directFormat).write(document);
+    }
+
+    /**
+     * Discards the bytes written.
+     */
+    private static final class NullOutputStream extends OutputStream {
+        private int count;
+
+        public void write(int b) {
+            count++;
+        }
+
+        public void write(byte[] bytes, int offset, int length) {
+            count += length;
+        }
+    }
+}
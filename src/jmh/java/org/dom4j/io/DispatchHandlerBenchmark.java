@@ -0,0 +1,107 @@
+package org.dom4j.io;
+
+import java.util.concurrent.TimeUnit;
+
+import org.dom4j.DocumentFactory;
+import org.dom4j.Element;
+import org.dom4j.ElementHandler;
+import org.dom4j.ElementPath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the dispatching overhead of {@link DispatchHandler} for a feed of
+ * entries when only a couple of handlers are registered. The elements are
+ * created up front, so that with the <code>gc</code> profiler
+ * (<code>-prof gc</code>) the allocation rate is the one of the path
+ * tracking alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchHandlerBenchmark {
+    private static final int ENTRIES = 1000;
+
+    private DispatchHandler dispatchHandler;
+
+    private ElementStack elementStack;
+
+    private Element feed;
+
+    private Element[][] entries;
+
+    private int handled;
+
+    @Setup
+    public void setUp() {
+        DocumentFactory factory = DocumentFactory.getInstance();
+        ElementHandler handler = new ElementHandler() {
+            public void onStart(ElementPath elementPath) {
+            }
+
+            public void onEnd(ElementPath elementPath) {
+                handled++;
+            }
+        };
+
+        dispatchHandler = new DispatchHandler();
+        dispatchHandler.addHandler("/feed/entry/link", handler);
+        dispatchHandler.addHandler("/feed/head/title", handler);
+        elementStack = new ElementStack();
+        elementStack.setDispatchHandler(dispatchHandler);
+        feed = factory.createElement("feed");
+        entries = new Element[ENTRIES][];
+
+        for (int i = 0; i < ENTRIES; i++) {
+            entries[i] = new Element[] {factory.createElement("entry"),
+                    factory.createElement("title"),
+                    factory.createElement("author"),
+                    factory.createElement("name"),
+                    factory.createElement("link")};
+        }
+    }
+
+    @Benchmark
+    public int dispatch() {
+        handled = 0;
+        start(feed);
+
+        for (Element[] entry : entries) {
+            start(entry[0]);
+            start(entry[1]);
+            end();
+            start(entry[2]);
+            start(entry[3]);
+            end();
+            end();
+            start(entry[4]);
+            end();
+            end();
+        }
+
+        end();
+
+        return handled;
+    }
+
+    private void start(Element element) {
+        elementStack.pushElement(element);
+        dispatchHandler.onStart(elementStack);
+    }
+
+    private void end() {
+        dispatchHandler.onEnd(elementStack);
+        elementStack.popElement();
+    }
+}
@@ -0,0 +1,110 @@
+package org.dom4j.io;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the default escaping of {@link XMLWriter} with the table driven
+ * escaping enabled by {@link OutputFormat#setFastEscaping(boolean)}, on a
+ * text heavy and on an attribute heavy document. The output is discarded so
+ * that only the serialization is measured; use the <code>gc</code> profiler
+ * (<code>-prof gc</code>) to compare the allocation rates as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XMLEscapingBenchmark {
+    private static final String TEXT = "The quick brown fox jumps over the "
+            + "lazy dog & the \"cat\" sleeps <quietly> in the sun. ";
+
+    @Param({"text", "attributes"})
+    public String shape;
+
+    @Param({"US-ASCII", "UTF-8"})
+    public String encoding;
+
+    private Document document;
+
+    private OutputFormat defaultFormat;
+
+    private OutputFormat fastFormat;
+
+    @Setup
+    public void setUp() {
+        document = DocumentHelper.createDocument();
+        Element root = document.addElement("root");
+
+        for (int i = 0; i < 1000; i++) {
+            Element item = root.addElement("item");
+
+            if ("text".equals(shape)) {
+                item.setText(TEXT + TEXT + "café " + i);
+            } else {
+                item.addAttribute("id", "item-" + i);
+                item.addAttribute("title", TEXT);
+                item.addAttribute("href", "http://example.com/?a=1&b=" + i);
+                item.addAttribute("note", "café \"" + i + "\"");
+            }
+        }
+
+        defaultFormat = new OutputFormat();
+        defaultFormat.setEncoding(encoding);
+        fastFormat = new OutputFormat();
+        fastFormat.setEncoding(encoding);
+        fastFormat.setFastEscaping(true);
+    }
+
+    @Benchmark
+    public void defaultEscaping() throws IOException {
+        new XMLWriter(new NullWriter(), defaultFormat).write(document);
+    }
+
+    @Benchmark
+    public void fastEscaping() throws IOException {
+        new XMLWriter(new NullWriter(), fastFormat).write(document);
+    }
+
+    /**
+     * Discards the output, with the same bulk writes as a buffered writer.
+     */
+    private static final class NullWriter extends Writer {
+        private int count;
+
+        public void write(int c) {
+            count++;
+        }
+
+        public void write(char[] buffer, int offset, int length) {
+            count += length;
+        }
+
+        public void write(String text, int offset, int length) {
+            count += length;
+        }
+
+        public void flush() {
+        }
+
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.dom4j.tree;
+
+import java.util.concurrent.TimeUnit;
+
+import org.dom4j.DocumentFactory;
+import org.dom4j.Namespace;
+import org.dom4j.QName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the thread local {@link QNameCache} with the shared
+ * {@link ConcurrentQNameCache} as the number of threads grows. Run
+ * {@link #main(String[])} to get the whole thread count series, or pass
+ * <code>-t</code> to JMH for a single point.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QNameCacheBenchmark {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+
+    @Param({"threadLocal", "shared"})
+    public String mode;
+
+    @Param({"4000"})
+    public int names;
+
+    private DocumentFactory factory;
+
+    private String[] localNames;
+
+    private Namespace[] namespaces;
+
+    @Setup
+    public void setUp() {
+        factory = new DocumentFactory();
+        factory.setSharedQNameCache("shared".equals(mode));
+
+        localNames = new String[names];
+        for (int i = 0; i < names; i++) {
+            localNames[i] = "element" + i;
+        }
+
+        namespaces = new Namespace[8];
+        for (int i = 0; i < namespaces.length; i++) {
+            namespaces[i] = Namespace.get("ns" + i, "urn:benchmark:" + i);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int index;
+    }
+
+    /**
+     * Steady state lookup of names which are already cached. With the thread
+     * local cache every JMH thread warms up its own copy of the table.
+     */
+    @Benchmark
+    public QName lookup(Cursor cursor) {
+        int i = cursor.index++;
+        if (cursor.index == names) {
+            cursor.index = 0;
+        }
+
+        return factory.createQName(localNames[i], namespaces[i & 7]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : THREAD_COUNTS) {
+            new Runner(new OptionsBuilder()
+                    .include(QNameCacheBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+        }
+    }
+}
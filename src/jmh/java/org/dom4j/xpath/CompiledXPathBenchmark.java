@@ -0,0 +1,79 @@
+package org.dom4j.xpath;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares compiling an XPath expression per evaluation, which used to be the
+ * only safe option when several threads need the same expression, with
+ * sharing one {@link CompiledXPath} between all threads. Run
+ * {@link #main(String[])} to get the whole thread count series, or pass
+ * <code>-t</code> to JMH for a single point.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompiledXPathBenchmark {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16};
+
+    private static final String EXPRESSION = "/catalog/book[@id = 'b42']/title";
+
+    private CompiledXPath shared;
+
+    private Document document;
+
+    @Setup
+    public void setUp() {
+        document = DocumentHelper.createDocument();
+        Element catalog = document.addElement("catalog");
+
+        for (int i = 0; i < 100; i++) {
+            Element book = catalog.addElement("book").addAttribute("id",
+                    "b" + i);
+            book.addElement("title").setText("Title " + i);
+        }
+
+        shared = DocumentHelper.compileXPath(EXPRESSION);
+    }
+
+    @Benchmark
+    public List<Node> compilePerCall() {
+        return DocumentHelper.createXPath(EXPRESSION).selectNodes(document);
+    }
+
+    @Benchmark
+    public List<Node> sharedCompiled() {
+        return shared.selectNodes(document);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : THREAD_COUNTS) {
+            new Runner(new OptionsBuilder()
+                    .include(CompiledXPathBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.dom4j.xpath;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.jaxen.JaxenException;
+import org.jaxen.dom4j.Dom4jXPath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares jaxen with the native evaluation of {@link CompiledXPath} for
+ * typical simple expressions on a large document. Use the <code>gc</code>
+ * profiler (<code>-prof gc</code>) to compare the allocation rates as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NativeXPathBenchmark {
+
+    @Param({"/feed/entry/title", "//title", "//entry[@type='news']/@id",
+            "/feed/entry[author='author7']", "//a:link/@href"})
+    public String expression;
+
+    @Param({"10000"})
+    public int entries;
+
+    private Document document;
+
+    private Dom4jXPath jaxen;
+
+    private CompiledXPath compiled;
+
+    @Setup
+    public void setUp() throws JaxenException {
+        document = DocumentHelper.createDocument();
+        Element feed = document.addElement("feed");
+        feed.addNamespace("a", "urn:a");
+
+        for (int i = 0; i < entries; i++) {
+            Element entry = feed.addElement("entry");
+            entry.addAttribute("id", "e" + i);
+            entry.addAttribute("type", ((i % 10) == 0) ? "news" : "post");
+            entry.addElement("title").setText("Title " + i);
+            entry.addElement("author").setText("author" + (i % 100));
+            entry.addElement("a:link", "urn:a").addAttribute("href",
+                    "http://example.com/" + i);
+        }
+
+        jaxen = new Dom4jXPath(expression);
+        jaxen.setNamespaceContext(DefaultNamespaceContext.create(document));
+        compiled = new CompiledXPath(expression);
+
+        if (!compiled.isNative()) {
+            throw new IllegalStateException("Not native: " + expression);
+        }
+    }
+
+    @Benchmark
+    public List<?> jaxen() throws JaxenException {
+        return jaxen.selectNodes(document);
+    }
+
+    @Benchmark
+    public List<?> nativePath() {
+        return compiled.selectNodes(document);
+    }
+}
@@ -15,6 +15,7 @@ import java.util.Map;
 
 import org.dom4j.rule.Pattern;
 import org.dom4j.tree.AbstractDocument;
+import org.dom4j.tree.ConcurrentQNameCache;
 import org.dom4j.tree.DefaultAttribute;
 import org.dom4j.tree.DefaultCDATA;
 import org.dom4j.tree.DefaultComment;
@@ -27,7 +28,10 @@ import org.dom4j.tree.DefaultText;
 import org.dom4j.tree.QNameCache;
 import org.dom4j.util.SimpleSingleton;
 import org.dom4j.util.SingletonStrategy;
+import org.dom4j.xpath.CompiledXPath;
 import org.dom4j.xpath.DefaultXPath;
+import org.dom4j.xpath.XPathCache;
+import org.dom4j.xpath.XPathContext;
 import org.dom4j.xpath.XPathPattern;
 import org.jaxen.VariableContext;
 
@@ -46,9 +50,24 @@ public class DocumentFactory implements Serializable {
 
     protected transient QNameCache cache;
 
+    /** Whether QNames are interned in a table shared by all threads */
+    private boolean sharedQNameCache = isSharedQNameCacheDefault();
+
     /** Default namespace prefix → URI mappings for XPath expressions to use */
     private Map<String, String> xpathNamespaceURIs;
 
+    /** The copy of the namespace URIs used to look up cached expressions */
+    private transient XPathCache.NamespaceURIs xpathCacheNamespaceURIs;
+
+    /** The compiled expressions used by the XPath convenience methods */
+    private transient XPathCache xpathCache;
+
+    /** Whether createXPath(String) has been overridden by a subclass */
+    private transient boolean customCreateXPath;
+
+    /** Whether createQName(String, Namespace) has been overridden */
+    private transient boolean customCreateQName;
+
     private static SingletonStrategy<DocumentFactory> createSingleton() {
         SingletonStrategy<DocumentFactory> result;
         
@@ -75,6 +94,23 @@ public class DocumentFactory implements Serializable {
         return result;
     }
 
+    private static int getXPathCacheSizeDefault() {
+        try {
+            return Integer.getInteger("org.dom4j.DocumentFactory.xpathCacheSize",
+                    XPathCache.DEFAULT_MAX_SIZE);
+        } catch (Exception e) {
+            return XPathCache.DEFAULT_MAX_SIZE;
+        }
+    }
+
+    private static boolean isSharedQNameCacheDefault() {
+        try {
+            return Boolean.getBoolean("org.dom4j.QNameCache.shared");
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
     public DocumentFactory() {
         init();
     }
@@ -203,6 +239,28 @@ public class DocumentFactory implements Serializable {
         return cache.get(qualifiedName, uri);
     }
 
+    /**
+     * Creates a QName like {@link #createQName(String, Namespace)}, but skips
+     * the validation of the local name. This is used by the readers for names
+     * which have already been checked by the underlying XML parser and must
+     * not be used for names from untrusted sources. If a subclass overrides
+     * {@link #createQName(String, Namespace)}, the name is created by it.
+     * 
+     * @param localName
+     *            the local name, which must be a legal NCName
+     * @param namespace
+     *            the namespace
+     * 
+     * @return the QName for the given local name and namespace
+     */
+    public QName createTrustedQName(String localName, Namespace namespace) {
+        if (customCreateQName) {
+            return createQName(localName, namespace);
+        }
+
+        return cache.getTrusted(localName, namespace);
+    }
+
     /**
      * <p>
      * <code>createXPath</code> parses an XPath expression and creates a new
@@ -228,6 +286,65 @@ public class DocumentFactory implements Serializable {
         return xpath;
     }
 
+    /**
+     * <p>
+     * <code>compileXPath</code> parses an XPath expression into an immutable
+     * {@link CompiledXPath} which may be shared between threads. The
+     * namespace URIs of this factory, if any, are used by evaluations that do
+     * not pass their own {@link XPathContext}. Expressions are taken from the
+     * {@link #getXPathCache() XPath cache} if it is enabled.
+     * </p>
+     * 
+     * @param xpathExpression
+     *            is the XPath expression to compile
+     * 
+     * @return a <code>CompiledXPath</code> instance
+     * 
+     * @throws InvalidXPathException
+     *             if the XPath expression is invalid
+     */
+    public CompiledXPath compileXPath(String xpathExpression)
+            throws InvalidXPathException {
+        XPathCache xpathCache = this.xpathCache;
+
+        if (xpathCache != null) {
+            return xpathCache.get(xpathExpression, xpathCacheNamespaceURIs);
+        }
+
+        if (xpathNamespaceURIs != null) {
+            return new CompiledXPath(xpathExpression, new XPathContext(
+                    xpathNamespaceURIs));
+        }
+
+        return new CompiledXPath(xpathExpression);
+    }
+
+    /**
+     * Returns the cached compiled form of the given expression for the XPath
+     * convenience methods of the nodes created by this factory, such as
+     * {@link Node#selectNodes(String)}.
+     * 
+     * @param xpathExpression
+     *            is the XPath expression to compile
+     * 
+     * @return the compiled expression or null if the convenience methods have
+     *         to use {@link #createXPath(String)} instead, because the cache is
+     *         disabled or <code>createXPath</code> has been overridden
+     * 
+     * @throws InvalidXPathException
+     *             if the XPath expression is invalid
+     */
+    public CompiledXPath getCachedXPath(String xpathExpression)
+            throws InvalidXPathException {
+        XPathCache xpathCache = this.xpathCache;
+
+        if ((xpathCache == null) || customCreateXPath) {
+            return null;
+        }
+
+        return xpathCache.get(xpathExpression, xpathCacheNamespaceURIs);
+    }
+
     /**
      * <p>
      * <code>createXPath</code> parses an XPath expression and creates a new
@@ -336,13 +453,77 @@ public class DocumentFactory implements Serializable {
     /**
      * Sets the namespace URIs to be used by XPath expressions created by this
      * factory or by nodes associated with this factory. The keys are namespace
-     * prefixes and the values are namespace URIs.
+     * prefixes and the values are namespace URIs. The cached expressions of
+     * {@link #compileXPath(String)} and of the XPath convenience methods use
+     * the URIs the map holds when this method is called, so it has to be
+     * called again after the map is changed.
      * 
      * @param namespaceURIs
      *            DOCUMENT ME!
      */
     public void setXPathNamespaceURIs(Map<String, String> namespaceURIs) {
         this.xpathNamespaceURIs = namespaceURIs;
+        this.xpathCacheNamespaceURIs = (namespaceURIs != null)
+                ? new XPathCache.NamespaceURIs(namespaceURIs) : null;
+    }
+
+    /**
+     * Returns the cache of compiled expressions used by
+     * {@link #compileXPath(String)} and the XPath convenience methods of the
+     * nodes created by this factory. Its counters show how well it works for
+     * the expressions in use. The default size can be set with the
+     * <code>org.dom4j.DocumentFactory.xpathCacheSize</code> system property, a
+     * size of 0 disables the cache.
+     * 
+     * @return the XPath cache or null if it is disabled
+     */
+    public XPathCache getXPathCache() {
+        return xpathCache;
+    }
+
+    /**
+     * Sets the cache of compiled expressions, e.g. to share one cache between
+     * factories or to change its size.
+     * 
+     * @param xpathCache
+     *            the new cache or null to disable caching
+     */
+    public void setXPathCache(XPathCache xpathCache) {
+        this.xpathCache = xpathCache;
+    }
+
+    /**
+     * DOCUMENT ME!
+     * 
+     * @return true if QNames created by this factory are interned in a table
+     *         shared by all threads, false if each thread keeps its own cache
+     */
+    public boolean isSharedQNameCache() {
+        return sharedQNameCache;
+    }
+
+    /**
+     * Selects how QNames created by this factory are cached. By default each
+     * thread keeps its own {@link QNameCache}, so the same name created on
+     * two threads yields two different instances. A shared cache interns every
+     * name once in a lock-free {@link ConcurrentQNameCache}, which saves memory
+     * on large thread pools and keeps QNames identical across threads. The
+     * default can be changed with the <code>org.dom4j.QNameCache.shared</code>
+     * system property.
+     * 
+     * <p>
+     * Changing the mode discards the QNames cached so far, so it should be done
+     * before the factory is used.
+     * </p>
+     * 
+     * @param sharedQNameCache
+     *            true to use a single cache shared by all threads
+     */
+    public void setSharedQNameCache(boolean sharedQNameCache) {
+        if (this.sharedQNameCache != sharedQNameCache) {
+            this.sharedQNameCache = sharedQNameCache;
+            cache = createQNameCache();
+        }
     }
 
     // Implementation methods
@@ -396,17 +577,46 @@ public class DocumentFactory implements Serializable {
      * @return DOCUMENT ME!
      */
     protected QNameCache createQNameCache() {
+        if (sharedQNameCache) {
+            return new ConcurrentQNameCache(this);
+        }
+
         return new QNameCache(this);
     }
 
     private void readObject(ObjectInputStream in) throws IOException,
             ClassNotFoundException {
         in.defaultReadObject();
+
+        if (xpathNamespaceURIs != null) {
+            xpathCacheNamespaceURIs = new XPathCache.NamespaceURIs(
+                    xpathNamespaceURIs);
+        }
+
         init();
     }
 
     protected void init() {
         cache = createQNameCache();
+
+        int xpathCacheSize = getXPathCacheSizeDefault();
+        xpathCache = (xpathCacheSize > 0) ? new XPathCache(xpathCacheSize)
+                : null;
+
+        try {
+            customCreateXPath = getClass().getMethod("createXPath",
+                    String.class).getDeclaringClass() != DocumentFactory.class;
+        } catch (NoSuchMethodException e) {
+            customCreateXPath = true;
+        }
+
+        try {
+            customCreateQName = getClass().getMethod("createQName",
+                    String.class, Namespace.class).getDeclaringClass()
+                    != DocumentFactory.class;
+        } catch (NoSuchMethodException e) {
+            customCreateQName = true;
+        }
     }
 }
 
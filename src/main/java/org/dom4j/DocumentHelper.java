@@ -12,8 +12,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
 
-import org.dom4j.io.SAXReader;
+import org.dom4j.io.SAXReaderPool;
 import org.dom4j.rule.Pattern;
+import org.dom4j.xpath.CompiledXPath;
 
 import org.jaxen.VariableContext;
 
@@ -29,6 +30,9 @@ import org.xml.sax.SAXException;
  */
 @SuppressWarnings("unused")
 public final class DocumentHelper {
+    /** The readers used by {@link #parseText(String)} */
+    private static final SAXReaderPool PARSE_TEXT_READERS = new SAXReaderPool();
+
     private DocumentHelper() {
     }
 
@@ -121,6 +125,27 @@ public final class DocumentHelper {
         return getDocumentFactory().createXPath(xpathExpression);
     }
 
+    /**
+     * <p>
+     * <code>compileXPath</code> parses an XPath expression into an immutable
+     * {@link CompiledXPath} using the singleton {@link DocumentFactory}. The
+     * result can be kept in a static field and evaluated by many threads at
+     * once.
+     * </p>
+     *
+     * @param xpathExpression
+     *            is the XPath expression to compile
+     *
+     * @return a new <code>CompiledXPath</code> instance
+     *
+     * @throws InvalidXPathException
+     *             if the XPath expression is invalid
+     */
+    public static CompiledXPath compileXPath(String xpathExpression)
+            throws InvalidXPathException {
+        return getDocumentFactory().compileXPath(xpathExpression);
+    }
+
     /**
      * <p>
      * <code>createXPath</code> parses an XPath expression and creates a new
@@ -191,6 +216,13 @@ public final class DocumentHelper {
      * @return the results of all the XPath evaluations as a single list
      */
     public static List<Node> selectNodes(String xpathFilterExpression, List<Node> nodes) {
+        CompiledXPath compiled = getDocumentFactory().getCachedXPath(
+                xpathFilterExpression);
+
+        if (compiled != null) {
+            return compiled.selectNodes(nodes);
+        }
+
         XPath xpath = createXPath(xpathFilterExpression);
 
         return xpath.selectNodes(nodes);
@@ -211,6 +243,13 @@ public final class DocumentHelper {
      * @return the results of all the XPath evaluations as a single list
      */
     public static List<Node> selectNodes(String xpathFilterExpression, Node node) {
+        CompiledXPath compiled = getDocumentFactory().getCachedXPath(
+                xpathFilterExpression);
+
+        if (compiled != null) {
+            return compiled.selectNodes(node);
+        }
+
         XPath xpath = createXPath(xpathFilterExpression);
 
         return xpath.selectNodes(node);
@@ -259,6 +298,8 @@ public final class DocumentHelper {
      * </p>
      *
      * Loading external DTD and entities is disabled (if it is possible) for security reasons.
+     * The readers are taken from a pool shared by all threads, so that the
+     * SAX parser is not looked up on every call.
      *
      * @param text
      *            the XML text to be parsed
@@ -269,14 +310,12 @@ public final class DocumentHelper {
      *             if the document could not be parsed
      */
     public static Document parseText(String text) throws DocumentException {
-        SAXReader reader = SAXReader.createDefault();
-
         String encoding = getEncoding(text);
 
         InputSource source = new InputSource(new StringReader(text));
         source.setEncoding(encoding);
 
-        Document result = reader.read(source);
+        Document result = PARSE_TEXT_READERS.read(source);
 
         // if the XML parser doesn't provide a way to retrieve the encoding,
         // specify it manually
@@ -11,8 +11,8 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.regex.Pattern;
 
+import org.dom4j.tree.ConcurrentQNameCache;
 import org.dom4j.tree.QNameCache;
 import org.dom4j.util.SingletonStrategy;
 
@@ -28,80 +28,6 @@ public class QName implements Serializable {
     /** The Singleton instance */
     private static SingletonStrategy<QNameCache> singleton = null;
 
-    /**
-     * {@code NameStartChar} without colon.
-     *
-     * <pre>NameStartChar	::=	":" | [A-Z] | "_" | [a-z] | [#xC0-#xD6] | [#xD8-#xF6] | [#xF8-#x2FF] | [#x370-#x37D] | [#x37F-#x1FFF] | [#x200C-#x200D] | [#x2070-#x218F] | [#x2C00-#x2FEF] | [#x3001-#xD7FF] | [#xF900-#xFDCF] | [#xFDF0-#xFFFD] | [#x10000-#xEFFFF]</pre>
-     *
-     * @see <a href="https://www.w3.org/TR/xml/#sec-common-syn">XML 1.0 – 2.3 Common Syntactic Constructs</a>
-     * @see <a href="https://www.w3.org/TR/2006/REC-xml11-20060816/#sec-common-syn">XML 1.1 – 2.3 Common Syntactic Constructs</a>
-     */
-    private static final String NAME_START_CHAR = "_A-Za-z\u00C0-\u00D6\u00D8-\u00F6\u00F8-\u02FF\u0370-\u037D\u037F-\u1FFF\u200C-\u200D\u2070-\u218F\u2C00-\u2FEF\u3001-\uD7FF\uF900-\uFDCF\uFDF0-\uFFFD";
-
-    /**
-     * {@code NameChar} without colon.
-     *
-     * <pre>NameChar	::=	NameStartChar | "-" | "." | [0-9] | #xB7 | [#x0300-#x036F] | [#x203F-#x2040]</pre>
-     *
-     * @see <a href="https://www.w3.org/TR/xml/#sec-common-syn">XML 1.0 – 2.3 Common Syntactic Constructs</a>
-     * @see <a href="https://www.w3.org/TR/2006/REC-xml11-20060816/#sec-common-syn">XML 1.1 – 2.3 Common Syntactic Constructs</a>
-     */
-    private static final String NAME_CHAR = NAME_START_CHAR + "-.0-9\u00B7\u0300-\u036F\u203F-\u2040";
-
-    /**
-     * {@code NCName}
-     *
-     * <pre>
-     * NCName		::=	NCNameStartChar NCNameChar*	(An XML Name, minus the ":")
-     * NCNameChar	::=	NameChar -':'
-     * NCNameStartChar	::=	NameStartChar -':'
-     * </pre>
-     *
-     * @see <a href="https://www.w3.org/TR/xml-names/#ns-qualnames">Namespaces in XML 1.0 – 4 Qualified Names</a>
-     * @see <a href="https://www.w3.org/TR/2006/REC-xml-names11-20060816/#ns-qualnames">Namespaces in XML 1.1 – 4 Qualified Names</a>
-     */
-    private static final String NCNAME = "["+NAME_START_CHAR+"]["+NAME_CHAR+"]*";
-
-    /**
-     * Regular expression for {@code Name} (with colon).
-     *
-     * <pre>Name	::=	NameStartChar (NameChar)*</pre>
-     *
-     * @see <a href="https://www.w3.org/TR/xml/#sec-common-syn">XML 1.0 – 2.3 Common Syntactic Constructs</a>
-     * @see <a href="https://www.w3.org/TR/2006/REC-xml11-20060816/#sec-common-syn">XML 1.1 – 2.3 Common Syntactic Constructs</a>
-     */
-    private static final Pattern RE_NAME = Pattern.compile("[:"+NAME_START_CHAR+"][:"+NAME_CHAR+"]*");
-
-    /**
-     * Regular expression for {@code NCName}.
-     *
-     * <pre>
-     * NCName		::=	NCNameStartChar NCNameChar*	(An XML Name, minus the ":")
-     * NCNameChar	::=	NameChar -':'
-     * NCNameStartChar	::=	NameStartChar -':'
-     * </pre>
-     *
-     * @see <a href="https://www.w3.org/TR/xml-names/#ns-qualnames">Namespaces in XML 1.0 – 4 Qualified Names</a>
-     * @see <a href="https://www.w3.org/TR/2006/REC-xml-names11-20060816/#ns-qualnames">Namespaces in XML 1.1 – 4 Qualified Names</a>
-     */
-    private static final Pattern RE_NCNAME = Pattern.compile(NCNAME);
-
-    /**
-     * Regular expression for {@code QName}.
-     *
-     * <pre>
-     * QName		::=	PrefixedName | UnprefixedName
-     * PrefixedName	::=	Prefix ':' LocalPart
-     * UnprefixedName	::=	LocalPart
-     * Prefix		::=	NCName
-     * LocalPart	::=	NCName
-     * </pre>
-     *
-     * @see <a href="https://www.w3.org/TR/xml-names/#ns-qualnames">Namespaces in XML 1.0 – 4 Qualified Names</a>
-     * @see <a href="https://www.w3.org/TR/2006/REC-xml-names11-20060816/#ns-qualnames">Namespaces in XML 1.1 – 4 Qualified Names</a>
-     */
-    private static final Pattern RE_QNAME = Pattern.compile("(?:"+NCNAME+":)?"+NCNAME);
-
     static {
         try {
             String defaultSingletonClass = "org.dom4j.util.SimpleSingleton";
@@ -119,7 +45,12 @@ public class QName implements Serializable {
                 }
             }
             singleton = clazz.newInstance();
-            singleton.setSingletonClassName(QNameCache.class.getName());
+
+            Class<? extends QNameCache> cacheClass = QNameCache.class;
+            if (Boolean.getBoolean("org.dom4j.QNameCache.shared")) {
+                cacheClass = ConcurrentQNameCache.class;
+            }
+            singleton.setSingletonClassName(cacheClass.getName());
         } catch (Exception exc3) {
         }
     }
@@ -144,23 +75,47 @@ public class QName implements Serializable {
     }
 
     public QName(String name, Namespace namespace) {
-        this.name = (name == null) ? "" : name;
-        this.namespace = (namespace == null) ? Namespace.NO_NAMESPACE
-                : namespace;
-        if (this.namespace.equals(Namespace.NO_NAMESPACE)) {
-            validateName(this.name);
-        } else {
-            validateNCName(this.name);
-        }
+        this(name, namespace, null, true);
     }
 
     public QName(String name, Namespace namespace, String qualifiedName) {
+        this(name, namespace, qualifiedName, true);
+    }
+
+    /**
+     * Creates a QName, optionally skipping the check of the names. Validation
+     * should only be turned off for names which are already known to be legal,
+     * e.g. names reported by an XML parser.
+     *
+     * @param name
+     *            the local name
+     * @param namespace
+     *            the namespace, null for no namespace
+     * @param qualifiedName
+     *            the qualified name or null to derive it from the prefix of
+     *            the namespace and the local name
+     * @param validate
+     *            false if the names are trusted and need not be checked
+     */
+    public QName(String name, Namespace namespace, String qualifiedName,
+            boolean validate) {
         this.name = (name == null) ? "" : name;
         this.qualifiedName = qualifiedName;
         this.namespace = (namespace == null) ? Namespace.NO_NAMESPACE
                 : namespace;
-        validateNCName(this.name);
-        validateQName(this.qualifiedName);
+
+        if (validate) {
+            if ((qualifiedName == null)
+                    && this.namespace.equals(Namespace.NO_NAMESPACE)) {
+                validateName(this.name);
+            } else {
+                validateNCName(this.name);
+            }
+
+            if (qualifiedName != null) {
+                validateQName(qualifiedName);
+            }
+        }
     }
 
     public static QName get(String name) {
@@ -336,22 +291,155 @@ public class QName implements Serializable {
     }
 
     private static void validateName(String name) {
-        if (!RE_NAME.matcher(name).matches()) {
+        if (!isName(name)) {
             throw new IllegalArgumentException(String.format("Illegal character in name: '%s'.", name));
         }
     }
 
     protected static void validateNCName(String ncname) {
-        if (!RE_NCNAME.matcher(ncname).matches()) {
+        if (!isNCName(ncname, 0, ncname.length())) {
             throw new IllegalArgumentException(String.format("Illegal character in local name: '%s'.", ncname));
         }
     }
 
     private static void validateQName(String qname) {
-        if (!RE_QNAME.matcher(qname).matches()) {
+        if (!isQName(qname)) {
             throw new IllegalArgumentException(String.format("Illegal character in qualified name: '%s'.", qname));
         }
     }
+
+    /**
+     * Checks for a {@code Name} (with colon).
+     *
+     * <pre>Name	::=	NameStartChar (NameChar)*</pre>
+     *
+     * @see <a href="https://www.w3.org/TR/xml/#sec-common-syn">XML 1.0 – 2.3 Common Syntactic Constructs</a>
+     * @see <a href="https://www.w3.org/TR/2006/REC-xml11-20060816/#sec-common-syn">XML 1.1 – 2.3 Common Syntactic Constructs</a>
+     */
+    private static boolean isName(String name) {
+        int length = name.length();
+
+        if (length == 0) {
+            return false;
+        }
+
+        char c = name.charAt(0);
+
+        if ((c != ':') && !isNCNameStartChar(c)) {
+            return false;
+        }
+
+        for (int i = 1; i < length; i++) {
+            c = name.charAt(i);
+
+            if ((c != ':') && !isNCNameChar(c)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks for a {@code NCName} in the given range of the string.
+     *
+     * <pre>
+     * NCName		::=	NCNameStartChar NCNameChar*	(An XML Name, minus the ":")
+     * NCNameChar	::=	NameChar -':'
+     * NCNameStartChar	::=	NameStartChar -':'
+     * </pre>
+     *
+     * @see <a href="https://www.w3.org/TR/xml-names/#ns-qualnames">Namespaces in XML 1.0 – 4 Qualified Names</a>
+     * @see <a href="https://www.w3.org/TR/2006/REC-xml-names11-20060816/#ns-qualnames">Namespaces in XML 1.1 – 4 Qualified Names</a>
+     */
+    private static boolean isNCName(String name, int start, int end) {
+        if ((start >= end) || !isNCNameStartChar(name.charAt(start))) {
+            return false;
+        }
+
+        for (int i = start + 1; i < end; i++) {
+            if (!isNCNameChar(name.charAt(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks for a {@code QName}, a name with an optional prefix, e.g. to
+     * validate names parsed from expressions.
+     *
+     * <pre>
+     * QName		::=	PrefixedName | UnprefixedName
+     * PrefixedName	::=	Prefix ':' LocalPart
+     * UnprefixedName	::=	LocalPart
+     * Prefix		::=	NCName
+     * LocalPart	::=	NCName
+     * </pre>
+     *
+     * @see <a href="https://www.w3.org/TR/xml-names/#ns-qualnames">Namespaces in XML 1.0 – 4 Qualified Names</a>
+     * @see <a href="https://www.w3.org/TR/2006/REC-xml-names11-20060816/#ns-qualnames">Namespaces in XML 1.1 – 4 Qualified Names</a>
+     *
+     * @param qname
+     *            the name to check
+     *
+     * @return true if the name is a {@code QName}
+     */
+    public static boolean isQName(String qname) {
+        int length = qname.length();
+        int index = qname.indexOf(':');
+
+        if (index < 0) {
+            return isNCName(qname, 0, length);
+        }
+
+        return isNCName(qname, 0, index) && isNCName(qname, index + 1, length);
+    }
+
+    /**
+     * {@code NameStartChar} without colon. Characters outside of the Basic
+     * Multilingual Plane are not accepted.
+     *
+     * <pre>NameStartChar	::=	":" | [A-Z] | "_" | [a-z] | [#xC0-#xD6] | [#xD8-#xF6] | [#xF8-#x2FF] | [#x370-#x37D] | [#x37F-#x1FFF] | [#x200C-#x200D] | [#x2070-#x218F] | [#x2C00-#x2FEF] | [#x3001-#xD7FF] | [#xF900-#xFDCF] | [#xFDF0-#xFFFD] | [#x10000-#xEFFFF]</pre>
+     *
+     * @see <a href="https://www.w3.org/TR/xml/#sec-common-syn">XML 1.0 – 2.3 Common Syntactic Constructs</a>
+     * @see <a href="https://www.w3.org/TR/2006/REC-xml11-20060816/#sec-common-syn">XML 1.1 – 2.3 Common Syntactic Constructs</a>
+     */
+    private static boolean isNCNameStartChar(char c) {
+        if (c < 0xC0) {
+            return ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z'))
+                    || (c == '_');
+        }
+
+        return ((c <= 0x2FF) && (c != 0xD7) && (c != 0xF7))
+                || ((c >= 0x370) && (c <= 0x1FFF) && (c != 0x37E))
+                || (c == 0x200C) || (c == 0x200D)
+                || ((c >= 0x2070) && (c <= 0x218F))
+                || ((c >= 0x2C00) && (c <= 0x2FEF))
+                || ((c >= 0x3001) && (c <= 0xD7FF))
+                || ((c >= 0xF900) && (c <= 0xFDCF))
+                || ((c >= 0xFDF0) && (c <= 0xFFFD));
+    }
+
+    /**
+     * {@code NameChar} without colon.
+     *
+     * <pre>NameChar	::=	NameStartChar | "-" | "." | [0-9] | #xB7 | [#x0300-#x036F] | [#x203F-#x2040]</pre>
+     *
+     * @see <a href="https://www.w3.org/TR/xml/#sec-common-syn">XML 1.0 – 2.3 Common Syntactic Constructs</a>
+     * @see <a href="https://www.w3.org/TR/2006/REC-xml11-20060816/#sec-common-syn">XML 1.1 – 2.3 Common Syntactic Constructs</a>
+     */
+    private static boolean isNCNameChar(char c) {
+        if (c < 0xC0) {
+            return ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z'))
+                    || ((c >= '0') && (c <= '9')) || (c == '_') || (c == '-')
+                    || (c == '.') || (c == 0xB7);
+        }
+
+        return isNCNameStartChar(c) || ((c >= 0x300) && (c <= 0x36F))
+                || (c == 0x203F) || (c == 0x2040);
+    }
 }
 
 
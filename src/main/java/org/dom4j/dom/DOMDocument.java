@@ -18,7 +18,6 @@ import org.w3c.dom.Node;
 import org.w3c.dom.ProcessingInstruction;
 import org.w3c.dom.Text;
 
-import java.util.ArrayList;
 
 /**
  * <p>
@@ -34,6 +33,13 @@ public class DOMDocument extends DefaultDocument implements Document {
     private static final DOMDocumentFactory DOCUMENT_FACTORY
             = (DOMDocumentFactory) DOMDocumentFactory.getInstance();
 
+    /**
+     * Changes whenever the content of this document changes, so that the
+     * lists returned by {@link #getElementsByTagName(String)} know when to
+     * walk the document again
+     */
+    transient int modificationCount;
+
     public DOMDocument() {
         init();
     }
@@ -194,17 +200,11 @@ public class DOMDocument extends DefaultDocument implements Document {
     // org.w3c.dom.Document interface
     // -------------------------------------------------------------------------
     public NodeList getElementsByTagName(String name) {
-        ArrayList<org.dom4j.Node> list = new ArrayList<org.dom4j.Node>();
-        DOMNodeHelper.appendElementsByTagName(list, this, name);
-
-        return DOMNodeHelper.createNodeList(list);
+        return DOMElementList.byTagName(this, name);
     }
 
     public NodeList getElementsByTagNameNS(String namespace, String name) {
-        ArrayList<org.dom4j.Node> list = new ArrayList<org.dom4j.Node>();
-        DOMNodeHelper.appendElementsByTagNameNS(list, this, namespace, name);
-
-        return DOMNodeHelper.createNodeList(list);
+        return DOMElementList.byTagNameNS(this, namespace, name);
     }
 
     public org.w3c.dom.DocumentType getDoctype() {
@@ -292,6 +292,16 @@ public class DOMDocument extends DefaultDocument implements Document {
 
     // Implementation methods
     // -------------------------------------------------------------------------
+    protected void childAdded(org.dom4j.Node node) {
+        super.childAdded(node);
+        modificationCount++;
+    }
+
+    protected void childRemoved(org.dom4j.Node node) {
+        super.childRemoved(node);
+        modificationCount++;
+    }
+
     protected DocumentFactory getDocumentFactory() {
         if (super.getDocumentFactory() == null) {
             return DOCUMENT_FACTORY;
@@ -14,7 +14,6 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -31,6 +30,26 @@ public class DOMElement extends DefaultElement implements org.w3c.dom.Element {
     private static final DocumentFactory DOCUMENT_FACTORY = DOMDocumentFactory
             .getInstance();
 
+    /**
+     * The index of the child last returned by a sibling or first or last
+     * child lookup, used by {@link DOMNodeHelper} to find the next sibling
+     * without searching the content
+     */
+    transient int childIndexHint;
+
+    /**
+     * Changes whenever the subtree of this element changes, so that the
+     * lists returned by {@link #getElementsByTagName(String)} know when to
+     * walk the subtree again
+     */
+    transient int modificationCount;
+
+    /**
+     * The epoch in which the modification count was last updated, see
+     * {@link DOMNodeHelper#modified(org.dom4j.Element)}
+     */
+    transient int modificationEpoch;
+
     public DOMElement(String name) {
         super(name);
     }
@@ -92,11 +111,16 @@ public class DOMElement extends DefaultElement implements org.w3c.dom.Element {
     }
 
     public org.w3c.dom.Node getFirstChild() {
+        childIndexHint = 0;
+
         return DOMNodeHelper.asDOMNode(node(0));
     }
 
     public org.w3c.dom.Node getLastChild() {
-        return DOMNodeHelper.asDOMNode(node(nodeCount() - 1));
+        int index = nodeCount() - 1;
+        childIndexHint = Math.max(index, 0);
+
+        return DOMNodeHelper.asDOMNode(node(index));
     }
 
     public org.w3c.dom.Node getPreviousSibling() {
@@ -302,17 +326,11 @@ public class DOMElement extends DefaultElement implements org.w3c.dom.Element {
     }
 
     public NodeList getElementsByTagName(String name) {
-        ArrayList<org.dom4j.Node> list = new ArrayList<org.dom4j.Node>();
-        DOMNodeHelper.appendElementsByTagName(list, this, name);
-
-        return DOMNodeHelper.createNodeList(list);
+        return DOMElementList.byTagName(this, name);
     }
 
     public NodeList getElementsByTagNameNS(String namespace, String lName) {
-        ArrayList<org.dom4j.Node> list = new ArrayList<org.dom4j.Node>();
-        DOMNodeHelper.appendElementsByTagNameNS(list, this, namespace, lName);
-
-        return DOMNodeHelper.createNodeList(list);
+        return DOMElementList.byTagNameNS(this, namespace, lName);
     }
 
     public boolean hasAttribute(String name) {
@@ -325,6 +343,21 @@ public class DOMElement extends DefaultElement implements org.w3c.dom.Element {
 
     // Implementation methods
     // -------------------------------------------------------------------------
+    public void setQName(QName name) {
+        super.setQName(name);
+        DOMNodeHelper.modified(this);
+    }
+
+    protected void childAdded(org.dom4j.Node node) {
+        super.childAdded(node);
+        DOMNodeHelper.modified(this);
+    }
+
+    protected void childRemoved(org.dom4j.Node node) {
+        super.childRemoved(node);
+        DOMNodeHelper.modified(this);
+    }
+
     protected DocumentFactory getDocumentFactory() {
         DocumentFactory factory = getQName().getDocumentFactory();
 
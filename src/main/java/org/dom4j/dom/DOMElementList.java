@@ -0,0 +1,220 @@
+package org.dom4j.dom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.dom4j.Branch;
+import org.dom4j.Element;
+import org.dom4j.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * <p>
+ * <code>DOMElementList</code> is the live <code>NodeList</code> returned by
+ * <code>getElementsByTagName()</code> and
+ * <code>getElementsByTagNameNS()</code>. The descendants of the branch are
+ * only walked as far as the requested index; the matching elements found so
+ * far are kept, and the walk resumes from where it stopped for the following
+ * items. The kept elements are dropped when the modification count of the
+ * branch shows that its subtree has changed.
+ * </p>
+ */
+final class DOMElementList implements NodeList {
+    private final Branch branch;
+
+    /** The namespace URI to match, or null to match the name only */
+    private final String namespaceURI;
+
+    private final String name;
+
+    private final boolean anyNamespace;
+
+    private final boolean anyName;
+
+    private final boolean namespaceAware;
+
+    /** The matching elements found so far */
+    private final List<Element> matches = new ArrayList<Element>();
+
+    /** The modification count of the branch when the walk started */
+    private int modificationCount;
+
+    /**
+     * The elements being walked below the branch. This is an array of
+     * elements rather than branches, as alternating type checks against two
+     * interfaces defeat the type check cache of the JVM.
+     */
+    private Element[] elements = new Element[16];
+
+    /** The index of the next node of the branch and the elements walked */
+    private int[] indexes = new int[16];
+
+    /** The node counts of the branch and the elements walked */
+    private int[] counts = new int[16];
+
+    /** The depth of the walk, or -1 if it is complete */
+    private int depth = -1;
+
+    private DOMElementList(Branch branch, String namespaceURI, String name,
+            boolean namespaceAware) {
+        this.branch = branch;
+        this.namespaceURI = namespaceURI;
+        this.name = name;
+        this.namespaceAware = namespaceAware;
+        this.anyNamespace = "*".equals(namespaceURI);
+        this.anyName = "*".equals(name);
+        reset();
+    }
+
+    /**
+     * Creates a list of the descendants of a branch with the given name.
+     *
+     * @param branch
+     *            the branch whose descendants are listed
+     * @param name
+     *            the name to match or <code>*</code> for all elements
+     *
+     * @return the list of the matching elements
+     */
+    static DOMElementList byTagName(Branch branch, String name) {
+        return new DOMElementList(branch, null, name, false);
+    }
+
+    /**
+     * Creates a list of the descendants of a branch with the given namespace
+     * URI and local name.
+     *
+     * @param branch
+     *            the branch whose descendants are listed
+     * @param namespaceURI
+     *            the namespace URI to match or <code>*</code> for all
+     *            namespaces
+     * @param localName
+     *            the local name to match or <code>*</code> for all names
+     *
+     * @return the list of the matching elements
+     */
+    static DOMElementList byTagNameNS(Branch branch, String namespaceURI,
+            String localName) {
+        return new DOMElementList(branch, namespaceURI, localName, true);
+    }
+
+    public org.w3c.dom.Node item(int index) {
+        if (index < 0) {
+            return null;
+        }
+
+        validate();
+
+        if (index >= matches.size()) {
+            walk(index + 1);
+        }
+
+        if (index >= matches.size()) {
+            return null;
+        }
+
+        return DOMNodeHelper.asDOMNode(matches.get(index));
+    }
+
+    public int getLength() {
+        validate();
+
+        if ((depth == 0) && (indexes[0] == 0)) {
+            // nothing was walked yet, so collect the elements recursively,
+            // which is faster than the resumable walk
+            if (namespaceAware) {
+                DOMNodeHelper.appendElementsByTagNameNS(matches, branch,
+                        namespaceURI, name);
+            } else {
+                DOMNodeHelper.appendElementsByTagName(matches, branch, name);
+            }
+
+            depth = -1;
+        } else {
+            walk(Integer.MAX_VALUE);
+        }
+
+        return matches.size();
+    }
+
+    private void validate() {
+        if (modificationCount != DOMNodeHelper.getModificationCount(branch)) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        modificationCount = DOMNodeHelper.recordModificationCount(branch);
+        matches.clear();
+        Arrays.fill(elements, null);
+        indexes[0] = 0;
+        counts[0] = branch.nodeCount();
+        depth = 0;
+    }
+
+    /**
+     * Walks the subtree until the given number of matching elements are
+     * found or the walk is complete.
+     *
+     * @param size
+     *            the number of matching elements to find
+     */
+    private void walk(int size) {
+        while ((depth >= 0) && (matches.size() < size)) {
+            int index = indexes[depth];
+
+            if (index >= counts[depth]) {
+                elements[depth--] = null;
+
+                continue;
+            }
+
+            indexes[depth] = index + 1;
+
+            Node node = (depth == 0) ? branch.node(index) : elements[depth]
+                    .node(index);
+
+            if (node instanceof Element) {
+                Element element = (Element) node;
+
+                if (++depth == elements.length) {
+                    elements = Arrays.copyOf(elements, depth * 2);
+                    indexes = Arrays.copyOf(indexes, depth * 2);
+                    counts = Arrays.copyOf(counts, depth * 2);
+                }
+
+                elements[depth] = element;
+                indexes[depth] = 0;
+                counts[depth] = element.nodeCount();
+
+                if (matches(element)) {
+                    matches.add(element);
+                }
+            }
+        }
+    }
+
+    private boolean matches(Element element) {
+        if (!namespaceAware) {
+            return anyName || name.equals(element.getName());
+        }
+
+        if (!anyName && !name.equals(element.getName())) {
+            return false;
+        }
+
+        if (anyNamespace) {
+            return true;
+        }
+
+        String uri = element.getNamespaceURI();
+
+        if ((namespaceURI == null) || (namespaceURI.length() == 0)) {
+            return (uri == null) || (uri.length() == 0);
+        }
+
+        return namespaceURI.equals(uri);
+    }
+}
@@ -13,6 +13,7 @@ import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.NodeList;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>
@@ -26,6 +27,13 @@ import java.util.List;
 public class DOMNodeHelper {
     public static final NodeList EMPTY_NODE_LIST = new EmptyNodeList();
 
+    /**
+     * Advanced whenever a modification count is recorded, so that the
+     * following changes are counted again by {@link #modified(Element)}
+     */
+    private static final AtomicInteger MODIFICATION_EPOCH = new AtomicInteger(
+            1);
+
     protected DOMNodeHelper() {
     }
 
@@ -80,10 +88,10 @@ public class DOMNodeHelper {
         Element parent = node.getParent();
 
         if (parent != null) {
-            int index = parent.indexOf(node);
+            int index = indexOf(parent, node);
 
             if (index > 0) {
-                Node previous = parent.node(index - 1);
+                Node previous = child(parent, index - 1);
 
                 return asDOMNode(previous);
             }
@@ -96,11 +104,11 @@ public class DOMNodeHelper {
         Element parent = node.getParent();
 
         if (parent != null) {
-            int index = parent.indexOf(node);
+            int index = indexOf(parent, node);
 
             if (index >= 0) {
                 if (++index < parent.nodeCount()) {
-                    Node next = parent.node(index);
+                    Node next = child(parent, index);
 
                     return asDOMNode(next);
                 }
@@ -404,6 +412,85 @@ public class DOMNodeHelper {
         }
     }
 
+    /**
+     * Returns the modification count of a {@link DOMElement} or
+     * {@link DOMDocument}, which changes whenever its subtree changes.
+     *
+     * @param branch
+     *            the branch
+     *
+     * @return the modification count, or 0 if the branch does not keep one
+     */
+    static int getModificationCount(Branch branch) {
+        if (branch instanceof DOMElement) {
+            return ((DOMElement) branch).modificationCount;
+        } else if (branch instanceof DOMDocument) {
+            return ((DOMDocument) branch).modificationCount;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Returns the modification count of a branch to be compared with its
+     * count after later changes, see {@link #modified(Element)}.
+     *
+     * @param branch
+     *            the branch
+     *
+     * @return the modification count, or 0 if the branch does not keep one
+     */
+    static int recordModificationCount(Branch branch) {
+        // the following changes have to reach the branch again
+        MODIFICATION_EPOCH.incrementAndGet();
+
+        return getModificationCount(branch);
+    }
+
+    /**
+     * Updates the modification counts of an element and of its ancestors, up
+     * to the document, after the subtree of the element has changed. Each
+     * element remembers the epoch in which its count was last updated, and as
+     * the counts of its ancestors were updated in the same walk, the walk
+     * stops at the first element already updated since a count was last
+     * recorded. A series of changes, such as building a tree, therefore only
+     * walks each element once rather than up to the root for each change.
+     *
+     * @param element
+     *            the changed element
+     */
+    static void modified(Element element) {
+        int epoch = MODIFICATION_EPOCH.get();
+        Element current = element;
+
+        while (true) {
+            if (current instanceof DOMElement) {
+                DOMElement domElement = (DOMElement) current;
+
+                if (domElement.modificationEpoch == epoch) {
+                    return;
+                }
+
+                domElement.modificationEpoch = epoch;
+                domElement.modificationCount++;
+            }
+
+            Element parent = current.getParent();
+
+            if (parent == null) {
+                Document document = current.getDocument();
+
+                if (document instanceof DOMDocument) {
+                    ((DOMDocument) document).modificationCount++;
+                }
+
+                return;
+            }
+
+            current = parent;
+        }
+    }
+
     // Helper methods
     // -------------------------------------------------------------------------
     public static NodeList createNodeList(final List<Node> list) {
@@ -519,6 +606,39 @@ public class DOMNodeHelper {
         }
     }
 
+    /**
+     * Returns the index of a child. A {@link DOMElement} remembers the index
+     * of the last child returned as a sibling, which is where the child is
+     * found when its siblings are walked one after the other, so that
+     * walking all the children takes linear time. The remembered index is
+     * checked against the content, so it does not need to be updated when
+     * the content changes.
+     */
+    private static int indexOf(Element parent, Node node) {
+        if (parent instanceof DOMElement) {
+            int hint = ((DOMElement) parent).childIndexHint;
+
+            // the node may also have moved by one if a sibling was inserted
+            // or removed during the walk
+            for (int index = Math.max(hint - 1, 0), end = hint + 1;
+                    index <= end; index++) {
+                if (parent.node(index) == node) {
+                    return index;
+                }
+            }
+        }
+
+        return parent.indexOf(node);
+    }
+
+    private static Node child(Element parent, int index) {
+        if (parent instanceof DOMElement) {
+            ((DOMElement) parent).childIndexHint = index;
+        }
+
+        return parent.node(index);
+    }
+
     /**
      * Called when a method has not been implemented yet
      * 
@@ -0,0 +1,63 @@
+package org.dom4j.io;
+
+/**
+ * <p>
+ * <code>BinaryFormat</code> holds the constants of the compact binary
+ * encoding written by {@link BinaryWriter} and read by {@link BinaryReader}.
+ * </p>
+ *
+ * <p>
+ * A document starts with the {@link #MAGIC} bytes and the {@link #VERSION},
+ * followed by the document name and XML encoding, then by its nodes in
+ * document order. Each node starts with one of the tag bytes; an element is
+ * followed by its qualified name, its attributes and its content, and ends
+ * with {@link #END}. A final {@link #END} closes the document.
+ * </p>
+ *
+ * <p>
+ * All counts and lengths are unsigned variable length integers, seven bits
+ * per byte with the high bit set on all but the last byte. Text is encoded
+ * in UTF-8 and written as a literal: its length in bytes plus one, or zero
+ * for <code>null</code>. Names, prefixes and namespace URIs are written as
+ * symbols and qualified names as references to a table: the index plus one
+ * of an earlier entry, or zero followed by the definition of a new entry,
+ * so that each distinct name is only written once.
+ * </p>
+ */
+final class BinaryFormat {
+    /** The first bytes of an encoded document */
+    static final byte[] MAGIC = {'D', '4', 'J', 'B'};
+
+    /** The version of the encoding */
+    static final int VERSION = 1;
+
+    /** Ends an element or the document */
+    static final int END = 0;
+
+    /** An element: its qualified name, attributes and content */
+    static final int ELEMENT = 1;
+
+    /** A text node: its text */
+    static final int TEXT = 2;
+
+    /** A CDATA section: its text */
+    static final int CDATA = 3;
+
+    /** A comment: its text */
+    static final int COMMENT = 4;
+
+    /** A processing instruction: its target and its text */
+    static final int PROCESSING_INSTRUCTION = 5;
+
+    /** An entity reference: its name and its text */
+    static final int ENTITY = 6;
+
+    /** A namespace declaration: its prefix and URI */
+    static final int NAMESPACE = 7;
+
+    /** The document type: its name, public ID and system ID */
+    static final int DOCUMENT_TYPE = 8;
+
+    private BinaryFormat() {
+    }
+}
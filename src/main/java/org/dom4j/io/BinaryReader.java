@@ -0,0 +1,370 @@
+package org.dom4j.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.dom4j.Branch;
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.DocumentFactory;
+import org.dom4j.Element;
+import org.dom4j.QName;
+
+/**
+ * <p>
+ * <code>BinaryReader</code> creates a DOM4J tree from the compact binary
+ * encoding written by {@link BinaryWriter}. As the names are decoded once and
+ * the tree is built without any parsing, this is much faster than reading
+ * the XML text of the document.
+ * </p>
+ *
+ * <p>
+ * The reader buffers its input, so it may read past the end of the document
+ * in the stream.
+ * </p>
+ *
+ * @see BinaryWriter
+ */
+public class BinaryReader {
+    /** <code>DocumentFactory</code> used to create new document objects */
+    private DocumentFactory factory;
+
+    public BinaryReader() {
+        this.factory = DocumentFactory.getInstance();
+    }
+
+    public BinaryReader(DocumentFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * @return the <code>DocumentFactory</code> used to create document
+     *         objects
+     */
+    public DocumentFactory getDocumentFactory() {
+        return factory;
+    }
+
+    /**
+     * Sets the <code>DocumentFactory</code> used to create new documents,
+     * which allows custom DOM4J tree objects to be built.
+     *
+     * @param documentFactory
+     *            <code>DocumentFactory</code> used to create DOM4J objects
+     */
+    public void setDocumentFactory(DocumentFactory documentFactory) {
+        this.factory = documentFactory;
+    }
+
+    /**
+     * Reads a document written by {@link BinaryWriter}.
+     *
+     * @param in
+     *            the stream to read from
+     *
+     * @return the newly created document
+     *
+     * @throws DocumentException
+     *             if the stream does not contain a valid document
+     * @throws IOException
+     *             if the stream could not be read
+     */
+    public Document read(InputStream in) throws DocumentException,
+            IOException {
+        return new Decoder(in, factory).readDocument();
+    }
+
+    /**
+     * Decodes a single document.
+     */
+    private static final class Decoder {
+        private static final int BUFFER_SIZE = 8192;
+
+        private final InputStream in;
+
+        private final DocumentFactory factory;
+
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        private int position;
+
+        private int limit;
+
+        private String[] symbols = new String[64];
+
+        private int symbolCount;
+
+        private QName[] qNames = new QName[64];
+
+        private int qNameCount;
+
+        Decoder(InputStream in, DocumentFactory factory) {
+            this.in = in;
+            this.factory = factory;
+        }
+
+        Document readDocument() throws DocumentException, IOException {
+            for (int i = 0; i < BinaryFormat.MAGIC.length; i++) {
+                if (readByte() != BinaryFormat.MAGIC[i]) {
+                    throw new DocumentException(
+                            "Not a binary encoded document");
+                }
+            }
+
+            int version = readByte();
+
+            if (version != BinaryFormat.VERSION) {
+                throw new DocumentException("Unsupported binary encoding "
+                        + "version: " + version);
+            }
+
+            Document document = factory.createDocument();
+            String name = readLiteral();
+
+            if (name != null) {
+                document.setName(name);
+            }
+
+            document.setXMLEncoding(readLiteral());
+
+            Branch[] branches = new Branch[16];
+            Branch branch = document;
+            int depth = 0;
+            branches[0] = document;
+
+            while (true) {
+                int tag = readByte();
+
+                switch (tag) {
+                    case BinaryFormat.END:
+
+                        if (depth == 0) {
+                            return document;
+                        }
+
+                        branches[depth--] = null;
+                        branch = branches[depth];
+
+                        break;
+
+                    case BinaryFormat.ELEMENT:
+
+                        Element element = factory.createElement(readQName());
+
+                        for (int i = 0, size = readVarint(); i < size; i++) {
+                            QName qName = readQName();
+                            String value = readLiteral();
+                            element.add(factory.createAttribute(element, qName,
+                                    value));
+                        }
+
+                        branch.add(element);
+
+                        if (++depth == branches.length) {
+                            branches = Arrays.copyOf(branches, depth * 2);
+                        }
+
+                        branches[depth] = element;
+                        branch = element;
+
+                        break;
+
+                    case BinaryFormat.TEXT:
+                        toElement(branch, tag).add(
+                                factory.createText(readLiteral()));
+
+                        break;
+
+                    case BinaryFormat.CDATA:
+                        toElement(branch, tag).add(
+                                factory.createCDATA(readLiteral()));
+
+                        break;
+
+                    case BinaryFormat.COMMENT:
+                        branch.add(factory.createComment(readLiteral()));
+
+                        break;
+
+                    case BinaryFormat.PROCESSING_INSTRUCTION:
+
+                        String target = readSymbol();
+                        branch.add(factory.createProcessingInstruction(target,
+                                readLiteral()));
+
+                        break;
+
+                    case BinaryFormat.ENTITY:
+
+                        String entity = readSymbol();
+                        toElement(branch, tag).add(
+                                factory.createEntity(entity, readLiteral()));
+
+                        break;
+
+                    case BinaryFormat.NAMESPACE:
+
+                        String prefix = readSymbol();
+                        toElement(branch, tag).add(
+                                factory.createNamespace(prefix, readSymbol()));
+
+                        break;
+
+                    case BinaryFormat.DOCUMENT_TYPE:
+
+                        if (depth != 0) {
+                            throw invalid(tag);
+                        }
+
+                        String elementName = readLiteral();
+                        String publicID = readLiteral();
+                        document.setDocType(factory.createDocType(elementName,
+                                publicID, readLiteral()));
+
+                        break;
+
+                    default:
+                        throw invalid(tag);
+                }
+            }
+        }
+
+        private Element toElement(Branch branch, int tag)
+                throws DocumentException {
+            if (branch instanceof Element) {
+                return (Element) branch;
+            }
+
+            throw invalid(tag);
+        }
+
+        private DocumentException invalid(int tag) {
+            return new DocumentException("Unexpected node tag " + tag
+                    + " in binary encoded document");
+        }
+
+        private QName readQName() throws DocumentException, IOException {
+            int index = readVarint();
+
+            if (index > 0) {
+                if (index > qNameCount) {
+                    throw new DocumentException("Invalid name reference: "
+                            + index);
+                }
+
+                return qNames[index - 1];
+            }
+
+            String name = readSymbol();
+            String prefix = readSymbol();
+            QName qName = factory.createQName(name, prefix, readSymbol());
+
+            if (qNameCount == qNames.length) {
+                qNames = Arrays.copyOf(qNames, qNameCount * 2);
+            }
+
+            qNames[qNameCount++] = qName;
+
+            return qName;
+        }
+
+        private String readSymbol() throws DocumentException, IOException {
+            int index = readVarint();
+
+            if (index > 0) {
+                if (index > symbolCount) {
+                    throw new DocumentException("Invalid symbol reference: "
+                            + index);
+                }
+
+                return symbols[index - 1];
+            }
+
+            String symbol = readLiteral();
+
+            if (symbol == null) {
+                throw new DocumentException("Invalid null symbol");
+            }
+
+            if (symbolCount == symbols.length) {
+                symbols = Arrays.copyOf(symbols, symbolCount * 2);
+            }
+
+            symbols[symbolCount++] = symbol;
+
+            return symbol;
+        }
+
+        private String readLiteral() throws DocumentException, IOException {
+            int length = readVarint() - 1;
+
+            if (length < 0) {
+                return null;
+            }
+
+            if (length <= (limit - position)) {
+                String text = new String(buffer, position, length,
+                        StandardCharsets.UTF_8);
+                position += length;
+
+                return text;
+            }
+
+            byte[] bytes = new byte[length];
+            int offset = limit - position;
+            System.arraycopy(buffer, position, bytes, 0, offset);
+            position = limit;
+
+            while (offset < length) {
+                int read = in.read(bytes, offset, length - offset);
+
+                if (read < 0) {
+                    throw new DocumentException(
+                            "Unexpected end of binary encoded document");
+                }
+
+                offset += read;
+            }
+
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int readVarint() throws DocumentException, IOException {
+            int value = 0;
+
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7f) << shift;
+
+                if ((b & 0x80) == 0) {
+                    if (value < 0) {
+                        break;
+                    }
+
+                    return value;
+                }
+            }
+
+            throw new DocumentException("Invalid length in binary encoded "
+                    + "document");
+        }
+
+        private int readByte() throws DocumentException, IOException {
+            if (position == limit) {
+                limit = in.read(buffer, 0, BUFFER_SIZE);
+                position = 0;
+
+                if (limit <= 0) {
+                    limit = 0;
+
+                    throw new DocumentException(
+                            "Unexpected end of binary encoded document");
+                }
+            }
+
+            return buffer[position++] & 0xff;
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package org.dom4j.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.dom4j.Attribute;
+import org.dom4j.Document;
+import org.dom4j.DocumentType;
+import org.dom4j.Element;
+import org.dom4j.Namespace;
+import org.dom4j.Node;
+import org.dom4j.ProcessingInstruction;
+import org.dom4j.QName;
+
+/**
+ * <p>
+ * <code>BinaryWriter</code> writes a document in a compact binary encoding,
+ * which {@link BinaryReader} turns back into a tree much faster than the XML
+ * text can be parsed. The encoding is also much smaller than the Java
+ * serialization of the tree, as each distinct name, prefix and namespace URI
+ * is only written once. It is meant for caching parsed documents, not as an
+ * interchange format.
+ * </p>
+ *
+ * <p>
+ * The content of the document is written as it is, including the namespace
+ * declarations, entity references and CDATA sections. The name, public ID and
+ * system ID of the document type are written, but not its declarations.
+ * </p>
+ *
+ * <p>
+ * A <code>BinaryWriter</code> has no state and can be shared between threads.
+ * </p>
+ *
+ * @see BinaryReader
+ */
+public class BinaryWriter {
+    public BinaryWriter() {
+    }
+
+    /**
+     * Writes the given document to the stream, which is flushed but not
+     * closed.
+     *
+     * @param document
+     *            the document to write
+     * @param out
+     *            the stream to write to
+     *
+     * @throws IOException
+     *             if the document could not be written
+     */
+    public void write(Document document, OutputStream out) throws IOException {
+        Encoder encoder = new Encoder(out);
+        encoder.writeDocument(document);
+        encoder.flush();
+    }
+
+    /**
+     * Encodes a single document.
+     */
+    private static final class Encoder {
+        private static final int BUFFER_SIZE = 8192;
+
+        /** The longest encoding of a variable length integer */
+        private static final int MAX_VARINT = 5;
+
+        private final OutputStream out;
+
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        private int count;
+
+        /** The indexes of the symbols written so far */
+        private final Map<String, Integer> symbols =
+                new HashMap<String, Integer>();
+
+        /**
+         * The indexes of the qualified names written so far, by identity as
+         * <code>QName.equals()</code> ignores the prefix
+         */
+        private final Map<QName, Integer> qNames =
+                new IdentityHashMap<QName, Integer>();
+
+        /** The elements being written */
+        private Element[] elements = new Element[16];
+
+        /** The index of the next child of the elements being written */
+        private int[] indexes = new int[16];
+
+        Encoder(OutputStream out) {
+            this.out = out;
+        }
+
+        void writeDocument(Document document) throws IOException {
+            ensure(BinaryFormat.MAGIC.length + 1);
+            System.arraycopy(BinaryFormat.MAGIC, 0, buffer, count,
+                    BinaryFormat.MAGIC.length);
+            count += BinaryFormat.MAGIC.length;
+            buffer[count++] = BinaryFormat.VERSION;
+            writeLiteral(document.getName());
+            writeLiteral(document.getXMLEncoding());
+
+            DocumentType docType = document.getDocType();
+
+            if (docType != null) {
+                writeTag(BinaryFormat.DOCUMENT_TYPE);
+                writeLiteral(docType.getElementName());
+                writeLiteral(docType.getPublicID());
+                writeLiteral(docType.getSystemID());
+            }
+
+            for (int i = 0, size = document.nodeCount(); i < size; i++) {
+                Node node = document.node(i);
+
+                if (node instanceof Element) {
+                    writeElement((Element) node);
+                } else {
+                    writeNode(node);
+                }
+            }
+
+            writeTag(BinaryFormat.END);
+        }
+
+        void flush() throws IOException {
+            flushBuffer();
+            out.flush();
+        }
+
+        /**
+         * Writes an element and its descendants with an explicit stack, so
+         * that deep documents do not overflow the call stack.
+         */
+        private void writeElement(Element root) throws IOException {
+            int depth = 0;
+            startElement(root);
+            elements[0] = root;
+            indexes[0] = 0;
+
+            while (depth >= 0) {
+                Element element = elements[depth];
+                int index = indexes[depth];
+
+                if (index < element.nodeCount()) {
+                    indexes[depth] = index + 1;
+
+                    Node node = element.node(index);
+
+                    if (node instanceof Element) {
+                        Element child = (Element) node;
+                        startElement(child);
+
+                        if (++depth == elements.length) {
+                            elements = Arrays.copyOf(elements, depth * 2);
+                            indexes = Arrays.copyOf(indexes, depth * 2);
+                        }
+
+                        elements[depth] = child;
+                        indexes[depth] = 0;
+                    } else {
+                        writeNode(node);
+                    }
+                } else {
+                    elements[depth--] = null;
+                    writeTag(BinaryFormat.END);
+                }
+            }
+        }
+
+        private void startElement(Element element) throws IOException {
+            writeTag(BinaryFormat.ELEMENT);
+            writeQName(element.getQName());
+
+            int size = element.attributeCount();
+            writeVarint(size);
+
+            for (int i = 0; i < size; i++) {
+                Attribute attribute = element.attribute(i);
+                writeQName(attribute.getQName());
+                writeLiteral(attribute.getValue());
+            }
+        }
+
+        private void writeNode(Node node) throws IOException {
+            switch (node.getNodeType()) {
+                case Node.TEXT_NODE:
+                    writeTag(BinaryFormat.TEXT);
+                    writeLiteral(node.getText());
+
+                    break;
+
+                case Node.CDATA_SECTION_NODE:
+                    writeTag(BinaryFormat.CDATA);
+                    writeLiteral(node.getText());
+
+                    break;
+
+                case Node.COMMENT_NODE:
+                    writeTag(BinaryFormat.COMMENT);
+                    writeLiteral(node.getText());
+
+                    break;
+
+                case Node.PROCESSING_INSTRUCTION_NODE:
+
+                    ProcessingInstruction pi = (ProcessingInstruction) node;
+                    writeTag(BinaryFormat.PROCESSING_INSTRUCTION);
+                    writeSymbol(pi.getTarget());
+                    writeLiteral(pi.getText());
+
+                    break;
+
+                case Node.ENTITY_REFERENCE_NODE:
+                    writeTag(BinaryFormat.ENTITY);
+                    writeSymbol(node.getName());
+                    writeLiteral(node.getText());
+
+                    break;
+
+                case Node.NAMESPACE_NODE:
+
+                    Namespace namespace = (Namespace) node;
+                    writeTag(BinaryFormat.NAMESPACE);
+                    writeSymbol(namespace.getPrefix());
+                    writeSymbol(namespace.getURI());
+
+                    break;
+
+                default:
+                    throw new IOException("Invalid node type: " + node);
+            }
+        }
+
+        private void writeQName(QName qName) throws IOException {
+            Integer index = qNames.get(qName);
+
+            if (index != null) {
+                writeVarint(index + 1);
+            } else {
+                qNames.put(qName, qNames.size());
+                writeVarint(0);
+                writeSymbol(qName.getName());
+                writeSymbol(qName.getNamespacePrefix());
+                writeSymbol(qName.getNamespaceURI());
+            }
+        }
+
+        private void writeSymbol(String symbol) throws IOException {
+            if (symbol == null) {
+                symbol = "";
+            }
+
+            Integer index = symbols.get(symbol);
+
+            if (index != null) {
+                writeVarint(index + 1);
+            } else {
+                symbols.put(symbol, symbols.size());
+                writeVarint(0);
+                writeLiteral(symbol);
+            }
+        }
+
+        private void writeLiteral(String text) throws IOException {
+            if (text == null) {
+                writeVarint(0);
+
+                return;
+            }
+
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length + 1);
+
+            if (bytes.length > (BUFFER_SIZE - count)) {
+                flushBuffer();
+
+                if (bytes.length > BUFFER_SIZE) {
+                    out.write(bytes);
+
+                    return;
+                }
+            }
+
+            System.arraycopy(bytes, 0, buffer, count, bytes.length);
+            count += bytes.length;
+        }
+
+        private void writeTag(int tag) throws IOException {
+            ensure(1);
+            buffer[count++] = (byte) tag;
+        }
+
+        private void writeVarint(int value) throws IOException {
+            ensure(MAX_VARINT);
+
+            while ((value & ~0x7f) != 0) {
+                buffer[count++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+
+            buffer[count++] = (byte) value;
+        }
+
+        private void ensure(int length) throws IOException {
+            if (length > (BUFFER_SIZE - count)) {
+                flushBuffer();
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            if (count > 0) {
+                out.write(buffer, 0, count);
+                count = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package org.dom4j.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * <code>DirectEncodingWriter</code> is the <code>Writer</code> used by
+ * {@link XMLWriter} to write to an <code>OutputStream</code> in UTF-8,
+ * US-ASCII or ISO-8859-1. It encodes the characters itself into a reusable
+ * byte buffer, instead of going through a <code>BufferedWriter</code>, an
+ * <code>OutputStreamWriter</code> and its <code>CharsetEncoder</code>. The
+ * encoded bytes of element and attribute names are cached, so each name is
+ * only encoded once.
+ * </p>
+ *
+ * <p>
+ * The output is the same as the one of an <code>OutputStreamWriter</code>:
+ * characters which cannot be encoded, including unpaired surrogates, are
+ * written as <code>?</code>.
+ * </p>
+ *
+ * @see OutputFormat#setDirectEncoding(boolean)
+ */
+final class DirectEncodingWriter extends Writer {
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The maximum number of cached encoded names */
+    private static final int MAX_NAMES = 1024;
+
+    /** The maximum length of the cached names */
+    private static final int MAX_NAME_LENGTH = 256;
+
+    private static final int UTF_8 = 0;
+
+    private static final int US_ASCII = 1;
+
+    private static final int ISO_8859_1 = 2;
+
+    private final OutputStream out;
+
+    private final Charset charset;
+
+    /** One of the encoding constants */
+    private final int encoding;
+
+    /** The largest character written as a single byte */
+    private final char maxSingleByte;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private int count;
+
+    /** A high surrogate waiting for the low surrogate of the next write */
+    private char highSurrogate;
+
+    /** The encoded names */
+    private final Map<String, byte[]> names = new HashMap<String, byte[]>();
+
+    private DirectEncodingWriter(OutputStream out, Charset charset,
+            int encoding) {
+        this.out = out;
+        this.charset = charset;
+        this.encoding = encoding;
+        this.maxSingleByte = (encoding == ISO_8859_1) ? '\u00ff' : '\u007f';
+    }
+
+    /**
+     * Creates a writer for the given encoding, if it is supported.
+     *
+     * @param out
+     *            the stream to write to
+     * @param encoding
+     *            the name of the encoding
+     *
+     * @return the writer or null if the encoding is not supported
+     */
+    static DirectEncodingWriter create(OutputStream out, String encoding) {
+        Charset charset;
+
+        try {
+            charset = Charset.forName(encoding);
+        } catch (IllegalCharsetNameException e) {
+            return null;
+        } catch (UnsupportedCharsetException e) {
+            return null;
+        }
+
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            return new DirectEncodingWriter(out, charset, UTF_8);
+        } else if (charset.equals(StandardCharsets.US_ASCII)) {
+            return new DirectEncodingWriter(out, charset, US_ASCII);
+        } else if (charset.equals(StandardCharsets.ISO_8859_1)) {
+            return new DirectEncodingWriter(out, charset, ISO_8859_1);
+        }
+
+        return null;
+    }
+
+    /**
+     * Writes an element or attribute name, encoding it only the first time
+     * it is written.
+     *
+     * @param name
+     *            the name to write
+     *
+     * @throws IOException
+     *             if the name could not be written
+     */
+    void writeName(String name) throws IOException {
+        byte[] bytes = names.get(name);
+
+        if (bytes == null) {
+            if ((highSurrogate != 0) || (name.length() > MAX_NAME_LENGTH)) {
+                write(name);
+
+                return;
+            }
+
+            if (names.size() >= MAX_NAMES) {
+                names.clear();
+            }
+
+            bytes = name.getBytes(charset);
+            names.put(name, bytes);
+        }
+
+        if (bytes.length > (BUFFER_SIZE - count)) {
+            flushBuffer();
+        }
+
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    public void write(int c) throws IOException {
+        if (count > (BUFFER_SIZE - 4)) {
+            flushBuffer();
+        }
+
+        encode((char) c);
+    }
+
+    public void write(char[] chars, int offset, int length) throws IOException {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            if (count > (BUFFER_SIZE - 4)) {
+                flushBuffer();
+            }
+
+            char c = chars[i];
+
+            if ((c <= maxSingleByte) && (highSurrogate == 0)) {
+                buffer[count++] = (byte) c;
+            } else {
+                encode(c);
+            }
+        }
+    }
+
+    public void write(String text, int offset, int length) throws IOException {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            if (count > (BUFFER_SIZE - 4)) {
+                flushBuffer();
+            }
+
+            char c = text.charAt(i);
+
+            if ((c <= maxSingleByte) && (highSurrogate == 0)) {
+                buffer[count++] = (byte) c;
+            } else {
+                encode(c);
+            }
+        }
+    }
+
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    public void close() throws IOException {
+        if (highSurrogate != 0) {
+            highSurrogate = 0;
+            buffer[count++] = '?';
+        }
+
+        flushBuffer();
+        out.close();
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    /**
+     * Encodes a character into the buffer, which must have room for four
+     * bytes.
+     */
+    private void encode(char c) {
+        if (highSurrogate != 0) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+
+            if (Character.isLowSurrogate(c)) {
+                encodeCodePoint(Character.toCodePoint(high, c));
+
+                return;
+            }
+
+            // an unpaired high surrogate
+            buffer[count++] = '?';
+        }
+
+        if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            buffer[count++] = '?';
+        } else if (c <= maxSingleByte) {
+            buffer[count++] = (byte) c;
+        } else if (encoding != UTF_8) {
+            buffer[count++] = '?';
+        } else if (c < 0x800) {
+            buffer[count++] = (byte) (0xc0 | (c >> 6));
+            buffer[count++] = (byte) (0x80 | (c & 0x3f));
+        } else {
+            buffer[count++] = (byte) (0xe0 | (c >> 12));
+            buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            buffer[count++] = (byte) (0x80 | (c & 0x3f));
+        }
+    }
+
+    private void encodeCodePoint(int codePoint) {
+        if (encoding != UTF_8) {
+            buffer[count++] = '?';
+        } else {
+            buffer[count++] = (byte) (0xf0 | (codePoint >> 18));
+            buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+            buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+            buffer[count++] = (byte) (0x80 | (codePoint & 0x3f));
+        }
+    }
+}
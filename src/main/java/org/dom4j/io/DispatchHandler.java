@@ -7,8 +7,10 @@
 
 package org.dom4j.io;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.dom4j.Element;
 import org.dom4j.ElementHandler;
@@ -26,21 +28,45 @@ import org.dom4j.ElementPath;
  * elements encountered.
  * </p>
  * 
+ * <p>
+ * Handlers are registered either for a plain absolute path such as
+ * <code>/feed/entry</code>, or for a pattern such as <code>//item</code>,
+ * <code>/feed/*&#47;entry</code> or <code>entry[@type='news']</code> which is
+ * matched as described in {@link ElementPathPattern}. A handler registered
+ * for the plain path of an element takes precedence over the patterns, which
+ * are tried in the order they were registered.
+ * </p>
+ * 
+ * <p>
+ * The plain paths are kept in a tree which is walked as the elements are
+ * started, so no strings are built while parsing unless {@link #getPath()}
+ * is called.
+ * </p>
+ * 
  * @author <a href="mailto:dwhite@equipecom.com">Dave White </a>
  * @version $Revision: 1.11 $
  */
 class DispatchHandler implements ElementHandler {
-    /** Whether the parser is at the root element or not */
-    private boolean atRoot;
+    /** The elements being parsed, used to build the path on demand */
+    private ElementPath elementPath;
+
+    /** The number of open elements */
+    private int depth;
 
-    /** The current path in the XML tree (i.e. /a/b/c) */
+    /** The current path in the XML tree (i.e. /a/b/c) or null if not built */
     private String path;
 
-    /** maintains a stack of previously encountered paths */
-    private ArrayList<String> pathStack;
+    /** The node of each open element in the tree of paths, or null */
+    private PathNode[] nodeStack;
+
+    /** the handler of each open element, null if it was not matched */
+    private ElementHandler[] handlerStack;
 
-    /** maintains a stack of previously encountered handlers */
-    private ArrayList<ElementHandler> handlerStack;
+    /** The number of open elements which have a handler */
+    private int activeHandlerCount;
+
+    /** The root of the tree of the plain handler paths */
+    private PathNode root;
 
     /**
      * <code>HashMap</code> maintains the mapping between element paths and
@@ -48,6 +74,9 @@ class DispatchHandler implements ElementHandler {
      */
     private HashMap<String, ElementHandler> handlers;
 
+    /** The compiled patterns of the handlers registered for patterns */
+    private Map<String, ElementPathPattern> patterns;
+
     /**
      * <code>ElementHandler</code> to use by default for element paths with no
      * handlers registered
@@ -55,11 +84,12 @@ class DispatchHandler implements ElementHandler {
     private ElementHandler defaultHandler;
 
     public DispatchHandler() {
-        atRoot = true;
         path = "/";
-        pathStack = new ArrayList<String>();
-        handlerStack = new ArrayList<ElementHandler>();
+        nodeStack = new PathNode[16];
+        handlerStack = new ElementHandler[16];
+        root = new PathNode();
         handlers = new HashMap<String, ElementHandler>();
+        patterns = new LinkedHashMap<String, ElementPathPattern>();
     }
 
     /**
@@ -71,8 +101,41 @@ class DispatchHandler implements ElementHandler {
      * @param handler
      *            is the <code>ElementHandler</code> to be called by the event
      *            based processor.
+     * 
+     * @throws org.dom4j.InvalidXPathException
+     *             if the path is a pattern which is not supported
      */
     public void addHandler(String handlerPath, ElementHandler handler) {
+        if (ElementPathPattern.isPattern(handlerPath)) {
+            if (!patterns.containsKey(handlerPath)) {
+                patterns.put(handlerPath, ElementPathPattern
+                        .compile(handlerPath));
+            }
+        } else {
+            PathNode node = root;
+            int start = 1;
+
+            while (start <= handlerPath.length()) {
+                int end = handlerPath.indexOf('/', start);
+
+                if (end < 0) {
+                    end = handlerPath.length();
+                }
+
+                node = node.addChild(handlerPath.substring(start, end));
+                start = end + 1;
+            }
+
+            node.handler = handler;
+
+            // the open elements may now have nodes in the tree
+            for (int i = 0; i < depth; i++) {
+                PathNode parent = (i == 0) ? root : nodeStack[i - 1];
+                nodeStack[i] = (parent != null) ? parent.getChild(elementPath
+                        .getElement(i).getName()) : null;
+            }
+        }
+
         handlers.put(handlerPath, handler);
     }
 
@@ -86,7 +149,15 @@ class DispatchHandler implements ElementHandler {
      * @return DOCUMENT ME!
      */
     public ElementHandler removeHandler(String handlerPath) {
-        return handlers.remove(handlerPath);
+        ElementHandler handler = handlers.remove(handlerPath);
+
+        if (handler != null) {
+            if (patterns.remove(handlerPath) == null) {
+                removePlainHandler(handlerPath);
+            }
+        }
+
+        return handler;
     }
 
     /**
@@ -114,6 +185,16 @@ class DispatchHandler implements ElementHandler {
         return handlers.get(handlerPath);
     }
 
+    /**
+     * Returns the handler called for the current element, which is either
+     * registered for its path or for a pattern it matches.
+     * 
+     * @return the handler of the current element or null if it has none
+     */
+    public ElementHandler getCurrentHandler() {
+        return (depth > 0) ? handlerStack[depth - 1] : null;
+    }
+
     /**
      * Returns the number of {@link ElementHandler}objects that are waiting for
      * their elements closing tag.
@@ -121,7 +202,18 @@ class DispatchHandler implements ElementHandler {
      * @return number of active handlers
      */
     public int getActiveHandlerCount() {
-        return handlerStack.size();
+        return activeHandlerCount;
+    }
+
+    /**
+     * Returns whether the current element is passed to a handler, either to a
+     * handler registered for its path or to an enclosing one, or to the
+     * default handler.
+     * 
+     * @return true if the current content is handled
+     */
+    boolean isHandling() {
+        return (activeHandlerCount > 0) || (defaultHandler != null);
     }
 
     /**
@@ -142,20 +234,36 @@ class DispatchHandler implements ElementHandler {
      * they were when object was created.
      */
     public void resetHandlers() {
-        atRoot = true;
+        elementPath = null;
+        depth = 0;
         path = "/";
-        pathStack.clear();
-        handlerStack.clear();
+        activeHandlerCount = 0;
+        Arrays.fill(nodeStack, null);
+        Arrays.fill(handlerStack, null);
+        root = new PathNode();
         handlers.clear();
+        patterns.clear();
         defaultHandler = null;
     }
 
     /**
-     * DOCUMENT ME!
+     * Returns the path of the current element. The path is only built when
+     * this method is called, the elements are dispatched by walking the tree
+     * of the registered paths instead.
      * 
      * @return the current path for the parse
      */
     public String getPath() {
+        if (path == null) {
+            StringBuilder buffer = new StringBuilder();
+
+            for (int i = 0; i < depth; i++) {
+                buffer.append('/').append(elementPath.getElement(i).getName());
+            }
+
+            path = buffer.toString();
+        }
+
         return path;
     }
 
@@ -163,56 +271,135 @@ class DispatchHandler implements ElementHandler {
     public void onStart(ElementPath elementPath) {
         Element element = elementPath.getCurrent();
 
-        // Save the location of the last (i.e. parent) path
-        pathStack.add(path);
+        if (depth == nodeStack.length) {
+            nodeStack = Arrays.copyOf(nodeStack, depth * 2);
+            handlerStack = Arrays.copyOf(handlerStack, depth * 2);
+        }
 
-        // Calculate the new path
-        if (atRoot) {
-            path = path + element.getName();
-            atRoot = false;
-        } else {
-            path = path + "/" + element.getName();
+        PathNode parent = (depth == 0) ? root : nodeStack[depth - 1];
+        PathNode node = (parent != null) ? parent.getChild(element.getName())
+                : null;
+
+        this.elementPath = elementPath;
+        nodeStack[depth] = node;
+        depth++;
+        path = null;
+
+        ElementHandler handler = (node != null) ? node.handler : null;
+
+        if ((handler == null) && !patterns.isEmpty()) {
+            handler = findPatternHandler(elementPath);
         }
 
-        if ((handlers != null) && (handlers.containsKey(path))) {
+        handlerStack[depth - 1] = handler;
+
+        if (handler != null) {
             // The current node has a handler associated with it.
-            // Find the handler and save it on the handler stack.
-            ElementHandler handler = handlers.get(path);
-            handlerStack.add(handler);
+            activeHandlerCount++;
 
             // Call the handlers onStart method.
             handler.onStart(elementPath);
         } else {
             // No handler is associated with this node, so use the
             // defaultHandler it it exists.
-            if (handlerStack.isEmpty() && (defaultHandler != null)) {
+            if ((activeHandlerCount == 0) && (defaultHandler != null)) {
                 defaultHandler.onStart(elementPath);
             }
         }
     }
 
     public void onEnd(ElementPath elementPath) {
-        if ((handlers != null) && (handlers.containsKey(path))) {
+        ElementHandler handler = handlerStack[depth - 1];
+
+        if (handler != null) {
             // This node has a handler associated with it.
-            // Find the handler and pop it from the handler stack.
-            ElementHandler handler = handlers.get(path);
-            handlerStack.remove(handlerStack.size() - 1);
+            activeHandlerCount--;
 
             // Call the handlers onEnd method
             handler.onEnd(elementPath);
         } else {
             // No handler is associated with this node, so use the
             // defaultHandler it it exists.
-            if (handlerStack.isEmpty() && (defaultHandler != null)) {
+            if ((activeHandlerCount == 0) && (defaultHandler != null)) {
                 defaultHandler.onEnd(elementPath);
             }
         }
 
         // Set path back to its parent
-        path = pathStack.remove(pathStack.size() - 1);
+        depth--;
+        nodeStack[depth] = null;
+        handlerStack[depth] = null;
+        path = (depth == 0) ? "/" : null;
+    }
+
+    /**
+     * Returns the handler of the first registered pattern matching the current
+     * element of the given path.
+     * 
+     * @param elementPath
+     *            the elements currently open
+     * 
+     * @return the handler or null if no pattern matches the element
+     */
+    private ElementHandler findPatternHandler(ElementPath elementPath) {
+        for (ElementPathPattern pattern : patterns.values()) {
+            if (pattern.matches(elementPath)) {
+                return handlers.get(pattern.toString());
+            }
+        }
+
+        return null;
+    }
+
+    private void removePlainHandler(String handlerPath) {
+        PathNode node = root;
+        int start = 1;
+
+        while ((node != null) && (start <= handlerPath.length())) {
+            int end = handlerPath.indexOf('/', start);
+
+            if (end < 0) {
+                end = handlerPath.length();
+            }
+
+            node = node.getChild(handlerPath.substring(start, end));
+            start = end + 1;
+        }
+
+        if (node != null) {
+            node.handler = null;
+        }
+    }
+
+    /**
+     * A node in the tree of the registered plain paths. The tree is walked
+     * with the name of each element as it is started, so that dispatching
+     * does not need to build the path of the element.
+     */
+    private static final class PathNode {
+        /** The handler registered for the path of this node, or null */
+        private ElementHandler handler;
+
+        /** The child nodes by element name or null if there are none */
+        private HashMap<String, PathNode> children;
+
+        PathNode getChild(String name) {
+            return (children != null) ? children.get(name) : null;
+        }
+
+        PathNode addChild(String name) {
+            if (children == null) {
+                children = new HashMap<String, PathNode>();
+            }
+
+            PathNode child = children.get(name);
+
+            if (child == null) {
+                child = new PathNode();
+                children.put(name, child);
+            }
 
-        if (pathStack.size() == 0) {
-            atRoot = true;
+            return child;
         }
     }
 }
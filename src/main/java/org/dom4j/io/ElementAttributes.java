@@ -0,0 +1,186 @@
+package org.dom4j.io;
+
+import org.dom4j.Attribute;
+import org.dom4j.Element;
+import org.xml.sax.Attributes;
+
+/**
+ * <p>
+ * <code>ElementAttributes</code> presents the attributes of an {@link Element}
+ * as SAX {@link Attributes} without copying them. The view is live: it reads
+ * the attributes of the element on each call, so it only stays valid while
+ * the element is not modified. Namespace declarations written as
+ * <code>xmlns</code> attributes come first, followed by the attributes of
+ * the element, whose type is always <code>CDATA</code>.
+ * </p>
+ *
+ * <p>
+ * A view can be pointed at another element with {@link #setElement}, so that
+ * one instance serves all the start element events of a {@link SAXWriter}.
+ * As the SAX contract allows, a handler must copy the attributes it wants to
+ * keep beyond its <code>startElement</code> call.
+ * </p>
+ */
+public class ElementAttributes implements Attributes {
+    private static final String TYPE = "CDATA";
+
+    private Element element;
+
+    private Attributes namespaceAttributes;
+
+    private int namespaceCount;
+
+    public ElementAttributes() {
+    }
+
+    public ElementAttributes(Element element) {
+        setElement(element, null);
+    }
+
+    /**
+     * Points this view at the attributes of the given element.
+     *
+     * @param element
+     *            the element, or null for no attributes
+     * @param namespaceAttributes
+     *            the namespace declarations to present before the attributes
+     *            of the element, or null
+     */
+    public void setElement(Element element, Attributes namespaceAttributes) {
+        this.element = element;
+        this.namespaceAttributes = namespaceAttributes;
+        this.namespaceCount = (namespaceAttributes != null)
+                ? namespaceAttributes.getLength() : 0;
+    }
+
+    /**
+     * @return the element whose attributes are presented, or null
+     */
+    public Element getElement() {
+        return element;
+    }
+
+    public int getLength() {
+        int count = (element != null) ? element.attributeCount() : 0;
+
+        return namespaceCount + count;
+    }
+
+    public String getURI(int index) {
+        if ((index >= 0) && (index < namespaceCount)) {
+            return namespaceAttributes.getURI(index);
+        }
+
+        Attribute attribute = attribute(index);
+
+        return (attribute != null) ? attribute.getNamespaceURI() : null;
+    }
+
+    public String getLocalName(int index) {
+        if ((index >= 0) && (index < namespaceCount)) {
+            return namespaceAttributes.getLocalName(index);
+        }
+
+        Attribute attribute = attribute(index);
+
+        return (attribute != null) ? attribute.getName() : null;
+    }
+
+    public String getQName(int index) {
+        if ((index >= 0) && (index < namespaceCount)) {
+            return namespaceAttributes.getQName(index);
+        }
+
+        Attribute attribute = attribute(index);
+
+        return (attribute != null) ? attribute.getQualifiedName() : null;
+    }
+
+    public String getType(int index) {
+        if ((index >= 0) && (index < namespaceCount)) {
+            return namespaceAttributes.getType(index);
+        }
+
+        return (attribute(index) != null) ? TYPE : null;
+    }
+
+    public String getValue(int index) {
+        if ((index >= 0) && (index < namespaceCount)) {
+            return namespaceAttributes.getValue(index);
+        }
+
+        Attribute attribute = attribute(index);
+
+        return (attribute != null) ? attribute.getValue() : null;
+    }
+
+    public int getIndex(String uri, String localName) {
+        if (namespaceCount > 0) {
+            int index = namespaceAttributes.getIndex(uri, localName);
+
+            if (index >= 0) {
+                return index;
+            }
+        }
+
+        if (element != null) {
+            for (int i = 0, size = element.attributeCount(); i < size; i++) {
+                Attribute attribute = element.attribute(i);
+
+                if (attribute.getName().equals(localName)
+                        && attribute.getNamespaceURI().equals(uri)) {
+                    return namespaceCount + i;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    public int getIndex(String qName) {
+        if (namespaceCount > 0) {
+            int index = namespaceAttributes.getIndex(qName);
+
+            if (index >= 0) {
+                return index;
+            }
+        }
+
+        if (element != null) {
+            for (int i = 0, size = element.attributeCount(); i < size; i++) {
+                if (element.attribute(i).getQualifiedName().equals(qName)) {
+                    return namespaceCount + i;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    public String getType(String uri, String localName) {
+        return getType(getIndex(uri, localName));
+    }
+
+    public String getType(String qName) {
+        return getType(getIndex(qName));
+    }
+
+    public String getValue(String uri, String localName) {
+        return getValue(getIndex(uri, localName));
+    }
+
+    public String getValue(String qName) {
+        return getValue(getIndex(qName));
+    }
+
+    private Attribute attribute(int index) {
+        int attributeIndex = index - namespaceCount;
+
+        if ((element == null) || (attributeIndex < 0)
+                || (attributeIndex >= element.attributeCount())) {
+            return null;
+        }
+
+        return element.attribute(attributeIndex);
+    }
+}
@@ -26,7 +26,9 @@ public interface ElementModifier {
      * The incoming {@link org.dom4j.Element}is disconnected from the DOM4J
      * tree. This means that navigation to the elements parent {@link
      * org.dom4j.Element} and {@link org.dom4j.Document}are not available. Only
-     * the element itself can be modified!
+     * the element itself can be modified! When the {@link SAXModifier}works
+     * in place, the incoming element is the parsed element itself rather than
+     * a copy.
      * 
      * @param element
      *            {@link org.dom4j.Element}to be parsed
@@ -0,0 +1,307 @@
+package org.dom4j.io;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dom4j.Attribute;
+import org.dom4j.Element;
+import org.dom4j.ElementPath;
+import org.dom4j.InvalidXPathException;
+import org.dom4j.QName;
+
+/**
+ * <p>
+ * <code>ElementPathPattern</code> is the streaming subset of XPath that can
+ * be registered with {@link DispatchHandler}. A pattern is matched against the
+ * elements currently open during the parse, so it only uses what is known
+ * when the start tag of an element is read: the names and attributes of the
+ * element and of its ancestors.
+ * </p>
+ *
+ * <p>
+ * The supported patterns are location paths made of the <code>/</code> and
+ * <code>//</code> separators and of steps consisting of a name test
+ * (<code>name</code>, <code>prefix:name</code> or <code>*</code>) followed by
+ * any number of <code>[@attribute]</code> and
+ * <code>[@attribute='value']</code> predicates. Like XSLT patterns, a
+ * relative pattern such as <code>item</code> matches at any depth. Names are
+ * compared with the local names of the elements, as for the plain paths
+ * registered with {@link org.dom4j.io.SAXReader#addHandler}, unless they are
+ * prefixed, in which case the qualified name is compared. The same holds for
+ * the attribute names of the predicates, e.g. <code>[@xml:lang='en']</code>.
+ * Anything else, such as node tests like <code>text()</code>, unions,
+ * <code>.</code> steps or <code>[@*]</code>, is rejected with an
+ * {@link InvalidXPathException} rather than never matching.
+ * </p>
+ */
+final class ElementPathPattern {
+    private final String text;
+
+    /** The steps of the pattern, the last one matching the current element */
+    private final Step[] steps;
+
+    /** Whether the first step has to match the root element */
+    private final boolean absolute;
+
+    private ElementPathPattern(String text, Step[] steps, boolean absolute) {
+        this.text = text;
+        this.steps = steps;
+        this.absolute = absolute;
+    }
+
+    /**
+     * Returns whether the given handler path needs to be compiled into a
+     * pattern rather than being compared with the current path.
+     *
+     * @param path
+     *            the handler path
+     *
+     * @return true if the path is not a plain absolute path of names, in
+     *         which case compiling it also rejects what is not supported
+     */
+    static boolean isPattern(String path) {
+        if (!path.startsWith("/")) {
+            return true;
+        }
+
+        for (int start = 1, length = path.length(); start < length;) {
+            int end = path.indexOf('/', start);
+
+            if (end < 0) {
+                end = length;
+            }
+
+            if (!QName.isQName(path.substring(start, end))) {
+                return true;
+            }
+
+            start = end + 1;
+        }
+
+        return path.endsWith("/") && (path.length() > 1);
+    }
+
+    /**
+     * Compiles the given handler path.
+     *
+     * @param path
+     *            the handler path
+     *
+     * @return the compiled pattern
+     *
+     * @throws InvalidXPathException
+     *             if the path is not part of the supported subset
+     */
+    static ElementPathPattern compile(String path)
+            throws InvalidXPathException {
+        List<Step> steps = new ArrayList<Step>();
+        int length = path.length();
+        int index = 0;
+        boolean absolute = false;
+        boolean descendant = true;
+
+        if (path.startsWith("//")) {
+            index = 2;
+        } else if (path.startsWith("/")) {
+            index = 1;
+            absolute = true;
+            descendant = false;
+        }
+
+        while (true) {
+            int start = index;
+
+            while ((index < length) && (path.charAt(index) != '/')
+                    && (path.charAt(index) != '[')) {
+                index++;
+            }
+
+            String name = path.substring(start, index);
+
+            if (!"*".equals(name) && !QName.isQName(name)) {
+                throw new InvalidXPathException(path, "Expected a name test: "
+                        + name);
+            }
+
+            List<String> predicates = new ArrayList<String>();
+
+            while ((index < length) && (path.charAt(index) == '[')) {
+                int end = path.indexOf(']', index);
+
+                if (end < 0) {
+                    throw new InvalidXPathException(path, "Expected ]");
+                }
+
+                predicates.add(path.substring(index + 1, end).trim());
+                index = end + 1;
+            }
+
+            steps.add(new Step(path, name, descendant, predicates));
+
+            if (index == length) {
+                break;
+            }
+
+            if (path.startsWith("//", index)) {
+                descendant = true;
+                index += 2;
+            } else if (path.charAt(index) == '/') {
+                descendant = false;
+                index++;
+            } else {
+                throw new InvalidXPathException(path, "Unexpected character '"
+                        + path.charAt(index) + "'");
+            }
+        }
+
+        return new ElementPathPattern(path, steps.toArray(new Step[steps
+                .size()]), absolute);
+    }
+
+    /**
+     * Returns whether the current element of the given path matches this
+     * pattern.
+     *
+     * @param elementPath
+     *            the elements currently open
+     *
+     * @return true if the current element matches
+     */
+    boolean matches(ElementPath elementPath) {
+        int depth = elementPath.size() - 1;
+
+        return (depth >= 0) && matches(elementPath, steps.length - 1, depth);
+    }
+
+    private boolean matches(ElementPath elementPath, int stepIndex, int depth) {
+        Step step = steps[stepIndex];
+
+        if (!step.matches(elementPath.getElement(depth))) {
+            return false;
+        }
+
+        if (stepIndex == 0) {
+            return !absolute || step.descendant || (depth == 0);
+        }
+
+        if (!step.descendant) {
+            return (depth > 0) && matches(elementPath, stepIndex - 1, depth - 1);
+        }
+
+        for (int i = depth - 1; i >= 0; i--) {
+            if (matches(elementPath, stepIndex - 1, i)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public String toString() {
+        return text;
+    }
+
+    /**
+     * A name test with its attribute predicates.
+     */
+    private static final class Step {
+        /** Whether this step follows a <code>//</code> separator */
+        private final boolean descendant;
+
+        /** The name to match or null for <code>*</code> */
+        private final String name;
+
+        /** Whether the qualified name is compared rather than the local one */
+        private final boolean qualified;
+
+        /** The attribute names of the predicates */
+        private final String[] attributes;
+
+        /** The attribute values of the predicates, null if just tested */
+        private final String[] values;
+
+        Step(String path, String name, boolean descendant,
+                List<String> predicates) {
+            this.descendant = descendant;
+            this.name = "*".equals(name) ? null : name;
+            this.qualified = name.indexOf(':') > 0;
+            this.attributes = new String[predicates.size()];
+            this.values = new String[predicates.size()];
+
+            for (int i = 0; i < attributes.length; i++) {
+                String predicate = predicates.get(i);
+                int equals = predicate.indexOf('=');
+                String attribute = (equals < 0) ? predicate : predicate
+                        .substring(0, equals).trim();
+
+                if (!attribute.startsWith("@") || (attribute.length() == 1)) {
+                    throw new InvalidXPathException(path,
+                            "Only attribute predicates are supported: "
+                                    + predicate);
+                }
+
+                attributes[i] = attribute.substring(1);
+
+                // neither @* nor any other node test is supported
+                if (!QName.isQName(attributes[i])) {
+                    throw new InvalidXPathException(path,
+                            "Expected an attribute name: " + predicate);
+                }
+
+                if (equals >= 0) {
+                    String value = predicate.substring(equals + 1).trim();
+                    int last = value.length() - 1;
+
+                    if ((last < 1)
+                            || ((value.charAt(0) != '\'') && (value.charAt(0) != '"'))
+                            || (value.charAt(last) != value.charAt(0))) {
+                        throw new InvalidXPathException(path,
+                                "Expected a string literal: " + predicate);
+                    }
+
+                    values[i] = value.substring(1, last);
+                }
+            }
+        }
+
+        boolean matches(Element element) {
+            if (name != null) {
+                String elementName = qualified ? element.getQualifiedName()
+                        : element.getName();
+
+                if (!name.equals(elementName)) {
+                    return false;
+                }
+            }
+
+            for (int i = 0; i < attributes.length; i++) {
+                String value = attributeValue(element, i);
+
+                if ((value == null)
+                        || ((values[i] != null) && !values[i].equals(value))) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private String attributeValue(Element element, int index) {
+            String attributeName = attributes[index];
+
+            if (attributeName.indexOf(':') < 0) {
+                return element.attributeValue(attributeName);
+            }
+
+            for (int i = 0, size = element.attributeCount(); i < size; i++) {
+                Attribute attribute = element.attribute(i);
+
+                if (attributeName.equals(attribute.getQualifiedName())) {
+                    return attribute.getValue();
+                }
+            }
+
+            return null;
+        }
+    }
+}
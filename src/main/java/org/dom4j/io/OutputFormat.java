@@ -91,6 +91,12 @@ public class OutputFormat implements Cloneable {
      */
     private  Comparator<Attribute> attributesOrderComparator;
 
+    /** Whether text is escaped with lookup tables directly to the writer */
+    private boolean fastEscaping = false;
+
+    /** Whether output streams are written to without a CharsetEncoder */
+    private boolean directEncoding = false;
+
     /**
      * Creates an <code>OutputFormat</code> with no additional whitespace
      * (indent or new lines) added. The whitespace from the element text content
@@ -487,6 +493,63 @@ public class OutputFormat implements Cloneable {
       this.attributesOrderComparator = comparator;
     }
 
+    /**
+     * Returns whether {@link XMLWriter} escapes text and attribute values
+     * directly to its writer.
+     *
+     * @return Value of property fastEscaping.
+     */
+    public boolean isFastEscaping() {
+        return fastEscaping;
+    }
+
+    /**
+     * Sets whether {@link XMLWriter} should escape text and attribute values
+     * directly to its writer. Runs of characters which do not need escaping
+     * are then found with lookup tables and written in one go, without
+     * creating an escaped copy of the text. The output is the same, so this
+     * only matters for performance. It has no effect on writers overriding
+     * the escaping methods, such as
+     * {@link XMLWriter#escapeElementEntities(String)}, or when the text is
+     * trimmed.
+     *
+     * Default: false
+     *
+     * @param fastEscaping
+     *            whether text should be escaped directly to the writer
+     */
+    public void setFastEscaping(boolean fastEscaping) {
+        this.fastEscaping = fastEscaping;
+    }
+
+    /**
+     * Returns whether {@link XMLWriter} encodes the characters itself when
+     * writing to an <code>OutputStream</code>.
+     *
+     * @return Value of property directEncoding.
+     */
+    public boolean isDirectEncoding() {
+        return directEncoding;
+    }
+
+    /**
+     * Sets whether {@link XMLWriter} should encode the characters itself when
+     * it is created for an <code>OutputStream</code> and the encoding is
+     * UTF-8, US-ASCII or ISO-8859-1. The characters are then written into a
+     * reusable byte buffer, and element and attribute names are only encoded
+     * once, rather than going through a <code>BufferedWriter</code> and an
+     * <code>OutputStreamWriter</code>. The bytes written are the same either
+     * way. Other encodings always use an <code>OutputStreamWriter</code>.
+     *
+     * Default: false
+     *
+     * @param directEncoding
+     *            whether the characters should be encoded by the writer
+     */
+    public void setDirectEncoding(boolean directEncoding) {
+        this.directEncoding = directEncoding;
+    }
+
     /**
      * Parses command line arguments of the form <code>-omitEncoding
      * -indentSize 3 -newlines -trimText</code>
@@ -504,6 +567,10 @@ public class OutputFormat implements Cloneable {
                 setSuppressDeclaration(true);
             } else if (args[i].equals("-omitEncoding")) {
                 setOmitEncoding(true);
+            } else if (args[i].equals("-fastEscaping")) {
+                setFastEscaping(true);
+            } else if (args[i].equals("-directEncoding")) {
+                setDirectEncoding(true);
             } else if (args[i].equals("-indent")) {
                 setIndent(args[++i]);
             } else if (args[i].equals("-indentSize")) {
@@ -7,6 +7,7 @@
 
 package org.dom4j.io;
 
+import org.dom4j.Element;
 import org.dom4j.ElementPath;
 
 /**
@@ -21,7 +22,12 @@ class PruningDispatchHandler extends DispatchHandler {
         super.onEnd(elementPath);
 
         if (getActiveHandlerCount() == 0) {
-            elementPath.getCurrent().detach();
+            Element current = elementPath.getCurrent();
+
+            // a modified element may have been removed altogether
+            if (current != null) {
+                current.detach();
+            }
         }
     }
 }
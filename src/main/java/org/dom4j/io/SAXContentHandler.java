@@ -9,6 +9,7 @@ package org.dom4j.io;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,6 +24,7 @@ import org.dom4j.Namespace;
 import org.dom4j.QName;
 import org.dom4j.dtd.*;
 import org.dom4j.tree.AbstractElement;
+import org.dom4j.tree.DefaultDocument;
 import org.dom4j.tree.NamespaceStack;
 
 import org.xml.sax.Attributes;
@@ -71,15 +73,6 @@ public class SAXContentHandler extends DefaultHandler implements
     /** Flag used to indicate that we are inside a DTD section */
     private boolean insideDTDSection;
 
-    /** Flag used to indicate that we are inside a CDATA section */
-    private boolean insideCDATASection;
-
-    /**
-     * buffer to hold contents of cdata section across multiple characters
-     * events
-     */
-    private StringBuffer cdataText;
-
     /** internal DTD declarations */
     private List<Decl> internalDTDDeclarations;
 
@@ -112,18 +105,30 @@ public class SAXContentHandler extends DefaultHandler implements
     /** Whether adjacent text nodes should be merged */
     private boolean mergeAdjacentText = false;
 
-    /** Have we added text to the buffer */
-    private boolean textInTextBuffer = false;
-
     /** Should we ignore comments */
     private boolean ignoreComments = false;
 
-    /** Buffer used to concatenate text together */
-    private StringBuffer textBuffer;
+    /**
+     * Buffer used to concatenate the characters of a text node or CDATA
+     * section, which the parser may report in several chunks
+     */
+    private char[] textBuffer;
+
+    /** The number of characters in the buffer */
+    private int textLength;
+
+    /** Whether the characters in the buffer are all whitespace */
+    private boolean textWhitespace = true;
 
     /** Holds value of property stripWhitespaceText. */
     private boolean stripWhitespaceText = false;
 
+    /** Should the element IDs be indexed while parsing */
+    private boolean indexElementIDs = false;
+
+    /** Should content outside of the handled elements be discarded */
+    private boolean pruneUnmatched = false;
+
     public SAXContentHandler() {
         this(DocumentFactory.getInstance());
     }
@@ -167,7 +172,11 @@ public class SAXContentHandler extends DefaultHandler implements
 
     public void processingInstruction(String target, String data)
             throws SAXException {
-        if (mergeAdjacentText && textInTextBuffer) {
+        if ((currentElement != null) && isPruning()) {
+            return;
+        }
+
+        if (textLength > 0) {
             completeCurrentTextNode();
         }
 
@@ -203,11 +212,8 @@ public class SAXContentHandler extends DefaultHandler implements
         namespaceStack.clear();
         declaredNamespaceIndex = 0;
 
-        if (mergeAdjacentText && (textBuffer == null)) {
-            textBuffer = new StringBuffer();
-        }
-
-        textInTextBuffer = false;
+        textLength = 0;
+        textWhitespace = true;
     }
 
     public void endDocument() throws SAXException {
@@ -215,11 +221,12 @@ public class SAXContentHandler extends DefaultHandler implements
         elementStack.clear();
         currentElement = null;
         textBuffer = null;
+        textLength = 0;
     }
 
     public void startElement(String namespaceURI, String localName,
             String qualifiedName, Attributes attributes) throws SAXException {
-        if (mergeAdjacentText && textInTextBuffer) {
+        if (textLength > 0) {
             completeCurrentTextNode();
         }
 
@@ -240,6 +247,10 @@ public class SAXContentHandler extends DefaultHandler implements
         // now lets add all attribute values
         addAttributes(element, attributes);
 
+        if (indexElementIDs && (document instanceof DefaultDocument)) {
+            ((DefaultDocument) document).indexElementID(element);
+        }
+
         elementStack.pushElement(element);
         currentElement = element;
 
@@ -252,7 +263,7 @@ public class SAXContentHandler extends DefaultHandler implements
 
     public void endElement(String namespaceURI, String localName, String qName)
             throws SAXException {
-        if (mergeAdjacentText && textInTextBuffer) {
+        if (textLength > 0) {
             completeCurrentTextNode();
         }
 
@@ -260,6 +271,11 @@ public class SAXContentHandler extends DefaultHandler implements
             elementHandler.onEnd(elementStack);
         }
 
+        if (isPruning() && (elementStack.size() > 1)) {
+            // the element is complete and outside of any handled element
+            currentElement.detach();
+        }
+
         elementStack.popElement();
         currentElement = elementStack.peekElement();
     }
@@ -269,27 +285,16 @@ public class SAXContentHandler extends DefaultHandler implements
             return;
         }
 
-        if (currentElement != null) {
+        if ((currentElement != null) && !isPruning()) {
             if (entity != null) {
-                if (mergeAdjacentText && textInTextBuffer) {
+                if (textLength > 0) {
                     completeCurrentTextNode();
                 }
 
                 currentElement.addEntity(entity, new String(ch, start, end));
                 entity = null;
-            } else if (insideCDATASection) {
-                if (mergeAdjacentText && textInTextBuffer) {
-                    completeCurrentTextNode();
-                }
-
-                cdataText.append(new String(ch, start, end));
             } else {
-                if (mergeAdjacentText) {
-                    textBuffer.append(ch, start, end);
-                    textInTextBuffer = true;
-                } else {
-                    currentElement.addText(new String(ch, start, end));
-                }
+                appendText(ch, start, end);
             }
         }
     }
@@ -396,18 +401,24 @@ public class SAXContentHandler extends DefaultHandler implements
     }
 
     public void startCDATA() throws SAXException {
-        insideCDATASection = true;
-        cdataText = new StringBuffer();
+        if (textLength > 0) {
+            completeCurrentTextNode();
+        }
     }
 
     public void endCDATA() throws SAXException {
-        insideCDATASection = false;
-        currentElement.addCDATA(cdataText.toString());
+        // the characters of the section were collected in the text buffer
+        if (!isPruning()) {
+            currentElement.addCDATA(new String(textBuffer(), 0, textLength));
+        }
+
+        textLength = 0;
+        textWhitespace = true;
     }
 
     public void comment(char[] ch, int start, int end) throws SAXException {
-        if (!ignoreComments) {
-            if (mergeAdjacentText && textInTextBuffer) {
+        if (!ignoreComments && ((currentElement == null) || !isPruning())) {
+            if (textLength > 0) {
                 completeCurrentTextNode();
             }
 
@@ -420,6 +431,9 @@ public class SAXContentHandler extends DefaultHandler implements
                     getDocument().addComment(text);
                 }
             }
+        } else if (!mergeAdjacentText && (textLength > 0)) {
+            // keep the text on each side of the ignored comment apart
+            completeCurrentTextNode();
         }
     }
 
@@ -723,7 +737,10 @@ public class SAXContentHandler extends DefaultHandler implements
     }
 
     /**
-     * Returns whether adjacent text nodes should be merged together.
+     * Returns whether adjacent text nodes should be merged together. The
+     * characters of a text node are always merged, even if the parser reports
+     * them in several chunks; this property merges the text on both sides of
+     * an ignored comment as well.
      * 
      * @return Value of property mergeAdjacentText.
      */
@@ -782,34 +799,152 @@ public class SAXContentHandler extends DefaultHandler implements
         this.ignoreComments = ignoreComments;
     }
 
+    /**
+     * Returns whether the element IDs are indexed while parsing.
+     * 
+     * @return Value of property indexElementIDs.
+     */
+    public boolean isIndexElementIDs() {
+        return indexElementIDs;
+    }
+
+    /**
+     * Sets whether the names are reported by an XML parser which has already
+     * checked them, so that they are not validated again. This is only
+     * enabled by {@link SAXReader}, as the events given to a handler by user
+     * code may contain any names.
+     * 
+     * @param trustedNames
+     *            whether the names come from an XML parser
+     */
+    void setTrustedNames(boolean trustedNames) {
+        namespaceStack.setTrustedNames(trustedNames);
+    }
+
+    /**
+     * Sets whether the element IDs should be indexed while parsing so that
+     * {@link Document#elementByID(String)} does not have to search the
+     * document. This only applies to documents created as a
+     * {@link DefaultDocument}.
+     * 
+     * @param indexElementIDs
+     *            whether the element IDs should be indexed
+     * 
+     * @see DefaultDocument#setIndexElementIDs(boolean)
+     */
+    public void setIndexElementIDs(boolean indexElementIDs) {
+        this.indexElementIDs = indexElementIDs;
+    }
+
+    /**
+     * Returns whether the content outside of the elements handled by an
+     * <code>ElementHandler</code> is discarded.
+     * 
+     * @return Value of property pruneUnmatched.
+     */
+    public boolean isPruneUnmatched() {
+        return pruneUnmatched;
+    }
+
+    /**
+     * Sets whether the content outside of the elements handled by an
+     * <code>ElementHandler</code> registered for their path should be
+     * discarded while parsing. The text, comments and processing instructions
+     * of the other elements are not added to the tree, and each element is
+     * detached from its parent once it is complete, so that the memory used
+     * only depends on the depth of the document and on the size of the
+     * handled elements. The root element is kept empty in the document.
+     * Elements passed to the default handler of a {@link DispatchHandler}, or
+     * to an <code>ElementHandler</code> which is not a
+     * <code>DispatchHandler</code>, count as handled, so their content is
+     * kept.
+     * 
+     * @param pruneUnmatched
+     *            whether the unhandled content should be discarded
+     */
+    public void setPruneUnmatched(boolean pruneUnmatched) {
+        this.pruneUnmatched = pruneUnmatched;
+    }
+
     // Implementation methods
     // -------------------------------------------------------------------------
 
+    /**
+     * Returns whether the current content has to be discarded, that is when
+     * the unhandled content is pruned and no handled element is open.
+     * 
+     * @return true if the current content is discarded
+     */
+    private boolean isPruning() {
+        if (!pruneUnmatched) {
+            return false;
+        }
+
+        if (elementHandler instanceof DispatchHandler) {
+            return !((DispatchHandler) elementHandler).isHandling();
+        }
+
+        // any other handler is called for every element
+        return elementHandler == null;
+    }
+
     /**
      * If the current text buffer contains any text then create a new text node
      * with it and add it to the current element
      */
     protected void completeCurrentTextNode() {
-        if (stripWhitespaceText) {
-            boolean whitespace = true;
+        if (textLength == 0) {
+            return;
+        }
+
+        if (!stripWhitespaceText || !textWhitespace) {
+            currentElement.addText(new String(textBuffer, 0, textLength));
+        }
 
-            for (int i = 0, size = textBuffer.length(); i < size; i++) {
-                if (!Character.isWhitespace(textBuffer.charAt(i))) {
-                    whitespace = false;
+        textLength = 0;
+        textWhitespace = true;
+    }
+
+    /**
+     * Appends characters to the text buffer, noting whether the text is still
+     * whitespace only as it goes.
+     * 
+     * @param ch
+     *            the characters to append
+     * @param start
+     *            the start of the characters in the array
+     * @param length
+     *            the number of characters to append
+     */
+    private void appendText(char[] ch, int start, int length) {
+        char[] buffer = textBuffer();
+        int size = textLength + length;
+
+        if (size > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(size, buffer.length * 2));
+            textBuffer = buffer;
+        }
+
+        if (textWhitespace) {
+            for (int i = start, end = start + length; i < end; i++) {
+                if (!Character.isWhitespace(ch[i])) {
+                    textWhitespace = false;
 
                     break;
                 }
             }
+        }
 
-            if (!whitespace) {
-                currentElement.addText(textBuffer.toString());
-            }
-        } else {
-            currentElement.addText(textBuffer.toString());
+        System.arraycopy(ch, start, buffer, textLength, length);
+        textLength = size;
+    }
+
+    private char[] textBuffer() {
+        if (textBuffer == null) {
+            textBuffer = new char[256];
         }
 
-        textBuffer.setLength(0);
-        textInTextBuffer = false;
+        return textBuffer;
     }
 
     /**
@@ -824,6 +959,10 @@ public class SAXContentHandler extends DefaultHandler implements
         // set the EntityResolver
         doc.setEntityResolver(entityResolver);
 
+        if (indexElementIDs && (doc instanceof DefaultDocument)) {
+            ((DefaultDocument) doc).setIndexElementIDs(true);
+        }
+
         if (inputSource != null) {
             doc.setName(inputSource.getSystemId());
         }
@@ -0,0 +1,684 @@
+package org.dom4j.io;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.DeclHandler;
+import org.xml.sax.ext.LexicalHandler;
+
+/**
+ * <p>
+ * <code>SAXEventBuffer</code> is the packed storage of a
+ * {@link SAXEventRecorder}. The events are stored as a stream of opcodes and
+ * operands in an <code>int</code> array; the characters of the text and
+ * comments are appended to a single <code>char</code> array, and the strings
+ * are kept in a table, in which names, URIs and attribute types are only
+ * stored once. The events are replayed straight from these arrays, with a
+ * single <code>Attributes</code> view reused for all the elements, so that
+ * replaying allocates no objects per event.
+ * </p>
+ *
+ * <p>
+ * Adjacent character events are merged, as SAX allows text to be reported
+ * in any number of chunks.
+ * </p>
+ */
+final class SAXEventBuffer {
+    private static final int PROCESSING_INSTRUCTION = 1;
+
+    private static final int START_PREFIX_MAPPING = 2;
+
+    private static final int END_PREFIX_MAPPING = 3;
+
+    private static final int START_DOCUMENT = 4;
+
+    private static final int END_DOCUMENT = 5;
+
+    private static final int START_ELEMENT = 6;
+
+    private static final int END_ELEMENT = 7;
+
+    private static final int CHARACTERS = 8;
+
+    private static final int START_DTD = 9;
+
+    private static final int END_DTD = 10;
+
+    private static final int START_ENTITY = 11;
+
+    private static final int END_ENTITY = 12;
+
+    private static final int START_CDATA = 13;
+
+    private static final int END_CDATA = 14;
+
+    private static final int COMMENT = 15;
+
+    private static final int ELEMENT_DECL = 16;
+
+    private static final int ATTRIBUTE_DECL = 17;
+
+    private static final int INTERNAL_ENTITY_DECL = 18;
+
+    private static final int EXTERNAL_ENTITY_DECL = 19;
+
+    /** The number of operands of each attribute of an element */
+    private static final int ATTRIBUTE_SIZE = 5;
+
+    /** The opcodes and their operands */
+    private int[] ops = new int[256];
+
+    private int opCount;
+
+    /** The index of the last character event, or -1 */
+    private int lastCharacters = -1;
+
+    /** The characters of the text and comments */
+    private char[] chars = new char[1024];
+
+    private int charCount;
+
+    /** The strings, the first of which is <code>null</code> */
+    private String[] strings = new String[64];
+
+    private int stringCount = 1;
+
+    /** The indexes of the shared strings, created when recording */
+    private Map<String, Integer> symbols;
+
+    /** The index of the attribute count of the element started last */
+    private int attributeCountIndex;
+
+    SAXEventBuffer() {
+    }
+
+    /**
+     * Replays the recorded events. The lexical and declaration events are
+     * only replayed if the handler is a <code>LexicalHandler</code> or a
+     * <code>DeclHandler</code>.
+     *
+     * @param handler
+     *            the handler to replay the events to
+     *
+     * @throws SAXException
+     *             if the handler fails
+     */
+    void replay(ContentHandler handler) throws SAXException {
+        LexicalHandler lexicalHandler = (handler instanceof LexicalHandler)
+                ? (LexicalHandler) handler : null;
+        DeclHandler declHandler = (handler instanceof DeclHandler)
+                ? (DeclHandler) handler : null;
+        PackedAttributes attributes = new PackedAttributes();
+        int[] op = ops;
+        String[] s = strings;
+        int i = 0;
+
+        while (i < opCount) {
+            switch (op[i]) {
+                case PROCESSING_INSTRUCTION:
+                    handler.processingInstruction(s[op[i + 1]], s[op[i + 2]]);
+                    i += 3;
+
+                    break;
+
+                case START_PREFIX_MAPPING:
+                    handler.startPrefixMapping(s[op[i + 1]], s[op[i + 2]]);
+                    i += 3;
+
+                    break;
+
+                case END_PREFIX_MAPPING:
+                    handler.endPrefixMapping(s[op[i + 1]]);
+                    i += 2;
+
+                    break;
+
+                case START_DOCUMENT:
+                    handler.startDocument();
+                    i++;
+
+                    break;
+
+                case END_DOCUMENT:
+                    handler.endDocument();
+                    i++;
+
+                    break;
+
+                case START_ELEMENT:
+
+                    int length = op[i + 4];
+                    attributes.offset = i + 5;
+                    attributes.length = length;
+                    handler.startElement(s[op[i + 1]], s[op[i + 2]],
+                            s[op[i + 3]], attributes);
+                    i += 5 + (length * ATTRIBUTE_SIZE);
+
+                    break;
+
+                case END_ELEMENT:
+                    handler.endElement(s[op[i + 1]], s[op[i + 2]],
+                            s[op[i + 3]]);
+                    i += 4;
+
+                    break;
+
+                case CHARACTERS:
+                    handler.characters(chars, op[i + 1], op[i + 2]);
+                    i += 3;
+
+                    break;
+
+                case START_DTD:
+
+                    if (lexicalHandler != null) {
+                        lexicalHandler.startDTD(s[op[i + 1]], s[op[i + 2]],
+                                s[op[i + 3]]);
+                    }
+
+                    i += 4;
+
+                    break;
+
+                case END_DTD:
+
+                    if (lexicalHandler != null) {
+                        lexicalHandler.endDTD();
+                    }
+
+                    i++;
+
+                    break;
+
+                case START_ENTITY:
+
+                    if (lexicalHandler != null) {
+                        lexicalHandler.startEntity(s[op[i + 1]]);
+                    }
+
+                    i += 2;
+
+                    break;
+
+                case END_ENTITY:
+
+                    if (lexicalHandler != null) {
+                        lexicalHandler.endEntity(s[op[i + 1]]);
+                    }
+
+                    i += 2;
+
+                    break;
+
+                case START_CDATA:
+
+                    if (lexicalHandler != null) {
+                        lexicalHandler.startCDATA();
+                    }
+
+                    i++;
+
+                    break;
+
+                case END_CDATA:
+
+                    if (lexicalHandler != null) {
+                        lexicalHandler.endCDATA();
+                    }
+
+                    i++;
+
+                    break;
+
+                case COMMENT:
+
+                    if (lexicalHandler != null) {
+                        lexicalHandler.comment(chars, op[i + 1], op[i + 2]);
+                    }
+
+                    i += 3;
+
+                    break;
+
+                case ELEMENT_DECL:
+
+                    if (declHandler != null) {
+                        declHandler.elementDecl(s[op[i + 1]], s[op[i + 2]]);
+                    }
+
+                    i += 3;
+
+                    break;
+
+                case ATTRIBUTE_DECL:
+
+                    if (declHandler != null) {
+                        declHandler.attributeDecl(s[op[i + 1]], s[op[i + 2]],
+                                s[op[i + 3]], s[op[i + 4]], s[op[i + 5]]);
+                    }
+
+                    i += 6;
+
+                    break;
+
+                case INTERNAL_ENTITY_DECL:
+
+                    if (declHandler != null) {
+                        declHandler.internalEntityDecl(s[op[i + 1]],
+                                s[op[i + 2]]);
+                    }
+
+                    i += 3;
+
+                    break;
+
+                case EXTERNAL_ENTITY_DECL:
+
+                    if (declHandler != null) {
+                        declHandler.externalEntityDecl(s[op[i + 1]],
+                                s[op[i + 2]], s[op[i + 3]]);
+                    }
+
+                    i += 4;
+
+                    break;
+
+                default:
+                    throw new SAXException("Unrecognized event: " + op[i]);
+            }
+        }
+    }
+
+    // Recording
+    // -------------------------------------------------------------------------
+    void processingInstruction(String target, String data) {
+        add(PROCESSING_INSTRUCTION, symbol(target), string(data));
+    }
+
+    void startPrefixMapping(String prefix, String uri) {
+        add(START_PREFIX_MAPPING, symbol(prefix), symbol(uri));
+    }
+
+    void endPrefixMapping(String prefix) {
+        add(END_PREFIX_MAPPING, symbol(prefix));
+    }
+
+    void startDocument() {
+        add(START_DOCUMENT);
+    }
+
+    void endDocument() {
+        add(END_DOCUMENT);
+    }
+
+    /**
+     * Starts recording an element, whose attributes must then be added with
+     * {@link #addAttribute(String, String, String, String, String)}.
+     */
+    void startElement(String namespaceURI, String localName,
+            String qualifiedName) {
+        add(START_ELEMENT, symbol(namespaceURI), symbol(localName),
+                symbol(qualifiedName));
+        attributeCountIndex = opCount;
+        add(0);
+    }
+
+    /**
+     * Adds an attribute to the element started last.
+     */
+    void addAttribute(String namespaceURI, String localName,
+            String qualifiedName, String type, String value) {
+        ensureOps(ATTRIBUTE_SIZE);
+        ops[opCount++] = symbol(namespaceURI);
+        ops[opCount++] = symbol(localName);
+        ops[opCount++] = symbol(qualifiedName);
+        ops[opCount++] = symbol(type);
+        ops[opCount++] = string(value);
+        ops[attributeCountIndex]++;
+    }
+
+    void endElement(String namespaceURI, String localName,
+            String qualifiedName) {
+        add(END_ELEMENT, symbol(namespaceURI), symbol(localName),
+                symbol(qualifiedName));
+    }
+
+    void characters(char[] ch, int start, int length) {
+        if ((lastCharacters >= 0) && (lastCharacters == (opCount - 3))) {
+            appendChars(ch, start, length);
+            ops[lastCharacters + 2] += length;
+
+            return;
+        }
+
+        lastCharacters = opCount;
+        add(CHARACTERS, charCount, length);
+        appendChars(ch, start, length);
+    }
+
+    void startDTD(String name, String publicId, String systemId) {
+        add(START_DTD, symbol(name), string(publicId), string(systemId));
+    }
+
+    void endDTD() {
+        add(END_DTD);
+    }
+
+    void startEntity(String name) {
+        add(START_ENTITY, symbol(name));
+    }
+
+    void endEntity(String name) {
+        add(END_ENTITY, symbol(name));
+    }
+
+    void startCDATA() {
+        add(START_CDATA);
+    }
+
+    void endCDATA() {
+        add(END_CDATA);
+    }
+
+    void comment(char[] ch, int start, int length) {
+        add(COMMENT, charCount, length);
+        appendChars(ch, start, length);
+    }
+
+    void elementDecl(String name, String model) {
+        add(ELEMENT_DECL, symbol(name), string(model));
+    }
+
+    void attributeDecl(String eName, String aName, String type,
+            String valueDefault, String value) {
+        add(ATTRIBUTE_DECL, symbol(eName), symbol(aName), string(type));
+        ensureOps(2);
+        ops[opCount++] = symbol(valueDefault);
+        ops[opCount++] = string(value);
+    }
+
+    void internalEntityDecl(String name, String value) {
+        add(INTERNAL_ENTITY_DECL, symbol(name), string(value));
+    }
+
+    void externalEntityDecl(String name, String publicId, String systemId) {
+        add(EXTERNAL_ENTITY_DECL, symbol(name), string(publicId),
+                string(systemId));
+    }
+
+    // Externalization
+    // -------------------------------------------------------------------------
+
+    /**
+     * Writes the buffer in its packed form: the string table, the characters
+     * and the opcodes, with variable length integers.
+     */
+    void writeExternal(ObjectOutput out) throws IOException {
+        writeVarint(out, stringCount - 1);
+
+        for (int i = 1; i < stringCount; i++) {
+            String string = strings[i];
+
+            if (string == null) {
+                writeVarint(out, 0);
+            } else {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                writeVarint(out, bytes.length + 1);
+                out.write(bytes);
+            }
+        }
+
+        // surrogate pairs are kept together and unpaired surrogates become a
+        // single character, so the encoding keeps the character offsets
+        byte[] bytes = new String(chars, 0, charCount)
+                .getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, charCount);
+        writeVarint(out, bytes.length);
+        out.write(bytes);
+
+        writeVarint(out, opCount);
+
+        for (int i = 0; i < opCount; i++) {
+            writeVarint(out, ops[i]);
+        }
+    }
+
+    void readExternal(ObjectInput in) throws IOException {
+        stringCount = readVarint(in) + 1;
+        strings = new String[stringCount];
+        symbols = null;
+
+        for (int i = 1; i < stringCount; i++) {
+            int length = readVarint(in) - 1;
+
+            if (length >= 0) {
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+
+        charCount = readVarint(in);
+
+        byte[] bytes = new byte[readVarint(in)];
+        in.readFully(bytes);
+        chars = new String(bytes, StandardCharsets.UTF_8).toCharArray();
+
+        if (chars.length != charCount) {
+            throw new IOException("Invalid recorded characters");
+        }
+
+        opCount = readVarint(in);
+        ops = new int[Math.max(opCount, 16)];
+
+        for (int i = 0; i < opCount; i++) {
+            ops[i] = readVarint(in);
+        }
+
+        lastCharacters = -1;
+    }
+
+    private static void writeVarint(ObjectOutput out, int value)
+            throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+
+        out.write(value);
+    }
+
+    private static int readVarint(ObjectInput in) throws IOException {
+        int value = 0;
+
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Invalid recorded event");
+    }
+
+    // Implementation methods
+    // -------------------------------------------------------------------------
+
+    /**
+     * Returns the index of a string which is likely to be repeated, storing
+     * it only once.
+     */
+    private int symbol(String symbol) {
+        if (symbol == null) {
+            return 0;
+        }
+
+        if (symbols == null) {
+            symbols = new HashMap<String, Integer>();
+
+            for (int i = 1; i < stringCount; i++) {
+                if (strings[i] != null) {
+                    symbols.put(strings[i], i);
+                }
+            }
+        }
+
+        Integer index = symbols.get(symbol);
+
+        if (index == null) {
+            index = string(symbol);
+            symbols.put(symbol, index);
+        }
+
+        return index;
+    }
+
+    /**
+     * Returns the index of a newly stored string.
+     */
+    private int string(String string) {
+        if (string == null) {
+            return 0;
+        }
+
+        if (stringCount == strings.length) {
+            strings = Arrays.copyOf(strings, stringCount * 2);
+        }
+
+        strings[stringCount] = string;
+
+        return stringCount++;
+    }
+
+    private void appendChars(char[] ch, int start, int length) {
+        if ((charCount + length) > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2,
+                    charCount + length));
+        }
+
+        System.arraycopy(ch, start, chars, charCount, length);
+        charCount += length;
+    }
+
+    private void add(int op) {
+        ensureOps(1);
+        ops[opCount++] = op;
+    }
+
+    private void add(int op, int operand) {
+        ensureOps(2);
+        ops[opCount++] = op;
+        ops[opCount++] = operand;
+    }
+
+    private void add(int op, int operand1, int operand2) {
+        ensureOps(3);
+        ops[opCount++] = op;
+        ops[opCount++] = operand1;
+        ops[opCount++] = operand2;
+    }
+
+    private void add(int op, int operand1, int operand2, int operand3) {
+        ensureOps(4);
+        ops[opCount++] = op;
+        ops[opCount++] = operand1;
+        ops[opCount++] = operand2;
+        ops[opCount++] = operand3;
+    }
+
+    private void ensureOps(int length) {
+        if ((opCount + length) > ops.length) {
+            ops = Arrays.copyOf(ops, Math.max(ops.length * 2,
+                    opCount + length));
+        }
+    }
+
+    /**
+     * The attributes of the element being replayed, read straight from the
+     * opcodes.
+     */
+    private final class PackedAttributes implements Attributes {
+        /** The index of the first attribute in the opcodes */
+        private int offset;
+
+        private int length;
+
+        public int getLength() {
+            return length;
+        }
+
+        public String getURI(int index) {
+            return get(index, 0);
+        }
+
+        public String getLocalName(int index) {
+            return get(index, 1);
+        }
+
+        public String getQName(int index) {
+            return get(index, 2);
+        }
+
+        public String getType(int index) {
+            return get(index, 3);
+        }
+
+        public String getValue(int index) {
+            return get(index, 4);
+        }
+
+        public int getIndex(String uri, String localName) {
+            for (int i = 0; i < length; i++) {
+                if (localName.equals(get(i, 1)) && uri.equals(get(i, 0))) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        public int getIndex(String qName) {
+            for (int i = 0; i < length; i++) {
+                if (qName.equals(get(i, 2))) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        public String getType(String uri, String localName) {
+            return getType(getIndex(uri, localName));
+        }
+
+        public String getType(String qName) {
+            return getType(getIndex(qName));
+        }
+
+        public String getValue(String uri, String localName) {
+            return getValue(getIndex(uri, localName));
+        }
+
+        public String getValue(String qName) {
+            return getValue(getIndex(qName));
+        }
+
+        private String get(int index, int field) {
+            if ((index < 0) || (index >= length)) {
+                return null;
+            }
+
+            return strings[ops[offset + (index * ATTRIBUTE_SIZE) + field]];
+        }
+    }
+}
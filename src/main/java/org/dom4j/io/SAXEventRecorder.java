@@ -67,7 +67,10 @@ public class SAXEventRecorder extends DefaultHandler implements LexicalHandler,
 
     private static final byte NULL = 2;
 
-    private List<SAXEvent> events = new ArrayList<SAXEvent>();
+    /** Marks the packed form written since the events are kept in a buffer */
+    private static final byte PACKED = 3;
+
+    private SAXEventBuffer events = new SAXEventBuffer();
 
     private Map<QName, List<String>> prefixMappings = new HashMap<QName, List<String>>();
 
@@ -78,7 +81,214 @@ public class SAXEventRecorder extends DefaultHandler implements LexicalHandler,
     public SAXEventRecorder() {
     }
 
+    /**
+     * Replays the recorded events. The events are read from a packed buffer,
+     * so that no objects are created for each event; the lexical and
+     * declaration events are only replayed if the handler is a
+     * <code>LexicalHandler</code> or a <code>DeclHandler</code>.
+     *
+     * @param handler
+     *            the handler to replay the events to
+     *
+     * @throws SAXException
+     *             if the handler fails
+     */
     public void replay(ContentHandler handler) throws SAXException {
+        events.replay(handler);
+    }
+
+    // ContentHandler interface
+    // -------------------------------------------------------------------------
+    public void processingInstruction(String target, String data)
+            throws SAXException {
+        events.processingInstruction(target, data);
+    }
+
+    public void startPrefixMapping(String prefix, String uri)
+            throws SAXException {
+        events.startPrefixMapping(prefix, uri);
+    }
+
+    public void endPrefixMapping(String prefix) throws SAXException {
+        events.endPrefixMapping(prefix);
+    }
+
+    public void startDocument() throws SAXException {
+        events.startDocument();
+    }
+
+    public void endDocument() throws SAXException {
+        events.endDocument();
+    }
+
+    public void startElement(String namespaceURI, String localName,
+            String qualifiedName, Attributes attributes) throws SAXException {
+        int length = (attributes != null) ? attributes.getLength() : 0;
+
+        for (int i = 0; i < length; i++) {
+            String attLocalName = attributes.getLocalName(i);
+
+            if (attLocalName.startsWith(XMLNS)) {
+
+                // if SAXWriter is writing a DOMDocument, namespace
+                // decls are treated as attributes. record a start
+                // prefix mapping event
+                String prefix;
+                if (attLocalName.length() > 5) {
+                    prefix = attLocalName.substring(6);
+                } else {
+                    prefix = EMPTY_STRING;
+                }
+
+                events.startPrefixMapping(prefix, attributes.getValue(i));
+
+                // 'register' the prefix so that we can generate
+                // an end prefix mapping event within endElement
+                QName qName = createQName(namespaceURI, localName);
+                List<String> prefixes = prefixMappings.get(qName);
+                if (prefixes == null) {
+                    prefixes = new ArrayList<String>();
+                    prefixMappings.put(qName, prefixes);
+                }
+                prefixes.add(prefix);
+            }
+        }
+
+        events.startElement(namespaceURI, localName, qualifiedName);
+
+        for (int i = 0; i < length; i++) {
+            String attLocalName = attributes.getLocalName(i);
+
+            if (!attLocalName.startsWith(XMLNS)) {
+                events.addAttribute(attributes.getURI(i), attLocalName,
+                        attributes.getQName(i), attributes.getType(i),
+                        attributes.getValue(i));
+            }
+        }
+    }
+
+    public void endElement(String namespaceURI, String localName, String qName)
+            throws SAXException {
+        events.endElement(namespaceURI, localName, qName);
+
+        // check to see if a we issued a start prefix mapping event
+        // for DOMDocument namespace decls
+        if (prefixMappings.isEmpty()) {
+            return;
+        }
+
+        List<String> prefixes = prefixMappings.get(createQName(namespaceURI,
+                localName));
+        if (prefixes != null) {
+            for (String prefixe : prefixes) {
+                events.endPrefixMapping(prefixe);
+            }
+        }
+
+    }
+
+    public void characters(char[] ch, int start, int end) throws SAXException {
+        events.characters(ch, start, end);
+    }
+
+    // LexicalHandler interface
+    // -------------------------------------------------------------------------
+    public void startDTD(String name, String publicId, String systemId)
+            throws SAXException {
+        events.startDTD(name, publicId, systemId);
+    }
+
+    public void endDTD() throws SAXException {
+        events.endDTD();
+    }
+
+    public void startEntity(String name) throws SAXException {
+        events.startEntity(name);
+    }
+
+    public void endEntity(String name) throws SAXException {
+        events.endEntity(name);
+    }
+
+    public void startCDATA() throws SAXException {
+        events.startCDATA();
+    }
+
+    public void endCDATA() throws SAXException {
+        events.endCDATA();
+    }
+
+    public void comment(char[] ch, int start, int end) throws SAXException {
+        events.comment(ch, start, end);
+    }
+
+    // DeclHandler interface
+    // -------------------------------------------------------------------------
+    public void elementDecl(String name, String model) throws SAXException {
+        events.elementDecl(name, model);
+    }
+
+    public void attributeDecl(String eName, String aName, String type,
+            String valueDefault, String value) throws SAXException {
+        events.attributeDecl(eName, aName, type, valueDefault, value);
+    }
+
+    public void internalEntityDecl(String name, String value)
+            throws SAXException {
+        events.internalEntityDecl(name, value);
+    }
+
+    public void externalEntityDecl(String name, String publicId, String sysId)
+            throws SAXException {
+        events.externalEntityDecl(name, publicId, sysId);
+    }
+
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeByte(PACKED);
+        events.writeExternal(out);
+    }
+
+    public void readExternal(ObjectInput in) throws ClassNotFoundException,
+            IOException {
+        events = new SAXEventBuffer();
+
+        switch (in.readByte()) {
+            case PACKED:
+                events.readExternal(in);
+
+                break;
+
+            case OBJECT:
+
+                // the list of events written by earlier versions
+                List<SAXEvent> list = (List<SAXEvent>) in.readObject();
+
+                try {
+                    replay(list, this);
+                } catch (SAXException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    private static QName createQName(String namespaceURI, String localName) {
+        if (namespaceURI != null) {
+            return new QName(localName, Namespace.get(namespaceURI));
+        } else {
+            return new QName(localName);
+        }
+    }
+
+    /**
+     * Replays events in the form recorded by earlier versions.
+     */
+    private static void replay(List<SAXEvent> events, ContentHandler handler)
+            throws SAXException {
         for (SAXEvent saxEvent : events) {
 
             switch (saxEvent.event) {
@@ -224,247 +434,6 @@ public class SAXEventRecorder extends DefaultHandler implements LexicalHandler,
         }
     }
 
-    // ContentHandler interface
-    // -------------------------------------------------------------------------
-    public void processingInstruction(String target, String data)
-            throws SAXException {
-        SAXEvent saxEvent = new SAXEvent(SAXEvent.PROCESSING_INSTRUCTION);
-        saxEvent.addParm(target);
-        saxEvent.addParm(data);
-        events.add(saxEvent);
-    }
-
-    public void startPrefixMapping(String prefix, String uri)
-            throws SAXException {
-        SAXEvent saxEvent = new SAXEvent(SAXEvent.START_PREFIX_MAPPING);
-        saxEvent.addParm(prefix);
-        saxEvent.addParm(uri);
-        events.add(saxEvent);
-    }
-
-    public void endPrefixMapping(String prefix) throws SAXException {
-        SAXEvent saxEvent = new SAXEvent(SAXEvent.END_PREFIX_MAPPING);
-        saxEvent.addParm(prefix);
-        events.add(saxEvent);
-    }
-
-    public void startDocument() throws SAXException {
-        SAXEvent saxEvent = new SAXEvent(SAXEvent.START_DOCUMENT);
-        events.add(saxEvent);
-    }
-
-    public void endDocument() throws SAXException {
-        SAXEvent saxEvent = new SAXEvent(SAXEvent.END_DOCUMENT);
-        events.add(saxEvent);
-    }
-
-    public void startElement(String namespaceURI, String localName,
-            String qualifiedName, Attributes attributes) throws SAXException {
-        SAXEvent saxEvent = new SAXEvent(SAXEvent.START_ELEMENT);
-        saxEvent.addParm(namespaceURI);
-        saxEvent.addParm(localName);
-        saxEvent.addParm(qualifiedName);
-
-        QName qName;
-        if (namespaceURI != null) {
-            qName = new QName(localName, Namespace.get(namespaceURI));
-        } else {
-            qName = new QName(localName);
-        }
-
-        if ((attributes != null) && (attributes.getLength() > 0)) {
-            List<String[]> attParmList = new ArrayList<String[]>(attributes.getLength());
-            String[] attParms;
-
-            for (int i = 0; i < attributes.getLength(); i++) {
-
-                String attLocalName = attributes.getLocalName(i);
-
-                if (attLocalName.startsWith(XMLNS)) {
-
-                    // if SAXWriter is writing a DOMDocument, namespace
-                    // decls are treated as attributes. record a start
-                    // prefix mapping event
-                    String prefix;
-                    if (attLocalName.length() > 5) {
-                        prefix = attLocalName.substring(6);
-                    } else {
-                        prefix = EMPTY_STRING;
-                    }
-
-                    SAXEvent prefixEvent = new SAXEvent(
-                            SAXEvent.START_PREFIX_MAPPING);
-                    prefixEvent.addParm(prefix);
-                    prefixEvent.addParm(attributes.getValue(i));
-                    events.add(prefixEvent);
-
-                    // 'register' the prefix so that we can generate
-                    // an end prefix mapping event within endElement
-                    List<String> prefixes = prefixMappings.get(qName);
-                    if (prefixes == null) {
-                        prefixes = new ArrayList<String>();
-                        prefixMappings.put(qName, prefixes);
-                    }
-                    prefixes.add(prefix);
-
-                } else {
-
-                    attParms = new String[5];
-                    attParms[0] = attributes.getURI(i);
-                    attParms[1] = attLocalName;
-                    attParms[2] = attributes.getQName(i);
-                    attParms[3] = attributes.getType(i);
-                    attParms[4] = attributes.getValue(i);
-                    attParmList.add(attParms);
-
-                }
-
-            }
-
-            saxEvent.addParm(attParmList);
-        }
-
-        events.add(saxEvent);
-    }
-
-    public void endElement(String namespaceURI, String localName, String qName)
-            throws SAXException {
-
-        SAXEvent saxEvent = new SAXEvent(SAXEvent.END_ELEMENT);
-        saxEvent.addParm(namespaceURI);
-        saxEvent.addParm(localName);
-        saxEvent.addParm(qName);
-        events.add(saxEvent);
-
-        // check to see if a we issued a start prefix mapping event
-        // for DOMDocument namespace decls
-
-        QName elementName;
-        if (namespaceURI != null) {
-            elementName = new QName(localName, Namespace.get(namespaceURI));
-        } else {
-            elementName = new QName(localName);
-        }
-
-        List<String> prefixes = prefixMappings.get(elementName);
-        if (prefixes != null) {
-            for (String prefixe : prefixes) {
-                SAXEvent prefixEvent =
-                        new SAXEvent(SAXEvent.END_PREFIX_MAPPING);
-                prefixEvent.addParm(prefixe);
-                events.add(prefixEvent);
-            }
-        }
-
-    }
-
-    public void characters(char[] ch, int start, int end) throws SAXException {
-        SAXEvent saxEvent = new SAXEvent(SAXEvent.CHARACTERS);
-        saxEvent.addParm(ch);
-        saxEvent.addParm(start);
-        saxEvent.addParm(end);
-        events.add(saxEvent);
-    }
-
-    // LexicalHandler interface
-    // -------------------------------------------------------------------------
-    public void startDTD(String name, String publicId, String systemId)
-            throws SAXException {
-        SAXEvent saxEvent = new SAXEvent(SAXEvent.START_DTD);
-        saxEvent.addParm(name);
-        saxEvent.addParm(publicId);
-        saxEvent.addParm(systemId);
-        events.add(saxEvent);
-    }
-
-    public void endDTD() throws SAXException {
-        SAXEvent saxEvent = new SAXEvent(SAXEvent.END_DTD);
-        events.add(saxEvent);
-    }
-
-    public void startEntity(String name) throws SAXException {
-        SAXEvent saxEvent = new SAXEvent(SAXEvent.START_ENTITY);
-        saxEvent.addParm(name);
-        events.add(saxEvent);
-    }
-
-    public void endEntity(String name) throws SAXException {
-        SAXEvent saxEvent = new SAXEvent(SAXEvent.END_ENTITY);
-        saxEvent.addParm(name);
-        events.add(saxEvent);
-    }
-
-    public void startCDATA() throws SAXException {
-        SAXEvent saxEvent = new SAXEvent(SAXEvent.START_CDATA);
-        events.add(saxEvent);
-    }
-
-    public void endCDATA() throws SAXException {
-        SAXEvent saxEvent = new SAXEvent(SAXEvent.END_CDATA);
-        events.add(saxEvent);
-    }
-
-    public void comment(char[] ch, int start, int end) throws SAXException {
-        SAXEvent saxEvent = new SAXEvent(SAXEvent.COMMENT);
-        saxEvent.addParm(ch);
-        saxEvent.addParm(start);
-        saxEvent.addParm(end);
-        events.add(saxEvent);
-    }
-
-    // DeclHandler interface
-    // -------------------------------------------------------------------------
-    public void elementDecl(String name, String model) throws SAXException {
-        SAXEvent saxEvent = new SAXEvent(SAXEvent.ELEMENT_DECL);
-        saxEvent.addParm(name);
-        saxEvent.addParm(model);
-        events.add(saxEvent);
-    }
-
-    public void attributeDecl(String eName, String aName, String type,
-            String valueDefault, String value) throws SAXException {
-        SAXEvent saxEvent = new SAXEvent(SAXEvent.ATTRIBUTE_DECL);
-        saxEvent.addParm(eName);
-        saxEvent.addParm(aName);
-        saxEvent.addParm(type);
-        saxEvent.addParm(valueDefault);
-        saxEvent.addParm(value);
-        events.add(saxEvent);
-    }
-
-    public void internalEntityDecl(String name, String value)
-            throws SAXException {
-        SAXEvent saxEvent = new SAXEvent(SAXEvent.INTERNAL_ENTITY_DECL);
-        saxEvent.addParm(name);
-        saxEvent.addParm(value);
-        events.add(saxEvent);
-    }
-
-    public void externalEntityDecl(String name, String publicId, String sysId)
-            throws SAXException {
-        SAXEvent saxEvent = new SAXEvent(SAXEvent.EXTERNAL_ENTITY_DECL);
-        saxEvent.addParm(name);
-        saxEvent.addParm(publicId);
-        saxEvent.addParm(sysId);
-        events.add(saxEvent);
-    }
-
-    public void writeExternal(ObjectOutput out) throws IOException {
-        if (events == null) {
-            out.writeByte(NULL);
-        } else {
-            out.writeByte(OBJECT);
-            out.writeObject(events);
-        }
-    }
-
-    public void readExternal(ObjectInput in) throws ClassNotFoundException,
-            IOException {
-        if (in.readByte() != NULL) {
-            events = (List<SAXEvent>) in.readObject();
-        }
-    }
-
     // SAXEvent inner class
     // -------------------------------------------------------------------------
     static class SAXEvent implements Externalizable {
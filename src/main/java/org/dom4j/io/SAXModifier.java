@@ -48,6 +48,8 @@ public class SAXModifier {
 
     private boolean pruneElements;
 
+    private boolean inPlace;
+
     private SAXModifyReader modifyReader;
 
     private HashMap<String, ElementModifier> modifiers = new HashMap<String, ElementModifier>();
@@ -98,6 +100,7 @@ public class SAXModifier {
      */
     public SAXModifier(XMLReader xmlReader, boolean pruneElements) {
         this.xmlReader = xmlReader;
+        this.pruneElements = pruneElements;
     }
 
     /**
@@ -375,6 +378,33 @@ public class SAXModifier {
         return pruneElements;
     }
 
+    /**
+     * Returns true when the parsed elements are handed to the registered
+     * {@link ElementModifier}objects without being copied.
+     * 
+     * @return Returns the inPlace.
+     */
+    public boolean isInPlace() {
+        return inPlace;
+    }
+
+    /**
+     * Sets whether the parsed elements are handed to the registered {@link
+     * ElementModifier}objects without being copied. By default each matched
+     * element is cloned before it is modified; in place, the parsed element
+     * itself is removed from the document and passed to the modifier, and the
+     * element returned takes its position. When the elements are pruned and
+     * an {@link XMLWriter}is set, the modified element is written and
+     * discarded straight away, so large documents can be rewritten without
+     * copying any element.
+     * 
+     * @param inPlace
+     *            true to modify the parsed elements without copying them
+     */
+    public void setInPlace(boolean inPlace) {
+        this.inPlace = inPlace;
+    }
+
     private SAXReader installModifyReader() throws DocumentException {
         try {
             SAXModifyReader reader = getSAXModifyReader();
@@ -386,8 +416,15 @@ public class SAXModifier {
             reader.resetHandlers();
 
             for (Map.Entry<String, ElementModifier> entry : this.modifiers.entrySet()) {
-                SAXModifyElementHandler handler = new SAXModifyElementHandler(
-                        entry.getValue());
+                SAXModifyElementHandler handler;
+
+                if (isInPlace()) {
+                    handler = new SAXModifyElementHandler(entry.getValue(),
+                            isPruneElements());
+                } else {
+                    handler = new SAXModifyElementHandler(entry.getValue());
+                }
+
                 reader.addHandler(entry.getKey(), handler);
             }
 
@@ -197,7 +197,7 @@ class SAXModifyContentHandler extends SAXContentHandler {
     public void endElement(String uri, String localName, String qName)
             throws SAXException {
         ElementHandler currentHandler = getElementStack().getDispatchHandler()
-                .getHandler(getElementStack().getPath());
+                .getCurrentHandler();
 
         super.endElement(uri, localName, qName);
 
@@ -211,10 +211,12 @@ class SAXModifyContentHandler extends SAXContentHandler {
                     Element modifiedElement = modifyHandler
                             .getModifiedElement();
 
-                    try {
-                        xmlWriter.write(modifiedElement);
-                    } catch (IOException ex) {
-                        throw new SAXModifyException(ex);
+                    if (modifiedElement != null) {
+                        try {
+                            xmlWriter.write(modifiedElement);
+                        } catch (IOException ex) {
+                            throw new SAXModifyException(ex);
+                        }
                     }
                 }
             }
@@ -7,10 +7,13 @@
 
 package org.dom4j.io;
 
+import java.util.List;
+
 import org.dom4j.Document;
 import org.dom4j.Element;
 import org.dom4j.ElementHandler;
 import org.dom4j.ElementPath;
+import org.dom4j.Node;
 
 /**
  * This {@link org.dom4j.ElementHandler}is used to trigger {@link
@@ -23,6 +26,11 @@ import org.dom4j.ElementPath;
  * that has to come in the tree.
  * </p>
  * 
+ * <p>
+ * In place, the parsed element itself is removed from the tree and handed to
+ * the modifier, which avoids copying every matched element.
+ * </p>
+ * 
  * @author Wonne Keysers (Realsoftware.be)
  */
 class SAXModifyElementHandler implements ElementHandler {
@@ -30,10 +38,36 @@ class SAXModifyElementHandler implements ElementHandler {
 
     private Element modifiedElement;
 
+    /** Whether the parsed element is handed to the modifier without a copy */
+    private boolean inPlace;
+
+    /** Whether the elements are pruned once they are written */
+    private boolean prune;
+
     public SAXModifyElementHandler(ElementModifier elemModifier) {
         this.elemModifier = elemModifier;
     }
 
+    /**
+     * Creates a handler that hands the parsed element itself to the modifier,
+     * after removing it from its parent. The position of the element is taken
+     * from the end of the parent content, where it normally is when its end
+     * tag is parsed, so neither a copy nor a search is needed.
+     * 
+     * @param elemModifier
+     *            the modifier to call
+     * @param prune
+     *            true when the elements are pruned once they are written, in
+     *            which case the modified element is not put back in the tree
+     *            unless an enclosing element is being handled
+     */
+    public SAXModifyElementHandler(ElementModifier elemModifier,
+            boolean prune) {
+        this.elemModifier = elemModifier;
+        this.inPlace = true;
+        this.prune = prune;
+    }
+
     public void onStart(ElementPath elementPath) {
         this.modifiedElement = elementPath.getCurrent();
     }
@@ -41,9 +75,52 @@ class SAXModifyElementHandler implements ElementHandler {
     public void onEnd(ElementPath elementPath) {
         try {
             Element origElement = elementPath.getCurrent();
-            Element currentParent = origElement.getParent();
 
-            if (currentParent != null) {
+            if (inPlace) {
+                boolean discard = prune && (elementPath instanceof ElementStack)
+                        && (((ElementStack) elementPath).getDispatchHandler()
+                                .getActiveHandlerCount() == 0);
+                modifyInPlace(origElement, discard);
+            } else {
+                modify(origElement);
+            }
+
+            // Put the new element on the ElementStack, it might get pruned by
+            // the PruningDispatchHandler
+            if (elementPath instanceof ElementStack) {
+                ElementStack elementStack = ((ElementStack) elementPath);
+                elementStack.popElement();
+                elementStack.pushElement(modifiedElement);
+            }
+        } catch (Exception ex) {
+            throw new SAXModifyException(ex);
+        }
+    }
+
+    private void modify(Element origElement) throws Exception {
+        Element currentParent = origElement.getParent();
+
+        if (currentParent != null) {
+            // Clone sets parent + document to null
+            Element clonedElem = (Element) origElement.clone();
+
+            // Ask for modified element
+            modifiedElement = elemModifier.modifyElement(clonedElem);
+
+            if (modifiedElement != null) {
+                // Restore parent + document
+                modifiedElement.setParent(origElement.getParent());
+                modifiedElement.setDocument(origElement.getDocument());
+
+                // Replace old with new element in parent
+                int contentIndex = currentParent.indexOf(origElement);
+                currentParent.content().set(contentIndex, modifiedElement);
+            }
+
+            // Remove the old element
+            origElement.detach();
+        } else {
+            if (origElement.isRootElement()) {
                 // Clone sets parent + document to null
                 Element clonedElem = (Element) origElement.clone();
 
@@ -52,47 +129,53 @@ class SAXModifyElementHandler implements ElementHandler {
 
                 if (modifiedElement != null) {
                     // Restore parent + document
-                    modifiedElement.setParent(origElement.getParent());
                     modifiedElement.setDocument(origElement.getDocument());
 
                     // Replace old with new element in parent
-                    int contentIndex = currentParent.indexOf(origElement);
-                    currentParent.content().set(contentIndex, modifiedElement);
+                    Document doc = origElement.getDocument();
+                    doc.setRootElement(modifiedElement);
                 }
 
                 // Remove the old element
                 origElement.detach();
-            } else {
-                if (origElement.isRootElement()) {
-                    // Clone sets parent + document to null
-                    Element clonedElem = (Element) origElement.clone();
+            }
+        }
+    }
 
-                    // Ask for modified element
-                    modifiedElement = elemModifier.modifyElement(clonedElem);
+    private void modifyInPlace(Element origElement, boolean discard)
+            throws Exception {
+        Element currentParent = origElement.getParent();
 
-                    if (modifiedElement != null) {
-                        // Restore parent + document
-                        modifiedElement.setDocument(origElement.getDocument());
+        if (currentParent != null) {
+            // The element was just completed, so it is the last child of its
+            // parent unless the tree was changed by another handler
+            int contentIndex = currentParent.nodeCount() - 1;
 
-                        // Replace old with new element in parent
-                        Document doc = origElement.getDocument();
-                        doc.setRootElement(modifiedElement);
-                    }
+            if ((contentIndex < 0)
+                    || (currentParent.node(contentIndex) != origElement)) {
+                contentIndex = currentParent.indexOf(origElement);
+            }
 
-                    // Remove the old element
-                    origElement.detach();
-                }
+            // Removing sets parent + document to null
+            List<Node> content = currentParent.content();
+            content.remove(contentIndex);
+
+            // Ask for modified element
+            modifiedElement = elemModifier.modifyElement(origElement);
+
+            if ((modifiedElement != null) && !discard) {
+                content.add(contentIndex, modifiedElement);
             }
+        } else if (origElement.isRootElement()) {
+            Document doc = origElement.getDocument();
+            origElement.detach();
 
-            // Put the new element on the ElementStack, it might get pruned by
-            // the PruningDispatchHandler
-            if (elementPath instanceof ElementStack) {
-                ElementStack elementStack = ((ElementStack) elementPath);
-                elementStack.popElement();
-                elementStack.pushElement(modifiedElement);
+            // Ask for modified element
+            modifiedElement = elemModifier.modifyElement(origElement);
+
+            if ((modifiedElement != null) && !discard) {
+                doc.setRootElement(modifiedElement);
             }
-        } catch (Exception ex) {
-            throw new SAXModifyException(ex);
         }
     }
 
@@ -134,6 +134,16 @@ public class SAXReader {
    */
   private boolean ignoreComments = false;
 
+  /**
+   * Should the element IDs be indexed while parsing
+   */
+  private boolean indexElementIDs = false;
+
+  /**
+   * Should the content outside of the handled elements be discarded
+   */
+  private boolean pruneUnmatched = false;
+
   /**
    * Encoding of InputSource - null means system default encoding
    */
@@ -487,6 +497,9 @@ public class SAXReader {
       contentHandler.setMergeAdjacentText(isMergeAdjacentText());
       contentHandler.setStripWhitespaceText(isStripWhitespaceText());
       contentHandler.setIgnoreComments(isIgnoreComments());
+      contentHandler.setIndexElementIDs(isIndexElementIDs());
+      contentHandler.setPruneUnmatched(isPruneUnmatched());
+      contentHandler.setTrustedNames(true);
       reader.setContentHandler(contentHandler);
 
       configureReader(reader, contentHandler);
@@ -656,6 +669,60 @@ public class SAXReader {
     this.ignoreComments = ignoreComments;
   }
 
+  /**
+   * Returns whether the element IDs are indexed while parsing.
+   *
+   * @return Value of property indexElementIDs.
+   */
+  public boolean isIndexElementIDs() {
+    return indexElementIDs;
+  }
+
+  /**
+   * Sets whether the element IDs should be indexed while parsing, so that
+   * {@link Document#elementByID(String)} finds an element in constant time
+   * instead of searching the document. IDs are taken from the attributes
+   * declared with the type <code>ID</code> in the DTD when the DTD
+   * declarations are included, and from the <code>ID</code> attribute
+   * otherwise. This only applies to documents created as a
+   * {@link org.dom4j.tree.DefaultDocument}.
+   *
+   * @param indexElementIDs whether the element IDs should be indexed
+   * @see org.dom4j.tree.DefaultDocument#setIndexElementIDs(boolean)
+   */
+  public void setIndexElementIDs(boolean indexElementIDs) {
+    this.indexElementIDs = indexElementIDs;
+  }
+
+  /**
+   * Returns whether the content outside of the handled elements is discarded.
+   *
+   * @return Value of property pruneUnmatched.
+   */
+  public boolean isPruneUnmatched() {
+    return pruneUnmatched;
+  }
+
+  /**
+   * Sets whether the content outside of the elements handled by an
+   * <code>ElementHandler</code> should be discarded while parsing. This
+   * allows documents of any size to be streamed through the handlers
+   * registered with {@link #addHandler(String, ElementHandler)}: the elements
+   * which do not match any handler path are detached as soon as they are
+   * complete and their text is never stored, so only the currently open
+   * elements and the handled elements are kept in memory. Unless it is
+   * handled itself, the root element of the returned document is empty.
+   * A handler set with {@link #setDefaultHandler(ElementHandler)} handles
+   * every element outside of the registered paths, so nothing is pruned
+   * while it is set.
+   *
+   * @param pruneUnmatched whether the unhandled content should be discarded
+   * @see SAXContentHandler#setPruneUnmatched(boolean)
+   */
+  public void setPruneUnmatched(boolean pruneUnmatched) {
+    this.pruneUnmatched = pruneUnmatched;
+  }
+
   /**
    * DOCUMENT ME!
    *
@@ -778,7 +845,11 @@ public class SAXReader {
 
   /**
    * Adds the <code>ElementHandler</code> to be called when the specified
-   * path is encounted.
+   * path is encounted. Besides plain absolute paths such as
+   * <code>/feed/entry</code>, the path may be a streaming pattern such as
+   * <code>//item</code>, <code>/feed/*&#47;entry</code> or
+   * <code>entry[@type='news']</code>, made of name tests and attribute
+   * predicates only. Relative patterns match at any depth.
    *
    * @param path    is the path to be handled
    * @param handler is the <code>ElementHandler</code> to be called by the event
@@ -0,0 +1,359 @@
+package org.dom4j.io;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URL;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DefaultHandler2;
+
+/**
+ * <p>
+ * <code>SAXReaderPool</code> reads documents from many threads at once. A
+ * {@link SAXReader} is not thread safe and creating one, along with its
+ * <code>XMLReader</code>, involves looking up the SAX parser factory, so this
+ * class keeps a pool of readers which are created and configured once and
+ * then reused. By default the readers are created by
+ * {@link SAXReader#createDefault()}, which disables the loading of external
+ * DTDs and entities; override {@link #createReader()} to configure them
+ * differently.
+ * </p>
+ *
+ * <p>
+ * The pool never blocks: when all the pooled readers are in use, a new one is
+ * created, and it is only kept if there is room in the pool when the read is
+ * complete. The counters returned by {@link #getCreatedCount()},
+ * {@link #getPeakActiveCount()} and {@link #getDiscardedCount()} show whether
+ * the pool is large enough for the number of concurrent reads.
+ * </p>
+ *
+ * <p>
+ * Element handlers should not be registered with pooled readers, as they
+ * would be called for the documents of all the threads.
+ * </p>
+ */
+public class SAXReaderPool {
+    private static final String SAX_DECL_HANDLER =
+            "http://xml.org/sax/properties/declaration-handler";
+
+    private static final String SAX_LEXICAL_HANDLER =
+            "http://xml.org/sax/properties/lexical-handler";
+
+    /** Replaces the handlers of idle readers, so they do not keep documents */
+    private static final DefaultHandler2 IDLE_HANDLER = new DefaultHandler2();
+
+    /** The idle readers */
+    private final BlockingQueue<PooledReader> idle;
+
+    private final int maxIdle;
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicInteger peakActive = new AtomicInteger();
+
+    private final AtomicLong reads = new AtomicLong();
+
+    private final AtomicLong created = new AtomicLong();
+
+    private final AtomicLong discarded = new AtomicLong();
+
+    /**
+     * Creates a pool keeping up to one reader per available processor.
+     */
+    public SAXReaderPool() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a pool keeping up to the given number of idle readers.
+     *
+     * @param maxIdle
+     *            the maximum number of readers kept in the pool
+     */
+    public SAXReaderPool(int maxIdle) {
+        if (maxIdle < 1) {
+            throw new IllegalArgumentException("Illegal pool size: " + maxIdle);
+        }
+
+        this.maxIdle = maxIdle;
+        this.idle = new ArrayBlockingQueue<PooledReader>(maxIdle);
+    }
+
+    /**
+     * Reads a document with one of the pooled readers, as
+     * {@link SAXReader#read(File)} does.
+     *
+     * @param file
+     *            the document to read
+     *
+     * @return the newly created document
+     *
+     * @throws DocumentException
+     *             if an error occurs during parsing
+     */
+    public Document read(File file) throws DocumentException {
+        PooledReader pooled = borrow();
+
+        try {
+            return pooled.reader.read(file);
+        } finally {
+            release(pooled);
+        }
+    }
+
+    /**
+     * Reads a document with one of the pooled readers, as
+     * {@link SAXReader#read(URL)} does.
+     *
+     * @param url
+     *            the document to read
+     *
+     * @return the newly created document
+     *
+     * @throws DocumentException
+     *             if an error occurs during parsing
+     */
+    public Document read(URL url) throws DocumentException {
+        PooledReader pooled = borrow();
+
+        try {
+            return pooled.reader.read(url);
+        } finally {
+            release(pooled);
+        }
+    }
+
+    /**
+     * Reads a document with one of the pooled readers, as
+     * {@link SAXReader#read(String)} does.
+     *
+     * @param systemId
+     *            the document to read
+     *
+     * @return the newly created document
+     *
+     * @throws DocumentException
+     *             if an error occurs during parsing
+     */
+    public Document read(String systemId) throws DocumentException {
+        PooledReader pooled = borrow();
+
+        try {
+            return pooled.reader.read(systemId);
+        } finally {
+            release(pooled);
+        }
+    }
+
+    /**
+     * Reads a document with one of the pooled readers, as
+     * {@link SAXReader#read(InputStream)} does.
+     *
+     * @param in
+     *            the document to read
+     *
+     * @return the newly created document
+     *
+     * @throws DocumentException
+     *             if an error occurs during parsing
+     */
+    public Document read(InputStream in) throws DocumentException {
+        PooledReader pooled = borrow();
+
+        try {
+            return pooled.reader.read(in);
+        } finally {
+            release(pooled);
+        }
+    }
+
+    /**
+     * Reads a document with one of the pooled readers, as
+     * {@link SAXReader#read(Reader)} does.
+     *
+     * @param reader
+     *            the document to read
+     *
+     * @return the newly created document
+     *
+     * @throws DocumentException
+     *             if an error occurs during parsing
+     */
+    public Document read(Reader reader) throws DocumentException {
+        PooledReader pooled = borrow();
+
+        try {
+            return pooled.reader.read(reader);
+        } finally {
+            release(pooled);
+        }
+    }
+
+    /**
+     * Reads a document with one of the pooled readers, as
+     * {@link SAXReader#read(InputSource)} does.
+     *
+     * @param in
+     *            the document to read
+     *
+     * @return the newly created document
+     *
+     * @throws DocumentException
+     *             if an error occurs during parsing
+     */
+    public Document read(InputSource in) throws DocumentException {
+        PooledReader pooled = borrow();
+
+        try {
+            return pooled.reader.read(in);
+        } finally {
+            release(pooled);
+        }
+    }
+
+    /**
+     * @return the maximum number of readers kept in the pool
+     */
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * @return the number of readers waiting in the pool
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * @return the number of reads in progress
+     */
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    /**
+     * @return the largest number of reads in progress at the same time
+     */
+    public int getPeakActiveCount() {
+        return peakActive.get();
+    }
+
+    /**
+     * @return the number of documents read
+     */
+    public long getReadCount() {
+        return reads.get();
+    }
+
+    /**
+     * @return the number of readers created, which only grows beyond the
+     *         maximum number of idle readers if the pool is too small
+     */
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    /**
+     * @return the number of readers dropped because the pool was full
+     */
+    public long getDiscardedCount() {
+        return discarded.get();
+    }
+
+    /**
+     * Removes the idle readers from the pool. The counters are not reset.
+     */
+    public void clear() {
+        idle.clear();
+    }
+
+    public String toString() {
+        return "SAXReaderPool[maxIdle=" + maxIdle + ", idle=" + idle.size()
+                + ", active=" + active + ", peakActive=" + peakActive
+                + ", reads=" + reads + ", created=" + created
+                + ", discarded=" + discarded + "]";
+    }
+
+    /**
+     * Creates a reader for the pool. This implementation returns
+     * {@link SAXReader#createDefault()}. Subclasses can override this method
+     * to configure the readers; this method may be called by several threads
+     * at once.
+     *
+     * @return a new reader
+     */
+    protected SAXReader createReader() {
+        return SAXReader.createDefault();
+    }
+
+    private PooledReader borrow() {
+        int count = active.incrementAndGet();
+        int peak;
+
+        while (count > (peak = peakActive.get())) {
+            if (peakActive.compareAndSet(peak, count)) {
+                break;
+            }
+        }
+
+        PooledReader pooled = idle.poll();
+
+        if (pooled == null) {
+            created.incrementAndGet();
+            pooled = new PooledReader(createReader());
+        }
+
+        return pooled;
+    }
+
+    private void release(PooledReader pooled) {
+        reads.incrementAndGet();
+        active.decrementAndGet();
+
+        // forget the resolver created for the system ID of the document
+        pooled.reader.setEntityResolver(pooled.entityResolver);
+
+        try {
+            XMLReader xmlReader = pooled.reader.getXMLReader();
+            xmlReader.setContentHandler(IDLE_HANDLER);
+            xmlReader.setErrorHandler(IDLE_HANDLER);
+            SAXHelper.setParserProperty(xmlReader, SAX_LEXICAL_HANDLER,
+                    IDLE_HANDLER);
+            SAXHelper.setParserProperty(xmlReader, SAX_DECL_HANDLER,
+                    IDLE_HANDLER);
+        } catch (SAXException e) {
+            discarded.incrementAndGet();
+
+            return;
+        }
+
+        if (!idle.offer(pooled)) {
+            discarded.incrementAndGet();
+        }
+    }
+
+    /**
+     * A pooled reader with the entity resolver it was created with.
+     */
+    private static final class PooledReader {
+        private final SAXReader reader;
+
+        private final EntityResolver entityResolver;
+
+        PooledReader(SAXReader reader) {
+            this.reader = reader;
+            this.entityResolver = reader.getEntityResolver();
+        }
+    }
+}
@@ -9,14 +9,11 @@ package org.dom4j.io;
 
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 
 import org.dom4j.Attribute;
 import org.dom4j.Branch;
 import org.dom4j.CDATA;
-import org.dom4j.CharacterData;
 import org.dom4j.Comment;
 import org.dom4j.Document;
 import org.dom4j.DocumentType;
@@ -25,7 +22,6 @@ import org.dom4j.Entity;
 import org.dom4j.Namespace;
 import org.dom4j.Node;
 import org.dom4j.ProcessingInstruction;
-import org.dom4j.Text;
 import org.dom4j.tree.NamespaceStack;
 
 import org.xml.sax.Attributes;
@@ -61,6 +57,9 @@ public class SAXWriter implements XMLReader {
     protected static final String FEATURE_NAMESPACES 
             = "http://xml.org/sax/features/namespaces";
 
+    /** The largest text which is copied to the reusable buffer */
+    private static final int MAX_BUFFER_SIZE = 8192;
+
     /** <code>ContentHandler</code> to which SAX events are raised */
     private ContentHandler contentHandler;
 
@@ -75,8 +74,11 @@ public class SAXWriter implements XMLReader {
     /** <code>LexicalHandler</code> fired on Entity and CDATA sections */
     private LexicalHandler lexicalHandler;
 
-    /** <code>AttributesImpl</code> used when generating the Attributes */
-    private AttributesImpl attributes = new AttributesImpl();
+    /** The view used when generating the Attributes */
+    private ElementAttributes attributes = new ElementAttributes();
+
+    /** The buffer the characters of text events are copied to */
+    private char[] buffer;
 
     /** Stores the features */
     private Map<String, Boolean> features = new HashMap();
@@ -259,8 +261,8 @@ public class SAXWriter implements XMLReader {
      */
     public void write(String text) throws SAXException {
         if (text != null) {
-            char[] chars = text.toCharArray();
-            contentHandler.characters(chars, 0, chars.length);
+            int length = text.length();
+            contentHandler.characters(toChars(text), 0, length);
         }
     }
 
@@ -297,8 +299,7 @@ public class SAXWriter implements XMLReader {
     public void write(Comment comment) throws SAXException {
         if (lexicalHandler != null) {
             String text = comment.getText();
-            char[] chars = text.toCharArray();
-            lexicalHandler.comment(chars, 0, chars.length);
+            lexicalHandler.comment(toChars(text), 0, text.length());
         }
     }
 
@@ -612,32 +613,51 @@ public class SAXWriter implements XMLReader {
     // -------------------------------------------------------------------------
     protected void writeContent(Branch branch, NamespaceStack namespaceStack)
             throws SAXException {
-        for (Iterator<Node> iter = branch.nodeIterator(); iter.hasNext();) {
-            Node node = iter.next();
-
-            if (node instanceof Element) {
-                write((Element) node, namespaceStack);
-            } else if (node instanceof CharacterData) {
-                if (node instanceof Text) {
-                    Text text = (Text) node;
-                    write(text.getText());
-                } else if (node instanceof CDATA) {
+        // walk the content by index, as an iterator would be allocated for
+        // each element, and dispatch on the node type rather than through
+        // instanceof checks against the node interfaces
+        for (int i = 0, size = branch.nodeCount(); i < size; i++) {
+            Node node = branch.node(i);
+
+            switch (node.getNodeType()) {
+                case Node.ELEMENT_NODE:
+                    write((Element) node, namespaceStack);
+
+                    break;
+
+                case Node.TEXT_NODE:
+                    write(node.getText());
+
+                    break;
+
+                case Node.CDATA_SECTION_NODE:
                     write((CDATA) node);
-                } else if (node instanceof Comment) {
+
+                    break;
+
+                case Node.COMMENT_NODE:
                     write((Comment) node);
-                } else {
+
+                    break;
+
+                case Node.ENTITY_REFERENCE_NODE:
+                    write((Entity) node);
+
+                    break;
+
+                case Node.PROCESSING_INSTRUCTION_NODE:
+                    write((ProcessingInstruction) node);
+
+                    break;
+
+                case Node.NAMESPACE_NODE:
+
+                    // Will be output with attributes
+                    break;
+
+                default:
                     throw new SAXException("Invalid Node in DOM4J content: "
-                            + node + " of type: " + node.getClass());
-                }
-            } else if (node instanceof Entity) {
-                write((Entity) node);
-            } else if (node instanceof ProcessingInstruction) {
-                write((ProcessingInstruction) node);
-            } else if (node instanceof Namespace) {
-                write((Namespace) node);
-            } else {
-                throw new SAXException("Invalid Node in DOM4J content: "
-                        + node);
+                            + node);
             }
         }
     }
@@ -763,21 +783,33 @@ public class SAXWriter implements XMLReader {
                     elementNamespace);
         }
 
-        List<Namespace> declaredNamespaces = element.declaredNamespaces();
+        // the declared namespaces are the namespace nodes of the content
+        for (int i = 0, size = element.nodeCount(); i < size; i++) {
+            Node node = element.node(i);
 
-        for (Namespace namespace : declaredNamespaces) {
-            if (!isIgnoreableNamespace(namespace, namespaceStack)) {
-                namespaceStack.push(namespace);
-                contentHandler.startPrefixMapping(namespace.getPrefix(),
-                        namespace.getURI());
-                namespaceAttributes = addNamespaceAttribute(
-                        namespaceAttributes, namespace);
+            if (node.getNodeType() == Node.NAMESPACE_NODE) {
+                namespaceAttributes = startPrefixMapping((Namespace) node,
+                        namespaceStack, namespaceAttributes);
             }
         }
 
         return namespaceAttributes;
     }
 
+    private AttributesImpl startPrefixMapping(Namespace namespace,
+            NamespaceStack namespaceStack, AttributesImpl namespaceAttributes)
+            throws SAXException {
+        if (!isIgnoreableNamespace(namespace, namespaceStack)) {
+            namespaceStack.push(namespace);
+            contentHandler.startPrefixMapping(namespace.getPrefix(),
+                    namespace.getURI());
+            namespaceAttributes = addNamespaceAttribute(namespaceAttributes,
+                    namespace);
+        }
+
+        return namespaceAttributes;
+    }
+
     /**
      * Fires a SAX endPrefixMapping event for all the namespaceStack which have
      * gone out of scope
@@ -813,22 +845,53 @@ public class SAXWriter implements XMLReader {
                 element.getQualifiedName());
     }
 
+    /**
+     * Returns the attributes of the given element, preceded by the given
+     * namespace declarations. The returned object is a view over the element
+     * which is reused for each element, so nothing is copied.
+     *
+     * @param element
+     *            the element being written
+     * @param namespaceAttributes
+     *            the namespace declarations written as attributes, or null
+     *
+     * @return the attributes of the start element event
+     *
+     * @throws SAXException
+     *             if the attributes cannot be created
+     */
     protected Attributes createAttributes(Element element,
             Attributes namespaceAttributes) throws SAXException {
-        attributes.clear();
+        attributes.setElement(element, namespaceAttributes);
+
+        return attributes;
+    }
+
+    /**
+     * Copies the given text into a buffer which is reused between events, as
+     * handlers may not keep the characters they are given. Text longer than
+     * {@link #MAX_BUFFER_SIZE} characters gets an array of its own, so that a
+     * single large text node does not keep a large buffer alive.
+     *
+     * @param text
+     *            the text of the event
+     *
+     * @return an array starting with the characters of the text
+     */
+    private char[] toChars(String text) {
+        int length = text.length();
 
-        if (namespaceAttributes != null) {
-            attributes.setAttributes(namespaceAttributes);
+        if (length > MAX_BUFFER_SIZE) {
+            return text.toCharArray();
         }
 
-        for (Iterator<Attribute> iter = element.attributeIterator(); iter.hasNext();) {
-            Attribute attribute = iter.next();
-            attributes.addAttribute(attribute.getNamespaceURI(), attribute
-                    .getName(), attribute.getQualifiedName(), "CDATA",
-                    attribute.getValue());
+        if ((buffer == null) || (buffer.length < length)) {
+            buffer = new char[Math.max(length, 256)];
         }
 
-        return attributes;
+        text.getChars(0, length, buffer, 0);
+
+        return buffer;
     }
 
     /**
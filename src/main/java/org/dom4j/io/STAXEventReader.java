@@ -636,8 +636,8 @@ public class STAXEventReader {
      * @return The newly constructed DOM4J QName.
      */
     public org.dom4j.QName createQName(QName qname) {
-        return factory.createQName(qname.getLocalPart(), qname.getPrefix(),
-                qname.getNamespaceURI());
+        return factory.createTrustedQName(qname.getLocalPart(), factory
+                .createNamespace(qname.getPrefix(), qname.getNamespaceURI()));
     }
 }
 
@@ -0,0 +1,196 @@
+package org.dom4j.io;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * <p>
+ * <code>XMLEscaper</code> writes text and attribute values to a
+ * <code>Writer</code> with the same escaping as
+ * {@link XMLWriter#escapeElementEntities(String)} and
+ * {@link XMLWriter#escapeAttributeEntities(String)}, but without building any
+ * intermediate strings. The ASCII characters to escape are looked up in
+ * tables, so that runs of characters which need no escaping are written with
+ * a single call to the writer.
+ * </p>
+ *
+ * <p>
+ * An escaper keeps a scratch buffer for the numeric character references, so
+ * it is not thread safe; it is used by a single {@link XMLWriter}.
+ * </p>
+ *
+ * @see OutputFormat#setFastEscaping(boolean)
+ */
+final class XMLEscaper {
+    private static final int ASCII = 128;
+
+    /** The maximum character written unescaped or -1 for no maximum */
+    private final int maximumAllowedCharacter;
+
+    /** The attribute quote character */
+    private final char quote;
+
+    /** Whether an ASCII character is escaped in text */
+    private final boolean[] textTable = new boolean[ASCII];
+
+    /** Whether an ASCII character is escaped in attribute values */
+    private final boolean[] attributeTable = new boolean[ASCII];
+
+    /** Buffer for the digits of character references */
+    private final char[] digits = new char[16];
+
+    XMLEscaper(int maximumAllowedCharacter, char quote) {
+        this.maximumAllowedCharacter = maximumAllowedCharacter;
+        this.quote = quote;
+
+        for (int c = 0; c < ASCII; c++) {
+            boolean whitespace = (c == '\t') || (c == '\n') || (c == '\r');
+            boolean escape = (!whitespace && ((c < 32)
+                    || ((maximumAllowedCharacter > 0)
+                            && (c > maximumAllowedCharacter))))
+                    || (c == '<') || (c == '>') || (c == '&');
+
+            textTable[c] = escape;
+            attributeTable[c] = escape;
+        }
+
+        // quotes are only escaped as entities in attribute values
+        attributeTable['"'] = quote == '"';
+        attributeTable['\''] = quote == '\'';
+    }
+
+    /**
+     * Returns whether this escaper escapes in the same way as an
+     * <code>XMLWriter</code> with the given settings.
+     *
+     * @param max
+     *            the maximum allowed character of the writer
+     * @param quoteChar
+     *            the attribute quote character of the writer
+     *
+     * @return true if this escaper can be used for the writer
+     */
+    boolean isCompatible(int max, char quoteChar) {
+        return (maximumAllowedCharacter == max) && (quote == quoteChar);
+    }
+
+    /**
+     * Writes the given text escaped for element content.
+     *
+     * @param writer
+     *            the writer to write to
+     * @param text
+     *            the text to write
+     *
+     * @throws IOException
+     *             if the text could not be written
+     */
+    void writeText(Writer writer, String text) throws IOException {
+        write(writer, text, textTable);
+    }
+
+    /**
+     * Writes the given text escaped for an attribute value.
+     *
+     * @param writer
+     *            the writer to write to
+     * @param text
+     *            the attribute value to write
+     *
+     * @throws IOException
+     *             if the text could not be written
+     */
+    void writeAttribute(Writer writer, String text) throws IOException {
+        write(writer, text, attributeTable);
+    }
+
+    private void write(Writer writer, String text, boolean[] table)
+            throws IOException {
+        int size = text.length();
+        int last = 0;
+        int i = 0;
+
+        while (i < size) {
+            char c = text.charAt(i);
+
+            if (c < ASCII) {
+                if (!table[c]) {
+                    i++;
+
+                    continue;
+                }
+
+                writer.write(text, last, i - last);
+                writeEntity(writer, c, table == attributeTable);
+                last = ++i;
+            } else if (maximumAllowedCharacter <= 0) {
+                i++;
+            } else {
+                int codePoint = text.codePointAt(i);
+                int length = Character.charCount(codePoint);
+
+                if (codePoint > maximumAllowedCharacter) {
+                    writer.write(text, last, i - last);
+                    writeCharacterReference(writer, codePoint);
+                    last = i + length;
+                }
+
+                i += length;
+            }
+        }
+
+        if (last == 0) {
+            writer.write(text);
+        } else if (last < size) {
+            writer.write(text, last, size - last);
+        }
+    }
+
+    private void writeEntity(Writer writer, char c, boolean attribute)
+            throws IOException {
+        switch (c) {
+            case '<':
+                writer.write("&lt;");
+
+                break;
+
+            case '>':
+                writer.write("&gt;");
+
+                break;
+
+            case '&':
+                writer.write("&amp;");
+
+                break;
+
+            case '"':
+                writer.write(attribute ? "&quot;" : "&#34;");
+
+                break;
+
+            case '\'':
+                writer.write(attribute ? "&apos;" : "&#39;");
+
+                break;
+
+            default:
+                writeCharacterReference(writer, c);
+        }
+    }
+
+    private void writeCharacterReference(Writer writer, int codePoint)
+            throws IOException {
+        int index = digits.length;
+        digits[--index] = ';';
+
+        do {
+            digits[--index] = (char) ('0' + (codePoint % 10));
+            codePoint /= 10;
+        } while (codePoint > 0);
+
+        digits[--index] = '#';
+        digits[--index] = '&';
+        writer.write(digits, index, digits.length - index);
+    }
+}
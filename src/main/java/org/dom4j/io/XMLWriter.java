@@ -13,6 +13,7 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -31,6 +32,7 @@ import org.dom4j.Node;
 import org.dom4j.ProcessingInstruction;
 import org.dom4j.Text;
 import org.dom4j.tree.NamespaceStack;
+import org.dom4j.tree.TreeCursor;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
@@ -80,6 +82,33 @@ public class XMLWriter extends XMLFilterImpl implements LexicalHandler, AutoClos
 
     protected static final OutputFormat DEFAULT_FORMAT = new OutputFormat();
 
+    /** Whether a writer class overrides any of the escaping methods */
+    private static final ClassValue<Boolean> CUSTOM_ESCAPING =
+        new ClassValue<Boolean>() {
+            protected Boolean computeValue(Class<?> type) {
+                return isOverridden(type, "escapeElementEntities", String.class)
+                        || isOverridden(type, "escapeAttributeEntities",
+                                String.class)
+                        || isOverridden(type, "writeEscapeAttributeEntities",
+                                String.class)
+                        || isOverridden(type, "shouldEncodeChar", int.class);
+            }
+        };
+
+    /**
+     * Whether a writer class overrides any of the methods which write
+     * elements, in which case elements are written recursively through them
+     */
+    private static final ClassValue<Boolean> RECURSIVE_WRITING =
+        new ClassValue<Boolean>() {
+            protected Boolean computeValue(Class<?> type) {
+                return isOverridden(type, "writeElement", Element.class)
+                        || isOverridden(type, "writeElementContent",
+                                Element.class)
+                        || isOverridden(type, "writeNode", Node.class);
+            }
+        };
+
     /** Should entityRefs by resolved when writing ? */
     private boolean resolveEntityRefs = true;
 
@@ -116,6 +145,9 @@ public class XMLWriter extends XMLFilterImpl implements LexicalHandler, AutoClos
      */
     private int indentLevel = 0;
 
+    /** The frames of the elements being written by writeTree() */
+    private ElementFrame[] frames = new ElementFrame[16];
+
     /** buffer used when escaping strings */
     private StringBuffer buffer = new StringBuffer();
 
@@ -151,6 +183,9 @@ public class XMLWriter extends XMLFilterImpl implements LexicalHandler, AutoClos
      */
     private int maximumAllowedCharacter;
 
+    /** The escaper used when fast escaping is enabled, created lazily */
+    private XMLEscaper escaper;
+
     public XMLWriter(Writer writer) {
         this(writer, DEFAULT_FORMAT);
     }
@@ -573,7 +608,7 @@ public class XMLWriter extends XMLFilterImpl implements LexicalHandler, AutoClos
      */
     public void writeOpen(Element element) throws IOException {
         writer.write("<");
-        writer.write(element.getQualifiedName());
+        writeName(element.getQualifiedName());
         writeNamespaces(element);
         writeAttributes(element);
         writer.write(">");
@@ -743,12 +778,16 @@ public class XMLWriter extends XMLFilterImpl implements LexicalHandler, AutoClos
              * of character arrays.
              */
             String string = String.valueOf(ch, start, length);
+            XMLEscaper fastEscaper = escapeText && !format.isTrimText()
+                    ? getFastEscaper() : null;
 
-            if (escapeText) {
+            if (escapeText && (fastEscaper == null)) {
                 string = escapeElementEntities(string);
             }
 
-            if (format.isTrimText()) {
+            if (fastEscaper != null) {
+                fastEscaper.writeText(writer, string);
+            } else if (format.isTrimText()) {
                 if ((lastOutputNodeType == Node.TEXT_NODE) && !charsAdded) {
                     writer.write(' ');
                 } else if (charsAdded && Character.isWhitespace(lastChar)) {
@@ -901,16 +940,105 @@ public class XMLWriter extends XMLFilterImpl implements LexicalHandler, AutoClos
     // Implementation methods
     // -------------------------------------------------------------------------
     protected void writeElement(Element element) throws IOException {
+        if (!RECURSIVE_WRITING.get(getClass())) {
+            writeTree(element);
+
+            return;
+        }
+
+        ElementFrame frame = new ElementFrame();
+        frame.element = element;
+        writeStartTag(frame);
+
+        if (!frame.empty) {
+            writeElementContent(element);
+            writeEndTag(frame);
+        }
+    }
+
+    /**
+     * Writes an element and its descendants without recursion, walking them
+     * with a {@link TreeCursor}. Each element being written keeps its state on
+     * a stack of frames which are reused, so the depth of the tree is not
+     * bounded by the thread stack.
+     *
+     * @param root
+     *            the element to write
+     *
+     * @throws IOException
+     *             if the element cannot be written
+     */
+    private void writeTree(Element root) throws IOException {
+        TreeCursor cursor = new TreeCursor(root);
+        int depth = 0;
+
+        while (cursor.next()) {
+            Node node = cursor.getNode();
+
+            if (cursor.isEnd()) {
+                ElementFrame frame = frames[--depth];
+
+                if (!frame.empty) {
+                    endContent(frame);
+                    writeEndTag(frame);
+                }
+
+                frame.clear();
+
+                continue;
+            }
+
+            if (depth > 0) {
+                writeContentNode(frames[depth - 1], node);
+            }
+
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                if (depth == frames.length) {
+                    frames = Arrays.copyOf(frames, depth * 2);
+                }
+
+                ElementFrame frame = frames[depth];
+
+                if (frame == null) {
+                    frame = new ElementFrame();
+                    frames[depth] = frame;
+                }
+
+                depth++;
+                frame.element = (Element) node;
+                writeStartTag(frame);
+
+                if (!frame.empty) {
+                    startContent(frame);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the start tag of the element of the given frame, with its
+     * namespace declarations and attributes. An element without content is
+     * written as an empty element.
+     *
+     * @param frame
+     *            the frame of the element
+     *
+     * @throws IOException
+     *             if the tag cannot be written
+     */
+    private void writeStartTag(ElementFrame frame) throws IOException {
+        Element element = frame.element;
         int size = element.nodeCount();
         String qualifiedName = element.getQualifiedName();
+        frame.qualifiedName = qualifiedName;
 
         writePrintln();
         indent();
 
         writer.write("<");
-        writer.write(qualifiedName);
+        writeName(qualifiedName);
 
-        int previouslyDeclaredNamespaces = namespaceStack.size();
+        frame.previouslyDeclaredNamespaces = namespaceStack.size();
         Namespace ns = element.getNamespace();
 
         if (isNamespaceDeclaration(ns)) {
@@ -943,33 +1071,49 @@ public class XMLWriter extends XMLFilterImpl implements LexicalHandler, AutoClos
         lastOutputNodeType = Node.ELEMENT_NODE;
 
         if (size <= 0) {
+            frame.empty = true;
             writeEmptyElementClose(qualifiedName);
+            popNamespaces(frame);
         } else {
+            frame.empty = false;
+            frame.indented = !textOnly;
             writer.write(">");
 
-            if (textOnly) {
-                // we have at least one text node so lets assume
-                // that its non-empty
-                writeElementContent(element);
-            } else {
+            if (!textOnly) {
                 // we know it's not null or empty from above
                 ++indentLevel;
+            }
+        }
+    }
 
-                writeElementContent(element);
+    /**
+     * Writes the end tag of the element of the given frame, once its content
+     * has been written.
+     *
+     * @param frame
+     *            the frame of the element
+     *
+     * @throws IOException
+     *             if the tag cannot be written
+     */
+    private void writeEndTag(ElementFrame frame) throws IOException {
+        if (frame.indented) {
+            --indentLevel;
 
-                --indentLevel;
+            writePrintln();
+            indent();
+        }
 
-                writePrintln();
-                indent();
-            }
+        writer.write("</");
+        writeName(frame.qualifiedName);
+        writer.write(">");
 
-            writer.write("</");
-            writer.write(qualifiedName);
-            writer.write(">");
-        }
+        popNamespaces(frame);
+    }
 
+    private void popNamespaces(ElementFrame frame) {
         // remove declared namespaceStack from stack
-        while (namespaceStack.size() > previouslyDeclaredNamespaces) {
+        while (namespaceStack.size() > frame.previouslyDeclaredNamespaces) {
             namespaceStack.pop();
         }
 
@@ -1010,134 +1154,160 @@ public class XMLWriter extends XMLFilterImpl implements LexicalHandler, AutoClos
      *             DOCUMENT ME!
      */
     protected void writeElementContent(Element element) throws IOException {
+        ElementFrame frame = new ElementFrame();
+        frame.element = element;
+        startContent(frame);
+
+        for (int i = 0, size = element.nodeCount(); i < size; i++) {
+            Node node = element.node(i);
+            writeContentNode(frame, node);
+
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                writeNode(node);
+            }
+        }
+
+        endContent(frame);
+    }
+
+    private void startContent(ElementFrame frame) {
         boolean trim = format.isTrimText();
-        boolean oldPreserve = preserve;
+        frame.oldPreserve = preserve;
 
         if (trim) { // verify we have to before more expensive test
-            preserve = isElementSpacePreserved(element);
+            preserve = isElementSpacePreserved(frame.element);
             trim = !preserve;
         }
 
-        if (trim) {
+        frame.trim = trim;
+        frame.textOnly = true;
+    }
+
+    /**
+     * Writes a node of the content of the element of the given frame, except
+     * for elements, which the caller writes once the text before them has been
+     * written. If whitespace trimming is enabled, adjacent text nodes are
+     * only written when the next other node, or the end of the content, is
+     * reached.
+     *
+     * @param frame
+     *            the frame of the parent element
+     * @param node
+     *            the node of the content
+     *
+     * @throws IOException
+     *             if the node cannot be written
+     */
+    private void writeContentNode(ElementFrame frame, Node node)
+            throws IOException {
+        boolean text = node.getNodeType() == Node.TEXT_NODE;
+
+        if (frame.trim) {
             // concatenate adjacent text nodes together
             // so that whitespace trimming works properly
-            Text lastTextNode = null;
-            StringBuilder buff = null;
-            boolean textOnly = true;
-
-            for (Node node : element.content()) {
-                if (node instanceof Text) {
-                    if (lastTextNode == null) {
-                        lastTextNode = (Text) node;
-                    } else {
-                        if (buff == null) {
-                            buff = new StringBuilder(lastTextNode.getText());
-                        }
-
-                        buff.append((node).getText());
-                    }
+            if (text) {
+                if (frame.lastTextNode == null) {
+                    frame.lastTextNode = node;
                 } else {
-                    if (!textOnly && format.isPadText()) {
-                        // only add the PAD_TEXT if the text itself starts with
-                        // whitespace
-                        final boolean startsWithWhitespace;
-                        if (buff != null) {
-                            startsWithWhitespace = startsWithWhitespace(buff);
-                        } else if (lastTextNode != null) {
-                            startsWithWhitespace = startsWithWhitespace(lastTextNode.getText());
-                        } else {
-                            startsWithWhitespace = false;
-                        }
-
-                        if (startsWithWhitespace) {
-                            writer.write(PAD_TEXT);
-                        }
+                    if (frame.buff == null) {
+                        frame.buff = new StringBuilder(frame.lastTextNode
+                                .getText());
                     }
 
-                    if (lastTextNode != null) {
-                        if (buff != null) {
-                            writeString(buff.toString());
-                            buff = null;
-                        } else {
-                            writeString(lastTextNode.getText());
-                        }
+                    frame.buff.append(node.getText());
+                }
 
-                        if (format.isPadText()) {
-                            // only add the PAD_TEXT if the text itself ends
-                            // with whitespace
-                            final boolean endsWithWhitespace;
-                            if (buff != null) {
-                                endsWithWhitespace = endsWithWhitespace(buff);
-                            } else {
-                                endsWithWhitespace = endsWithWhitespace(lastTextNode.getText());
-                            }
-
-                            if (endsWithWhitespace) {
-                                writer.write(PAD_TEXT);
-                            }
-                        }
+                return;
+            }
 
-                        lastTextNode = null;
-                    }
+            if (!frame.textOnly && format.isPadText()) {
+                // only add the PAD_TEXT if the text itself starts with
+                // whitespace
+                final boolean startsWithWhitespace;
+                if (frame.buff != null) {
+                    startsWithWhitespace = startsWithWhitespace(frame.buff);
+                } else if (frame.lastTextNode != null) {
+                    startsWithWhitespace = startsWithWhitespace(frame.lastTextNode.getText());
+                } else {
+                    startsWithWhitespace = false;
+                }
 
-                    textOnly = false;
-                    writeNode(node);
+                if (startsWithWhitespace) {
+                    writer.write(PAD_TEXT);
                 }
             }
 
-            if (lastTextNode != null) {
-                if (!textOnly && format.isPadText()) {
-                    // only add the PAD_TEXT if the text itself starts with
-                    // whitespace
-                    final boolean startsWithWhitespace;
-                    if (buff != null) {
-                        startsWithWhitespace = startsWithWhitespace(buff);
-                    } else {
-                        startsWithWhitespace = startsWithWhitespace(lastTextNode.getText());
-                    }
+            if (frame.lastTextNode != null) {
+                if (frame.buff != null) {
+                    writeString(frame.buff.toString());
+                    frame.buff = null;
+                } else {
+                    writeString(frame.lastTextNode.getText());
+                }
 
-                    if (startsWithWhitespace) {
+                if (format.isPadText()) {
+                    // only add the PAD_TEXT if the text itself ends
+                    // with whitespace
+                    if (endsWithWhitespace(frame.lastTextNode.getText())) {
                         writer.write(PAD_TEXT);
                     }
                 }
 
-                if (buff != null) {
-                    writeString(buff.toString());
-                    buff = null;
-                } else {
-                    writeString(lastTextNode.getText());
-                }
-
-                lastTextNode = null;
+                frame.lastTextNode = null;
             }
+
+            frame.textOnly = false;
         } else {
-            Node lastTextNode = null;
+            if (text) {
+                writeNode(node);
+                frame.lastTextNode = node;
 
-            for (Node node : element.content()) {
-                if (node instanceof Text) {
-                    writeNode(node);
-                    lastTextNode = node;
-                } else {
-                    if ((lastTextNode != null) && format.isPadText()) {
-                        // only add the PAD_TEXT if the text itself ends with
-                        // whitespace
-                        if (endsWithWhitespace(lastTextNode.getText())) {
-                            writer.write(PAD_TEXT);
-                        }
-                    }
+                return;
+            }
+
+            if ((frame.lastTextNode != null) && format.isPadText()) {
+                // only add the PAD_TEXT if the text itself ends with
+                // whitespace
+                if (endsWithWhitespace(frame.lastTextNode.getText())) {
+                    writer.write(PAD_TEXT);
+                }
+            }
+
+            frame.lastTextNode = null;
+        }
 
-                    writeNode(node);
+        if (node.getNodeType() != Node.ELEMENT_NODE) {
+            writeNode(node);
+        }
+    }
 
-                    // if ((lastTextNode != null) && format.isPadText()) {
-                    // writer.write(PAD_TEXT);
-                    // }
+    private void endContent(ElementFrame frame) throws IOException {
+        if (frame.trim && (frame.lastTextNode != null)) {
+            if (!frame.textOnly && format.isPadText()) {
+                // only add the PAD_TEXT if the text itself starts with
+                // whitespace
+                final boolean startsWithWhitespace;
+                if (frame.buff != null) {
+                    startsWithWhitespace = startsWithWhitespace(frame.buff);
+                } else {
+                    startsWithWhitespace = startsWithWhitespace(frame.lastTextNode.getText());
+                }
 
-                    lastTextNode = null;
+                if (startsWithWhitespace) {
+                    writer.write(PAD_TEXT);
                 }
             }
+
+            if (frame.buff != null) {
+                writeString(frame.buff.toString());
+            } else {
+                writeString(frame.lastTextNode.getText());
+            }
         }
 
-        preserve = oldPreserve;
+        frame.lastTextNode = null;
+        frame.buff = null;
+        preserve = frame.oldPreserve;
     }
 
     protected void writeCDATA(String text) throws IOException {
@@ -1235,6 +1405,16 @@ public class XMLWriter extends XMLFilterImpl implements LexicalHandler, AutoClos
 
     protected void writeString(String text) throws IOException {
         if ((text != null) && (text.length() > 0)) {
+            XMLEscaper fastEscaper = escapeText && !format.isTrimText()
+                    ? getFastEscaper() : null;
+
+            if (fastEscaper != null) {
+                lastOutputNodeType = Node.TEXT_NODE;
+                fastEscaper.writeText(writer, text);
+
+                return;
+            }
+
             if (escapeText) {
                 text = escapeElementEntities(text);
             }
@@ -1285,12 +1465,19 @@ public class XMLWriter extends XMLFilterImpl implements LexicalHandler, AutoClos
         String text = node.getText();
 
         if ((text != null) && (text.length() > 0)) {
-            if (escapeText) {
-                text = escapeElementEntities(text);
-            }
+            XMLEscaper fastEscaper = escapeText ? getFastEscaper() : null;
 
             lastOutputNodeType = Node.TEXT_NODE;
-            writer.write(text);
+
+            if (fastEscaper != null) {
+                fastEscaper.writeText(writer, text);
+            } else {
+                if (escapeText) {
+                    text = escapeElementEntities(text);
+                }
+
+                writer.write(text);
+            }
         }
     }
 
@@ -1498,7 +1685,7 @@ public class XMLWriter extends XMLFilterImpl implements LexicalHandler, AutoClos
 
     protected void writeAttribute(String qualifiedName, String value) throws IOException {
         writer.write(" ");
-        writer.write(qualifiedName);
+        writeName(qualifiedName);
         writer.write("=");
 
         char quote = format.getAttributeQuoteCharacter();
@@ -1560,6 +1747,15 @@ public class XMLWriter extends XMLFilterImpl implements LexicalHandler, AutoClos
      */
     protected Writer createWriter(OutputStream outStream, String encoding)
             throws UnsupportedEncodingException {
+        if (format.isDirectEncoding()) {
+            Writer directWriter = DirectEncodingWriter.create(outStream,
+                    encoding);
+
+            if (directWriter != null) {
+                return directWriter;
+            }
+        }
+
         return new BufferedWriter(new OutputStreamWriter(outStream, encoding));
     }
 
@@ -1604,7 +1800,7 @@ public class XMLWriter extends XMLFilterImpl implements LexicalHandler, AutoClos
 
     protected void writeClose(String qualifiedName) throws IOException {
         writer.write("</");
-        writer.write(qualifiedName);
+        writeName(qualifiedName);
         writer.write(">");
     }
 
@@ -1615,7 +1811,7 @@ public class XMLWriter extends XMLFilterImpl implements LexicalHandler, AutoClos
             writer.write("/>");
         } else {
             writer.write("></");
-            writer.write(qualifiedName);
+            writeName(qualifiedName);
             writer.write(">");
         }
     }
@@ -1710,8 +1906,14 @@ public class XMLWriter extends XMLFilterImpl implements LexicalHandler, AutoClos
 
     protected void writeEscapeAttributeEntities(String txt) throws IOException {
         if (txt != null) {
-            String escapedText = escapeAttributeEntities(txt);
-            writer.write(escapedText);
+            XMLEscaper fastEscaper = getFastEscaper();
+
+            if (fastEscaper != null) {
+                fastEscaper.writeAttribute(writer, txt);
+            } else {
+                String escapedText = escapeAttributeEntities(txt);
+                writer.write(escapedText);
+            }
         }
     }
 
@@ -1839,6 +2041,61 @@ public class XMLWriter extends XMLFilterImpl implements LexicalHandler, AutoClos
         return -1;
     }
 
+    /**
+     * Returns the escaper writing text and attribute values directly to the
+     * writer, if fast escaping is enabled in the format and none of the
+     * escaping methods are overridden.
+     *
+     * @return the escaper or null to use the escaping methods
+     */
+    private XMLEscaper getFastEscaper() {
+        if (!format.isFastEscaping() || CUSTOM_ESCAPING.get(getClass())) {
+            return null;
+        }
+
+        int max = getMaximumAllowedCharacter();
+        char quote = format.getAttributeQuoteCharacter();
+
+        if ((escaper == null) || !escaper.isCompatible(max, quote)) {
+            escaper = new XMLEscaper(max, quote);
+        }
+
+        return escaper;
+    }
+
+    /**
+     * Writes an element or attribute name, using the names already encoded
+     * when writing directly to bytes.
+     *
+     * @param name
+     *            the qualified name to write
+     *
+     * @throws IOException
+     *             if the name could not be written
+     */
+    private void writeName(String name) throws IOException {
+        if (writer instanceof DirectEncodingWriter) {
+            ((DirectEncodingWriter) writer).writeName(name);
+        } else {
+            writer.write(name);
+        }
+    }
+
+    private static boolean isOverridden(Class<?> type, String name,
+            Class<?> parameterType) {
+        for (Class<?> c = type; c != XMLWriter.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod(name, parameterType);
+
+                return true;
+            } catch (NoSuchMethodException e) {
+                // look in the superclass
+            }
+        }
+
+        return false;
+    }
+
     protected boolean isNamespaceDeclaration(Namespace ns) {
         if ((ns != null) && (ns != Namespace.XML_NAMESPACE)) {
             String uri = ns.getURI();
@@ -1878,6 +2135,43 @@ public class XMLWriter extends XMLFilterImpl implements LexicalHandler, AutoClos
     public void setResolveEntityRefs(boolean resolve) {
         this.resolveEntityRefs = resolve;
     }
+
+    /**
+     * The state of an element being written: how to close it and how its
+     * content is being written.
+     */
+    private static final class ElementFrame {
+        private Element element;
+
+        private String qualifiedName;
+
+        /** The size of the namespace stack before the element */
+        private int previouslyDeclaredNamespaces;
+
+        /** Whether the element has no content */
+        private boolean empty;
+
+        /** Whether the content is indented */
+        private boolean indented;
+
+        private boolean oldPreserve;
+
+        private boolean trim;
+
+        /** Whether only text has been written in the content so far */
+        private boolean textOnly;
+
+        private Node lastTextNode;
+
+        private StringBuilder buff;
+
+        void clear() {
+            element = null;
+            qualifiedName = null;
+            lastTextNode = null;
+            buff = null;
+        }
+    }
 }
 
 /*
@@ -22,6 +22,7 @@ import org.dom4j.DocumentException;
 import org.dom4j.DocumentFactory;
 import org.dom4j.Element;
 import org.dom4j.ElementHandler;
+import org.dom4j.Namespace;
 import org.dom4j.QName;
 
 import org.xmlpull.v1.XmlPullParser;
@@ -413,9 +414,11 @@ public class XPP3Reader {
                     return document;
 
                 case XmlPullParser.START_TAG: {
-                    QName qname = (pp.getPrefix() == null) ? df.createQName(pp
-                            .getName(), pp.getNamespace()) : df.createQName(pp
-                            .getName(), pp.getPrefix(), pp.getNamespace());
+                    QName qname = (pp.getPrefix() == null) ? df
+                            .createTrustedQName(pp.getName(), Namespace.get(pp
+                                    .getNamespace())) : df.createTrustedQName(
+                            pp.getName(), Namespace.get(pp.getPrefix(), pp
+                                    .getNamespace()));
                     Element newElement = df.createElement(qname);
                     int nsStart = pp.getNamespaceCount(pp.getDepth() - 1);
                     int nsEnd = pp.getNamespaceCount(pp.getDepth());
@@ -429,10 +432,11 @@ public class XPP3Reader {
 
                     for (int i = 0; i < pp.getAttributeCount(); i++) {
                         QName qa = (pp.getAttributePrefix(i) == null) ? df
-                                .createQName(pp.getAttributeName(i)) : df
-                                .createQName(pp.getAttributeName(i), pp
-                                        .getAttributePrefix(i), pp
-                                        .getAttributeNamespace(i));
+                                .createTrustedQName(pp.getAttributeName(i),
+                                        Namespace.NO_NAMESPACE) : df
+                                .createTrustedQName(pp.getAttributeName(i),
+                                        Namespace.get(pp.getAttributePrefix(i),
+                                                pp.getAttributeNamespace(i)));
                         newElement.addAttribute(qa, pp.getAttributeValue(i));
                     }
 
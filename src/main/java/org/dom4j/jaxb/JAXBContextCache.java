@@ -0,0 +1,365 @@
+package org.dom4j.jaxb;
+
+import java.lang.ref.SoftReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import jakarta.xml.bind.Unmarshaller;
+
+/**
+ * <p>
+ * <code>JAXBContextCache</code> shares JAXB contexts between the
+ * {@link JAXBReader}, {@link JAXBWriter} and {@link JAXBModifier} instances of
+ * the process. Building a context is expensive, so each context is built once
+ * for its context path and class loader; when several threads ask for a
+ * context that is being built, they wait for it rather than build it again.
+ * A context path without a class loader is looked up with the context class
+ * loader of the calling thread, as <code>JAXBContext.newInstance()</code>
+ * does.
+ * </p>
+ *
+ * <p>
+ * As marshallers and unmarshallers are not thread safe, each context keeps a
+ * pool of them. The pools never block: when all the pooled instances are in
+ * use, a new one is created, and it is only kept if there is room in the pool
+ * when it is released. The JAXB helpers are therefore cheap to create, and
+ * their contexts are shared, but the helpers themselves are not thread safe:
+ * each <code>JAXBReader</code> reads through a single <code>SAXReader</code>
+ * and each <code>JAXBWriter</code> writes through a single
+ * <code>XMLWriter</code>. The counters show how often contexts were built or
+ * waited for, and how often the pools were empty.
+ * </p>
+ *
+ * <p>
+ * The contexts are held weakly by their class loader and softly themselves,
+ * as a context refers to its class loader through its classes. The cache
+ * therefore does not keep the class loader of an application which is
+ * unloaded, but a context may have to be built again when memory runs low.
+ * </p>
+ */
+public class JAXBContextCache {
+    private static final JAXBContextCache INSTANCE = new JAXBContextCache();
+
+    /**
+     * The contexts and their pools by class loader and context path, built
+     * once, guarded by itself
+     */
+    private final Map<ClassLoader, ConcurrentMap<String, PoolReference>> pools
+            = new WeakHashMap<ClassLoader, ConcurrentMap<String, PoolReference>>();
+
+    private final int maxIdle;
+
+    private final AtomicLong contextBuilds = new AtomicLong();
+
+    private final AtomicLong contextWaits = new AtomicLong();
+
+    private final AtomicLong marshallersCreated = new AtomicLong();
+
+    private final AtomicLong unmarshallersCreated = new AtomicLong();
+
+    private final AtomicLong discarded = new AtomicLong();
+
+    /**
+     * Creates a cache keeping up to one marshaller and one unmarshaller per
+     * available processor for each context.
+     */
+    public JAXBContextCache() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a cache keeping up to the given number of idle marshallers and
+     * unmarshallers for each context.
+     *
+     * @param maxIdle
+     *            the maximum number of idle marshallers and unmarshallers
+     */
+    public JAXBContextCache(int maxIdle) {
+        if (maxIdle < 1) {
+            throw new IllegalArgumentException("Illegal pool size: " + maxIdle);
+        }
+
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * @return the cache shared by the JAXB helpers
+     */
+    public static JAXBContextCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the context for the given context path and class loader,
+     * building it if needed.
+     *
+     * @param contextPath
+     *            the context path
+     * @param classLoader
+     *            the class loader, or null for the context class loader
+     *
+     * @return the shared context
+     *
+     * @throws JAXBException
+     *             if the context could not be built
+     */
+    public JAXBContext getContext(String contextPath, ClassLoader classLoader)
+            throws JAXBException {
+        return getPool(contextPath, classLoader).context;
+    }
+
+    /**
+     * @return the maximum number of idle marshallers and unmarshallers kept
+     *         for each context
+     */
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * @return the number of contexts in the cache
+     */
+    public int getContextCount() {
+        int count = 0;
+
+        synchronized (pools) {
+            for (ConcurrentMap<String, PoolReference> contexts : pools
+                    .values()) {
+                for (PoolReference reference : contexts.values()) {
+                    if (reference.get() != null) {
+                        count++;
+                    }
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @return the number of contexts built
+     */
+    public long getContextBuildCount() {
+        return contextBuilds.get();
+    }
+
+    /**
+     * @return the number of times a thread waited for a context being built
+     *         by another thread
+     */
+    public long getContextWaitCount() {
+        return contextWaits.get();
+    }
+
+    /**
+     * @return the number of marshallers created, which only grows beyond the
+     *         maximum number of idle marshallers if the pools are too small
+     */
+    public long getMarshallerCreatedCount() {
+        return marshallersCreated.get();
+    }
+
+    /**
+     * @return the number of unmarshallers created, which only grows beyond
+     *         the maximum number of idle unmarshallers if the pools are too
+     *         small
+     */
+    public long getUnmarshallerCreatedCount() {
+        return unmarshallersCreated.get();
+    }
+
+    /**
+     * @return the number of marshallers and unmarshallers dropped because
+     *         their pool was full
+     */
+    public long getDiscardedCount() {
+        return discarded.get();
+    }
+
+    /**
+     * Removes all the contexts from the cache. The counters are not reset.
+     */
+    public void clear() {
+        synchronized (pools) {
+            pools.clear();
+        }
+    }
+
+    public String toString() {
+        return "JAXBContextCache[maxIdle=" + maxIdle + ", contexts="
+                + getContextCount() + ", contextBuilds=" + contextBuilds
+                + ", contextWaits=" + contextWaits + ", marshallersCreated="
+                + marshallersCreated + ", unmarshallersCreated="
+                + unmarshallersCreated + ", discarded=" + discarded + "]";
+    }
+
+    /**
+     * Builds a context for the cache. Subclasses can override this method to
+     * configure the contexts; this method may be called by several threads at
+     * once, for different keys.
+     *
+     * @param contextPath
+     *            the context path
+     * @param classLoader
+     *            the class loader, or null if there is no context class loader
+     *
+     * @return a new context
+     *
+     * @throws JAXBException
+     *             if the context could not be built
+     */
+    protected JAXBContext createContext(String contextPath,
+            ClassLoader classLoader) throws JAXBException {
+        if (classLoader == null) {
+            return JAXBContext.newInstance(contextPath);
+        }
+
+        return JAXBContext.newInstance(contextPath, classLoader);
+    }
+
+    Pool getPool(final String contextPath, ClassLoader classLoader)
+            throws JAXBException {
+        final ClassLoader loader = (classLoader != null) ? classLoader : Thread
+                .currentThread().getContextClassLoader();
+        ConcurrentMap<String, PoolReference> contexts;
+
+        synchronized (pools) {
+            contexts = pools.get(loader);
+
+            if (contexts == null) {
+                contexts = new ConcurrentHashMap<String, PoolReference>();
+                pools.put(loader, contexts);
+            }
+        }
+
+        PoolReference reference = contexts.get(contextPath);
+        FutureTask<Pool> task = (reference != null) ? reference.get() : null;
+
+        while (task == null) {
+            FutureTask<Pool> created = new FutureTask<Pool>(
+                    new Callable<Pool>() {
+                        public Pool call() throws JAXBException {
+                            contextBuilds.incrementAndGet();
+
+                            return new Pool(createContext(contextPath, loader));
+                        }
+                    });
+            PoolReference createdReference = new PoolReference(created);
+
+            // replace a reference which has been cleared
+            if ((reference == null) ? (contexts.putIfAbsent(contextPath,
+                    createdReference) == null) : contexts.replace(contextPath,
+                    reference, createdReference)) {
+                reference = createdReference;
+                task = created;
+                created.run();
+            } else {
+                reference = contexts.get(contextPath);
+                task = (reference != null) ? reference.get() : null;
+            }
+        }
+
+        if (!task.isDone()) {
+            contextWaits.incrementAndGet();
+        }
+
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+
+            throw new JAXBException(ex);
+        } catch (ExecutionException ex) {
+            // let a later call try again
+            contexts.remove(contextPath, reference);
+
+            Throwable cause = ex.getCause();
+
+            if (cause instanceof JAXBException) {
+                throw (JAXBException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw new JAXBException(cause);
+        }
+    }
+
+    /**
+     * A soft reference to a context being built or built.
+     */
+    private static final class PoolReference extends
+            SoftReference<FutureTask<Pool>> {
+        PoolReference(FutureTask<Pool> task) {
+            super(task);
+        }
+    }
+
+    /**
+     * A context with its idle marshallers and unmarshallers.
+     */
+    final class Pool {
+        private final JAXBContext context;
+
+        private final BlockingQueue<Marshaller> marshallers;
+
+        private final BlockingQueue<Unmarshaller> unmarshallers;
+
+        Pool(JAXBContext context) {
+            this.context = context;
+            this.marshallers = new ArrayBlockingQueue<Marshaller>(maxIdle);
+            this.unmarshallers = new ArrayBlockingQueue<Unmarshaller>(maxIdle);
+        }
+
+        JAXBContext getContext() {
+            return context;
+        }
+
+        Marshaller borrowMarshaller() throws JAXBException {
+            Marshaller marshaller = marshallers.poll();
+
+            if (marshaller == null) {
+                marshallersCreated.incrementAndGet();
+                marshaller = context.createMarshaller();
+            }
+
+            return marshaller;
+        }
+
+        void release(Marshaller marshaller) {
+            if (!marshallers.offer(marshaller)) {
+                discarded.incrementAndGet();
+            }
+        }
+
+        Unmarshaller borrowUnmarshaller() throws JAXBException {
+            Unmarshaller unmarshaller = unmarshallers.poll();
+
+            if (unmarshaller == null) {
+                unmarshallersCreated.incrementAndGet();
+                unmarshaller = context.createUnmarshaller();
+            }
+
+            return unmarshaller;
+        }
+
+        void release(Unmarshaller unmarshaller) {
+            if (!unmarshallers.offer(unmarshaller)) {
+                discarded.incrementAndGet();
+            }
+        }
+    }
+}
@@ -15,15 +15,19 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
 import org.dom4j.Element;
 import org.dom4j.ElementHandler;
 import org.dom4j.ElementPath;
+import org.dom4j.io.SAXContentHandler;
 import org.dom4j.io.SAXReader;
 
 import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
 
 /**
  * Reads an XML document and creates a DOM4J tree from SAX parsing events.
@@ -31,6 +35,12 @@ import org.xml.sax.InputSource;
  * unmarshalled XML fragments. Registered {@link org.dom4j.ElementHandler}
  * implementations are notified when a certain element path is encountered
  *
+ * <p>
+ * In streaming mode (see {@link #setStreaming(boolean)}) the handled paths are
+ * unmarshalled straight from the parse events, so no DOM4J elements are
+ * created for them.
+ * </p>
+ *
  * @author Wonne Keysers (Realsoftware.be)
  *
  * @see org.dom4j.io.SAXReader
@@ -41,6 +51,12 @@ public class JAXBReader extends JAXBSupport {
 
     private boolean pruneElements;
 
+    private boolean streaming;
+
+    /** The registered object handlers by path */
+    private Map<String, JAXBObjectHandler> objectHandlers
+            = new LinkedHashMap<String, JAXBObjectHandler>();
+
     /**
      * Creates a new JAXBReader for the given JAXB context path. This is the
      * Java package where JAXB can find the generated XML classes. This package
@@ -274,6 +290,7 @@ public class JAXBReader extends JAXBSupport {
     public void addObjectHandler(String path, JAXBObjectHandler handler) {
         ElementHandler eHandler = new UnmarshalElementHandler(this, handler);
         getReader().addHandler(path, eHandler);
+        objectHandlers.put(path, handler);
     }
 
     /**
@@ -285,6 +302,7 @@ public class JAXBReader extends JAXBSupport {
      */
     public void removeObjectHandler(String path) {
         getReader().removeHandler(path);
+        objectHandlers.remove(path);
     }
 
     /**
@@ -318,6 +336,7 @@ public class JAXBReader extends JAXBSupport {
      */
     public void resetHandlers() {
         getReader().resetHandlers();
+        objectHandlers.clear();
     }
 
     /**
@@ -343,14 +362,50 @@ public class JAXBReader extends JAXBSupport {
         }
     }
 
+    /**
+     * When 'true', the paths of the {@link JAXBObjectHandler}s are unmarshalled
+     * straight from the parse events.
+     * @return Returns the streaming.
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Set to true to unmarshal the paths of the registered {@link
+     * JAXBObjectHandler}s straight from the parse events, without creating
+     * DOM4J elements for them. The handled elements are then left out of the
+     * {@link Document}, and {@link org.dom4j.ElementHandler}s registered for
+     * paths within them are not called. In this mode the paths of the object
+     * handlers must be absolute paths of element names, such as
+     * <code>/order/item</code>.
+     * @param streaming
+     *            true to unmarshal the handled paths from the parse events
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
     private SAXReader getReader() {
         if (reader == null) {
-            reader = new SAXReader();
+            reader = new UnmarshalReader();
         }
 
         return reader;
     }
 
+    private class UnmarshalReader extends SAXReader {
+        protected SAXContentHandler createContentHandler(XMLReader xmlReader) {
+            if (!isStreaming() || objectHandlers.isEmpty()) {
+                return super.createContentHandler(xmlReader);
+            }
+
+            return new UnmarshalContentHandler(JAXBReader.this,
+                    objectHandlers, getDocumentFactory(),
+                    getDispatchHandler());
+        }
+    }
+
     private class UnmarshalElementHandler implements ElementHandler {
         private JAXBReader jaxbReader;
 
@@ -7,19 +7,28 @@
 
 package org.dom4j.jaxb;
 
-import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
 
-import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBException;
 import jakarta.xml.bind.Marshaller;
 import jakarta.xml.bind.Unmarshaller;
-import javax.xml.transform.Source;
-import javax.xml.transform.stream.StreamSource;
+import jakarta.xml.bind.UnmarshallerHandler;
 
+import org.dom4j.Namespace;
 import org.dom4j.dom.DOMDocument;
+import org.dom4j.io.SAXWriter;
+import org.xml.sax.SAXException;
 
 /**
- * DOCUMENT ME!
+ * Marshals and unmarshals DOM4J elements with the contexts of the
+ * {@link JAXBContextCache}. The context is looked up once per instance, and
+ * each call borrows a marshaller or unmarshaller from the pools of the cache,
+ * so only the <code>marshal</code> and <code>unmarshal</code> methods of this
+ * class may be called from concurrent threads. {@link JAXBReader},
+ * {@link JAXBWriter} and {@link JAXBModifier} are not thread safe, as each of
+ * them reads or writes through a single <code>SAXReader</code> or
+ * <code>XMLWriter</code>.
  *
  * @author Wonne Keysers (Realsoftware.be)
  */
@@ -28,11 +37,7 @@ abstract class JAXBSupport {
 
     private ClassLoader classloader;
 
-    private JAXBContext jaxbContext;
-
-    private Marshaller marshaller;
-
-    private Unmarshaller unmarshaller;
+    private volatile JAXBContextCache.Pool pool;
 
     public JAXBSupport(String contextPath) {
         this.contextPath = contextPath;
@@ -57,15 +62,25 @@ abstract class JAXBSupport {
      */
     protected org.dom4j.Element marshal(jakarta.xml.bind.Element element)
             throws JAXBException {
-        DOMDocument doc = new DOMDocument();
-        getMarshaller().marshal(element, doc);
+        JAXBContextCache.Pool contextPool = getPool();
+        Marshaller marshaller = contextPool.borrowMarshaller();
 
-        return doc.getRootElement();
+        try {
+            DOMDocument doc = new DOMDocument();
+            marshaller.marshal(element, doc);
+
+            return doc.getRootElement();
+        } finally {
+            contextPool.release(marshaller);
+        }
     }
 
     /**
      * Unmarshalls the specified DOM4J {@link org.dom4j.Element}into a {@link
-     * jakarta.xml.bind.Element}
+     * jakarta.xml.bind.Element}. The SAX events of the element are fed straight
+     * to the unmarshaller, so the element is neither written as text nor
+     * parsed again. The namespaces declared by the ancestors of the element
+     * are in scope, so that prefixes used in attribute values resolve.
      *
      * @param element
      *            the DOM4J element to unmarshall
@@ -77,37 +92,89 @@ abstract class JAXBSupport {
      */
     protected jakarta.xml.bind.Element unmarshal(org.dom4j.Element element)
             throws JAXBException {
-        Source source = new StreamSource(new StringReader(element.asXML()));
+        List<Namespace> namespaces = new ArrayList<Namespace>();
+
+        for (org.dom4j.Element parent = element.getParent(); parent != null;
+                parent = parent.getParent()) {
+            for (Namespace namespace : parent.declaredNamespaces()) {
+                if (!isDeclared(namespaces, namespace.getPrefix())) {
+                    namespaces.add(namespace);
+                }
+            }
+        }
 
-        return (jakarta.xml.bind.Element) getUnmarshaller().unmarshal(source);
-    }
+        Unmarshaller unmarshaller = borrowUnmarshaller();
+
+        try {
+            UnmarshallerHandler handler = unmarshaller.getUnmarshallerHandler();
+            handler.startDocument();
 
-    private Marshaller getMarshaller() throws JAXBException {
-        if (marshaller == null) {
-            marshaller = getContext().createMarshaller();
+            for (Namespace namespace : namespaces) {
+                handler.startPrefixMapping(namespace.getPrefix(),
+                        namespace.getURI());
+            }
+
+            new SAXWriter(handler).write(element);
+
+            for (int i = namespaces.size() - 1; i >= 0; i--) {
+                handler.endPrefixMapping(namespaces.get(i).getPrefix());
+            }
+
+            handler.endDocument();
+
+            return (jakarta.xml.bind.Element) handler.getResult();
+        } catch (SAXException ex) {
+            throw new JAXBException(ex);
+        } finally {
+            releaseUnmarshaller(unmarshaller);
         }
+    }
 
-        return marshaller;
+    /**
+     * Borrows an unmarshaller from the pool of the context. The unmarshaller
+     * must be given back with {@link #releaseUnmarshaller(Unmarshaller)} once
+     * its handler has unmarshalled its fragment.
+     *
+     * @return an unmarshaller which is not used by another thread
+     *
+     * @throws JAXBException
+     *             when an error occurs
+     */
+    Unmarshaller borrowUnmarshaller() throws JAXBException {
+        return getPool().borrowUnmarshaller();
+    }
+
+    /**
+     * Gives back an unmarshaller borrowed with {@link #borrowUnmarshaller()}.
+     *
+     * @param unmarshaller
+     *            the unmarshaller, which must not be used any more
+     */
+    void releaseUnmarshaller(Unmarshaller unmarshaller) {
+        pool.release(unmarshaller);
     }
 
-    private Unmarshaller getUnmarshaller() throws JAXBException {
-        if (unmarshaller == null) {
-            unmarshaller = getContext().createUnmarshaller();
+    private static boolean isDeclared(List<Namespace> namespaces,
+            String prefix) {
+        for (Namespace namespace : namespaces) {
+            if (namespace.getPrefix().equals(prefix)) {
+                return true;
+            }
         }
 
-        return unmarshaller;
+        return false;
     }
 
-    private JAXBContext getContext() throws JAXBException {
-        if (jaxbContext == null) {
-            if (classloader == null) {
-                jaxbContext = JAXBContext.newInstance(contextPath);
-            } else {
-                jaxbContext = JAXBContext.newInstance(contextPath, classloader);
-            }
+    private JAXBContextCache.Pool getPool() throws JAXBException {
+        JAXBContextCache.Pool contextPool = pool;
+
+        if (contextPool == null) {
+            contextPool = JAXBContextCache.getInstance().getPool(contextPath,
+                    classloader);
+            pool = contextPool;
         }
 
-        return jaxbContext;
+        return contextPool;
     }
 }
 
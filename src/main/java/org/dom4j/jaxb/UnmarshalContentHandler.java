@@ -0,0 +1,284 @@
+package org.dom4j.jaxb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+import jakarta.xml.bind.UnmarshallerHandler;
+
+import org.dom4j.DocumentFactory;
+import org.dom4j.ElementHandler;
+import org.dom4j.io.SAXContentHandler;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+/**
+ * <p>
+ * <code>UnmarshalContentHandler</code> builds the DOM4J tree of a document,
+ * except for the elements at the paths of the registered
+ * {@link JAXBObjectHandler}s. The parse events of those elements are fed
+ * straight to an unmarshaller, so the elements are never created. The paths
+ * are absolute paths of element names, such as <code>/order/item</code>.
+ * </p>
+ */
+final class UnmarshalContentHandler extends SAXContentHandler {
+    private final JAXBSupport support;
+
+    /** The root of the tree of the registered paths */
+    private final PathNode root = new PathNode();
+
+    /** The path nodes of the open elements, or null below the paths */
+    private PathNode[] nodes = new PathNode[16];
+
+    /** The number of open elements, outside of an unmarshalled element */
+    private int depth;
+
+    /** The prefixes and URIs of the namespaces in scope */
+    private final List<String> namespaces = new ArrayList<String>();
+
+    /** The unmarshaller borrowed for the element being unmarshalled */
+    private Unmarshaller borrowed;
+
+    /** The handler of the element being unmarshalled, or null */
+    private UnmarshallerHandler unmarshaller;
+
+    private JAXBObjectHandler objectHandler;
+
+    /** The number of open elements within the unmarshalled element */
+    private int unmarshalDepth;
+
+    UnmarshalContentHandler(JAXBSupport support,
+            Map<String, JAXBObjectHandler> objectHandlers,
+            DocumentFactory documentFactory, ElementHandler elementHandler) {
+        super(documentFactory, elementHandler);
+        this.support = support;
+
+        for (Map.Entry<String, JAXBObjectHandler> entry : objectHandlers
+                .entrySet()) {
+            PathNode node = root;
+
+            for (String name : entry.getKey().split("/")) {
+                if (name.length() > 0) {
+                    node = node.getOrCreateChild(name);
+                }
+            }
+
+            node.handler = entry.getValue();
+        }
+    }
+
+    public void startDocument() throws SAXException {
+        super.startDocument();
+        Arrays.fill(nodes, null);
+        depth = 0;
+        namespaces.clear();
+        borrowed = null;
+        unmarshaller = null;
+        objectHandler = null;
+        unmarshalDepth = 0;
+    }
+
+    public void startPrefixMapping(String prefix, String uri)
+            throws SAXException {
+        if (unmarshaller != null) {
+            unmarshaller.startPrefixMapping(prefix, uri);
+        } else {
+            namespaces.add(prefix);
+            namespaces.add(uri);
+            super.startPrefixMapping(prefix, uri);
+        }
+    }
+
+    public void endPrefixMapping(String prefix) throws SAXException {
+        if (unmarshaller != null) {
+            unmarshaller.endPrefixMapping(prefix);
+        } else {
+            for (int i = namespaces.size() - 2; i >= 0; i -= 2) {
+                if (namespaces.get(i).equals(prefix)) {
+                    namespaces.remove(i + 1);
+                    namespaces.remove(i);
+
+                    break;
+                }
+            }
+
+            super.endPrefixMapping(prefix);
+        }
+    }
+
+    public void startElement(String namespaceURI, String localName,
+            String qualifiedName, Attributes attributes) throws SAXException {
+        if (unmarshaller != null) {
+            unmarshalDepth++;
+            unmarshaller.startElement(namespaceURI, localName, qualifiedName,
+                    attributes);
+
+            return;
+        }
+
+        PathNode parent = (depth == 0) ? root : nodes[depth - 1];
+        PathNode node = (parent != null) ? parent.getChild(name(localName,
+                qualifiedName)) : null;
+
+        if ((node != null) && (node.handler != null)) {
+            startUnmarshal(node.handler);
+            unmarshaller.startElement(namespaceURI, localName, qualifiedName,
+                    attributes);
+
+            return;
+        }
+
+        if (depth == nodes.length) {
+            nodes = Arrays.copyOf(nodes, depth * 2);
+        }
+
+        nodes[depth++] = node;
+        super.startElement(namespaceURI, localName, qualifiedName, attributes);
+    }
+
+    public void endElement(String namespaceURI, String localName,
+            String qName) throws SAXException {
+        if (unmarshaller != null) {
+            unmarshaller.endElement(namespaceURI, localName, qName);
+
+            if (--unmarshalDepth == 0) {
+                endUnmarshal();
+            }
+
+            return;
+        }
+
+        nodes[--depth] = null;
+        super.endElement(namespaceURI, localName, qName);
+    }
+
+    public void characters(char[] ch, int start, int end) throws SAXException {
+        if (unmarshaller != null) {
+            unmarshaller.characters(ch, start, end);
+        } else {
+            super.characters(ch, start, end);
+        }
+    }
+
+    public void ignorableWhitespace(char[] ch, int start, int end)
+            throws SAXException {
+        if (unmarshaller != null) {
+            unmarshaller.ignorableWhitespace(ch, start, end);
+        } else {
+            super.ignorableWhitespace(ch, start, end);
+        }
+    }
+
+    public void processingInstruction(String target, String data)
+            throws SAXException {
+        if (unmarshaller != null) {
+            unmarshaller.processingInstruction(target, data);
+        } else {
+            super.processingInstruction(target, data);
+        }
+    }
+
+    public void startCDATA() throws SAXException {
+        if (unmarshaller == null) {
+            super.startCDATA();
+        }
+    }
+
+    public void endCDATA() throws SAXException {
+        if (unmarshaller == null) {
+            super.endCDATA();
+        }
+    }
+
+    public void comment(char[] ch, int start, int end) throws SAXException {
+        if (unmarshaller == null) {
+            super.comment(ch, start, end);
+        }
+    }
+
+    private void startUnmarshal(JAXBObjectHandler handler)
+            throws SAXException {
+        // keep the text before the element apart from the text after it
+        completeCurrentTextNode();
+
+        try {
+            borrowed = support.borrowUnmarshaller();
+            unmarshaller = borrowed.getUnmarshallerHandler();
+        } catch (JAXBException ex) {
+            throw new JAXBRuntimeException(ex);
+        }
+
+        objectHandler = handler;
+        unmarshalDepth = 1;
+        unmarshaller.startDocument();
+
+        for (int i = 0, size = namespaces.size(); i < size; i += 2) {
+            unmarshaller.startPrefixMapping(namespaces.get(i), namespaces
+                    .get(i + 1));
+        }
+    }
+
+    private void endUnmarshal() throws SAXException {
+        UnmarshallerHandler handler = unmarshaller;
+        unmarshaller = null;
+
+        for (int i = namespaces.size() - 2; i >= 0; i -= 2) {
+            handler.endPrefixMapping(namespaces.get(i));
+        }
+
+        handler.endDocument();
+
+        try {
+            objectHandler.handleObject((jakarta.xml.bind.Element) handler
+                    .getResult());
+        } catch (Exception ex) {
+            throw new JAXBRuntimeException(ex);
+        } finally {
+            support.releaseUnmarshaller(borrowed);
+            borrowed = null;
+        }
+    }
+
+    private static String name(String localName, String qualifiedName) {
+        if ((localName != null) && (localName.length() > 0)) {
+            return localName;
+        }
+
+        int index = qualifiedName.indexOf(':');
+
+        return (index > 0) ? qualifiedName.substring(index + 1)
+                : qualifiedName;
+    }
+
+    /**
+     * A step of the registered paths.
+     */
+    private static final class PathNode {
+        private Map<String, PathNode> children;
+
+        private JAXBObjectHandler handler;
+
+        PathNode getChild(String name) {
+            return (children != null) ? children.get(name) : null;
+        }
+
+        PathNode getOrCreateChild(String name) {
+            if (children == null) {
+                children = new HashMap<String, PathNode>();
+            }
+
+            PathNode child = children.get(name);
+
+            if (child == null) {
+                child = new PathNode();
+                children.put(name, child);
+            }
+
+            return child;
+        }
+    }
+}
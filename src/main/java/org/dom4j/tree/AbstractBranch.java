@@ -254,22 +254,37 @@ public abstract class AbstractBranch extends AbstractNode implements Branch {
     }
 
     public Element elementByID(String elementID) {
-        for (int i = 0, size = nodeCount(); i < size; i++) {
-            Node node = node(i);
+        // search the descendants in document order, without recursion
+        TreeCursor cursor = new TreeCursor(this);
+        cursor.next();
 
-            if (node instanceof Element) {
-                Element element = (Element) node;
-                String id = elementID(element);
+        while (cursor.next()) {
+            Node node = cursor.getNode();
 
-                if ((id != null) && id.equals(elementID)) {
-                    return element;
-                } else {
-                    element = element.elementByID(elementID);
+            if (cursor.isEnd() || (node.getNodeType() != ELEMENT_NODE)) {
+                continue;
+            }
 
-                    if (element != null) {
-                        return element;
-                    }
+            Element element = (Element) node;
+
+            // each element is checked by its parent, the descendants of
+            // the children are walked unless their class searches itself
+            AbstractBranch parent = (cursor.getDepth() == 1) ? this
+                    : (AbstractBranch) element.getParent();
+            String id = parent.elementID(element);
+
+            if ((id != null) && id.equals(elementID)) {
+                return element;
+            }
+
+            if (AbstractElement.isRecursiveWalking(element)) {
+                element = element.elementByID(elementID);
+
+                if (element != null) {
+                    return element;
                 }
+
+                cursor.skipContent();
             }
         }
 
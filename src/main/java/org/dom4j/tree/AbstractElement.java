@@ -39,6 +39,27 @@ public abstract class AbstractElement extends AbstractBranch implements
 
 	protected static final boolean USE_STRINGVALUE_SEPARATOR = false;
 
+	/**
+	 * Whether an element class overrides any of the methods which visit,
+	 * normalize or search an element or compute its string value, in which
+	 * case these operations go through them rather than walking its content
+	 * with a {@link TreeCursor}
+	 */
+	private static final ClassValue<Boolean> RECURSIVE_WALKING =
+					new ClassValue<Boolean>() {
+						protected Boolean computeValue(Class<?> type) {
+							return !AbstractElement.class.isAssignableFrom(type)
+											|| isOverridden(type, "accept", Visitor.class)
+											|| isOverridden(type, "getStringValue")
+											|| isOverridden(type, "getDescendantStringValue")
+											|| isOverridden(type, "getContentAsStringValue",
+															Object.class)
+											|| isOverridden(type, "normalize")
+											|| isOverridden(type, "elementByID", String.class)
+											|| isOverridden(type, "elementID", Element.class);
+						}
+					};
+
 	public AbstractElement() {
 	}
 
@@ -165,26 +186,37 @@ public abstract class AbstractElement extends AbstractBranch implements
 	/**
 	 * <p>
 	 * <code>accept</code> method is the <code>Visitor Pattern</code>
-	 * method.
+	 * method. The subtree is walked with a {@link TreeCursor}, so its depth is
+	 * not bounded by the stack; each element is visited before its attributes
+	 * and its content. Elements whose class overrides this method are visited
+	 * through it.
 	 * </p>
 	 *
 	 * @param visitor <code>Visitor</code> is the visitor.
 	 */
 	public void accept(Visitor visitor) {
-		visitor.visit(this);
+		TreeCursor cursor = new TreeCursor(this);
 
-		// visit attributes
-		for (int i = 0, size = attributeCount(); i < size; i++) {
-			Attribute attribute = attribute(i);
+		while (cursor.next()) {
+			if (cursor.isEnd()) {
+				continue;
+			}
 
-			visitor.visit(attribute);
-		}
+			Node node = cursor.getNode();
 
-		// visit content
-		for (int i = 0, size = nodeCount(); i < size; i++) {
-			Node node = node(i);
+			if ((node.getNodeType() == ELEMENT_NODE)
+							&& ((node == this) || !isRecursiveWalking(node))) {
+				Element element = (Element) node;
+				visitor.visit(element);
 
-			node.accept(visitor);
+				// visit attributes
+				for (int i = 0, size = element.attributeCount(); i < size; i++) {
+					visitor.visit(element.attribute(i));
+				}
+			} else {
+				node.accept(visitor);
+				cursor.skipContent();
+			}
 		}
 	}
 
@@ -587,6 +619,8 @@ public abstract class AbstractElement extends AbstractBranch implements
 			if (copy != null) {
 				list.remove(copy);
 
+				DefaultDocument.elementModified(this);
+
 				answer = true;
 			}
 		}
@@ -1029,31 +1063,131 @@ public abstract class AbstractElement extends AbstractBranch implements
 		int size = list.size();
 
 		if (size > 0) {
-			if (size == 1) {
+			Node node = list.get(0);
+
+			if ((size == 1) && (node.getNodeType() != ELEMENT_NODE)) {
 				// optimised to avoid StringBuffer creation
-				return getContentAsStringValue(list.get(0));
-			} else {
-				StringBuilder buffer = new StringBuilder();
+				return getContentAsStringValue(node);
+			}
 
-				for (Node node : list) {
-					String string = getContentAsStringValue(node);
+			return getDescendantStringValue();
+		}
 
-					if (string.length() > 0) {
-						if (USE_STRINGVALUE_SEPARATOR) {
-							if (buffer.length() > 0) {
-								buffer.append(' ');
-							}
-						}
+		return "";
+	}
+
+	/**
+	 * Concatenates the string values of the content of this element. Unless
+	 * the class of this element overrides the methods computing string values,
+	 * the subtree is walked with a {@link TreeCursor} rather than recursively.
+	 *
+	 * @return the string value of the content of this element
+	 */
+	protected String getDescendantStringValue() {
+		String separator = USE_STRINGVALUE_SEPARATOR ? " " : null;
 
-						buffer.append(string);
+		if (isRecursiveWalking(this)) {
+			StringBuilder buffer = new StringBuilder();
+
+			for (int i = 0, size = nodeCount(); i < size; i++) {
+				appendStringValue(buffer, getContentAsStringValue(node(i)),
+								separator);
+			}
+
+			return buffer.toString();
+		}
+
+		return getDescendantStringValue(separator);
+	}
+
+	/**
+	 * Walks the subtree of this element with a {@link TreeCursor} and
+	 * concatenates the string values of its text, CDATA and entity nodes, and
+	 * of the elements whose class computes them itself. With a separator,
+	 * the result is the same as joining the non empty string values of the
+	 * children of each element with it.
+	 *
+	 * @param separator the text put between string values or null
+	 *
+	 * @return the string value of the content of this element
+	 */
+	String getDescendantStringValue(String separator) {
+		StringBuilder buffer = new StringBuilder();
+		TreeCursor cursor = new TreeCursor(this);
+
+		while (cursor.next()) {
+			if (cursor.isEnd()) {
+				continue;
+			}
+
+			Node node = cursor.getNode();
+
+			switch (node.getNodeType()) {
+				case ELEMENT_NODE:
+
+					if ((node != this) && isRecursiveWalking(node)) {
+						appendStringValue(buffer, node.getStringValue(), separator);
+						cursor.skipContent();
 					}
-				}
 
-				return buffer.toString();
+					break;
+
+				case CDATA_SECTION_NODE:
+				case ENTITY_REFERENCE_NODE:
+				case TEXT_NODE:
+					appendStringValue(buffer, node.getStringValue(), separator);
+
+					break;
+
+				default:
+					break;
 			}
 		}
 
-		return "";
+		return buffer.toString();
+	}
+
+	/**
+	 * Appends a string value, separated from the previous one if a separator
+	 * is given. Empty string values are left out, so that a string value of
+	 * nested elements is separated in the same way as the string values of
+	 * its parts would be.
+	 */
+	private static void appendStringValue(StringBuilder buffer, String string,
+					String separator) {
+		if (string.length() > 0) {
+			if ((separator != null) && (buffer.length() > 0)) {
+				buffer.append(separator);
+			}
+
+			buffer.append(string);
+		}
+	}
+
+	/**
+	 * Returns whether the class of the given node overrides the methods which
+	 * operate on the subtree of an element, so that they have to be called
+	 * rather than walking its content.
+	 */
+	static boolean isRecursiveWalking(Node node) {
+		return RECURSIVE_WALKING.get(node.getClass());
+	}
+
+	private static boolean isOverridden(Class<?> type, String name,
+					Class<?>... parameterTypes) {
+		// DefaultElement only overrides them to read its content faster
+		for (Class<?> c = type; (c != AbstractElement.class)
+						&& (c != DefaultElement.class); c = c.getSuperclass()) {
+			try {
+				c.getDeclaredMethod(name, parameterTypes);
+
+				return true;
+			} catch (NoSuchMethodException e) {
+				// look in the superclass
+			}
+		}
+
+		return false;
 	}
 
 	/**
@@ -1074,10 +1208,41 @@ public abstract class AbstractElement extends AbstractBranch implements
 	 * @since DOM Level 2
 	 */
 	public void normalize() {
+		TreeCursor cursor = new TreeCursor(this);
+
+		while (cursor.next()) {
+			Node node = cursor.getNode();
+
+			if (cursor.isEnd() || (node.getNodeType() != ELEMENT_NODE)) {
+				continue;
+			}
+
+			// the content of an element is normalized before it is walked
+			if ((node == this) || !isRecursiveWalking(node)) {
+				if (!((AbstractElement) node).normalizeContent()) {
+					cursor.skipContent();
+				}
+			} else {
+				((Element) node).normalize();
+				cursor.skipContent();
+			}
+		}
+	}
+
+	/**
+	 * Merges the adjacent <code>Text</code> nodes of the content of this
+	 * element and removes the empty ones, without normalizing the child
+	 * elements.
+	 *
+	 * @return true if the content contains elements
+	 */
+	protected boolean normalizeContent() {
 		List<Node> content = contentList();
 
 		Text previousText = null;
 
+		boolean elements = false;
+
 		int i = 0;
 
 		while (i < content.size()) {
@@ -1104,10 +1269,8 @@ public abstract class AbstractElement extends AbstractBranch implements
 					}
 				}
 			} else {
-				if (node instanceof Element) {
-					Element element = (Element) node;
-
-					element.normalize();
+				if (node.getNodeType() == ELEMENT_NODE) {
+					elements = true;
 				}
 
 				previousText = null;
@@ -1115,6 +1278,8 @@ public abstract class AbstractElement extends AbstractBranch implements
 				i++;
 			}
 		}
+
+		return elements;
 	}
 
 	public String elementText(String name) {
@@ -1426,6 +1591,8 @@ public abstract class AbstractElement extends AbstractBranch implements
 	protected void childAdded(Node node) {
 		if (node != null) {
 			node.setParent(this);
+
+			idsModified(node);
 		}
 	}
 
@@ -1434,6 +1601,20 @@ public abstract class AbstractElement extends AbstractBranch implements
 			node.setParent(null);
 
 			node.setDocument(null);
+
+			idsModified(node);
+		}
+	}
+
+	/**
+	 * Lets the document count the addition or removal of an element or
+	 * attribute, which may change the element IDs.
+	 */
+	private void idsModified(Node node) {
+		short type = node.getNodeType();
+
+		if ((type == ELEMENT_NODE) || (type == ATTRIBUTE_NODE)) {
+			DefaultDocument.elementModified(this);
 		}
 	}
 
@@ -9,6 +9,7 @@ package org.dom4j.tree;
 
 import org.dom4j.*;
 import org.dom4j.rule.Pattern;
+import org.dom4j.xpath.CompiledXPath;
 
 import java.io.IOException;
 import java.io.Serializable;
@@ -34,6 +35,19 @@ public abstract class AbstractNode implements Node, Cloneable, Serializable {
     private static final DocumentFactory DOCUMENT_FACTORY = DocumentFactory
             .getInstance();
 
+    /** Whether a node class overrides {@link #createXPath(String)} */
+    private static final ClassValue<Boolean> CUSTOM_CREATE_XPATH =
+        new ClassValue<Boolean>() {
+            protected Boolean computeValue(Class<?> type) {
+                try {
+                    return type.getMethod("createXPath", String.class)
+                            .getDeclaringClass() != AbstractNode.class;
+                } catch (NoSuchMethodException e) {
+                    return true;
+                }
+            }
+        };
+
     public AbstractNode() {
     }
 
@@ -150,12 +164,24 @@ public abstract class AbstractNode implements Node, Cloneable, Serializable {
 
     // XPath methods
     public Object selectObject(String xpathExpression) {
+        CompiledXPath compiled = getCachedXPath(xpathExpression);
+
+        if (compiled != null) {
+            return compiled.evaluate(this);
+        }
+
         XPath xpath = createXPath(xpathExpression);
 
         return xpath.evaluate(this);
     }
 
     public List<Node> selectNodes(String xpathExpression) {
+        CompiledXPath compiled = getCachedXPath(xpathExpression);
+
+        if (compiled != null) {
+            return compiled.selectNodes(this);
+        }
+
         XPath xpath = createXPath(xpathExpression);
 
         return xpath.selectNodes(this);
@@ -175,18 +201,36 @@ public abstract class AbstractNode implements Node, Cloneable, Serializable {
     }
 
     public Node selectSingleNode(String xpathExpression) {
+        CompiledXPath compiled = getCachedXPath(xpathExpression);
+
+        if (compiled != null) {
+            return compiled.selectSingleNode(this);
+        }
+
         XPath xpath = createXPath(xpathExpression);
 
         return xpath.selectSingleNode(this);
     }
 
     public String valueOf(String xpathExpression) {
+        CompiledXPath compiled = getCachedXPath(xpathExpression);
+
+        if (compiled != null) {
+            return compiled.valueOf(this);
+        }
+
         XPath xpath = createXPath(xpathExpression);
 
         return xpath.valueOf(this);
     }
 
     public Number numberValueOf(String xpathExpression) {
+        CompiledXPath compiled = getCachedXPath(xpathExpression);
+
+        if (compiled != null) {
+            return compiled.numberValueOf(this);
+        }
+
         XPath xpath = createXPath(xpathExpression);
 
         return xpath.numberValueOf(this);
@@ -202,6 +246,24 @@ public abstract class AbstractNode implements Node, Cloneable, Serializable {
         return getDocumentFactory().createXPath(xpathExpression);
     }
 
+    /**
+     * Returns the compiled expression used by the XPath convenience methods
+     * from the cache of the document factory.
+     * 
+     * @param xpathExpression
+     *            is the XPath expression
+     * 
+     * @return the cached expression or null if {@link #createXPath(String)}
+     *         must be used, e.g. because it has been overridden
+     */
+    protected CompiledXPath getCachedXPath(String xpathExpression) {
+        if (CUSTOM_CREATE_XPATH.get(getClass())) {
+            return null;
+        }
+
+        return getDocumentFactory().getCachedXPath(xpathExpression);
+    }
+
     public NodeFilter createXPathFilter(String patternText) {
         return getDocumentFactory().createXPathFilter(patternText);
     }
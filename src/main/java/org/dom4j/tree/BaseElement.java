@@ -94,10 +94,13 @@ public class BaseElement extends AbstractElement {
 
     public void setQName(QName name) {
         this.qname = name;
+        DefaultDocument.elementModified(this);
+        DefaultElement.elementRenamed(this);
     }
 
     public void clearContent() {
         contentList().clear();
+        DefaultDocument.elementModified(this);
     }
 
     public void setContent(List<Node> content) {
@@ -106,6 +109,8 @@ public class BaseElement extends AbstractElement {
         if (content instanceof ContentListFacade) {
             this.content = ((ContentListFacade<Node>) content).getBackingList();
         }
+
+        DefaultDocument.elementModified(this);
     }
 
     public void setAttributes(List<Attribute> attributes) {
@@ -114,6 +119,8 @@ public class BaseElement extends AbstractElement {
         if (attributes instanceof ContentListFacade) {
             this.attributes = ((ContentListFacade<Attribute>) attributes).getBackingList();
         }
+
+        DefaultDocument.elementModified(this);
     }
 
     // Implementation methods
@@ -0,0 +1,229 @@
+package org.dom4j.tree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dom4j.DocumentFactory;
+import org.dom4j.Namespace;
+import org.dom4j.QName;
+
+/**
+ * <p>
+ * <code>ConcurrentQNameCache</code> is a {@link QNameCache} whose intern
+ * table is shared by all threads. Unlike the thread local caches of the base
+ * class, a name looked up from two different threads resolves to the very same
+ * {@link QName} instance, so identity comparisons work across threads and each
+ * name is only stored once.
+ * </p>
+ *
+ * <p>
+ * Lookups never block; new entries are published with
+ * {@link ConcurrentMap#putIfAbsent(Object, Object)}. The table is keyed by
+ * {@link Namespace} (URI and prefix) and local name. It is bounded by a
+ * maximum number of entries: once that limit is reached further names are
+ * still returned, but they are no longer interned, which protects long running
+ * processes from documents with an unbounded vocabulary.
+ * </p>
+ *
+ * @see DocumentFactory#setSharedQNameCache(boolean)
+ */
+public class ConcurrentQNameCache extends QNameCache {
+
+    /** The default maximum number of interned QNames */
+    public static final int DEFAULT_MAX_SIZE = 1 << 16;
+
+    /** Shared table of {@link QName} instances with no namespace */
+    private final ConcurrentMap<String, QName> noNamespaceTable =
+        new ConcurrentHashMap<String, QName>();
+
+    /** Shared tables of {@link QName} instances indexed by namespace */
+    private final ConcurrentMap<Namespace, ConcurrentMap<String, QName>> namespaceTable =
+        new ConcurrentHashMap<Namespace, ConcurrentMap<String, QName>>();
+
+    /** Number of QNames currently interned */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /** Maximum number of QNames to intern */
+    private final int maxSize;
+
+    /** The document factory associated with new QName instances */
+    private final DocumentFactory documentFactory;
+
+    public ConcurrentQNameCache() {
+        this(null, DEFAULT_MAX_SIZE);
+    }
+
+    public ConcurrentQNameCache(DocumentFactory documentFactory) {
+        this(documentFactory, DEFAULT_MAX_SIZE);
+    }
+
+    public ConcurrentQNameCache(DocumentFactory documentFactory, int maxSize) {
+        super(documentFactory);
+
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Illegal maximum size: "
+                    + maxSize);
+        }
+
+        this.documentFactory = documentFactory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the maximum number of QName instances this cache will intern
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of QName instances currently interned
+     */
+    public int size() {
+        return size.get();
+    }
+
+    public List<QName> getQNames() {
+        List<QName> answer = new ArrayList<QName>(noNamespaceTable.values());
+
+        for (Map<String, QName> map : namespaceTable.values()) {
+            answer.addAll(map.values());
+        }
+
+        return answer;
+    }
+
+    public QName get(String name) {
+        if (name == null) {
+            name = "";
+        }
+
+        QName answer = noNamespaceTable.get(name);
+
+        if (answer == null) {
+            answer = createQName(name);
+            answer.setDocumentFactory(documentFactory);
+            answer = publish(noNamespaceTable, name, answer);
+        }
+
+        return answer;
+    }
+
+    public QName get(String name, Namespace namespace) {
+        if (name == null) {
+            name = "";
+        }
+
+        ConcurrentMap<String, QName> table = getNamespaceTable(namespace);
+        QName answer = table.get(name);
+
+        if (answer == null) {
+            answer = createQName(name, namespace);
+            answer.setDocumentFactory(documentFactory);
+            answer = publish(table, name, answer);
+        }
+
+        return answer;
+    }
+
+    public QName get(String localName, Namespace namespace, String qName) {
+        if (localName == null) {
+            localName = "";
+        }
+
+        ConcurrentMap<String, QName> table = getNamespaceTable(namespace);
+        QName answer = table.get(localName);
+
+        if (answer == null) {
+            answer = createQName(localName, namespace, qName);
+            answer.setDocumentFactory(documentFactory);
+            answer = publish(table, localName, answer);
+        }
+
+        return answer;
+    }
+
+    public QName getTrusted(String localName, Namespace namespace) {
+        if (localName == null) {
+            localName = "";
+        }
+
+        ConcurrentMap<String, QName> table = getNamespaceTable(namespace);
+        QName answer = table.get(localName);
+
+        if (answer == null) {
+            answer = createTrustedQName(localName, namespace);
+            answer.setDocumentFactory(documentFactory);
+            answer = publish(table, localName, answer);
+        }
+
+        return answer;
+    }
+
+    protected Map<String, QName> getNamespaceCache(Namespace namespace) {
+        return getNamespaceTable(namespace);
+    }
+
+    /**
+     * @param namespace
+     *            the namespace of the table
+     *
+     * @return the shared table for the given namespace. If one does not
+     *         currently exist it is created.
+     */
+    protected ConcurrentMap<String, QName> getNamespaceTable(Namespace namespace) {
+        if ((namespace == null) || (namespace == Namespace.NO_NAMESPACE)) {
+            return noNamespaceTable;
+        }
+
+        ConcurrentMap<String, QName> answer = namespaceTable.get(namespace);
+
+        if (answer == null) {
+            answer = new ConcurrentHashMap<String, QName>();
+
+            ConcurrentMap<String, QName> existing = namespaceTable.putIfAbsent(
+                    namespace, answer);
+
+            if (existing != null) {
+                answer = existing;
+            }
+        }
+
+        return answer;
+    }
+
+    /**
+     * Adds the given QName to the table unless another thread got there first
+     * or the cache is full.
+     *
+     * @param table
+     *            the table to add the QName to
+     * @param name
+     *            the local name of the QName
+     * @param qname
+     *            the newly created QName
+     *
+     * @return the interned QName, or the given one if the cache is full
+     */
+    private QName publish(ConcurrentMap<String, QName> table, String name,
+            QName qname) {
+        if (size.get() >= maxSize) {
+            QName existing = table.get(name);
+            return (existing != null) ? existing : qname;
+        }
+
+        QName existing = table.putIfAbsent(name, qname);
+
+        if (existing != null) {
+            return existing;
+        }
+
+        size.incrementAndGet();
+
+        return qname;
+    }
+}
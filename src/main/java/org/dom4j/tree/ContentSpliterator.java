@@ -0,0 +1,125 @@
+package org.dom4j.tree;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import org.dom4j.Branch;
+import org.dom4j.Node;
+
+/**
+ * <p>
+ * <code>ContentSpliterator</code> is a {@link Spliterator} over the content
+ * of a {@link Branch}, which reads the nodes by index with
+ * {@link Branch#node(int)} and splits at sibling boundaries. It can be used to
+ * process the children of a large element, e.g. the records of a document,
+ * with a parallel stream:
+ * </p>
+ *
+ * <pre>
+ * StreamSupport.stream(new ContentSpliterator(element, 64), true)
+ *         .forEach(record -&gt; process(record));
+ * </pre>
+ *
+ * <p>
+ * The number of nodes is read when the spliterator is created and the content
+ * must not be modified while it is in use. Each half of a split holds at least
+ * the minimum split size, so the size is a lower bound for the number of
+ * nodes each task processes.
+ * </p>
+ *
+ * @see ParallelTreeWalker
+ */
+public final class ContentSpliterator implements Spliterator<Node> {
+    private final Branch branch;
+
+    private final int minSplitSize;
+
+    /** The index of the next node */
+    private int index;
+
+    /** The index after the last node */
+    private final int fence;
+
+    /**
+     * Creates a spliterator over the whole content of the given branch which
+     * splits down to single nodes.
+     *
+     * @param branch
+     *            the branch whose content is traversed
+     */
+    public ContentSpliterator(Branch branch) {
+        this(branch, 1);
+    }
+
+    /**
+     * Creates a spliterator over the whole content of the given branch.
+     *
+     * @param branch
+     *            the branch whose content is traversed
+     * @param minSplitSize
+     *            the minimum number of nodes of each half of a split
+     *
+     * @throws IllegalArgumentException
+     *             if the minimum split size is less than one
+     */
+    public ContentSpliterator(Branch branch, int minSplitSize) {
+        this(branch, 0, branch.nodeCount(), checkSplitSize(minSplitSize));
+    }
+
+    private ContentSpliterator(Branch branch, int index, int fence,
+            int minSplitSize) {
+        this.branch = branch;
+        this.index = index;
+        this.fence = fence;
+        this.minSplitSize = minSplitSize;
+    }
+
+    public boolean tryAdvance(Consumer<? super Node> action) {
+        if (index < fence) {
+            action.accept(branch.node(index++));
+
+            return true;
+        }
+
+        return false;
+    }
+
+    public void forEachRemaining(Consumer<? super Node> action) {
+        int i = index;
+        index = fence;
+
+        for (; i < fence; i++) {
+            action.accept(branch.node(i));
+        }
+    }
+
+    public Spliterator<Node> trySplit() {
+        int size = fence - index;
+
+        if ((size / 2) < minSplitSize) {
+            return null;
+        }
+
+        int start = index;
+        index = start + (size / 2);
+
+        return new ContentSpliterator(branch, start, index, minSplitSize);
+    }
+
+    public long estimateSize() {
+        return fence - index;
+    }
+
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | NONNULL;
+    }
+
+    static int checkSplitSize(int minSplitSize) {
+        if (minSplitSize < 1) {
+            throw new IllegalArgumentException("Invalid minimum split size: "
+                    + minSplitSize);
+        }
+
+        return minSplitSize;
+    }
+}
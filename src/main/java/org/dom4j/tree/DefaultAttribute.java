@@ -86,6 +86,10 @@ public class DefaultAttribute extends FlyweightAttribute {
 
     public void setValue(String value) {
         this.value = value;
+
+        if (parent != null) {
+            DefaultDocument.elementModified(parent);
+        }
     }
 
     public Element getParent() {
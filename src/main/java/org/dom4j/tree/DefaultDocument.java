@@ -8,10 +8,16 @@
 package org.dom4j.tree;
 
 import org.dom4j.*;
+import org.dom4j.dtd.AttributeDecl;
+import org.dom4j.dtd.Decl;
 import org.xml.sax.EntityResolver;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>
@@ -23,6 +29,12 @@ import java.util.List;
  * @version $Revision: 1.34 $
  */
 public class DefaultDocument extends AbstractDocument {
+    /**
+     * Incremented whenever an ID index records the modification count of its
+     * document, see {@link #elementModified(Element)}
+     */
+    private static final AtomicInteger ID_INDEX_EPOCH = new AtomicInteger(1);
+
     /** The name of the document */
     private String name;
 
@@ -32,7 +44,7 @@ public class DefaultDocument extends AbstractDocument {
     /**
      * Store the contents of the document as a lazily created <code>List</code>
      */
-    private List<Node> content;
+    private volatile List<Node> content;
 
     /** The document type for this document */
     private DocumentType docType;
@@ -43,6 +55,24 @@ public class DefaultDocument extends AbstractDocument {
     /** The resolver of URIs */
     private transient EntityResolver entityResolver;
 
+    /** Whether {@link #elementByID(String)} uses an index of the IDs */
+    private boolean indexElementIDs;
+
+    /** The elements indexed by ID or null if it has to be rebuilt */
+    private transient volatile Map<String, Element> idIndex;
+
+    /** The DTD declared ID attribute names indexed by element name */
+    private transient volatile Map<String, String> idAttributes;
+
+    /**
+     * Counts the changes which may change the element IDs: elements and
+     * attributes added or removed, elements renamed and attribute values set
+     */
+    private transient int modificationCount;
+
+    /** The modification count the ID index is complete for, or -1 */
+    private transient volatile int idIndexModificationCount = -1;
+
     public DefaultDocument() {
     }
 
@@ -88,6 +118,8 @@ public class DefaultDocument extends AbstractDocument {
 
     public void setDocType(DocumentType docType) {
         this.docType = docType;
+        this.idAttributes = null;
+        this.modificationCount++;
     }
 
     public Document addDocType(String docTypeName, String publicId,
@@ -114,6 +146,8 @@ public class DefaultDocument extends AbstractDocument {
         DefaultDocument document = (DefaultDocument) super.clone();
         document.rootElement = null;
         document.content = null;
+        document.idIndex = null;
+        document.idIndexModificationCount = -1;
         document.appendContent(this);
 
         return document;
@@ -230,18 +264,277 @@ public class DefaultDocument extends AbstractDocument {
         this.documentFactory = documentFactory;
     }
 
+    /**
+     * Returns whether {@link #elementByID(String)} uses an index of the element
+     * IDs rather than searching the whole document.
+     * 
+     * @return true if the element IDs are indexed
+     */
+    public boolean isIndexElementIDs() {
+        return indexElementIDs;
+    }
+
+    /**
+     * <p>
+     * Sets whether {@link #elementByID(String)} should use an index of the
+     * element IDs. The index is built in a single pass over the document, or
+     * while parsing if {@link #indexElementID(Element)} is called for each new
+     * element, after which an ID is found in constant time.
+     * </p>
+     * 
+     * <p>
+     * The document counts the changes which may change the IDs of its
+     * elements: elements and attributes added or removed, elements renamed and
+     * attribute values set. While the document is unchanged, the index is used
+     * as is, and an unknown ID is not searched again. After a change, each
+     * element found through the index is checked to still belong to this
+     * document and to still have the requested ID, and an unknown ID causes
+     * the index to be rebuilt in one pass.
+     * </p>
+     * 
+     * <p>
+     * When indexing, an element's ID is the value of the attribute declared
+     * with the type <code>ID</code> for it in the DTD, provided the
+     * declarations have been included in the {@link DocumentType}, and the
+     * <code>ID</code> attribute otherwise.
+     * </p>
+     * 
+     * @param indexElementIDs
+     *            whether the element IDs should be indexed
+     */
+    public void setIndexElementIDs(boolean indexElementIDs) {
+        this.indexElementIDs = indexElementIDs;
+        this.idIndex = null;
+        this.idIndexModificationCount = -1;
+    }
+
+    /**
+     * Adds the given element of this document to the ID index. This allows
+     * builders such as {@link org.dom4j.io.SAXContentHandler} to build the
+     * index while the document is created instead of in a separate pass.
+     * 
+     * @param element
+     *            the element to index
+     */
+    public void indexElementID(Element element) {
+        if (indexElementIDs) {
+            if (idIndex == null) {
+                idIndex = new HashMap<String, Element>();
+            }
+
+            // the index is only known to be complete once it is rebuilt
+            idIndexModificationCount = -1;
+
+            putElementID(idIndex, element);
+        }
+    }
+
+    public Element elementByID(String elementID) {
+        if (!indexElementIDs) {
+            return super.elementByID(elementID);
+        }
+
+        Map<String, Element> index = idIndex;
+
+        if (index != null) {
+            Element element = index.get(elementID);
+
+            if (idIndexModificationCount == modificationCount) {
+                // nothing has changed since the index was built
+                return element;
+            }
+
+            if ((element != null) && contains(element)
+                    && elementID.equals(elementID(element))) {
+                return element;
+            }
+        }
+
+        // the index is missing or out of date
+        return buildIDIndex().get(elementID);
+    }
+
     // Implementation methods
     // -------------------------------------------------------------------------
+    protected String elementID(Element element) {
+        if (indexElementIDs) {
+            String attributeName = getIDAttributes().get(
+                    element.getQualifiedName());
+
+            if (attributeName != null) {
+                return element.attributeValue(attributeName);
+            }
+        }
+
+        return super.elementID(element);
+    }
+
+    protected void childAdded(Node node) {
+        super.childAdded(node);
+        modificationCount++;
+    }
+
+    protected void childRemoved(Node node) {
+        super.childRemoved(node);
+        modificationCount++;
+    }
+
+    /**
+     * Records a change of the given element which may change the element IDs
+     * of its document, e.g. an element or attribute added to or removed from
+     * it. The change is counted by the document of the element, if it is a
+     * <code>DefaultDocument</code>.
+     * 
+     * <p>
+     * Each {@link DefaultElement} on the way to the document is stamped with
+     * the current epoch, which changes whenever an ID index records the count
+     * of its document. Reaching an element stamped with the current epoch
+     * means that its document has already counted a change since then, so the
+     * walk stops there, and building a document costs a constant time per
+     * change rather than a walk to the root.
+     * </p>
+     * 
+     * @param element
+     *            the changed element
+     */
+    static void elementModified(Element element) {
+        int epoch = ID_INDEX_EPOCH.get();
+        Element current = element;
+
+        while (true) {
+            if (current instanceof DefaultElement) {
+                DefaultElement defaultElement = (DefaultElement) current;
+
+                if (defaultElement.modificationStamp == epoch) {
+                    return;
+                }
+
+                defaultElement.modificationStamp = epoch;
+            }
+
+            Element parent = current.getParent();
+
+            if (parent == null) {
+                Document document = current.getDocument();
+
+                if (document instanceof DefaultDocument) {
+                    ((DefaultDocument) document).modificationCount++;
+                }
+
+                return;
+            }
+
+            current = parent;
+        }
+    }
+
+    private Map<String, Element> buildIDIndex() {
+        idAttributes = null;
+
+        int count = modificationCount;
+        Map<String, Element> index = new HashMap<String, Element>();
+        Element root = getRootElement();
+
+        if (root != null) {
+            TreeCursor cursor = new TreeCursor(root);
+
+            while (cursor.next()) {
+                Node node = cursor.getNode();
+
+                if (!cursor.isEnd() && (node.getNodeType() == ELEMENT_NODE)) {
+                    putElementID(index, (Element) node);
+                }
+            }
+        }
+
+        idIndex = index;
+        idIndexModificationCount = count;
+
+        // the changes from now on have to reach this document again
+        ID_INDEX_EPOCH.incrementAndGet();
+
+        return index;
+    }
+
+    /**
+     * Returns whether the given element belongs to this document, walking up
+     * its ancestors without recursion.
+     */
+    private boolean contains(Element element) {
+        Element current = element;
+        Element parent = current.getParent();
+
+        while (parent != null) {
+            current = parent;
+            parent = current.getParent();
+        }
+
+        return current.getDocument() == this;
+    }
+
+    private void putElementID(Map<String, Element> index, Element element) {
+        String id = elementID(element);
+
+        // the first element in document order wins, as with a search
+        if ((id != null) && !index.containsKey(id)) {
+            index.put(id, element);
+        }
+    }
+
+    private Map<String, String> getIDAttributes() {
+        Map<String, String> answer = idAttributes;
+
+        if (answer == null) {
+            answer = new HashMap<String, String>();
+
+            if (docType != null) {
+                addIDAttributes(answer, docType.getInternalDeclarations());
+                addIDAttributes(answer, docType.getExternalDeclarations());
+            }
+
+            if (answer.isEmpty()) {
+                answer = Collections.emptyMap();
+            }
+
+            idAttributes = answer;
+        }
+
+        return answer;
+    }
+
+    private static void addIDAttributes(Map<String, String> idAttributes,
+            List<Decl> declarations) {
+        if (declarations != null) {
+            for (Decl declaration : declarations) {
+                if (declaration instanceof AttributeDecl) {
+                    AttributeDecl attributeDecl = (AttributeDecl) declaration;
+
+                    if ("ID".equals(attributeDecl.getType())
+                            && !idAttributes.containsKey(attributeDecl
+                                    .getElementName())) {
+                        idAttributes.put(attributeDecl.getElementName(),
+                                attributeDecl.getAttributeName());
+                    }
+                }
+            }
+        }
+    }
+
     protected List<Node> contentList() {
-        if (content == null) {
-            content = createContentList();
+        List<Node> list = content;
+
+        if (list == null) {
+            // published once complete, as reads may create it concurrently
+            list = createContentList();
 
             if (rootElement != null) {
-                content.add(rootElement);
+                list.add(rootElement);
             }
+
+            content = list;
         }
 
-        return content;
+        return list;
     }
 
     protected void addNode(Node node) {
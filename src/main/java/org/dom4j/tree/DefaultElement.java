@@ -19,6 +19,21 @@ import java.util.List;
  * <code>DefaultElement</code> is the default DOM4J default implementation of
  * an XML element.
  * </p>
+ *
+ * <p>
+ * A tree of <code>DefaultElement</code> nodes, or a {@link DefaultDocument}
+ * holding one, is not synchronized, but once it has been built and safely
+ * published (e.g. handed to other threads through a concurrent collection, an
+ * executor or a {@link java.util.concurrent.ForkJoinPool} task) it may be read
+ * by several threads at once, as long as no thread modifies it. The read
+ * methods may still create internal state lazily, such as the list of a
+ * single content node returned by {@link #content()} or the name index of a
+ * wide element; this state is published safely and the copies created by
+ * racing threads are equivalent. Any modification requires exclusive access
+ * to the tree, and the live lists returned by methods such as
+ * {@link #content()} and {@link #elements()} must only be read. The
+ * {@link ParallelTreeWalker} relies on this contract.
+ * </p>
  * 
  * @author <a href="mailto:jstrachan@apache.org">James Strachan </a>
  * @version $Revision: 1.59 $
@@ -28,6 +43,14 @@ public class DefaultElement extends AbstractElement {
     private static final transient DocumentFactory DOCUMENT_FACTORY = 
             DocumentFactory.getInstance();
 
+    /**
+     * The number of child nodes or attributes from which name based lookups
+     * use a hash index rather than scanning the list. It can be changed with
+     * the <code>org.dom4j.tree.DefaultElement.indexThreshold</code> system
+     * property; zero or a negative value turns indexing off.
+     */
+    protected static final int INDEX_THRESHOLD = getIndexThreshold();
+
     /** The <code>QName</code> for this element */
     private QName qname;
 
@@ -44,10 +67,17 @@ public class DefaultElement extends AbstractElement {
      * for multiple content nodes. The List will be lazily constructed when
      * required.
      */
-    private Object content;
+    private volatile Object content;
 
     /** Lazily constructes list of attributes */
-    private Object attributes;
+    private volatile Object attributes;
+
+    /**
+     * The epoch in which a change of this element or of its descendants has
+     * last been counted by its document, see
+     * {@link DefaultDocument#elementModified(Element)}
+     */
+    transient int modificationStamp;
 
     public DefaultElement(String name) {
         this.qname = DOCUMENT_FACTORY.createQName(name);
@@ -113,6 +143,30 @@ public class DefaultElement extends AbstractElement {
 
     public void setQName(QName name) {
         this.qname = name;
+
+        // the DTD may declare a different ID attribute for the new name
+        DefaultDocument.elementModified(this);
+
+        elementRenamed(this);
+    }
+
+    /**
+     * Discards the name index of the parent of an element which has been
+     * renamed, as it may have indexed the element by its old name.
+     *
+     * @param element
+     *            the renamed element
+     */
+    static void elementRenamed(Element element) {
+        Element parent = element.getParent();
+
+        if (parent instanceof DefaultElement) {
+            Object parentContent = ((DefaultElement) parent).content;
+
+            if (parentContent instanceof IndexedNodeList) {
+                ((IndexedNodeList<?>) parentContent).invalidate();
+            }
+        }
     }
 
     public String getText() {
@@ -138,33 +192,23 @@ public class DefaultElement extends AbstractElement {
             int size = list.size();
 
             if (size > 0) {
-                if (size == 1) {
-                    // optimised to avoid StringBuffer creation
-                    return getContentAsStringValue(list.get(0));
-                } else {
-                    StringBuilder buffer = new StringBuilder();
-
-                    for (Node node : list) {
-                        String string = getContentAsStringValue(node);
-
-                        if (string.length() > 0) {
-                            if (USE_STRINGVALUE_SEPARATOR) {
-                                if (buffer.length() > 0) {
-                                    buffer.append(' ');
-                                }
-                            }
+                Node node = list.get(0);
 
-                            buffer.append(string);
-                        }
-                    }
-
-                    return buffer.toString();
+                if ((size == 1) && (node.getNodeType() != ELEMENT_NODE)) {
+                    // optimised to avoid StringBuffer creation
+                    return getContentAsStringValue(node);
                 }
+
+                return getDescendantStringValue();
             }
-        } else {
-            if (contentShadow != null) {
-                return getContentAsStringValue(contentShadow);
+        } else if (contentShadow instanceof Node) {
+            Node node = (Node) contentShadow;
+
+            if (node.getNodeType() != ELEMENT_NODE) {
+                return getContentAsStringValue(node);
             }
+
+            return getDescendantStringValue();
         }
 
         return "";
@@ -174,6 +218,8 @@ public class DefaultElement extends AbstractElement {
         DefaultElement answer = (DefaultElement) super.clone();
 
         if (answer != this) {
+            answer.modificationStamp = 0;
+
             answer.content = null;
 
             answer.attributes = null;
@@ -197,8 +243,15 @@ public class DefaultElement extends AbstractElement {
             return Namespace.XML_NAMESPACE;
         } else {
             final Object contentShadow = content;
+            IndexedNodeList<Node> index = getIndex(contentShadow);
 
-            if (contentShadow instanceof List) {
+            if (index != null) {
+                Namespace namespace = index.getNamespace(prefix);
+
+                if (namespace != null) {
+                    return namespace;
+                }
+            } else if (contentShadow instanceof List) {
                 List<Node> list = (List<Node>) contentShadow;
 
                 for (Node node : list) {
@@ -488,8 +541,11 @@ public class DefaultElement extends AbstractElement {
 
     public Element element(String name) {
         final Object contentShadow = content;
+        IndexedNodeList<Node> index = getIndex(contentShadow);
 
-        if (contentShadow instanceof List) {
+        if (index != null) {
+            return (Element) index.getByName(name);
+        } else if (contentShadow instanceof List) {
             List<Node> list = (List<Node>) contentShadow;
 
             for (Node node : list) {
@@ -516,8 +572,11 @@ public class DefaultElement extends AbstractElement {
 
     public Element element(QName qName) {
         final Object contentShadow = content;
+        IndexedNodeList<Node> index = getIndex(contentShadow);
 
-        if (contentShadow instanceof List) {
+        if (index != null) {
+            return (Element) index.getByQName(qName);
+        } else if (contentShadow instanceof List) {
             List<Node> list = (List<Node>) contentShadow;
 
             for (Node node : list) {
@@ -588,7 +647,11 @@ public class DefaultElement extends AbstractElement {
             final Object contentShadow = content;
             Node node;
 
-            if (contentShadow instanceof List) {
+            if (contentShadow instanceof AbstractNode) {
+                // a single node, checked against a class first as failing
+                // interface checks are comparatively slow
+                return (index == 0) ? (Node) contentShadow : null;
+            } else if (contentShadow instanceof List) {
                 List<Node> list = (List<Node>) contentShadow;
 
                 if (index >= list.size()) {
@@ -625,7 +688,9 @@ public class DefaultElement extends AbstractElement {
     public int nodeCount() {
         final Object contentShadow = content;
 
-        if (contentShadow instanceof List) {
+        if (contentShadow instanceof AbstractNode) {
+            return 1;
+        } else if (contentShadow instanceof List) {
             List<Node> list = (List<Node>) contentShadow;
 
             return list.size();
@@ -660,6 +725,8 @@ public class DefaultElement extends AbstractElement {
         }
 
         this.attributes = attributes;
+
+        DefaultDocument.elementModified(this);
     }
 
     public Iterator<Attribute> attributeIterator() {
@@ -704,8 +771,11 @@ public class DefaultElement extends AbstractElement {
 
     public Attribute attribute(String name) {
         final Object attributesShadow = this.attributes;
+        IndexedNodeList<Attribute> index = getIndex(attributesShadow);
 
-        if (attributesShadow instanceof List) {
+        if (index != null) {
+            return index.getByName(name);
+        } else if (attributesShadow instanceof List) {
             List<Attribute> list = (List<Attribute>) attributesShadow;
 
             for (Attribute attribute : list) {
@@ -726,8 +796,11 @@ public class DefaultElement extends AbstractElement {
 
     public Attribute attribute(QName qName) {
         final Object attributesShadow = this.attributes;
+        IndexedNodeList<Attribute> index = getIndex(attributesShadow);
 
-        if (attributesShadow instanceof List) {
+        if (index != null) {
+            return index.getByQName(qName);
+        } else if (attributesShadow instanceof List) {
             List<Attribute> list = (List<Attribute>) attributesShadow;
 
             for (Attribute attribute : list) {
@@ -936,6 +1009,56 @@ public class DefaultElement extends AbstractElement {
         this.attributes = attributeList;
     }
 
+    protected List<Node> createContentList() {
+        return createContentList(DEFAULT_CONTENT_LIST_SIZE);
+    }
+
+    protected List<Node> createContentList(int size) {
+        if (INDEX_THRESHOLD > 0) {
+            return new IndexedNodeList<Node>(size, INDEX_THRESHOLD);
+        }
+
+        return super.createContentList(size);
+    }
+
+    protected List<Attribute> createAttributeList(int size) {
+        if (INDEX_THRESHOLD > 0) {
+            return new IndexedNodeList<Attribute>(size, INDEX_THRESHOLD);
+        }
+
+        return super.createAttributeList(size);
+    }
+
+    /**
+     * Returns the given content or attribute list if lookups in it should use
+     * its index.
+     * 
+     * @param shadow
+     *            the content or attributes of this element
+     * 
+     * @return the indexed list or null if the list has to be scanned
+     */
+    private static <T extends Node> IndexedNodeList<T> getIndex(Object shadow) {
+        if (shadow instanceof IndexedNodeList) {
+            IndexedNodeList<T> list = (IndexedNodeList<T>) shadow;
+
+            if (list.isIndexed()) {
+                return list;
+            }
+        }
+
+        return null;
+    }
+
+    private static int getIndexThreshold() {
+        try {
+            return Integer.getInteger(
+                    "org.dom4j.tree.DefaultElement.indexThreshold", 64);
+        } catch (Exception e) {
+            return 64;
+        }
+    }
+
     protected DocumentFactory getDocumentFactory() {
         DocumentFactory factory = qname.getDocumentFactory();
 
@@ -0,0 +1,254 @@
+package org.dom4j.tree;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.dom4j.Attribute;
+import org.dom4j.Element;
+import org.dom4j.Namespace;
+import org.dom4j.Node;
+import org.dom4j.QName;
+
+/**
+ * <p>
+ * <code>IndexedNodeList</code> is the list used by {@link DefaultElement} for
+ * its content and attributes. Once the list grows past a threshold, name based
+ * lookups build a hash index of the elements, attributes and namespaces it
+ * contains, so that finding a child of a wide element no longer scans the
+ * whole list.
+ * </p>
+ *
+ * <p>
+ * The index is built lazily and is kept in sync with the list itself: nodes
+ * appended to the end are added to the index, any other structural change
+ * discards it and it is rebuilt on the next lookup. Each lookup returns the
+ * first node in document order, the same result as a linear scan. Renaming a
+ * {@link DefaultElement} or {@link BaseElement} discards the index of its
+ * parent, other element classes are not known to do so and a list containing
+ * them is scanned for elements by name.
+ * </p>
+ *
+ * @param <T>
+ *            the type of the nodes in the list
+ */
+class IndexedNodeList<T extends Node> extends ArrayList<T> {
+    /**
+     * Whether the name of an element class is kept in the QName set by
+     * {@link DefaultElement#setQName(QName)} or
+     * {@link BaseElement#setQName(QName)}, which discard the index of the
+     * parent when an element is renamed
+     */
+    private static final ClassValue<Boolean> RENAME_AWARE =
+            new ClassValue<Boolean>() {
+                protected Boolean computeValue(Class<?> type) {
+                    if (!DefaultElement.class.isAssignableFrom(type)
+                            && !BaseElement.class.isAssignableFrom(type)) {
+                        return false;
+                    }
+
+                    for (Class<?> c = type; (c != DefaultElement.class)
+                            && (c != BaseElement.class); c = c.getSuperclass()) {
+                        for (String name : new String[] {"getQName", "getName"}) {
+                            try {
+                                c.getDeclaredMethod(name);
+
+                                return false;
+                            } catch (NoSuchMethodException e) {
+                                // look in the superclass
+                            }
+                        }
+                    }
+
+                    return true;
+                }
+            };
+
+    private final int threshold;
+
+    /**
+     * The current index or null if it has to be rebuilt. It is volatile as
+     * lookups from several threads may build and publish it concurrently.
+     */
+    private transient volatile Index<T> index;
+
+    IndexedNodeList(int capacity, int threshold) {
+        super(capacity);
+        this.threshold = threshold;
+    }
+
+    /**
+     * Returns whether lookups should use the index.
+     *
+     * @return true if the list is large enough to be indexed
+     */
+    boolean isIndexed() {
+        return size() >= threshold;
+    }
+
+    /**
+     * @param name
+     *            the local name
+     *
+     * @return the first element or attribute with the given local name
+     */
+    T getByName(String name) {
+        Index<T> current = index();
+
+        if (current.renamable) {
+            for (T node : this) {
+                QName qName = getQName(node);
+
+                if ((qName != null) && name.equals(qName.getName())) {
+                    return node;
+                }
+            }
+
+            return null;
+        }
+
+        return current.names.get(name);
+    }
+
+    /**
+     * @param qName
+     *            the qualified name
+     *
+     * @return the first element or attribute with the given QName
+     */
+    T getByQName(QName qName) {
+        Index<T> current = index();
+
+        if (current.renamable) {
+            for (T node : this) {
+                if (qName.equals(getQName(node))) {
+                    return node;
+                }
+            }
+
+            return null;
+        }
+
+        return current.qNames.get(qName);
+    }
+
+    /**
+     * @param prefix
+     *            the namespace prefix
+     *
+     * @return the first namespace declared with the given prefix
+     */
+    Namespace getNamespace(String prefix) {
+        return index().prefixes.get(prefix);
+    }
+
+    /**
+     * Discards the index, e.g. because a child element has been renamed.
+     */
+    void invalidate() {
+        index = null;
+    }
+
+    @Override
+    public boolean add(T node) {
+        Index<T> current = (index != null) && (index.modCount == modCount) ? index
+                : null;
+        boolean answer = super.add(node);
+
+        if (current != null) {
+            current.add(node);
+            current.modCount = modCount;
+        }
+
+        return answer;
+    }
+
+    @Override
+    public T set(int position, T node) {
+        index = null;
+
+        return super.set(position, node);
+    }
+
+    private Index<T> index() {
+        Index<T> answer = index;
+
+        if ((answer == null) || (answer.modCount != modCount)) {
+            answer = new Index<T>(size());
+
+            for (int i = 0, size = size(); i < size; i++) {
+                answer.add(get(i));
+            }
+
+            answer.modCount = modCount;
+            index = answer;
+        }
+
+        return answer;
+    }
+
+    /**
+     * @return the QName of an element or attribute, otherwise null
+     */
+    private static QName getQName(Node node) {
+        if (node instanceof Element) {
+            return ((Element) node).getQName();
+        } else if (node instanceof Attribute) {
+            return ((Attribute) node).getQName();
+        }
+
+        return null;
+    }
+
+    private static class Index<T extends Node> {
+        final Map<String, T> names;
+
+        final Map<QName, T> qNames;
+
+        final Map<String, Namespace> prefixes;
+
+        /** The modification count of the list this index is valid for */
+        int modCount;
+
+        /**
+         * Whether the list contains elements which may be renamed without
+         * discarding this index, so that names have to be looked up by a scan
+         */
+        boolean renamable;
+
+        Index(int size) {
+            names = new HashMap<String, T>(size);
+            qNames = new HashMap<QName, T>(size);
+            prefixes = new HashMap<String, Namespace>();
+        }
+
+        void add(T node) {
+            QName qName = getQName(node);
+
+            if ((node instanceof Element)
+                    && !RENAME_AWARE.get(node.getClass())) {
+                renamable = true;
+            }
+
+            if (qName == null) {
+                if (node instanceof Namespace) {
+                    Namespace namespace = (Namespace) node;
+
+                    if (!prefixes.containsKey(namespace.getPrefix())) {
+                        prefixes.put(namespace.getPrefix(), namespace);
+                    }
+                }
+
+                return;
+            }
+
+            if (!names.containsKey(qName.getName())) {
+                names.put(qName.getName(), node);
+            }
+
+            if (!qNames.containsKey(qName)) {
+                qNames.put(qName, node);
+            }
+        }
+    }
+}
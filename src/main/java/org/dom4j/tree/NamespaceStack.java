@@ -45,9 +45,19 @@ public class NamespaceStack {
      */
     private Map<String, QName> rootNamespaceCache = new HashMap<String, QName>();
 
+    /**
+     * A cache of mapping from qualifiedName to the element QName last created
+     * for it. It is shared by all namespace contexts, as the entries are
+     * checked against the namespace URI and local name given by the parser.
+     */
+    private Map<String, QName> elementCache = new HashMap<String, QName>();
+
     /** Caches the default namespace defined via xmlns="" */
     private Namespace defaultNamespace;
 
+    /** Whether the names have been checked by an XML parser */
+    private boolean trustedNames;
+
     public NamespaceStack() {
         this.documentFactory = DocumentFactory.getInstance();
     }
@@ -56,6 +66,26 @@ public class NamespaceStack {
         this.documentFactory = documentFactory;
     }
 
+    /**
+     * Sets whether the names given to this stack have already been checked by
+     * an XML parser, so that the QNames are created without validating them
+     * again. This is false by default and must only be enabled for names
+     * reported by a parser, not for names from the user or a DOM tree.
+     * 
+     * @param trustedNames
+     *            whether the names come from an XML parser
+     */
+    public void setTrustedNames(boolean trustedNames) {
+        this.trustedNames = trustedNames;
+    }
+
+    /**
+     * @return whether the names have been checked by an XML parser
+     */
+    public boolean isTrustedNames() {
+        return trustedNames;
+    }
+
     /**
      * Pushes the given namespace onto the stack so that its prefix becomes
      * available.
@@ -64,12 +94,19 @@ public class NamespaceStack {
      *            is the <code>Namespace</code> to add to the stack.
      */
     public void push(Namespace namespace) {
-        namespaceStack.add(namespace);
-        namespaceCacheList.add(null);
-        currentNamespaceCache = null;
-
         String prefix = namespace.getPrefix();
 
+        if (isDeclared(namespace)) {
+            // the names resolve as before, so the cache can be shared
+            Map<String, QName> namespaceCache = getNamespaceCache();
+            namespaceStack.add(namespace);
+            namespaceCacheList.add(namespaceCache);
+        } else {
+            namespaceStack.add(namespace);
+            namespaceCacheList.add(null);
+            currentNamespaceCache = null;
+        }
+
         if ((prefix == null) || (prefix.length() == 0)) {
             defaultNamespace = namespace;
         }
@@ -101,6 +138,7 @@ public class NamespaceStack {
         namespaceCacheList.clear();
         rootNamespaceCache.clear();
         currentNamespaceCache = null;
+        elementCache.clear();
     }
 
     /**
@@ -185,6 +223,28 @@ public class NamespaceStack {
 
     public QName getQName(String namespaceURI, String localName,
             String qualifiedName) {
+        if ((localName != null) && (localName.length() > 0)
+                && (qualifiedName != null)) {
+            // the names given by a namespace aware parser are looked up
+            // without creating any object
+            QName answer = elementCache.get(qualifiedName);
+
+            if ((answer == null) || !answer.getName().equals(localName)
+                    || !answer.getNamespaceURI().equals(
+                            (namespaceURI != null) ? namespaceURI : "")) {
+                answer = createElementQName(namespaceURI, localName,
+                        qualifiedName);
+                elementCache.put(qualifiedName, answer);
+            }
+
+            return answer;
+        }
+
+        return createElementQName(namespaceURI, localName, qualifiedName);
+    }
+
+    private QName createElementQName(String namespaceURI, String localName,
+            String qualifiedName) {
         if (localName == null) {
             localName = qualifiedName;
         } else if (qualifiedName == null) {
@@ -376,7 +436,8 @@ public class NamespaceStack {
 
     /**
      * Factory method to creeate new QName instances. By default this method
-     * interns the QName
+     * interns the QName. Names which have been checked by an XML parser are
+     * not validated again, see {@link #setTrustedNames(boolean)}.
      * 
      * @param localName
      *            DOCUMENT ME!
@@ -389,6 +450,10 @@ public class NamespaceStack {
      */
     protected QName createQName(String localName, String qualifiedName,
             Namespace namespace) {
+        if (trustedNames) {
+            return documentFactory.createTrustedQName(localName, namespace);
+        }
+
         return documentFactory.createQName(localName, namespace);
     }
 
@@ -464,6 +529,26 @@ public class NamespaceStack {
 
         return currentNamespaceCache;
     }
+
+    /**
+     * Returns true if the prefix of the given namespace is already bound to
+     * its URI, so that pushing it does not change how any name resolves.
+     * 
+     * @param namespace
+     *            the namespace about to be pushed
+     * 
+     * @return true if the namespace is already in scope
+     */
+    private boolean isDeclared(Namespace namespace) {
+        if (namespaceStack.isEmpty()) {
+            return false;
+        }
+
+        Namespace current = getNamespaceForPrefix(namespace.getPrefix());
+
+        return (current != null)
+                && namespace.getURI().equals(current.getURI());
+    }
 }
 
 /*
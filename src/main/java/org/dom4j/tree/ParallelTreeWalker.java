@@ -0,0 +1,244 @@
+package org.dom4j.tree;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.dom4j.Branch;
+import org.dom4j.Document;
+import org.dom4j.DocumentType;
+import org.dom4j.Element;
+import org.dom4j.Node;
+import org.dom4j.Visitor;
+
+/**
+ * <p>
+ * <code>ParallelTreeWalker</code> visits the nodes of a tree from the
+ * threads of a {@link ForkJoinPool}, for per node work such as
+ * {@link Visitor} callbacks or XPath evaluations on large documents. The work
+ * is split at sibling boundaries: the content of a branch is halved into tasks
+ * as long as each half holds at least the minimum split size, and the siblings
+ * of each task are then walked one after the other with
+ * {@link Node#accept(Visitor)}. Children wide enough to be split are split the
+ * same way, unless their class overrides the way they are visited, in which
+ * case they are visited by their own {@link Node#accept(Visitor)} method.
+ * </p>
+ *
+ * <pre>
+ * new ParallelTreeWalker(64).walk(document, visitor);
+ * </pre>
+ *
+ * <p>
+ * A walk visits the same nodes as {@link Node#accept(Visitor)}, but only the
+ * nodes of each task are visited in document order; a branch is visited
+ * before its content. The visitor is called from several threads at once, so
+ * it must be thread safe. If it throws an exception, the walk is cancelled and
+ * the exception is rethrown by {@link #walk(Node, Visitor)}.
+ * </p>
+ *
+ * <p>
+ * The tree must not be modified during the walk. Reading a tree which is not
+ * modified from several threads is safe for the {@link DefaultElement} and
+ * {@link DefaultDocument} implementations, see {@link DefaultElement}.
+ * </p>
+ *
+ * @see ContentSpliterator
+ */
+public class ParallelTreeWalker {
+    /** The default minimum number of siblings walked by a task */
+    public static final int DEFAULT_MIN_SPLIT_SIZE = 32;
+
+    /**
+     * Whether a document class is visited by its own accept(Visitor) method
+     * rather than the one of {@link AbstractDocument}
+     */
+    private static final ClassValue<Boolean> CUSTOM_DOCUMENT_ACCEPT =
+            new ClassValue<Boolean>() {
+                protected Boolean computeValue(Class<?> type) {
+                    try {
+                        return type.getMethod("accept", Visitor.class)
+                                .getDeclaringClass() != AbstractDocument.class;
+                    } catch (NoSuchMethodException e) {
+                        return true;
+                    }
+                }
+            };
+
+    private final ForkJoinPool pool;
+
+    private final int minSplitSize;
+
+    /**
+     * Creates a walker which uses the common pool and the
+     * {@link #DEFAULT_MIN_SPLIT_SIZE}.
+     */
+    public ParallelTreeWalker() {
+        this(ForkJoinPool.commonPool(), DEFAULT_MIN_SPLIT_SIZE);
+    }
+
+    /**
+     * Creates a walker which uses the common pool.
+     *
+     * @param minSplitSize
+     *            the minimum number of siblings walked by a task
+     *
+     * @throws IllegalArgumentException
+     *             if the minimum split size is less than one
+     */
+    public ParallelTreeWalker(int minSplitSize) {
+        this(ForkJoinPool.commonPool(), minSplitSize);
+    }
+
+    /**
+     * Creates a walker.
+     *
+     * @param pool
+     *            the pool which runs the tasks
+     * @param minSplitSize
+     *            the minimum number of siblings walked by a task
+     *
+     * @throws IllegalArgumentException
+     *             if the minimum split size is less than one
+     */
+    public ParallelTreeWalker(ForkJoinPool pool, int minSplitSize) {
+        if (pool == null) {
+            throw new IllegalArgumentException("No pool given");
+        }
+
+        this.pool = pool;
+        this.minSplitSize = ContentSpliterator.checkSplitSize(minSplitSize);
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public int getMinSplitSize() {
+        return minSplitSize;
+    }
+
+    /**
+     * Visits the given node and its descendants, splitting the work between
+     * the threads of the pool. This method returns once all the nodes have
+     * been visited.
+     *
+     * @param node
+     *            the node to walk
+     * @param visitor
+     *            the thread safe visitor to call
+     */
+    public void walk(Node node, Visitor visitor) {
+        switch (node.getNodeType()) {
+            case Node.DOCUMENT_NODE:
+                if (CUSTOM_DOCUMENT_ACCEPT.get(node.getClass())) {
+                    node.accept(visitor);
+
+                    return;
+                }
+
+                Document document = (Document) node;
+                visitor.visit(document);
+
+                DocumentType docType = document.getDocType();
+
+                if (docType != null) {
+                    visitor.visit(docType);
+                }
+
+                break;
+
+            case Node.ELEMENT_NODE:
+                if (AbstractElement.isRecursiveWalking(node)) {
+                    node.accept(visitor);
+
+                    return;
+                }
+
+                visitElement((Element) node, visitor);
+
+                break;
+
+            default:
+                node.accept(visitor);
+
+                return;
+        }
+
+        Branch branch = (Branch) node;
+        pool.invoke(new WalkTask(branch, 0, branch.nodeCount(), visitor));
+    }
+
+    /**
+     * Returns a parallel stream of the content of the given branch, which is
+     * split at the minimum split size of this walker. The stream runs in the
+     * common pool, or in the pool of the thread of its terminal operation.
+     *
+     * @param branch
+     *            the branch whose content is streamed
+     *
+     * @return the parallel stream of the content nodes
+     */
+    public Stream<Node> stream(Branch branch) {
+        return StreamSupport.stream(new ContentSpliterator(branch,
+                minSplitSize), true);
+    }
+
+    private static void visitElement(Element element, Visitor visitor) {
+        visitor.visit(element);
+
+        for (int i = 0, size = element.attributeCount(); i < size; i++) {
+            visitor.visit(element.attribute(i));
+        }
+    }
+
+    /**
+     * Walks a range of the content of a branch.
+     */
+    private final class WalkTask extends RecursiveAction {
+        private final Branch branch;
+
+        private final int from;
+
+        private final int to;
+
+        private final Visitor visitor;
+
+        WalkTask(Branch branch, int from, int to, Visitor visitor) {
+            this.branch = branch;
+            this.from = from;
+            this.to = to;
+            this.visitor = visitor;
+        }
+
+        protected void compute() {
+            if ((to - from) / 2 >= minSplitSize) {
+                int middle = from + ((to - from) / 2);
+                invokeAll(new WalkTask(branch, from, middle, visitor),
+                        new WalkTask(branch, middle, to, visitor));
+
+                return;
+            }
+
+            for (int i = from; i < to; i++) {
+                Node node = branch.node(i);
+
+                if (node.getNodeType() == Node.ELEMENT_NODE) {
+                    Element element = (Element) node;
+                    int size = element.nodeCount();
+
+                    if ((size / 2 >= minSplitSize)
+                            && !AbstractElement.isRecursiveWalking(element)) {
+                        // a wide child is split as well
+                        visitElement(element, visitor);
+                        new WalkTask(element, 0, size, visitor).compute();
+
+                        continue;
+                    }
+                }
+
+                node.accept(visitor);
+            }
+        }
+    }
+}
@@ -154,6 +154,38 @@ public class QNameCache {
         return answer;
     }
 
+    /**
+     * Returns the QName for the given local name and namespace like
+     * {@link #get(String, Namespace)}, but does not validate the name when a
+     * new QName has to be created. This is intended for names which have
+     * already been checked by an XML parser.
+     * 
+     * @param localName
+     *            the local name, which must be a legal NCName
+     * @param namespace
+     *            the namespace
+     * 
+     * @return the QName for the given local name and namespace
+     */
+    public QName getTrusted(String localName, Namespace namespace) {
+        Map<String, QName> cache = getNamespaceCache(namespace);
+        QName answer = null;
+
+        if (localName != null) {
+            answer = cache.get(localName);
+        } else {
+            localName = "";
+        }
+
+        if (answer == null) {
+            answer = createTrustedQName(localName, namespace);
+            answer.setDocumentFactory(this.documentFactory);
+            cache.put(localName, answer);
+        }
+
+        return answer;
+    }
+
     public QName get(String qualifiedName, String uri) {
         int index = qualifiedName.indexOf(':');
 
@@ -263,6 +295,21 @@ public class QNameCache {
     protected QName createQName(String name, Namespace namespace, String qualifiedName) {
         return new QName(name, namespace, qualifiedName);
     }
+
+    /**
+     * Factory method to create a new QName object for a name which does not
+     * need to be validated.
+     * 
+     * @param name
+     *            the local name
+     * @param namespace
+     *            the namespace
+     * 
+     * @return DOCUMENT ME!
+     */
+    protected QName createTrustedQName(String name, Namespace namespace) {
+        return new QName(name, namespace, null, false);
+    }
 }
 
 
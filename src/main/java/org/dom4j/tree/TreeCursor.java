@@ -0,0 +1,174 @@
+package org.dom4j.tree;
+
+import java.util.Arrays;
+
+import org.dom4j.Branch;
+import org.dom4j.Node;
+
+/**
+ * <p>
+ * <code>TreeCursor</code> walks the subtree of a {@link Branch} in document
+ * order without recursion, so the depth of the tree is only bounded by the
+ * heap. The branches being walked are kept on an explicit stack which grows
+ * as needed, so walking a tree allocates nothing per node.
+ * </p>
+ *
+ * <p>
+ * Each call to {@link #next()} moves the cursor to the next event of the
+ * walk. A branch is reached twice: once before its content (pre-order) and
+ * once after it (post-order), when {@link #isEnd()} returns true. Other nodes
+ * are reached once. Attributes are not part of the content, so they are not
+ * reached. The walk starts with the branch the cursor was created for.
+ * </p>
+ *
+ * <pre>
+ * TreeCursor cursor = new TreeCursor(element);
+ *
+ * while (cursor.next()) {
+ *     if (!cursor.isEnd()) {
+ *         process(cursor.getNode());
+ *     }
+ * }
+ * </pre>
+ *
+ * <p>
+ * The content of a branch is read when the cursor moves into it, so the
+ * content of the current node may be modified before moving on. The content
+ * of the branches being walked must not be modified.
+ * </p>
+ */
+public final class TreeCursor {
+    private final Branch root;
+
+    /** The branches whose content is being walked */
+    private Branch[] branches = new Branch[16];
+
+    /** The index of the next node of each branch being walked */
+    private int[] indices = new int[16];
+
+    /** The number of nodes of each branch being walked */
+    private int[] sizes = new int[16];
+
+    /** The index of the innermost branch being walked, or -1 */
+    private int top = -1;
+
+    private Node node;
+
+    private boolean end;
+
+    private boolean skip;
+
+    private boolean started;
+
+    /**
+     * Creates a cursor over the given branch and its descendants.
+     *
+     * @param root
+     *            the branch to walk
+     */
+    public TreeCursor(Branch root) {
+        this.root = root;
+    }
+
+    /**
+     * Moves to the next node of the walk.
+     *
+     * @return false if the walk is over
+     */
+    public boolean next() {
+        if (!started) {
+            started = true;
+            node = root;
+
+            return true;
+        }
+
+        if (node == null) {
+            return false;
+        }
+
+        if (!end && isBranch(node)) {
+            if (skip) {
+                skip = false;
+                end = true;
+
+                return true;
+            }
+
+            push((Branch) node);
+        }
+
+        if (top < 0) {
+            node = null;
+
+            return false;
+        }
+
+        Branch parent = branches[top];
+        int index = indices[top];
+
+        if (index < sizes[top]) {
+            indices[top] = index + 1;
+            node = parent.node(index);
+            end = false;
+
+            return true;
+        }
+
+        // the content is over, leave the branch
+        branches[top--] = null;
+        node = parent;
+        end = true;
+
+        return true;
+    }
+
+    /**
+     * @return the current node, or null before the walk or after it
+     */
+    public Node getNode() {
+        return node;
+    }
+
+    /**
+     * @return true if the current node is a branch whose content has been
+     *         walked
+     */
+    public boolean isEnd() {
+        return end;
+    }
+
+    /**
+     * @return the depth of the current node below the root, which is at
+     *         depth 0
+     */
+    public int getDepth() {
+        return top + 1;
+    }
+
+    /**
+     * Skips the content of the current branch: the next event leaves it. This
+     * method does nothing if the current node is not a branch being entered.
+     */
+    public void skipContent() {
+        skip = !end && (node != null) && isBranch(node);
+    }
+
+    private void push(Branch branch) {
+        if (++top == branches.length) {
+            branches = Arrays.copyOf(branches, top * 2);
+            indices = Arrays.copyOf(indices, top * 2);
+            sizes = Arrays.copyOf(sizes, top * 2);
+        }
+
+        branches[top] = branch;
+        indices[top] = 0;
+        sizes[top] = branch.nodeCount();
+    }
+
+    private static boolean isBranch(Node node) {
+        short type = node.getNodeType();
+
+        return (type == Node.ELEMENT_NODE) || (type == Node.DOCUMENT_NODE);
+    }
+}
@@ -0,0 +1,455 @@
+package org.dom4j.xpath;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+import org.dom4j.InvalidXPathException;
+import org.dom4j.Node;
+import org.dom4j.XPathException;
+
+import org.jaxen.Context;
+import org.jaxen.ContextSupport;
+import org.jaxen.FunctionContext;
+import org.jaxen.JaxenException;
+import org.jaxen.NamespaceContext;
+import org.jaxen.VariableContext;
+import org.jaxen.XPath;
+import org.jaxen.XPathFunctionContext;
+import org.jaxen.function.NumberFunction;
+import org.jaxen.function.StringFunction;
+
+/**
+ * <p>
+ * <code>CompiledXPath</code> is an immutable, parsed XPath expression. Unlike
+ * {@link DefaultXPath} it has no setters: the namespaces, functions and
+ * variables are given by an {@link XPathContext} for each evaluation, so one
+ * instance can be kept in a static field and evaluated by many threads at
+ * once.
+ * </p>
+ *
+ * <pre>
+ * private static final CompiledXPath ITEMS = new CompiledXPath(&quot;//a:item&quot;);
+ *
+ * List&lt;Node&gt; items = ITEMS.selectNodes(document, context);
+ * </pre>
+ *
+ * <p>
+ * The methods without an <code>XPathContext</code> argument use the default
+ * context the expression was compiled with. The nodes being searched must of
+ * course not be modified concurrently.
+ * </p>
+ *
+ * @see XPathContext
+ */
+public final class CompiledXPath implements Serializable {
+    private final String text;
+
+    /** Whether the simple paths are evaluated without jaxen */
+    private static final boolean NATIVE_EVALUATION = isNativeEvaluationDefault();
+
+    /** The parsed expression, only ever evaluated with an explicit Context */
+    private final XPath xpath;
+
+    /** The native form of the expression or null if it needs jaxen */
+    private transient NativeXPath nativeXPath;
+
+    private final XPathContext defaultContext;
+
+    /**
+     * Compiles the given expression, resolving namespace prefixes against the
+     * context node by default.
+     *
+     * @param text
+     *            the XPath expression
+     *
+     * @throws InvalidXPathException
+     *             if the expression is invalid
+     */
+    public CompiledXPath(String text) throws InvalidXPathException {
+        this(text, XPathContext.DEFAULT);
+    }
+
+    /**
+     * Compiles the given expression.
+     *
+     * @param text
+     *            the XPath expression
+     * @param defaultContext
+     *            the context used when none is given to an evaluation
+     *
+     * @throws InvalidXPathException
+     *             if the expression is invalid
+     */
+    public CompiledXPath(String text, XPathContext defaultContext)
+            throws InvalidXPathException {
+        this.text = text;
+        this.xpath = DefaultXPath.parse(text);
+        this.nativeXPath = NATIVE_EVALUATION ? NativeXPath.compile(text) : null;
+        this.defaultContext = (defaultContext != null) ? defaultContext
+                : XPathContext.DEFAULT;
+    }
+
+    private static boolean isNativeEvaluationDefault() {
+        try {
+            return !"false".equals(System.getProperty(
+                    "org.dom4j.xpath.nativeEvaluation"));
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    /**
+     * @return the XPath expression this instance was compiled from
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return the context used when none is given to an evaluation
+     */
+    public XPathContext getDefaultContext() {
+        return defaultContext;
+    }
+
+    /**
+     * @return the parsed jaxen expression, which must only be evaluated with
+     *         an explicit {@link Context}
+     */
+    XPath getXPath() {
+        return xpath;
+    }
+
+    public String toString() {
+        return "[XPath: " + xpath + "]";
+    }
+
+    public Object evaluate(Object context) {
+        return evaluate(context, defaultContext);
+    }
+
+    /**
+     * Evaluates the expression. A node set of a single node is returned as
+     * that node.
+     *
+     * @param context
+     *            the node, list of nodes or document to evaluate against
+     * @param xpathContext
+     *            the namespaces, functions and variables to use
+     *
+     * @return the node, string, number or boolean value, or the list of nodes
+     *         the expression evaluates to
+     */
+    public Object evaluate(Object context, XPathContext xpathContext) {
+        try {
+            List<?> answer = selectNative(context, xpathContext);
+
+            if (answer == null) {
+                answer = xpath.selectNodes(createContext(context,
+                        xpathContext));
+            }
+
+            if ((answer != null) && (answer.size() == 1)) {
+                return answer.get(0);
+            }
+
+            return answer;
+        } catch (JaxenException e) {
+            throw new XPathException(text, e);
+        }
+    }
+
+    public List<Node> selectNodes(Object context) {
+        return selectNodes(context, defaultContext);
+    }
+
+    /**
+     * @param context
+     *            the node, list of nodes or document to evaluate against
+     * @param xpathContext
+     *            the namespaces, functions and variables to use
+     *
+     * @return the nodes selected by the expression
+     */
+    public List<Node> selectNodes(Object context, XPathContext xpathContext) {
+        try {
+            List<Node> answer = selectNative(context, xpathContext);
+
+            if (answer == null) {
+                answer = (List<Node>) xpath.selectNodes(createContext(context,
+                        xpathContext));
+            }
+
+            return (answer != null) ? answer : Collections.<Node>emptyList();
+        } catch (JaxenException e) {
+            throw new XPathException(text, e);
+        }
+    }
+
+    public Node selectSingleNode(Object context) {
+        return selectSingleNode(context, defaultContext);
+    }
+
+    /**
+     * @param context
+     *            the node, list of nodes or document to evaluate against
+     * @param xpathContext
+     *            the namespaces, functions and variables to use
+     *
+     * @return the first node selected by the expression or null
+     *
+     * @throws XPathException
+     *             if the expression does not evaluate to a node set
+     */
+    public Node selectSingleNode(Object context, XPathContext xpathContext) {
+        try {
+            List<Node> nodes = selectNative(context, xpathContext);
+
+            if (nodes != null) {
+                return nodes.isEmpty() ? null : nodes.get(0);
+            }
+
+            Object answer = xpath.selectSingleNode(createContext(context,
+                    xpathContext));
+
+            if ((answer == null) || (answer instanceof Node)) {
+                return (Node) answer;
+            }
+
+            throw new XPathException("The result of the XPath expression is "
+                    + "not a Node. It was: " + answer + " of type: "
+                    + answer.getClass().getName());
+        } catch (JaxenException e) {
+            throw new XPathException(text, e);
+        }
+    }
+
+    public String valueOf(Object context) {
+        return valueOf(context, defaultContext);
+    }
+
+    /**
+     * @param context
+     *            the node, list of nodes or document to evaluate against
+     * @param xpathContext
+     *            the namespaces, functions and variables to use
+     *
+     * @return the string value of the expression
+     */
+    public String valueOf(Object context, XPathContext xpathContext) {
+        try {
+            List<Node> nodes = selectNative(context, xpathContext);
+
+            if (nodes != null) {
+                return stringValueOf(nodes);
+            }
+
+            return xpath.stringValueOf(createContext(context, xpathContext));
+        } catch (JaxenException e) {
+            throw new XPathException(text, e);
+        }
+    }
+
+    public Number numberValueOf(Object context) {
+        return numberValueOf(context, defaultContext);
+    }
+
+    /**
+     * @param context
+     *            the node, list of nodes or document to evaluate against
+     * @param xpathContext
+     *            the namespaces, functions and variables to use
+     *
+     * @return the number value of the expression
+     */
+    public Number numberValueOf(Object context, XPathContext xpathContext) {
+        try {
+            List<Node> nodes = selectNative(context, xpathContext);
+
+            if (nodes != null) {
+                return numberValueOf(nodes);
+            }
+
+            return xpath.numberValueOf(createContext(context, xpathContext));
+        } catch (JaxenException e) {
+            throw new XPathException(text, e);
+        }
+    }
+
+    public boolean booleanValueOf(Object context) {
+        return booleanValueOf(context, defaultContext);
+    }
+
+    /**
+     * @param context
+     *            the node, list of nodes or document to evaluate against
+     * @param xpathContext
+     *            the namespaces, functions and variables to use
+     *
+     * @return the boolean value of the expression
+     */
+    public boolean booleanValueOf(Object context, XPathContext xpathContext) {
+        try {
+            List<Node> nodes = selectNative(context, xpathContext);
+
+            if (nodes != null) {
+                return !nodes.isEmpty();
+            }
+
+            return xpath.booleanValueOf(createContext(context, xpathContext));
+        } catch (JaxenException e) {
+            throw new XPathException(text, e);
+        }
+    }
+
+    public boolean matches(Node node) {
+        return matches(node, defaultContext);
+    }
+
+    /**
+     * @param node
+     *            the node to test
+     * @param xpathContext
+     *            the namespaces, functions and variables to use
+     *
+     * @return true if the expression is true for, or selects, the given node
+     */
+    public boolean matches(Node node, XPathContext xpathContext) {
+        try {
+            List<?> answer = selectNative(node, xpathContext);
+
+            if (answer == null) {
+                answer = xpath.selectNodes(createContext(node, xpathContext));
+            }
+
+            if ((answer != null) && (answer.size() > 0)) {
+                Object item = answer.get(0);
+
+                if (item instanceof Boolean) {
+                    return (Boolean) item;
+                }
+
+                return answer.contains(node);
+            }
+
+            return false;
+        } catch (JaxenException e) {
+            throw new XPathException(text, e);
+        }
+    }
+
+    /**
+     * Returns whether the expression is simple enough to be evaluated directly
+     * against the dom4j tree rather than by jaxen. Such expressions give the
+     * same results either way, only faster.
+     * 
+     * @return true if the expression is evaluated natively
+     */
+    public boolean isNative() {
+        return nativeXPath != null;
+    }
+
+    /**
+     * Evaluates the expression without jaxen if it is simple enough.
+     *
+     * @param context
+     *            the context node
+     * @param namespaceContext
+     *            the namespace context or null to use the namespaces in scope
+     *            at the context node
+     *
+     * @return the selected nodes or null if jaxen has to be used
+     */
+    List<Node> selectNative(Object context, NamespaceContext namespaceContext) {
+        NativeXPath path = nativeXPath;
+
+        return (path != null) ? path.selectNodes(context, namespaceContext)
+                : null;
+    }
+
+    private List<Node> selectNative(Object context, XPathContext xpathContext) {
+        if (xpathContext == null) {
+            xpathContext = defaultContext;
+        }
+
+        return selectNative(context, xpathContext.getNamespaceContext());
+    }
+
+    /**
+     * @return the string value of the first node as jaxen computes it
+     */
+    String stringValueOf(List<Node> nodes) {
+        if (nodes.isEmpty()) {
+            return "";
+        }
+
+        return StringFunction.evaluate(nodes.get(0), xpath.getNavigator());
+    }
+
+    /**
+     * @return the number value of the first node as jaxen computes it
+     */
+    Number numberValueOf(List<Node> nodes) {
+        return NumberFunction.evaluate(nodes.isEmpty() ? null : nodes.get(0),
+                xpath.getNavigator());
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        in.defaultReadObject();
+        nativeXPath = NATIVE_EVALUATION ? NativeXPath.compile(text) : null;
+    }
+
+    /**
+     * Creates the evaluation context for a single call. Passing the context
+     * explicitly means the contexts of the shared jaxen XPath are never read
+     * or written.
+     *
+     * @param node
+     *            the node, list of nodes or document to evaluate against
+     * @param xpathContext
+     *            the namespaces, functions and variables to use
+     *
+     * @return a new jaxen context
+     */
+    Context createContext(Object node, XPathContext xpathContext) {
+        if (xpathContext == null) {
+            xpathContext = defaultContext;
+        }
+
+        return createContext(node, xpathContext.getNamespaceContext(),
+                xpathContext.getFunctionContext(), xpathContext
+                        .getVariableContext());
+    }
+
+    Context createContext(Object node, NamespaceContext namespaceContext,
+            FunctionContext functionContext,
+            VariableContext variableContext) {
+        if (node instanceof Context) {
+            return (Context) node;
+        }
+
+        if (namespaceContext == null) {
+            namespaceContext = DefaultNamespaceContext.create(node);
+        }
+
+        if (functionContext == null) {
+            functionContext = XPathFunctionContext.getInstance();
+        }
+
+        ContextSupport support = new ContextSupport(namespaceContext,
+                functionContext, variableContext, xpath.getNavigator());
+        Context context = new Context(support);
+
+        if (node instanceof List) {
+            context.setNodeSet((List<?>) node);
+        } else {
+            context.setNodeSet(Collections.singletonList(node));
+        }
+
+        return context;
+    }
+}
@@ -7,6 +7,8 @@
 
 package org.dom4j.xpath;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Collections;
 import java.util.Comparator;
@@ -21,12 +23,15 @@ import org.dom4j.Node;
 import org.dom4j.NodeFilter;
 import org.dom4j.XPathException;
 
+import org.jaxen.Context;
 import org.jaxen.FunctionContext;
 import org.jaxen.JaxenException;
 import org.jaxen.NamespaceContext;
 import org.jaxen.SimpleNamespaceContext;
+import org.jaxen.SimpleVariableContext;
 import org.jaxen.VariableContext;
 import org.jaxen.XPath;
+import org.jaxen.XPathFunctionContext;
 import org.jaxen.dom4j.Dom4jXPath;
 
 /**
@@ -35,16 +40,35 @@ import org.jaxen.dom4j.Dom4jXPath;
  * href="http://jaxen.org">Jaxen </a> project.
  * </p>
  * 
+ * <p>
+ * The contexts set on an instance are passed to each evaluation rather than
+ * installed on the underlying expression, so an instance that is no longer
+ * being configured may be evaluated by several threads at once. Use
+ * {@link CompiledXPath} for an expression that cannot be modified at all.
+ * </p>
+ * 
  * @author bob mcwhirter
  * @author <a href="mailto:jstrachan@apache.org">James Strachan </a>
  */
 public class DefaultXPath implements org.dom4j.XPath, NodeFilter, Serializable {
+    /**
+     * The serialized form holds the text of the expression and the contexts
+     * set on it, the expression is compiled again when it is read. It is not
+     * compatible with the form written before the expression was held by a
+     * {@link CompiledXPath}.
+     */
+    private static final long serialVersionUID = 1L;
+
     private String text;
 
-    private XPath xpath;
+    private transient CompiledXPath compiledXPath;
 
     private NamespaceContext namespaceContext;
 
+    private FunctionContext functionContext;
+
+    private VariableContext variableContext;
+
     /**
      * Construct an XPath
      * 
@@ -56,11 +80,11 @@ public class DefaultXPath implements org.dom4j.XPath, NodeFilter, Serializable {
      */
     public DefaultXPath(String text) throws InvalidXPathException {
         this.text = text;
-        this.xpath = parse(text);
+        this.compiledXPath = new CompiledXPath(text);
     }
 
     public String toString() {
-        return "[XPath: " + xpath + "]";
+        return compiledXPath.toString();
     }
 
     // XPath interface
@@ -75,11 +99,15 @@ public class DefaultXPath implements org.dom4j.XPath, NodeFilter, Serializable {
     }
 
     public FunctionContext getFunctionContext() {
-        return xpath.getFunctionContext();
+        if (functionContext == null) {
+            return XPathFunctionContext.getInstance();
+        }
+
+        return functionContext;
     }
 
     public void setFunctionContext(FunctionContext functionContext) {
-        xpath.setFunctionContext(functionContext);
+        this.functionContext = functionContext;
     }
 
     public NamespaceContext getNamespaceContext() {
@@ -92,22 +120,28 @@ public class DefaultXPath implements org.dom4j.XPath, NodeFilter, Serializable {
 
     public void setNamespaceContext(NamespaceContext namespaceContext) {
         this.namespaceContext = namespaceContext;
-        xpath.setNamespaceContext(namespaceContext);
     }
 
     public VariableContext getVariableContext() {
-        return xpath.getVariableContext();
+        if (variableContext == null) {
+            variableContext = new SimpleVariableContext();
+        }
+
+        return variableContext;
     }
 
     public void setVariableContext(VariableContext variableContext) {
-        xpath.setVariableContext(variableContext);
+        this.variableContext = variableContext;
     }
 
     public Object evaluate(Object context) {
         try {
-            setNSContext(context);
+            List<?> answer = selectNative(context);
 
-            List<Object> answer = xpath.selectNodes(context);
+            if (answer == null) {
+                answer = compiledXPath.getXPath().selectNodes(
+                        getContext(context));
+            }
 
             if ((answer != null) && (answer.size() == 1)) {
                 return answer.get(0);
@@ -127,9 +161,14 @@ public class DefaultXPath implements org.dom4j.XPath, NodeFilter, Serializable {
 
     public List<Node> selectNodes(Object context) {
         try {
-            setNSContext(context);
+            List<Node> answer = selectNative(context);
+
+            if (answer != null) {
+                return answer;
+            }
 
-            return (List<Node>) xpath.selectNodes(context);
+            return (List<Node>) compiledXPath.getXPath().selectNodes(
+                    getContext(context));
         } catch (JaxenException e) {
             handleJaxenException(e);
 
@@ -154,9 +193,14 @@ public class DefaultXPath implements org.dom4j.XPath, NodeFilter, Serializable {
 
     public Node selectSingleNode(Object context) {
         try {
-            setNSContext(context);
+            List<Node> nodes = selectNative(context);
+
+            if (nodes != null) {
+                return nodes.isEmpty() ? null : nodes.get(0);
+            }
 
-            Object answer = xpath.selectSingleNode(context);
+            Object answer = compiledXPath.getXPath().selectSingleNode(
+                    getContext(context));
 
             if (answer instanceof Node) {
                 return (Node) answer;
@@ -178,9 +222,13 @@ public class DefaultXPath implements org.dom4j.XPath, NodeFilter, Serializable {
 
     public String valueOf(Object context) {
         try {
-            setNSContext(context);
+            List<Node> nodes = selectNative(context);
 
-            return xpath.stringValueOf(context);
+            if (nodes != null) {
+                return compiledXPath.stringValueOf(nodes);
+            }
+
+            return compiledXPath.getXPath().stringValueOf(getContext(context));
         } catch (JaxenException e) {
             handleJaxenException(e);
 
@@ -190,9 +238,13 @@ public class DefaultXPath implements org.dom4j.XPath, NodeFilter, Serializable {
 
     public Number numberValueOf(Object context) {
         try {
-            setNSContext(context);
+            List<Node> nodes = selectNative(context);
 
-            return xpath.numberValueOf(context);
+            if (nodes != null) {
+                return compiledXPath.numberValueOf(nodes);
+            }
+
+            return compiledXPath.getXPath().numberValueOf(getContext(context));
         } catch (JaxenException e) {
             handleJaxenException(e);
 
@@ -202,9 +254,13 @@ public class DefaultXPath implements org.dom4j.XPath, NodeFilter, Serializable {
 
     public boolean booleanValueOf(Object context) {
         try {
-            setNSContext(context);
+            List<Node> nodes = selectNative(context);
+
+            if (nodes != null) {
+                return !nodes.isEmpty();
+            }
 
-            return xpath.booleanValueOf(context);
+            return compiledXPath.getXPath().booleanValueOf(getContext(context));
         } catch (JaxenException e) {
             handleJaxenException(e);
 
@@ -257,9 +313,11 @@ public class DefaultXPath implements org.dom4j.XPath, NodeFilter, Serializable {
 
     public boolean matches(Node node) {
         try {
-            setNSContext(node);
+            List<?> answer = selectNative(node);
 
-            List<Object> answer = xpath.selectNodes(node);
+            if (answer == null) {
+                answer = compiledXPath.getXPath().selectNodes(getContext(node));
+            }
 
             if ((answer != null) && (answer.size() > 0)) {
                 Object item = answer.get(0);
@@ -359,10 +417,51 @@ public class DefaultXPath implements org.dom4j.XPath, NodeFilter, Serializable {
         throw new InvalidXPathException(text);
     }
 
+    /**
+     * Creates the jaxen context for a single evaluation from the contexts
+     * currently set on this XPath.
+     * 
+     * @param node
+     *            the node, list of nodes or document to evaluate against
+     * 
+     * @return a new jaxen context
+     */
+    protected Context getContext(Object node) {
+        return compiledXPath.createContext(node, namespaceContext, functionContext,
+                variableContext);
+    }
+
+    /**
+     * Evaluates simple expressions directly against the dom4j tree.
+     * 
+     * @param context
+     *            the context node
+     * 
+     * @return the selected nodes or null if jaxen has to be used
+     */
+    private List<Node> selectNative(Object context) {
+        return compiledXPath.selectNative(context, namespaceContext);
+    }
+
+    /**
+     * This method does nothing and is no longer called, overriding it has no
+     * effect.
+     * 
+     * @param context
+     *            the context node
+     * 
+     * @deprecated the namespace context is passed to each evaluation by
+     *             {@link #getContext(Object)} instead of being set on the
+     *             underlying expression
+     */
+    @Deprecated
     protected void setNSContext(Object context) {
-        if (namespaceContext == null) {
-            xpath.setNamespaceContext(DefaultNamespaceContext.create(context));
-        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        in.defaultReadObject();
+        compiledXPath = new CompiledXPath(text);
     }
 
     protected void handleJaxenException(JaxenException exception)
@@ -0,0 +1,580 @@
+package org.dom4j.xpath;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dom4j.Attribute;
+import org.dom4j.Branch;
+import org.dom4j.Element;
+import org.dom4j.Node;
+import org.dom4j.QName;
+
+import org.jaxen.NamespaceContext;
+
+/**
+ * <p>
+ * <code>NativeXPath</code> evaluates the simple location paths that make up
+ * most real world expressions directly against the dom4j tree, without the
+ * iterators and wrappers of the generic jaxen navigator. It supports
+ * </p>
+ *
+ * <ul>
+ * <li>absolute and relative paths of child (<code>/</code>) and descendant
+ * (<code>//</code>) steps,</li>
+ * <li>element name tests such as <code>item</code>, <code>p:item</code>,
+ * <code>p:*</code> and <code>*</code>,</li>
+ * <li>predicates testing the existence or the string value of an attribute or
+ * a child element, e.g. <code>[@id]</code>, <code>[@id='a']</code> or
+ * <code>[name=&quot;b&quot;]</code>,</li>
+ * <li>a final attribute step such as <code>@id</code>, <code>@*</code> or
+ * <code>//@id</code>.</li>
+ * </ul>
+ *
+ * <p>
+ * {@link #compile(String)} returns null for any other expression, and
+ * {@link #selectNodes(Object, NamespaceContext)} returns null when it cannot
+ * produce exactly the result jaxen would, e.g. for an unresolvable prefix or
+ * when nested matches of a descendant step would break document order. The
+ * caller then evaluates the expression with jaxen instead.
+ * </p>
+ */
+final class NativeXPath {
+    private static final String XML_NAMESPACE_URI =
+        "http://www.w3.org/XML/1998/namespace";
+
+    private final boolean absolute;
+
+    private final Step[] steps;
+
+    private NativeXPath(boolean absolute, Step[] steps) {
+        this.absolute = absolute;
+        this.steps = steps;
+    }
+
+    /**
+     * Compiles the given expression if it is part of the supported subset.
+     *
+     * @param text
+     *            a syntactically valid XPath expression
+     *
+     * @return the compiled path or null if it has to be evaluated by jaxen
+     */
+    static NativeXPath compile(String text) {
+        if (text == null) {
+            return null;
+        }
+
+        Parser parser = new Parser(text);
+
+        try {
+            return parser.parsePath();
+        } catch (IllegalArgumentException e) {
+            // not part of the subset
+            return null;
+        }
+    }
+
+    /**
+     * Evaluates the path.
+     *
+     * @param context
+     *            the context node
+     * @param namespaceContext
+     *            the namespace context or null to use the namespaces in scope
+     *            at the context node
+     *
+     * @return the selected nodes in document order or null if the expression
+     *         has to be evaluated by jaxen
+     */
+    List<Node> selectNodes(Object context, NamespaceContext namespaceContext) {
+        if (!(context instanceof Node)) {
+            return null;
+        }
+
+        Node node = (Node) context;
+        Node start = node;
+
+        if (absolute) {
+            start = node.getDocument();
+        }
+
+        if (!(start instanceof Branch)) {
+            return null;
+        }
+
+        List<Node> current = new ArrayList<Node>(1);
+        current.add(start);
+
+        // true if the current nodes may contain one another
+        boolean nested = false;
+
+        for (Step step : steps) {
+            String uri = null;
+
+            if (step.prefix != null) {
+                uri = translate(step.prefix, namespaceContext, node);
+
+                if (uri == null) {
+                    return null;
+                }
+            }
+
+            String[] predicateURIs = null;
+
+            if (step.predicates != null) {
+                predicateURIs = new String[step.predicates.length];
+
+                for (int i = 0; i < predicateURIs.length; i++) {
+                    String prefix = step.predicates[i].prefix;
+
+                    if (prefix != null) {
+                        predicateURIs[i] = translate(prefix, namespaceContext,
+                                node);
+
+                        if (predicateURIs[i] == null) {
+                            return null;
+                        }
+                    }
+                }
+            }
+
+            List<Node> result = new ArrayList<Node>();
+
+            if (step.attribute && !step.descendant) {
+                // attributes of elements in document order are in order too
+                for (Node branch : current) {
+                    if (branch instanceof Element) {
+                        selectAttributes((Element) branch, step, uri, result);
+                    }
+                }
+            } else if (nested) {
+                return null;
+            } else if (step.attribute) {
+                // the attributes of the context nodes and their descendants
+                for (Node branch : current) {
+                    if (branch instanceof Element) {
+                        selectAttributes((Element) branch, step, uri, result);
+                    }
+
+                    selectDescendantAttributes((Branch) branch, step, uri,
+                            result);
+                }
+            } else if (step.descendant) {
+                for (Node branch : current) {
+                    nested |= selectDescendants((Branch) branch, step, uri,
+                            predicateURIs, false, result);
+                }
+            } else {
+                for (Node branch : current) {
+                    selectChildren((Branch) branch, step, uri, predicateURIs,
+                            result);
+                }
+            }
+
+            current = result;
+        }
+
+        return current;
+    }
+
+    private static void selectChildren(Branch branch, Step step, String uri,
+            String[] predicateURIs, List<Node> result) {
+        for (int i = 0, size = branch.nodeCount(); i < size; i++) {
+            Node node = branch.node(i);
+
+            if (node instanceof Element) {
+                Element element = (Element) node;
+
+                if (step.matches(element.getQName(), uri)
+                        && step.accepts(element, predicateURIs)) {
+                    result.add(element);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if a match was found inside another match
+     */
+    private static boolean selectDescendants(Branch branch, Step step,
+            String uri, String[] predicateURIs, boolean insideMatch,
+            List<Node> result) {
+        boolean nested = false;
+
+        for (int i = 0, size = branch.nodeCount(); i < size; i++) {
+            Node node = branch.node(i);
+
+            if (node instanceof Element) {
+                Element element = (Element) node;
+                boolean match = step.matches(element.getQName(), uri)
+                        && step.accepts(element, predicateURIs);
+
+                if (match) {
+                    nested |= insideMatch;
+                    result.add(element);
+                }
+
+                nested |= selectDescendants(element, step, uri, predicateURIs,
+                        insideMatch || match, result);
+            }
+        }
+
+        return nested;
+    }
+
+    private static void selectDescendantAttributes(Branch branch, Step step,
+            String uri, List<Node> result) {
+        for (int i = 0, size = branch.nodeCount(); i < size; i++) {
+            Node node = branch.node(i);
+
+            if (node instanceof Element) {
+                selectAttributes((Element) node, step, uri, result);
+                selectDescendantAttributes((Element) node, step, uri, result);
+            }
+        }
+    }
+
+    private static void selectAttributes(Element element, Step step,
+            String uri, List<Node> result) {
+        for (int i = 0, size = element.attributeCount(); i < size; i++) {
+            Attribute attribute = element.attribute(i);
+
+            if (step.matches(attribute.getQName(), uri)) {
+                result.add(attribute);
+            }
+        }
+    }
+
+    private static String translate(String prefix,
+            NamespaceContext namespaceContext, Node node) {
+        if ("xml".equals(prefix)) {
+            return XML_NAMESPACE_URI;
+        }
+
+        if (namespaceContext == null) {
+            namespaceContext = DefaultNamespaceContext.create(node);
+
+            if (namespaceContext == null) {
+                return null;
+            }
+        }
+
+        String uri = namespaceContext.translateNamespacePrefixToUri(prefix);
+
+        return ((uri != null) && (uri.length() > 0)) ? uri : null;
+    }
+
+    /**
+     * A name test for an element or attribute, also used by predicates.
+     */
+    private static class NameTest {
+        /** The prefix or null if the name is not prefixed */
+        final String prefix;
+
+        /** The local name or null for any name */
+        final String localName;
+
+        NameTest(String prefix, String localName) {
+            this.prefix = prefix;
+            this.localName = localName;
+        }
+
+        /**
+         * @param qName
+         *            the name of the node
+         * @param uri
+         *            the namespace URI the prefix has been resolved to
+         *
+         * @return true if the name matches
+         */
+        final boolean matches(QName qName, String uri) {
+            if ((localName != null) && !localName.equals(qName.getName())) {
+                return false;
+            }
+
+            if (prefix == null) {
+                // unprefixed names only match nodes in no namespace, but
+                // * matches any node
+                return (localName == null)
+                        || (qName.getNamespaceURI().length() == 0);
+            }
+
+            return uri.equals(qName.getNamespaceURI());
+        }
+    }
+
+    private static final class Step extends NameTest {
+        final boolean descendant;
+
+        final boolean attribute;
+
+        final Predicate[] predicates;
+
+        Step(boolean descendant, boolean attribute, String prefix,
+                String localName, Predicate[] predicates) {
+            super(prefix, localName);
+            this.descendant = descendant;
+            this.attribute = attribute;
+            this.predicates = predicates;
+        }
+
+        boolean accepts(Element element, String[] predicateURIs) {
+            if (predicates != null) {
+                for (int i = 0; i < predicates.length; i++) {
+                    if (!predicates[i].accepts(element, predicateURIs[i])) {
+                        return false;
+                    }
+                }
+            }
+
+            return true;
+        }
+    }
+
+    private static final class Predicate extends NameTest {
+        final boolean attribute;
+
+        /** The value to compare with or null to test for existence */
+        final String value;
+
+        Predicate(boolean attribute, String prefix, String localName,
+                String value) {
+            super(prefix, localName);
+            this.attribute = attribute;
+            this.value = value;
+        }
+
+        boolean accepts(Element element, String uri) {
+            if (attribute) {
+                for (int i = 0, size = element.attributeCount(); i < size; i++) {
+                    Attribute node = element.attribute(i);
+
+                    if (matches(node.getQName(), uri)
+                            && ((value == null) || value.equals(node
+                                    .getValue()))) {
+                        return true;
+                    }
+                }
+            } else {
+                for (int i = 0, size = element.nodeCount(); i < size; i++) {
+                    Node node = element.node(i);
+
+                    if ((node instanceof Element)
+                            && matches(((Element) node).getQName(), uri)
+                            && ((value == null) || value.equals(node
+                                    .getStringValue()))) {
+                        return true;
+                    }
+                }
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Parses the supported subset, throwing an IllegalArgumentException for
+     * anything else.
+     */
+    private static final class Parser {
+        private final String text;
+
+        private int pos;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        NativeXPath parsePath() {
+            boolean absolute = false;
+            boolean descendant = false;
+
+            if (peek('/')) {
+                absolute = true;
+                pos++;
+
+                if (peek('/')) {
+                    descendant = true;
+                    pos++;
+                }
+            }
+
+            List<Step> steps = new ArrayList<Step>();
+
+            while (true) {
+                Step step = parseStep(descendant);
+                steps.add(step);
+
+                if (pos == text.length()) {
+                    break;
+                }
+
+                if (step.attribute) {
+                    // attributes must be the last step
+                    throw new IllegalArgumentException();
+                }
+
+                expect('/');
+                descendant = peek('/');
+
+                if (descendant) {
+                    pos++;
+                }
+            }
+
+            return new NativeXPath(absolute, steps.toArray(new Step[steps
+                    .size()]));
+        }
+
+        private Step parseStep(boolean descendant) {
+            boolean attribute = peek('@');
+
+            if (attribute) {
+                pos++;
+            }
+
+            String[] name = parseNameTest();
+            List<Predicate> predicates = null;
+
+            while (!attribute && peek('[')) {
+                pos++;
+
+                if (predicates == null) {
+                    predicates = new ArrayList<Predicate>();
+                }
+
+                predicates.add(parsePredicate());
+            }
+
+            return new Step(descendant, attribute, name[0], name[1],
+                    (predicates != null) ? predicates
+                            .toArray(new Predicate[predicates.size()]) : null);
+        }
+
+        private Predicate parsePredicate() {
+            skipWhitespace();
+
+            boolean attribute = peek('@');
+
+            if (attribute) {
+                pos++;
+            }
+
+            String[] name = parseNameTest();
+
+            if ((name[1] == null) && !attribute) {
+                throw new IllegalArgumentException();
+            }
+
+            skipWhitespace();
+
+            String value = null;
+
+            if (peek('=')) {
+                pos++;
+                skipWhitespace();
+                value = parseLiteral();
+                skipWhitespace();
+            }
+
+            expect(']');
+
+            return new Predicate(attribute, name[0], name[1], value);
+        }
+
+        /**
+         * @return the prefix and the local name, null for <code>*</code>
+         */
+        private String[] parseNameTest() {
+            if (peek('*')) {
+                pos++;
+
+                return new String[] {null, null};
+            }
+
+            String prefix = null;
+            String name = parseNCName();
+
+            if (peek(':')) {
+                pos++;
+                prefix = name;
+
+                if (peek('*')) {
+                    pos++;
+                    name = null;
+                } else {
+                    name = parseNCName();
+                }
+            }
+
+            if (peek('(')) {
+                // a node type test or function call
+                throw new IllegalArgumentException();
+            }
+
+            return new String[] {prefix, name};
+        }
+
+        private String parseNCName() {
+            int start = pos;
+
+            if ((pos < text.length())
+                    && (Character.isLetter(text.charAt(pos)) || (text
+                            .charAt(pos) == '_'))) {
+                pos++;
+
+                while ((pos < text.length()) && isNameChar(text.charAt(pos))) {
+                    pos++;
+                }
+            }
+
+            if (pos == start) {
+                throw new IllegalArgumentException();
+            }
+
+            return text.substring(start, pos);
+        }
+
+        private String parseLiteral() {
+            if (!peek('\'') && !peek('"')) {
+                throw new IllegalArgumentException();
+            }
+
+            char quote = text.charAt(pos++);
+            int end = text.indexOf(quote, pos);
+
+            if (end < 0) {
+                throw new IllegalArgumentException();
+            }
+
+            String literal = text.substring(pos, end);
+            pos = end + 1;
+
+            return literal;
+        }
+
+        private static boolean isNameChar(char c) {
+            return Character.isLetterOrDigit(c) || (c == '_') || (c == '-')
+                    || (c == '.');
+        }
+
+        private void skipWhitespace() {
+            while ((pos < text.length())
+                    && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private boolean peek(char c) {
+            return (pos < text.length()) && (text.charAt(pos) == c);
+        }
+
+        private void expect(char c) {
+            if (!peek(c)) {
+                throw new IllegalArgumentException();
+            }
+
+            pos++;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package org.dom4j.xpath;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.dom4j.InvalidXPathException;
+
+/**
+ * <p>
+ * <code>XPathCache</code> is a size bounded cache of {@link CompiledXPath}
+ * instances keyed by the expression text and the namespace URIs it is
+ * compiled with. It is used by {@link org.dom4j.DocumentFactory} so that the
+ * XPath convenience methods such as {@link org.dom4j.Node#selectNodes(String)}
+ * only parse each expression once.
+ * </p>
+ *
+ * <p>
+ * The cache may be used by several threads at once. Lookups of cached
+ * expressions do not lock. Expressions are compiled outside of any lock, so
+ * two threads missing on the same expression may both compile it; only one of
+ * the results is kept. When the cache is full, an expression which has not
+ * been used since the previous eviction pass is evicted, which approximates a
+ * least recently used order. The hit, miss and eviction counters can be used
+ * to check that the cache is large enough for the number of distinct
+ * expressions in use.
+ * </p>
+ *
+ * @see org.dom4j.DocumentFactory#getXPathCache()
+ */
+public class XPathCache {
+
+    /** The default maximum number of cached expressions */
+    public static final int DEFAULT_MAX_SIZE = 512;
+
+    private final int maxSize;
+
+    private final ConcurrentMap<Key, Entry> map
+            = new ConcurrentHashMap<Key, Entry>();
+
+    /** Guards the eviction of entries */
+    private final Object evictionLock = new Object();
+
+    /** The next entries to consider for eviction, guarded by evictionLock */
+    private Iterator<Entry> hand;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    public XPathCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public XPathCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Illegal maximum size: "
+                    + maxSize);
+        }
+
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the compiled form of the given expression, compiling and caching
+     * it if it is not in the cache yet. Callers which look up many expressions
+     * with the same namespace URIs should pass them as {@link NamespaceURIs},
+     * which are neither hashed nor copied again.
+     *
+     * @param text
+     *            the XPath expression
+     * @param namespaceURIs
+     *            the namespace URIs indexed by prefix to compile the
+     *            expression with or null to resolve prefixes against the
+     *            context node
+     *
+     * @return the compiled expression
+     *
+     * @throws InvalidXPathException
+     *             if the expression is invalid
+     */
+    public CompiledXPath get(String text, Map<String, String> namespaceURIs)
+            throws InvalidXPathException {
+        Entry entry = map.get(new Key(text, namespaceURIs));
+
+        if (entry != null) {
+            if (!entry.used) {
+                // only written once per eviction pass
+                entry.used = true;
+            }
+
+            hits.increment();
+
+            return entry.xpath;
+        }
+
+        misses.increment();
+
+        if ((namespaceURIs != null)
+                && !(namespaceURIs instanceof NamespaceURIs)) {
+            // keep a copy so that later changes to the map cause a miss
+            namespaceURIs = new NamespaceURIs(namespaceURIs);
+        }
+
+        entry = new Entry(new Key(text, namespaceURIs),
+                (namespaceURIs != null) ? new CompiledXPath(text,
+                        new XPathContext(namespaceURIs)) : new CompiledXPath(
+                        text));
+
+        Entry existing = map.putIfAbsent(entry.key, entry);
+
+        if (existing != null) {
+            return existing.xpath;
+        }
+
+        if (map.size() > maxSize) {
+            evict(entry);
+        }
+
+        return entry.xpath;
+    }
+
+    /**
+     * @return the maximum number of expressions this cache will hold
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of expressions currently cached
+     */
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * @return the number of lookups that found the expression in the cache
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that had to compile the expression
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of expressions removed to make room for new ones
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Removes all the cached expressions. The counters are not reset.
+     */
+    public void clear() {
+        map.clear();
+    }
+
+    public String toString() {
+        return "XPathCache[size=" + size() + ", maxSize=" + maxSize
+                + ", hits=" + hits + ", misses=" + misses + ", evictions="
+                + evictions + "]";
+    }
+
+    /**
+     * Removes entries until the cache is within its maximum size. The entries
+     * are visited in turn; an entry used since it was last visited is kept
+     * once more, any other entry is removed.
+     *
+     * @param added
+     *            the entry just added, which is kept
+     */
+    private void evict(Entry added) {
+        synchronized (evictionLock) {
+            while (map.size() > maxSize) {
+                if ((hand == null) || !hand.hasNext()) {
+                    hand = map.values().iterator();
+
+                    if (!hand.hasNext()) {
+                        return;
+                    }
+                }
+
+                Entry entry = hand.next();
+
+                if (entry == added) {
+                    continue;
+                }
+
+                if (entry.used) {
+                    entry.used = false;
+                } else if (map.remove(entry.key, entry)) {
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * An unmodifiable copy of namespace URIs indexed by prefix whose hash code
+     * is computed once, for callers such as
+     * {@link org.dom4j.DocumentFactory} which look up many expressions with
+     * the same namespace URIs.
+     * </p>
+     */
+    public static final class NamespaceURIs extends AbstractMap<String, String> {
+        private final Map<String, String> uris;
+
+        private final int hashCode;
+
+        /**
+         * @param namespaceURIs
+         *            the namespace URIs indexed by prefix, which are copied
+         */
+        public NamespaceURIs(Map<String, String> namespaceURIs) {
+            this.uris = Collections.unmodifiableMap(
+                    new HashMap<String, String>(namespaceURIs));
+            this.hashCode = uris.hashCode();
+        }
+
+        public String get(Object prefix) {
+            return uris.get(prefix);
+        }
+
+        public Set<Map.Entry<String, String>> entrySet() {
+            return uris.entrySet();
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class Entry {
+        private final Key key;
+
+        private final CompiledXPath xpath;
+
+        /** Whether the entry has been used since the hand last passed it */
+        private volatile boolean used;
+
+        Entry(Key key, CompiledXPath xpath) {
+            this.key = key;
+            this.xpath = xpath;
+        }
+    }
+
+    private static final class Key {
+        private final String text;
+
+        private final Map<String, String> namespaceURIs;
+
+        private final int hashCode;
+
+        Key(String text, Map<String, String> namespaceURIs) {
+            this.text = text;
+            this.namespaceURIs = namespaceURIs;
+            this.hashCode = (31 * Objects.hashCode(text))
+                    + Objects.hashCode(namespaceURIs);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(Object object) {
+            if (!(object instanceof Key)) {
+                return false;
+            }
+
+            Key that = (Key) object;
+
+            // no namespace URIs differs from an empty map of them
+            return (hashCode == that.hashCode)
+                    && Objects.equals(text, that.text)
+                    && Objects.equals(namespaceURIs, that.namespaceURIs);
+        }
+    }
+}
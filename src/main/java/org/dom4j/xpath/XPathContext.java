@@ -0,0 +1,116 @@
+package org.dom4j.xpath;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import org.jaxen.FunctionContext;
+import org.jaxen.NamespaceContext;
+import org.jaxen.SimpleNamespaceContext;
+import org.jaxen.VariableContext;
+
+/**
+ * <p>
+ * <code>XPathContext</code> holds the namespaces, functions and variables a
+ * {@link CompiledXPath} is evaluated with. It is immutable, so a single
+ * instance can be shared by any number of threads as long as the contexts it
+ * wraps are not modified while they are in use.
+ * </p>
+ *
+ * <p>
+ * Any of the contexts may be null: without a namespace context prefixes are
+ * resolved against the namespaces in scope at the context node, without a
+ * function context the XPath 1.0 core functions are available and without a
+ * variable context no variables are defined.
+ * </p>
+ *
+ * @see CompiledXPath
+ */
+public final class XPathContext implements Serializable {
+    /** The context that resolves namespaces from the context node */
+    public static final XPathContext DEFAULT = new XPathContext(null, null,
+            null);
+
+    private final NamespaceContext namespaceContext;
+
+    private final FunctionContext functionContext;
+
+    private final VariableContext variableContext;
+
+    /**
+     * Creates a context which maps the given namespace prefixes to URIs.
+     *
+     * @param namespaceURIs
+     *            the namespace URIs indexed by prefix
+     */
+    public XPathContext(Map<String, String> namespaceURIs) {
+        this(new SimpleNamespaceContext(namespaceURIs), null, null);
+    }
+
+    public XPathContext(NamespaceContext namespaceContext,
+            FunctionContext functionContext, VariableContext variableContext) {
+        this.namespaceContext = namespaceContext;
+        this.functionContext = functionContext;
+        this.variableContext = variableContext;
+    }
+
+    /**
+     * @return the namespace context or null to use the namespaces in scope at
+     *         the context node
+     */
+    public NamespaceContext getNamespaceContext() {
+        return namespaceContext;
+    }
+
+    /**
+     * @return the function context or null to use the core functions
+     */
+    public FunctionContext getFunctionContext() {
+        return functionContext;
+    }
+
+    /**
+     * @return the variable context or null if no variables are defined
+     */
+    public VariableContext getVariableContext() {
+        return variableContext;
+    }
+
+    /**
+     * Returns a copy of this context using the given namespace context.
+     *
+     * @param namespaceContext
+     *            the new namespace context
+     *
+     * @return the new context
+     */
+    public XPathContext withNamespaceContext(NamespaceContext namespaceContext) {
+        return new XPathContext(namespaceContext, functionContext,
+                variableContext);
+    }
+
+    /**
+     * Returns a copy of this context using the given function context.
+     *
+     * @param functionContext
+     *            the new function context
+     *
+     * @return the new context
+     */
+    public XPathContext withFunctionContext(FunctionContext functionContext) {
+        return new XPathContext(namespaceContext, functionContext,
+                variableContext);
+    }
+
+    /**
+     * Returns a copy of this context using the given variable context.
+     *
+     * @param variableContext
+     *            the new variable context
+     *
+     * @return the new context
+     */
+    public XPathContext withVariableContext(VariableContext variableContext) {
+        return new XPathContext(namespaceContext, functionContext,
+                variableContext);
+    }
+}
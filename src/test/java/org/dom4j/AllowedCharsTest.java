@@ -1,6 +1,15 @@
 package org.dom4j;
 
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.dom4j.io.SAXContentHandler;
+import org.dom4j.io.SAXReader;
+import org.testng.Assert;
 import org.testng.annotations.Test;
+import org.xml.sax.helpers.AttributesImpl;
 
 /**
  * @author Filip Jirsák
@@ -73,6 +82,76 @@ public class AllowedCharsTest {
         root.addElement("ns>:element", "http://example.com/namespace");
     }
 
+    @Test
+    public void trustedNameIsNotValidated() {
+        QName qname = new QName("elem:ent", Namespace.get("ns", "http://example.com/namespace"), null, false);
+        Assert.assertEquals(qname.getQualifiedName(), "ns:elem:ent");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void untrustedNameIsValidated() {
+        new QName("elem:ent", Namespace.get("ns", "http://example.com/namespace"), null, true);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void namesFromUserEventsAreValidated() throws Exception {
+        SAXContentHandler handler = new SAXContentHandler();
+        handler.startDocument();
+        handler.startElement("", "element>name", "element>name",
+                new AttributesImpl());
+    }
+
+    @Test
+    public void overriddenCreateQNameIsUsedByReaders() throws Exception {
+        final List<String> created = new ArrayList<String>();
+        DocumentFactory factory = new DocumentFactory() {
+            public QName createQName(String localName, Namespace namespace) {
+                created.add(localName);
+
+                return super.createQName(localName, namespace);
+            }
+        };
+
+        SAXReader reader = new SAXReader(factory);
+        reader.read(new StringReader("<a xmlns='urn:a'><b/></a>"));
+        Assert.assertEquals(created.toString(), "[a, b]");
+
+        factory.createTrustedQName("c", Namespace.NO_NAMESPACE);
+        Assert.assertEquals(created.toString(), "[a, b, c]");
+    }
+
+    /**
+     * Compares the name checks with the regular expressions of the XML grammar
+     * for every character of the Basic Multilingual Plane.
+     */
+    @Test
+    public void allCharacters() {
+        String startChar = "_A-Za-z\u00C0-\u00D6\u00D8-\u00F6\u00F8-\u02FF\u0370-\u037D\u037F-\u1FFF\u200C-\u200D\u2070-\u218F\u2C00-\u2FEF\u3001-\uD7FF\uF900-\uFDCF\uFDF0-\uFFFD";
+        String nameChar = startChar + "\\-.0-9\u00B7\u0300-\u036F\u203F-\u2040";
+        Pattern ncname = Pattern.compile("[" + startChar + "][" + nameChar + "]*");
+        Pattern name = Pattern.compile("[:" + startChar + "][:" + nameChar + "]*");
+
+        for (char c = 0; c < 0xFFFF; c++) {
+            String[] candidates = {String.valueOf(c), "a" + c};
+
+            for (String candidate : candidates) {
+                Assert.assertEquals(isLegal(candidate, Namespace.NO_NAMESPACE), name.matcher(candidate).matches(),
+                        "Name check of U+" + Integer.toHexString(c));
+                Assert.assertEquals(isLegal(candidate, Namespace.XML_NAMESPACE), ncname.matcher(candidate).matches(),
+                        "NCName check of U+" + Integer.toHexString(c));
+            }
+        }
+    }
+
+    private static boolean isLegal(String name, Namespace namespace) {
+        try {
+            new QName(name, namespace);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
     //TODO It is illegal to create element or attribute with namespace prefix and empty namespace IRI.
     //See https://www.w3.org/TR/2006/REC-xml-names11-20060816/#scoping
 }
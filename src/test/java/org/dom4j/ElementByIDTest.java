@@ -7,6 +7,10 @@
 
 package org.dom4j;
 
+import java.io.StringReader;
+
+import org.dom4j.io.SAXReader;
+
 /**
  * Tests the elementByID() method
  * 
@@ -41,6 +45,121 @@ public class ElementByIDTest extends AbstractTestCase {
 
         assertTrue("Found no element", element == null);
     }
+
+    public void testIndexedElementByID() throws Exception {
+        SAXReader reader = new SAXReader();
+        reader.setIndexElementIDs(true);
+
+        Document document = getDocument(INPUT_XML_FILE, reader);
+        Element element = document.elementByID("message");
+
+        assertNotNull("Found element by ID", element);
+        assertEquals("squeak squeak squeak", element.getText());
+        assertNull(document.elementByID("DoesNotExist"));
+
+        // the index follows changes to the document
+        Element body = document.getRootElement().element("body");
+        Element added = body.addElement("p").addAttribute("ID", "added");
+        assertSame(added, document.elementByID("added"));
+
+        element.detach();
+        assertNull(document.elementByID("message"));
+
+        added.addAttribute("ID", "message");
+        assertSame(added, document.elementByID("message"));
+        assertNull(document.elementByID("added"));
+
+        body.remove(added);
+        assertNull(document.elementByID("message"));
+    }
+
+    public void testIndexedMissWithoutChanges() throws Exception {
+        CountingDocument document = new CountingDocument();
+        document.setIndexElementIDs(true);
+
+        Element root = document.addElement("root");
+
+        for (int i = 0; i < 100; i++) {
+            root.addElement("item").addAttribute("ID", "i" + i);
+        }
+
+        assertNotNull(document.elementByID("i50"));
+        assertNull(document.elementByID("missing"));
+
+        // misses on an unchanged document do not walk it again
+        document.count = 0;
+        assertNull(document.elementByID("missing"));
+        assertNull(document.elementByID("other"));
+        assertSame(root.element("item"), document.elementByID("i0"));
+        assertEquals(0, document.count);
+
+        // text does not change the IDs
+        root.element("item").addText("text");
+        assertNull(document.elementByID("missing"));
+        assertEquals(0, document.count);
+
+        // changes below elements whose changes were already counted
+        Element item = (Element) root.elements().get(10);
+        Element child = item.addElement("child");
+        assertNull(document.elementByID("missing"));
+        child.addElement("grandChild");
+        child.addElement("grandChild").addAttribute("ID", "missing");
+        assertNotNull(document.elementByID("missing"));
+
+        child.element("grandChild").addAttribute("ID", "first");
+        assertEquals("first", child.element("grandChild").attributeValue(
+                "ID"));
+        assertSame(child.element("grandChild"), document.elementByID("first"));
+
+        item.attribute("ID").setValue("renamed");
+        assertNull(document.elementByID("i10"));
+        assertSame(item, document.elementByID("renamed"));
+    }
+
+    public void testIndexedDeepDocument() throws Exception {
+        Document document = DocumentHelper.createDocument();
+        ((org.dom4j.tree.DefaultDocument) document).setIndexElementIDs(true);
+
+        Element element = document.addElement("root");
+
+        for (int i = 0; i < 50000; i++) {
+            element = element.addElement("node");
+        }
+
+        element.addAttribute("ID", "leaf");
+
+        assertSame(element, document.elementByID("leaf"));
+        assertNull(document.elementByID("missing"));
+    }
+
+    public void testIndexedElementByDeclaredID() throws Exception {
+        String xml = "<!DOCTYPE doc [<!ATTLIST item key ID #IMPLIED>]>"
+                + "<doc><item key='a'/><item ID='b'/><other key='c'/></doc>";
+
+        SAXReader reader = new SAXReader();
+        reader.setIncludeInternalDTDDeclarations(true);
+        reader.setIndexElementIDs(true);
+
+        Document document = reader.read(new StringReader(xml));
+        Element root = document.getRootElement();
+
+        assertSame(root.element("item"), document.elementByID("a"));
+        assertNull(document.elementByID("b"));
+        assertNull(document.elementByID("c"));
+    }
+
+    /**
+     * Counts the elements whose ID is read.
+     */
+    private static class CountingDocument extends org.dom4j.tree.DefaultDocument {
+        private int count;
+
+        protected String elementID(Element element) {
+            count++;
+
+            return super.elementID(element);
+        }
+    }
 }
 
 /*
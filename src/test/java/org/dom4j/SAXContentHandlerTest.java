@@ -8,11 +8,14 @@
 package org.dom4j;
 
 import org.dom4j.io.SAXContentHandler;
+import org.dom4j.io.SAXReader;
 import org.testng.annotations.BeforeClass;
 import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
 
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
+import java.io.StringReader;
 import java.util.List;
 
 public class SAXContentHandlerTest extends AbstractTestCase {
@@ -66,6 +69,81 @@ public class SAXContentHandlerTest extends AbstractTestCase {
                 .getNodeType());
         assertEquals(Node.TEXT_NODE, ((Node) content.get(2)).getNodeType());
     }
+
+    public void testTextChunksAreMerged() throws Exception {
+        SAXContentHandler handler = new SAXContentHandler();
+        handler.startDocument();
+        handler.startElement("", "a", "a", new AttributesImpl());
+        characters(handler, "one ");
+        characters(handler, "&");
+        characters(handler, " two");
+        handler.startElement("", "b", "b", new AttributesImpl());
+        handler.endElement("", "b", "b");
+        characters(handler, "three");
+        handler.endElement("", "a", "a");
+        handler.endDocument();
+
+        Element a = handler.getDocument().getRootElement();
+        assertEquals(3, a.nodeCount());
+        assertEquals("one & two", a.node(0).getText());
+        assertEquals("three", a.node(2).getText());
+    }
+
+    public void testCDATAChunksAreMerged() throws Exception {
+        SAXContentHandler handler = new SAXContentHandler();
+        handler.startDocument();
+        handler.startElement("", "a", "a", new AttributesImpl());
+        characters(handler, "text");
+        handler.startCDATA();
+        characters(handler, "<one>");
+        characters(handler, "<two>");
+        handler.endCDATA();
+        handler.startCDATA();
+        handler.endCDATA();
+        characters(handler, "text");
+        handler.endElement("", "a", "a");
+        handler.endDocument();
+
+        Element a = handler.getDocument().getRootElement();
+        assertEquals(4, a.nodeCount());
+        assertEquals(Node.TEXT_NODE, a.node(0).getNodeType());
+        assertEquals(Node.CDATA_SECTION_NODE, a.node(1).getNodeType());
+        assertEquals("<one><two>", a.node(1).getText());
+        assertEquals(Node.CDATA_SECTION_NODE, a.node(2).getNodeType());
+        assertEquals("", a.node(2).getText());
+        assertEquals(Node.TEXT_NODE, a.node(3).getNodeType());
+    }
+
+    public void testStripWhitespaceText() throws Exception {
+        SAXReader reader = new SAXReader();
+        reader.setStripWhitespaceText(true);
+
+        Document doc = reader.read(new StringReader("<a>\n  <b/>\n  "
+                + "<c> x </c>\n</a>"));
+        Element a = doc.getRootElement();
+        assertEquals(2, a.nodeCount());
+        assertEquals(" x ", a.element("c").getText());
+    }
+
+    public void testIgnoredComment() throws Exception {
+        SAXReader reader = new SAXReader();
+        reader.setIgnoreComments(true);
+
+        String xml = "<a>one<!-- comment -->two</a>";
+        assertEquals(2, reader.read(new StringReader(xml)).getRootElement()
+                .nodeCount());
+
+        reader.setMergeAdjacentText(true);
+        assertEquals(1, reader.read(new StringReader(xml)).getRootElement()
+                .nodeCount());
+    }
+
+    private static void characters(SAXContentHandler handler, String text)
+            throws Exception {
+        // surround the characters, as a parser reports them from its buffer
+        char[] ch = ("[" + text + "]").toCharArray();
+        handler.characters(ch, 1, text.length());
+    }
 }
 
 /*
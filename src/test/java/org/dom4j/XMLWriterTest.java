@@ -687,6 +687,124 @@ public class XMLWriterTest extends AbstractTestCase {
         Assert.assertEquals(stringWriter.toString(), "<doc penguin=\"&#128039;\"/>");
     }
 
+    public void testFastEscaping() throws IOException {
+        String[] texts = {"plain", "", "a<b>&c", "\"quoted\" 'single'",
+                "tab\tnew\nline\rreturn", "ctrl\u0001\u001f", "caf\u00e9",
+                "\ud83d\udc27 penguin", "lone \ud83d", "<&>\u0080\u00ff\u0100"};
+        String[] encodings = {"UTF-8", "US-ASCII"};
+        char[] quotes = {'"', '\''};
+
+        for (String text : texts) {
+            Document document = DocumentHelper.createDocument();
+            Element root = document.addElement("doc");
+            root.addAttribute("a", text);
+            root.addText(text);
+            root.addElement("child").addText(text).addAttribute("b", text);
+
+            for (String encoding : encodings) {
+                for (char quote : quotes) {
+                    for (int max : new int[] {0, 0x7f, 0xff}) {
+                        OutputFormat format = OutputFormat
+                                .createCompactFormat();
+                        format.setEncoding(encoding);
+                        format.setAttributeQuoteCharacter(quote);
+
+                        String expected = write(document, format, max);
+                        format.setFastEscaping(true);
+                        assertEquals(text, expected, write(document, format,
+                                max));
+                    }
+                }
+            }
+        }
+    }
+
+    public void testFastEscapingMaximumAllowedCharacter() throws IOException {
+        Document document = DocumentHelper.createDocument();
+        document.addElement("doc").addAttribute("a", "\u00e9\u0100")
+                .addText("\u00e9\u0100");
+
+        OutputFormat format = OutputFormat.createCompactFormat();
+        format.setSuppressDeclaration(true);
+        format.setFastEscaping(true);
+
+        assertEquals("<doc a=\"\u00e9&#256;\">\u00e9&#256;</doc>", write(
+                document, format, 0xff));
+        assertEquals("<doc a=\"&#233;&#256;\">&#233;&#256;</doc>", write(
+                document, format, 0x7f));
+    }
+
+    public void testDirectEncoding() throws IOException {
+        String[] texts = {"plain", "caf\u00e9 \u20ac", "\ud83d\udc27 penguin",
+                "lone \ud83d and \udc27", "<&>\"'", "\u0100\u07ff\u0800\uffff"};
+        String[] encodings = {"UTF-8", "UTF8", "US-ASCII", "ISO-8859-1",
+                "UTF-16"};
+
+        for (String encoding : encodings) {
+            for (String text : texts) {
+                Document document = DocumentHelper.createDocument();
+                Element root = document.addElement("r\u00e9sum\u00e9");
+                root.addAttribute("a\u00e9", text).addText(text);
+                root.addComment(text);
+                root.addElement("r\u00e9sum\u00e9").addCDATA(text);
+
+                OutputFormat format = OutputFormat.createPrettyPrint();
+                format.setEncoding(encoding);
+
+                byte[] expected = writeBytes(document, format);
+                format.setDirectEncoding(true);
+                assertEquals(encoding + " " + text, new String(expected,
+                        "ISO-8859-1"), new String(writeBytes(document, format),
+                        "ISO-8859-1"));
+            }
+        }
+    }
+
+    public void testDirectEncodingLargeDocument() throws Exception {
+        Document document = DocumentHelper.createDocument();
+        Element root = document.addElement("root");
+
+        for (int i = 0; i < 2000; i++) {
+            root.addElement("item").addAttribute("id", "\u00e9" + i).setText(
+                    "text \u20ac\ud83d\udc27 " + i);
+        }
+
+        OutputFormat format = new OutputFormat();
+        assertFalse(format.isDirectEncoding());
+        format.setDirectEncoding(true);
+        byte[] direct = writeBytes(document, format);
+        format.setDirectEncoding(false);
+
+        Assert.assertEquals(direct, writeBytes(document, format));
+        assertEquals(document.asXML().length(), DocumentHelper.parseText(
+                new String(direct, "UTF-8")).asXML().length());
+    }
+
+    private static byte[] writeBytes(Document document, OutputFormat format)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XMLWriter writer = new XMLWriter(out, format);
+        writer.write(document);
+        writer.close();
+
+        return out.toByteArray();
+    }
+
+    private static String write(Document document, OutputFormat format,
+            int maximumAllowedCharacter) throws IOException {
+        StringWriter stringWriter = new StringWriter();
+        XMLWriter writer = new XMLWriter(stringWriter, format);
+
+        if (maximumAllowedCharacter > 0) {
+            writer.setMaximumAllowedCharacter(maximumAllowedCharacter);
+        }
+
+        writer.write(document);
+        writer.close();
+
+        return stringWriter.toString();
+    }
+
     protected void generateXML(ContentHandler handler) throws SAXException {
         handler.startDocument();
 
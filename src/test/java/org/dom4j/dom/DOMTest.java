@@ -119,6 +119,188 @@ public class DOMTest extends AbstractTestCase {
         }
     }
 
+    public void testSiblings() throws Exception {
+        DOMDocument document = new DOMDocument("Root");
+        org.w3c.dom.Element parent = document.createElement("Parent");
+        document.appendChild(parent);
+
+        for (int i = 0; i < 10; i++) {
+            parent.appendChild(document.createElement("Child" + i));
+        }
+
+        assertEquals("Child0 Child1 Child2 Child3 Child4 Child5 Child6 Child7 "
+                + "Child8 Child9", forward(parent));
+        assertEquals("Child9 Child8 Child7 Child6 Child5 Child4 Child3 Child2 "
+                + "Child1 Child0", backward(parent));
+
+        // change the content in the middle of a walk
+        Node child = parent.getFirstChild().getNextSibling().getNextSibling();
+        parent.insertBefore(document.createElement("Before2"), child);
+        assertEquals("Child3", child.getNextSibling().getNodeName());
+        assertEquals("Before2", child.getPreviousSibling().getNodeName());
+
+        parent.removeChild(parent.getFirstChild());
+        parent.removeChild(parent.getFirstChild());
+        assertEquals("Child3", child.getNextSibling().getNodeName());
+        assertEquals("Before2", child.getPreviousSibling().getNodeName());
+
+        parent.replaceChild(document.createElement("New3"), child
+                .getNextSibling());
+        assertEquals("New3", child.getNextSibling().getNodeName());
+        assertNull(parent.getLastChild().getNextSibling());
+        assertNull(parent.getFirstChild().getPreviousSibling());
+
+        // a removed node has no siblings
+        parent.removeChild(child);
+        assertNull(child.getNextSibling());
+        assertEquals("Before2 New3 Child4 Child5 Child6 Child7 Child8 Child9",
+                forward(parent));
+
+        // changes made through the dom4j API
+        ((DOMElement) parent).content().add(0, new DOMElement("First"));
+        ((DOMElement) parent).content().remove(3);
+        assertEquals("First Before2 New3 Child5 Child6 Child7 Child8 Child9",
+                forward(parent));
+    }
+
+    public void testElementsByTagName() throws Exception {
+        DOMDocument document = new DOMDocument("Root");
+        org.w3c.dom.Element root = document.createElement("root");
+        document.appendChild(root);
+
+        org.w3c.dom.Element parent = document.createElement("item");
+        root.appendChild(parent);
+
+        for (int i = 0; i < 3; i++) {
+            org.w3c.dom.Element item = document.createElement("item");
+            item.setAttribute("id", String.valueOf(i));
+            parent.appendChild(item);
+        }
+
+        NodeList all = document.getElementsByTagName("item");
+        NodeList children = parent.getElementsByTagName("item");
+        NodeList any = root.getElementsByTagName("*");
+
+        assertEquals(parent, all.item(0));
+        assertEquals("0", ((org.w3c.dom.Element) children.item(0))
+                .getAttribute("id"));
+        assertEquals(4, all.getLength());
+        assertEquals(3, children.getLength());
+        assertEquals(4, any.getLength());
+        assertNull(children.item(3));
+        assertNull(children.item(-1));
+
+        // the lists are live
+        org.w3c.dom.Element last = (org.w3c.dom.Element) children.item(2);
+        last.appendChild(document.createElement("item"));
+        assertEquals(5, all.getLength());
+        assertEquals(4, children.getLength());
+        assertEquals(last.getFirstChild(), children.item(3));
+
+        parent.removeChild(parent.getFirstChild());
+        assertEquals("1", ((org.w3c.dom.Element) children.item(0))
+                .getAttribute("id"));
+        assertEquals(3, children.getLength());
+
+        ((DOMElement) last).setName("other");
+        assertEquals(2, children.getLength());
+        assertEquals(3, all.getLength());
+        assertEquals(4, any.getLength());
+
+        // changes made through the dom4j API
+        ((DOMElement) last).addElement("item");
+        assertEquals(3, children.getLength());
+        ((DOMElement) root).content().clear();
+        assertEquals(0, all.getLength());
+        assertEquals(3, children.getLength());
+    }
+
+    public void testElementsByTagNameAfterDeepChanges() throws Exception {
+        DOMDocument document = new DOMDocument("Root");
+        org.w3c.dom.Element element = document.createElement("node");
+        document.appendChild(element);
+
+        org.w3c.dom.Element middle = null;
+
+        for (int i = 0; i < 2000; i++) {
+            element = (org.w3c.dom.Element) element.appendChild(document
+                    .createElement("node"));
+
+            if (i == 1000) {
+                middle = element;
+            }
+        }
+
+        NodeList all = document.getElementsByTagName("item");
+        NodeList below = middle.getElementsByTagName("item");
+        assertEquals(0, all.getLength());
+        assertEquals(0, below.getLength());
+
+        // several changes before the lists are used again
+        for (int i = 1; i <= 3; i++) {
+            element.appendChild(document.createElement("item"));
+            element.appendChild(document.createElement("item"));
+            assertEquals(2 * i, all.getLength());
+            assertEquals(2 * i, below.getLength());
+        }
+
+        // a subtree changed before it is added
+        org.w3c.dom.Element subtree = document.createElement("tree");
+        subtree.appendChild(document.createElement("item"));
+        middle.appendChild(subtree);
+        subtree.appendChild(document.createElement("item"));
+        assertEquals(8, all.getLength());
+        assertEquals(8, below.getLength());
+
+        subtree.appendChild(document.createElement("item"));
+        assertEquals(9, document.getElementsByTagName("item").getLength());
+        middle.removeChild(subtree);
+        assertEquals(6, all.getLength());
+        assertEquals(6, below.getLength());
+    }
+
+    public void testElementsByTagNameNS() throws Exception {
+        DOMDocument document = new DOMDocument("Root");
+        org.w3c.dom.Element root = document.createElementNS("urn:a", "a:root");
+        document.appendChild(root);
+        root.appendChild(document.createElementNS("urn:a", "a:item"));
+        root.appendChild(document.createElementNS("urn:b", "b:item"));
+        root.appendChild(document.createElement("item"));
+
+        assertEquals(1, document.getElementsByTagNameNS("urn:a", "item")
+                .getLength());
+        assertEquals(2, document.getElementsByTagNameNS("urn:a", "*")
+                .getLength());
+        assertEquals(3, root.getElementsByTagNameNS("*", "item").getLength());
+        assertEquals(1, root.getElementsByTagNameNS("", "item").getLength());
+        assertEquals(document.getDocumentElement().getLastChild(), root
+                .getElementsByTagNameNS(null, "item").item(0));
+    }
+
+    private static String forward(Node parent) {
+        StringBuilder names = new StringBuilder();
+
+        for (Node n = parent.getFirstChild(); n != null; n = n
+                .getNextSibling()) {
+            names.append((names.length() > 0) ? " " : "").append(
+                    n.getNodeName());
+        }
+
+        return names.toString();
+    }
+
+    private static String backward(Node parent) {
+        StringBuilder names = new StringBuilder();
+
+        for (Node n = parent.getLastChild(); n != null; n = n
+                .getPreviousSibling()) {
+            names.append((names.length() > 0) ? " " : "").append(
+                    n.getNodeName());
+        }
+
+        return names.toString();
+    }
+
     // Implementation methods
     // -------------------------------------------------------------------------
     @BeforeClass
@@ -0,0 +1,138 @@
+package org.dom4j.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import org.dom4j.AbstractTestCase;
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.Namespace;
+import org.dom4j.QName;
+
+/**
+ * Tests the {@link BinaryWriter} and {@link BinaryReader}.
+ */
+public class BinaryWriterTest extends AbstractTestCase {
+    private static final String[] DOCUMENTS = {"/xml/much_ado.xml",
+            "/xml/namespaces.xml", "/xml/testNamespaces.xml", "/xml/cdata.xml",
+            "/xml/testPI.xml", "/xml/xmlspec.xml", "/xml/soap.xml",
+            "/xml/nitf/sample.xml"};
+
+    public void testRoundTrip() throws Exception {
+        for (String path : DOCUMENTS) {
+            Document document = getDocument(path);
+            Document copy = roundTrip(document);
+
+            assertEquals(path, document.asXML(), copy.asXML());
+            assertDocumentsEqual(document, copy);
+        }
+    }
+
+    public void testAllNodeTypes() throws Exception {
+        Document document = DocumentHelper.createDocument();
+        document.setName("sample");
+        document.setXMLEncoding("ISO-8859-1");
+        document.addDocType("root", "-//dom4j//Test//EN", "test.dtd");
+        document.addComment("before");
+        document.addProcessingInstruction("xml-stylesheet",
+                "href=\"style.xsl\"");
+
+        Namespace ns = Namespace.get("p", "urn:p");
+        Element root = document.addElement(QName.get("root", ns));
+        root.add(ns);
+        root.addNamespace("", "urn:default");
+        root.addAttribute(QName.get("id", ns), "1");
+        root.addAttribute("empty", "");
+        root.addText("text & <markup> é中😀");
+        root.addCDATA("<cdata/>");
+        root.addEntity("nbsp", "&#160;");
+        root.addComment("inside");
+        root.addProcessingInstruction("target", "");
+        root.addElement("child", "urn:default").addElement(QName.get("leaf",
+                ns)).addText("leaf");
+
+        Document copy = roundTrip(document);
+
+        assertEquals(document.asXML(), copy.asXML());
+        assertEquals("sample", copy.getName());
+        assertEquals("ISO-8859-1", copy.getXMLEncoding());
+        assertEquals("test.dtd", copy.getDocType().getSystemID());
+        assertEquals(root.nodeCount(), copy.getRootElement().nodeCount());
+        assertEquals(ns, copy.getRootElement().getNamespace());
+        assertEquals("p", copy.getRootElement().getNamespacePrefix());
+    }
+
+    public void testLargeAndDeepDocument() throws Exception {
+        Document document = DocumentHelper.createDocument();
+        Element element = document.addElement("root");
+        char[] chars = new char[20000];
+        Arrays.fill(chars, '\u00e9');
+        element.addText(new String(chars));
+
+        for (int i = 0; i < 5000; i++) {
+            element = element.addElement("level" + (i % 300));
+            element.addAttribute("depth", String.valueOf(i));
+        }
+
+        Element copy = roundTrip(document).getRootElement();
+        assertEquals(new String(chars), copy.getText());
+
+        // XMLWriter is recursive, so the levels are compared one by one
+        for (int i = 0; i < 5000; i++) {
+            copy = copy.element("level" + (i % 300));
+            assertEquals(String.valueOf(i), copy.attributeValue("depth"));
+        }
+
+        assertEquals(0, copy.nodeCount());
+    }
+
+    public void testSmallerThanJavaSerialization() throws Exception {
+        Document document = getDocument("/xml/much_ado.xml");
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        new BinaryWriter().write(document, binary);
+
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(serialized);
+        out.writeObject(document);
+        out.close();
+
+        assertTrue(binary.size() * 2 < serialized.size());
+        assertTrue(binary.size() < document.asXML().length());
+    }
+
+    public void testInvalidInput() throws Exception {
+        byte[] bytes = encode(getDocument("/xml/namespaces.xml"));
+
+        assertInvalid("<root/>".getBytes("UTF-8"));
+        assertInvalid(Arrays.copyOf(bytes, bytes.length / 2));
+
+        byte[] version = bytes.clone();
+        version[BinaryFormat.MAGIC.length] = 99;
+        assertInvalid(version);
+    }
+
+    private void assertInvalid(byte[] bytes) throws Exception {
+        try {
+            new BinaryReader().read(new ByteArrayInputStream(bytes));
+            fail("Read an invalid document");
+        } catch (DocumentException e) {
+            log("Caught expected exception: " + e.getMessage());
+        }
+    }
+
+    private static byte[] encode(Document document) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BinaryWriter().write(document, out);
+
+        return out.toByteArray();
+    }
+
+    private static Document roundTrip(Document document) throws Exception {
+        return new BinaryReader().read(new ByteArrayInputStream(
+                encode(document)));
+    }
+}
@@ -7,8 +7,16 @@
 
 package org.dom4j.io;
 
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.dom4j.AbstractTestCase;
+import org.dom4j.Document;
+import org.dom4j.Element;
 import org.dom4j.ElementHandler;
+import org.dom4j.ElementPath;
+import org.dom4j.InvalidXPathException;
 
 /**
  * DOCUMENT ME!
@@ -30,6 +38,204 @@ public class DispatchHandlerTest extends AbstractTestCase {
         assertEquals(6, handler.getCount());
     }
 
+    public void testPatterns() throws Exception {
+        String xml = "<feed xmlns:a='urn:a'><entry id='1' type='news'/>"
+                + "<group><entry id='2'/><item id='3'><entry id='4'/></item>"
+                + "</group><a:entry id='5' type='news'/></feed>";
+
+        assertEquals("[1, 2, 4, 5]", select(xml, "//entry"));
+        assertEquals("[1, 2, 4, 5]", select(xml, "entry"));
+        assertEquals("[2]", select(xml, "/feed/*/entry"));
+        assertEquals("[4]", select(xml, "/feed//item/entry"));
+        assertEquals("[1, 5]", select(xml, "//entry[@type='news']"));
+        assertEquals("[1, 5]", select(xml, "//*[@type = \"news\"]"));
+        assertEquals("[3]", select(xml, "group/*[@id][@id='3']"));
+        assertEquals("[5]", select(xml, "//a:entry"));
+        assertEquals("[1, 2, 3, 4, 5]", select(xml, "/feed//*[@id]"));
+        assertEquals("[]", select(xml, "/entry"));
+    }
+
+    public void testPrefixedAttributePatterns() throws Exception {
+        String xml = "<feed xmlns:p='urn:p' xmlns:q='urn:q'>"
+                + "<entry id='1' xml:lang='en'/><entry id='2' p:type='x'/>"
+                + "<entry id='3' q:type='x' kind='y'/></feed>";
+
+        assertEquals("[1]", select(xml, "//entry[@xml:lang]"));
+        assertEquals("[1]", select(xml, "//entry[@xml:lang='en']"));
+        assertEquals("[2]", select(xml, "//entry[@p:type='x']"));
+        assertEquals("[3]", select(xml, "//*[@q:type][@kind='y']"));
+        assertEquals("[]", select(xml, "//entry[@p:id]"));
+    }
+
+    public void testPlainPathTakesPrecedence() throws Exception {
+        final List<String> events = new ArrayList<String>();
+        SAXReader reader = new SAXReader();
+        reader.addHandler("//b", new RecordingHandler(events, "pattern"));
+        reader.addHandler("/a/b", new RecordingHandler(events, "path"));
+        reader.read(new StringReader("<a><b/><c><b/></c></a>"));
+
+        assertEquals("[path, end path, pattern, end pattern]", events
+                .toString());
+    }
+
+    public void testHandlerRemovedWhileActive() throws Exception {
+        final List<String> events = new ArrayList<String>();
+        final SAXReader reader = new SAXReader();
+        reader.addHandler("//b", new RecordingHandler(events, "b") {
+            public void onStart(ElementPath elementPath) {
+                super.onStart(elementPath);
+                reader.removeHandler("//b");
+            }
+        });
+        reader.read(new StringReader("<a><b/><b/></a>"));
+
+        assertEquals("[b, end b]", events.toString());
+    }
+
+    public void testPaths() throws Exception {
+        final List<String> paths = new ArrayList<String>();
+        SAXReader reader = new SAXReader();
+        reader.setDefaultHandler(new ElementHandler() {
+            public void onStart(ElementPath elementPath) {
+                paths.add(elementPath.getPath());
+
+                if ("b".equals(elementPath.getCurrent().getName())) {
+                    // registered while no handler path leads to b
+                    elementPath.addHandler("c", new RecordingHandler(paths,
+                            "c"));
+                }
+            }
+
+            public void onEnd(ElementPath elementPath) {
+                paths.add("end " + elementPath.getPath());
+            }
+        });
+        reader.read(new StringReader("<a><b><c/><d/></b></a>"));
+
+        assertEquals("[/a, /a/b, c, end c, /a/b/d, end /a/b/d, end /a/b, "
+                + "end /a]", paths.toString());
+    }
+
+    public void testUnsupportedPatterns() throws Exception {
+        String[] patterns = {"//entry[1]", "//entry[title]", "/feed//", "//",
+                "//entry[@id=1]", "//feed/@id", "//entry[@id='1'",
+                "//entry[@:id]", "//entry[@p:]", "//entry[@a b]",
+                "//item/text()", "//item|//other", "//item/.", "//*[@*]",
+                "/feed/item/text()", "/feed/./item", "/feed/item/",
+                "//item/..", "//p:*", "//item[@id]x", "//item/node()",
+                "//@id", "//-item"};
+
+        for (String pattern : patterns) {
+            try {
+                new SAXReader().addHandler(pattern, new MyHandler());
+                fail("Unsupported: " + pattern);
+            } catch (InvalidXPathException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testPruneUnmatched() throws Exception {
+        StringBuilder xml = new StringBuilder("<feed>");
+
+        for (int i = 0; i < 1000; i++) {
+            xml.append("<entry id='").append(i).append("'>text<!--c-->");
+            xml.append("<title>Title ").append(i).append("</title>");
+            xml.append((i % 100 == 0) ? "<item>kept</item>" : "");
+            xml.append("</entry>");
+        }
+
+        xml.append("</feed>");
+
+        final int[] count = new int[1];
+        SAXReader reader = new SAXReader();
+        reader.setPruneUnmatched(true);
+        reader.addHandler("//entry/item", new ElementHandler() {
+            public void onStart(ElementPath elementPath) {
+            }
+
+            public void onEnd(ElementPath elementPath) {
+                Element item = elementPath.getCurrent();
+                Element entry = item.getParent();
+
+                // only the open elements and the handled one are kept
+                assertEquals("kept", item.getText());
+                assertEquals(1, entry.nodeCount());
+                assertEquals(1, entry.getParent().nodeCount());
+                assertEquals(1, entry.attributeCount());
+                count[0]++;
+            }
+        });
+
+        Document doc = reader.read(new StringReader(xml.toString()));
+
+        assertEquals(10, count[0]);
+        assertEquals("feed", doc.getRootElement().getName());
+        assertEquals(0, doc.getRootElement().nodeCount());
+    }
+
+    public void testPruneUnmatchedWithDefaultHandler() throws Exception {
+        final List<String> texts = new ArrayList<String>();
+        SAXReader reader = new SAXReader();
+        reader.setPruneUnmatched(true);
+        reader.addHandler("/feed/skipped", new MyHandler());
+        reader.setDefaultHandler(new ElementHandler() {
+            public void onStart(ElementPath elementPath) {
+            }
+
+            public void onEnd(ElementPath elementPath) {
+                Element element = elementPath.getCurrent();
+
+                if ("entry".equals(element.getName())) {
+                    texts.add(element.getText() + element.elementText("title"));
+                    element.detach();
+                }
+            }
+        });
+
+        Document doc = reader.read(new StringReader("<feed><entry>a<title>1"
+                + "</title></entry><skipped/><entry>b<title>2</title></entry>"
+                + "</feed>"));
+
+        assertEquals("[a1, b2]", texts.toString());
+        assertEquals(1, doc.getRootElement().nodeCount());
+    }
+
+    private static String select(String xml, String pattern) throws Exception {
+        final List<String> ids = new ArrayList<String>();
+        SAXReader reader = new SAXReader();
+        reader.addHandler(pattern, new ElementHandler() {
+            public void onStart(ElementPath elementPath) {
+                ids.add(elementPath.getCurrent().attributeValue("id"));
+            }
+
+            public void onEnd(ElementPath elementPath) {
+            }
+        });
+        reader.read(new StringReader(xml));
+
+        return ids.toString();
+    }
+
+    private static class RecordingHandler implements ElementHandler {
+        private final List<String> events;
+
+        private final String name;
+
+        RecordingHandler(List<String> events, String name) {
+            this.events = events;
+            this.name = name;
+        }
+
+        public void onStart(ElementPath elementPath) {
+            events.add(name);
+        }
+
+        public void onEnd(ElementPath elementPath) {
+            events.add("end " + name);
+        }
+    }
+
     private static class MyHandler implements ElementHandler {
         private int count = 0;
 
@@ -0,0 +1,170 @@
+package org.dom4j.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dom4j.AbstractTestCase;
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Tests the {@link SAXEventRecorder}.
+ */
+public class SAXEventRecorderTest extends AbstractTestCase {
+    private static final String[] DOCUMENTS = {"/xml/much_ado.xml",
+            "/xml/namespaces.xml", "/xml/cdata.xml", "/xml/testPI.xml",
+            "/xml/soap.xml"};
+
+    public void testReplay() throws Exception {
+        for (String path : DOCUMENTS) {
+            Document document = getDocument(path);
+            SAXEventRecorder recorder = record(document);
+
+            assertEquals(path, document.asXML(), replay(recorder).asXML());
+
+            // a recorder may be replayed any number of times
+            assertEquals(path, document.asXML(), replay(recorder).asXML());
+        }
+    }
+
+    public void testAttributes() throws Exception {
+        Document document = DocumentHelper.parseText("<root xmlns:p='urn:p'>"
+                + "<item id='1' p:name='one' empty=''/></root>");
+        final List<String> values = new ArrayList<String>();
+
+        record(document).replay(new DefaultHandler() {
+            public void startElement(String uri, String localName,
+                    String qName, Attributes attributes) {
+                if ("item".equals(localName)) {
+                    values.add(String.valueOf(attributes.getLength()));
+                    values.add(attributes.getValue("id"));
+                    values.add(attributes.getValue("urn:p", "name"));
+                    values.add(attributes.getQName(1));
+                    values.add(attributes.getType("empty"));
+                    values.add(attributes.getValue(2));
+                    values.add(String.valueOf(attributes.getIndex("missing")));
+                    values.add(attributes.getValue(3));
+                }
+            }
+        });
+
+        assertEquals("[3, 1, one, p:name, CDATA, , -1, null]", values
+                .toString());
+    }
+
+    public void testCharactersAreCopied() throws Exception {
+        SAXEventRecorder recorder = new SAXEventRecorder();
+        char[] buffer = "abcdef".toCharArray();
+        recorder.startDocument();
+        recorder.startElement("", "a", "a", null);
+        recorder.characters(buffer, 0, 3);
+        recorder.characters(buffer, 3, 3);
+
+        // parsers reuse their buffers
+        buffer[0] = 'x';
+        recorder.endElement("", "a", "a");
+        recorder.endDocument();
+
+        assertEquals("abcdef", replay(recorder).getRootElement().getText());
+    }
+
+    public void testExternalizable() throws Exception {
+        Document document = DocumentHelper.createDocument();
+        document.addComment("comment");
+
+        Element root = document.addElement("root", "urn:root");
+        root.addAttribute("name", "value € 😀");
+        root.addCDATA("<cdata>");
+        root.addText("text 中");
+        root.addProcessingInstruction("pi", "data");
+
+        SAXEventRecorder copy = serialize(record(document));
+
+        assertEquals(document.asXML(), replay(copy).asXML());
+        assertEquals(document.asXML(), replay(serialize(copy)).asXML());
+    }
+
+    public void testReadEarlierForm() throws Exception {
+        List<SAXEventRecorder.SAXEvent> events =
+                new ArrayList<SAXEventRecorder.SAXEvent>();
+        events.add(new SAXEventRecorder.SAXEvent(
+                SAXEventRecorder.SAXEvent.START_DOCUMENT));
+
+        SAXEventRecorder.SAXEvent start = new SAXEventRecorder.SAXEvent(
+                SAXEventRecorder.SAXEvent.START_ELEMENT);
+        start.addParm("");
+        start.addParm("a");
+        start.addParm("a");
+
+        List<String[]> attributes = new ArrayList<String[]>();
+        attributes.add(new String[] {"", "b", "b", "CDATA", "c"});
+        start.addParm(attributes);
+        events.add(start);
+
+        SAXEventRecorder.SAXEvent characters = new SAXEventRecorder.SAXEvent(
+                SAXEventRecorder.SAXEvent.CHARACTERS);
+        characters.addParm("text".toCharArray());
+        characters.addParm(0);
+        characters.addParm(4);
+        events.add(characters);
+
+        SAXEventRecorder.SAXEvent end = new SAXEventRecorder.SAXEvent(
+                SAXEventRecorder.SAXEvent.END_ELEMENT);
+        end.addParm("");
+        end.addParm("a");
+        end.addParm("a");
+        events.add(end);
+        events.add(new SAXEventRecorder.SAXEvent(
+                SAXEventRecorder.SAXEvent.END_DOCUMENT));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeByte(1);
+        out.writeObject(events);
+        out.close();
+
+        SAXEventRecorder recorder = new SAXEventRecorder();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+                bytes.toByteArray()));
+        recorder.readExternal(in);
+
+        assertEquals("<a b=\"c\">text</a>", replay(recorder)
+                .getRootElement().asXML());
+    }
+
+    private static SAXEventRecorder record(Document document)
+            throws Exception {
+        SAXEventRecorder recorder = new SAXEventRecorder();
+        new SAXWriter(recorder, recorder).write(document);
+
+        return recorder;
+    }
+
+    private static Document replay(SAXEventRecorder recorder)
+            throws Exception {
+        SAXContentHandler handler = new SAXContentHandler();
+        recorder.replay(handler);
+
+        return handler.getDocument();
+    }
+
+    private static SAXEventRecorder serialize(SAXEventRecorder recorder)
+            throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(recorder);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+                bytes.toByteArray()));
+
+        return (SAXEventRecorder) in.readObject();
+    }
+}
@@ -0,0 +1,173 @@
+package org.dom4j.io;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dom4j.AbstractTestCase;
+import org.dom4j.Document;
+import org.dom4j.Element;
+
+/**
+ * Tests the {@link SAXModifier}, copying and in place.
+ */
+public class SAXModifierTest extends AbstractTestCase {
+    private static final String XML = "<feed><title>t</title>"
+            + "<entry id='1'><name>a</name></entry>text"
+            + "<entry id='2'><name>b</name></entry>"
+            + "<entry id='3'><name>c</name></entry></feed>";
+
+    public void testModifyInPlace() throws Exception {
+        SAXModifier modifier = new SAXModifier();
+        modifier.setInPlace(true);
+
+        final List<Element> modified = new ArrayList<Element>();
+        modifier.addModifier("/feed/entry", new ElementModifier() {
+            public Element modifyElement(Element element) {
+                assertNull(element.getParent());
+                assertNull(element.getDocument());
+                modified.add(element);
+                element.addAttribute("seen", "true");
+
+                return element;
+            }
+        });
+
+        Document doc = modifier.modify(new StringReader(XML));
+        List<Element> entries = doc.getRootElement().elements("entry");
+        assertEquals(3, entries.size());
+
+        for (int i = 0; i < entries.size(); i++) {
+            // the parsed elements themselves are kept, not copies
+            assertSame(modified.get(i), entries.get(i));
+            assertSame(doc.getRootElement(), entries.get(i).getParent());
+            assertEquals("true", entries.get(i).attributeValue("seen"));
+        }
+
+        assertEquals(copyModified(false), doc.asXML());
+    }
+
+    public void testRemoveInPlace() throws Exception {
+        SAXModifier modifier = new SAXModifier();
+        modifier.setInPlace(true);
+        modifier.addModifier("/feed/entry", new ElementModifier() {
+            public Element modifyElement(Element element) {
+                return "2".equals(element.attributeValue("id")) ? null
+                        : element;
+            }
+        });
+
+        Document doc = modifier.modify(new StringReader(XML));
+        assertEquals("1,3", ids(doc));
+        assertEquals("t", doc.valueOf("/feed/title"));
+    }
+
+    public void testReplaceRootInPlace() throws Exception {
+        SAXModifier modifier = new SAXModifier();
+        modifier.setInPlace(true);
+        modifier.addModifier("/feed", new ElementModifier() {
+            public Element modifyElement(Element element) {
+                element.setName("rss");
+
+                return element;
+            }
+        });
+
+        Document doc = modifier.modify(new StringReader(XML));
+        assertEquals("rss", doc.getRootElement().getName());
+        assertEquals(3, doc.getRootElement().elements("entry").size());
+    }
+
+    public void testNestedModifiersInPlace() throws Exception {
+        SAXModifier modifier = new SAXModifier(true);
+        modifier.setInPlace(true);
+        modifier.addModifier("/feed/entry", new ElementModifier() {
+            public Element modifyElement(Element element) {
+                element.addAttribute("entry", "true");
+
+                return element;
+            }
+        });
+        modifier.addModifier("/feed/entry/name", new ElementModifier() {
+            public Element modifyElement(Element element) {
+                element.setText(element.getText().toUpperCase());
+
+                return element;
+            }
+        });
+
+        StringWriter out = new StringWriter();
+        modifier.setXMLWriter(new XMLWriter(out));
+        modifier.modify(new StringReader(XML));
+
+        // the names must still be in the entries when these are written
+        String xml = out.toString();
+        assertTrue(xml, xml.contains("<entry id=\"1\" entry=\"true\">"
+                + "<name>A</name></entry>"));
+        assertTrue(xml, xml.contains("<name>C</name>"));
+    }
+
+    public void testStreamInPlace() throws Exception {
+        assertEquals(stream(false), stream(true));
+    }
+
+    public void testPruneWithXMLReader() throws Exception {
+        SAXModifier modifier = new SAXModifier(SAXHelper.createXMLReader(false),
+                true);
+        assertTrue(modifier.isPruneElements());
+    }
+
+    private String copyModified(boolean prune) throws Exception {
+        SAXModifier modifier = new SAXModifier(prune);
+        modifier.addModifier("/feed/entry", new ElementModifier() {
+            public Element modifyElement(Element element) {
+                element.addAttribute("seen", "true");
+
+                return element;
+            }
+        });
+
+        return modifier.modify(new StringReader(XML)).asXML();
+    }
+
+    private String stream(boolean inPlace) throws Exception {
+        SAXModifier modifier = new SAXModifier(true);
+        modifier.setInPlace(inPlace);
+        modifier.addModifier("/feed/entry", new ElementModifier() {
+            public Element modifyElement(Element element) {
+                if ("2".equals(element.attributeValue("id"))) {
+                    return null;
+                }
+
+                element.element("name").setText("modified");
+
+                return element;
+            }
+        });
+
+        StringWriter out = new StringWriter();
+        modifier.setXMLWriter(new XMLWriter(out));
+        modifier.modify(new StringReader(XML));
+
+        String xml = out.toString();
+        assertTrue(xml, xml.contains("<name>modified</name>"));
+        assertFalse(xml, xml.contains("id=\"2\""));
+
+        return xml;
+    }
+
+    private static String ids(Document doc) {
+        StringBuilder ids = new StringBuilder();
+
+        for (Element entry : doc.getRootElement().elements("entry")) {
+            if (ids.length() > 0) {
+                ids.append(',');
+            }
+
+            ids.append(entry.attributeValue("id"));
+        }
+
+        return ids.toString();
+    }
+}
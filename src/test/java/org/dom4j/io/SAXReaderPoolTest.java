@@ -0,0 +1,126 @@
+package org.dom4j.io;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.dom4j.AbstractTestCase;
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.ElementHandler;
+import org.dom4j.ElementPath;
+
+/**
+ * Tests the {@link SAXReaderPool}.
+ */
+public class SAXReaderPoolTest extends AbstractTestCase {
+
+    public void testReadersAreReused() throws Exception {
+        SAXReaderPool pool = new SAXReaderPool(2);
+
+        for (int i = 0; i < 10; i++) {
+            Document doc = pool.read(new StringReader("<a n='" + i + "'/>"));
+            assertEquals(String.valueOf(i), doc.getRootElement()
+                    .attributeValue("n"));
+        }
+
+        assertEquals(10L, pool.getReadCount());
+        assertEquals(1L, pool.getCreatedCount());
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(0, pool.getActiveCount());
+        assertEquals(1, pool.getPeakActiveCount());
+        assertEquals(0L, pool.getDiscardedCount());
+    }
+
+    public void testConcurrentReads() throws Exception {
+        final int threads = 8;
+        final SAXReaderPool pool = new SAXReaderPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+
+        try {
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                results.add(executor.submit(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        start.await();
+
+                        for (int i = 0; i < 200; i++) {
+                            String id = thread + "-" + i;
+                            Document doc = pool.read(new StringReader(
+                                    "<doc><item id='" + id + "'>" + i
+                                            + "</item></doc>"));
+
+                            if (!id.equals(doc.valueOf("/doc/item/@id"))) {
+                                return false;
+                            }
+                        }
+
+                        return true;
+                    }
+                }));
+            }
+
+            start.countDown();
+
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(threads * 200L, pool.getReadCount());
+        assertEquals(0, pool.getActiveCount());
+        assertTrue(pool.getCreatedCount() <= threads);
+        assertEquals(0L, pool.getDiscardedCount());
+    }
+
+    public void testPoolOverflow() throws Exception {
+        final SAXReaderPool[] nested = new SAXReaderPool[1];
+        SAXReaderPool outer = new SAXReaderPool(1) {
+            protected SAXReader createReader() {
+                SAXReader reader = super.createReader();
+                reader.addHandler("/a", new ElementHandler() {
+                    public void onStart(ElementPath path) {
+                        try {
+                            // two reads in progress at the same time
+                            nested[0].read(new StringReader("<b/>"));
+                            nested[0].read(new StringReader("<b/>"));
+                        } catch (DocumentException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+
+                    public void onEnd(ElementPath path) {
+                    }
+                });
+
+                return reader;
+            }
+        };
+
+        nested[0] = outer;
+        outer.read(new StringReader("<a/>"));
+
+        assertEquals(3L, outer.getReadCount());
+        assertEquals(2L, outer.getCreatedCount());
+        assertEquals(2, outer.getPeakActiveCount());
+        assertEquals(1L, outer.getDiscardedCount());
+        assertEquals(1, outer.getIdleCount());
+    }
+
+    public void testExternalEntitiesAreNotLoaded() throws Exception {
+        SAXReaderPool pool = new SAXReaderPool(1);
+        Document doc = pool.read(new StringReader("<!DOCTYPE a ["
+                + "<!ENTITY e SYSTEM 'file:///does/not/exist'>]><a>&e;</a>"));
+
+        assertEquals("", doc.getRootElement().getText());
+    }
+}
@@ -0,0 +1,114 @@
+package org.dom4j.io;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dom4j.AbstractTestCase;
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Tests the attributes and text the {@link SAXWriter} hands to its content
+ * handler, which are views and buffers reused between events.
+ */
+public class SAXWriterTest extends AbstractTestCase {
+
+    public void testAttributes() throws Exception {
+        Document doc = DocumentHelper.parseText("<root xmlns:p='urn:p' "
+                + "a='1' p:b='2'><child c='3'/></root>");
+        final List<String> events = new ArrayList<String>();
+
+        SAXWriter writer = new SAXWriter(new DefaultHandler() {
+            public void startElement(String uri, String localName,
+                    String qName, Attributes attributes) {
+                StringBuilder event = new StringBuilder(qName);
+
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    event.append(' ').append(attributes.getQName(i)).append(
+                            '{').append(attributes.getURI(i)).append('}')
+                            .append(attributes.getLocalName(i)).append('=')
+                            .append(attributes.getValue(i)).append(':')
+                            .append(attributes.getType(i));
+                }
+
+                events.add(event.toString());
+
+                if (qName.equals("root")) {
+                    assertEquals(1, attributes.getIndex("p:b"));
+                    assertEquals(1, attributes.getIndex("urn:p", "b"));
+                    assertEquals(-1, attributes.getIndex("", "b"));
+                    assertEquals("1", attributes.getValue("a"));
+                    assertEquals("2", attributes.getValue("urn:p", "b"));
+                    assertEquals("CDATA", attributes.getType("", "a"));
+                    assertNull(attributes.getValue("c"));
+                    assertNull(attributes.getType(-1));
+                    assertNull(attributes.getQName(2));
+                }
+            }
+        });
+        writer.write(doc);
+
+        assertEquals(2, events.size());
+        assertEquals("root a{}a=1:CDATA p:b{urn:p}b=2:CDATA", events.get(0));
+        assertEquals("child c{}c=3:CDATA", events.get(1));
+    }
+
+    public void testNamespaceAttributes() throws Exception {
+        Document doc = DocumentHelper.parseText("<root xmlns:p='urn:p' "
+                + "a='1'/>");
+        final List<String> names = new ArrayList<String>();
+
+        SAXWriter writer = new SAXWriter(new DefaultHandler() {
+            public void startElement(String uri, String localName,
+                    String qName, Attributes attributes) {
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    names.add(attributes.getQName(i) + "="
+                            + attributes.getValue(i));
+                }
+
+                assertEquals(1, attributes.getIndex("a"));
+                assertEquals(0, attributes.getIndex("xmlns:p"));
+            }
+        });
+        writer.setDeclareNamespaceAttributes(true);
+        writer.write(doc);
+
+        assertEquals(2, names.size());
+        assertEquals("xmlns:p=urn:p", names.get(0));
+        assertEquals("a=1", names.get(1));
+    }
+
+    public void testText() throws Exception {
+        StringBuilder large = new StringBuilder();
+
+        while (large.length() < 10000) {
+            large.append("large text ");
+        }
+
+        Element root = DocumentHelper.createElement("root");
+        root.addText("a longer text");
+        root.addElement("child");
+        root.addText("short");
+        root.addComment("comment");
+        root.addCDATA("data");
+        root.addElement("child");
+        root.addText(large.toString());
+
+        final List<String> texts = new ArrayList<String>();
+        SAXWriter writer = new SAXWriter(new DefaultHandler() {
+            public void characters(char[] ch, int start, int length) {
+                texts.add(new String(ch, start, length));
+            }
+        });
+        writer.write(root);
+
+        assertEquals(4, texts.size());
+        assertEquals("a longer text", texts.get(0));
+        assertEquals("short", texts.get(1));
+        assertEquals("data", texts.get(2));
+        assertEquals(large.toString(), texts.get(3));
+    }
+}
@@ -0,0 +1,230 @@
+package org.dom4j.jaxb;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import jakarta.xml.bind.Unmarshaller;
+import jakarta.xml.bind.UnmarshallerHandler;
+import jakarta.xml.bind.helpers.AbstractMarshallerImpl;
+import jakarta.xml.bind.helpers.AbstractUnmarshallerImpl;
+
+import org.dom4j.AbstractTestCase;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+/**
+ * Tests the sharing of contexts and the pools of the {@link JAXBContextCache}.
+ * The contexts are stubs, so no JAXB implementation is needed.
+ */
+public class JAXBContextCacheTest extends AbstractTestCase {
+
+    public void testSharedContext() throws Exception {
+        JAXBContextCache cache = new StubCache(2);
+        ClassLoader loader = getClass().getClassLoader();
+        ClassLoader other = new ClassLoader(loader) {
+        };
+
+        JAXBContext context = cache.getContext("org.dom4j.a", loader);
+        assertSame(context, cache.getContext("org.dom4j.a", loader));
+        assertNotSame(context, cache.getContext("org.dom4j.b", loader));
+        assertNotSame(context, cache.getContext("org.dom4j.a", other));
+        assertEquals(3, cache.getContextCount());
+        assertEquals(3L, cache.getContextBuildCount());
+        assertEquals(0L, cache.getContextWaitCount());
+
+        // without a class loader, the context class loader is used
+        Thread thread = Thread.currentThread();
+        ClassLoader contextLoader = thread.getContextClassLoader();
+
+        try {
+            thread.setContextClassLoader(loader);
+            assertSame(context, cache.getContext("org.dom4j.a", null));
+        } finally {
+            thread.setContextClassLoader(contextLoader);
+        }
+
+        cache.clear();
+        assertEquals(0, cache.getContextCount());
+        assertNotSame(context, cache.getContext("org.dom4j.a", loader));
+        assertEquals(4L, cache.getContextBuildCount());
+    }
+
+    public void testClassLoaderNotRetained() throws Exception {
+        JAXBContextCache cache = new StubCache(1);
+        ClassLoader loader = new ClassLoader(getClass().getClassLoader()) {
+        };
+        cache.getContext("org.dom4j.a", loader);
+        assertEquals(1, cache.getContextCount());
+
+        WeakReference<ClassLoader> reference = new WeakReference<ClassLoader>(
+                loader);
+        loader = null;
+
+        for (int i = 0; (i < 100) && (reference.get() != null); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertNull(reference.get());
+        assertEquals(0, cache.getContextCount());
+    }
+
+    public void testPools() throws Exception {
+        JAXBContextCache cache = new StubCache(1);
+        JAXBContextCache.Pool pool = cache.getPool("org.dom4j.a", null);
+
+        Marshaller marshaller = pool.borrowMarshaller();
+        Marshaller busy = pool.borrowMarshaller();
+        assertNotSame(marshaller, busy);
+        assertEquals(2L, cache.getMarshallerCreatedCount());
+
+        pool.release(marshaller);
+        pool.release(busy);
+        assertEquals(1L, cache.getDiscardedCount());
+        assertSame(marshaller, pool.borrowMarshaller());
+        assertEquals(2L, cache.getMarshallerCreatedCount());
+
+        Unmarshaller unmarshaller = pool.borrowUnmarshaller();
+        pool.release(unmarshaller);
+        assertSame(unmarshaller, pool.borrowUnmarshaller());
+        assertEquals(1L, cache.getUnmarshallerCreatedCount());
+    }
+
+    public void testFailedBuild() throws Exception {
+        StubCache cache = new StubCache(1);
+        cache.failures = 1;
+
+        try {
+            cache.getContext("org.dom4j.a", null);
+            fail("The context should not be built");
+        } catch (JAXBException ex) {
+            assertEquals("No context", ex.getMessage());
+        }
+
+        // the failure is not cached
+        assertEquals(0, cache.getContextCount());
+        assertNotNull(cache.getContext("org.dom4j.a", null));
+        assertEquals(2L, cache.getContextBuildCount());
+    }
+
+    public void testConcurrentBuild() throws Exception {
+        final StubCache cache = new StubCache(1);
+        cache.building = new CountDownLatch(1);
+        cache.release = new CountDownLatch(1);
+
+        final List<JAXBContext> contexts = new ArrayList<JAXBContext>();
+        Thread[] threads = new Thread[4];
+
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        JAXBContext context = cache.getContext("org.dom4j.a",
+                                null);
+
+                        synchronized (contexts) {
+                            contexts.add(context);
+                        }
+                    } catch (JAXBException ex) {
+                        throw new JAXBRuntimeException(ex);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        assertTrue(cache.building.await(10, TimeUnit.SECONDS));
+
+        // give the other threads the time to find the context being built
+        long deadline = System.currentTimeMillis() + 10000;
+
+        while ((cache.getContextWaitCount() < (threads.length - 1))
+                && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(10);
+        }
+
+        cache.release.countDown();
+
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+
+        assertEquals(threads.length, contexts.size());
+
+        for (JAXBContext context : contexts) {
+            assertSame(contexts.get(0), context);
+        }
+
+        assertEquals(1L, cache.getContextBuildCount());
+        assertEquals((long) (threads.length - 1), cache.getContextWaitCount());
+    }
+
+    /**
+     * Builds stub contexts, optionally failing or blocking.
+     */
+    private static class StubCache extends JAXBContextCache {
+        private volatile int failures;
+
+        private volatile CountDownLatch building;
+
+        private volatile CountDownLatch release;
+
+        StubCache(int maxIdle) {
+            super(maxIdle);
+        }
+
+        protected JAXBContext createContext(String contextPath,
+                ClassLoader classLoader) throws JAXBException {
+            if (failures > 0) {
+                failures--;
+                throw new JAXBException("No context");
+            }
+
+            if (building != null) {
+                building.countDown();
+
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    throw new JAXBException(ex);
+                }
+            }
+
+            return new StubContext();
+        }
+    }
+
+    private static class StubContext extends JAXBContext {
+        public Marshaller createMarshaller() {
+            return new AbstractMarshallerImpl() {
+                public void marshal(Object object,
+                        javax.xml.transform.Result result) {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+
+        public Unmarshaller createUnmarshaller() {
+            return new AbstractUnmarshallerImpl() {
+                public UnmarshallerHandler getUnmarshallerHandler() {
+                    throw new UnsupportedOperationException();
+                }
+
+                public Object unmarshal(org.w3c.dom.Node node) {
+                    throw new UnsupportedOperationException();
+                }
+
+                protected Object unmarshal(XMLReader reader,
+                        InputSource source) {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.dom4j.jaxb;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.xml.bind.Unmarshaller;
+import jakarta.xml.bind.UnmarshallerHandler;
+import jakarta.xml.bind.helpers.AbstractUnmarshallerImpl;
+
+import org.dom4j.AbstractTestCase;
+import org.dom4j.Document;
+import org.dom4j.Element;
+import org.dom4j.Node;
+import org.dom4j.QName;
+import org.dom4j.io.SAXContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+/**
+ * Tests how the {@link JAXBReader} feeds the elements of the handled paths to
+ * the unmarshaller. The unmarshaller is replaced by a handler which builds a
+ * DOM4J element from the events it receives, so no JAXB implementation is
+ * needed.
+ */
+public class JAXBReaderTest extends AbstractTestCase {
+    private static final String XML = "<order xmlns:p='urn:p'>"
+            + "<item p:id='1'><name>a</name></item>text"
+            + "<item xmlns='urn:d' p:id='2'><name>b &amp; c</name></item>"
+            + "more</order>";
+
+    public void testUnmarshalElements() throws Exception {
+        List<Element> results = new ArrayList<Element>();
+        JAXBReader reader = createReader(results);
+
+        Document doc = reader.read(new StringReader(XML));
+        assertResults(results);
+
+        // the elements are kept in the document
+        assertEquals(2, doc.getRootElement().elements().size());
+    }
+
+    public void testUnmarshalStreaming() throws Exception {
+        List<Element> results = new ArrayList<Element>();
+        JAXBReader reader = createReader(results);
+        reader.setStreaming(true);
+
+        Document doc = reader.read(new StringReader(XML));
+        assertResults(results);
+
+        // the handled elements are never created
+        Element order = doc.getRootElement();
+        assertEquals(0, order.elements().size());
+        assertEquals(3, order.nodeCount());
+        assertEquals(Node.NAMESPACE_NODE, order.node(0).getNodeType());
+        assertEquals("text", order.node(1).getText());
+        assertEquals("more", order.node(2).getText());
+    }
+
+    private void assertResults(List<Element> results) {
+        assertEquals(2, results.size());
+
+        QName id = QName.get("id", "p", "urn:p");
+        Element first = results.get(0);
+        assertEquals("item", first.getName());
+        assertEquals("", first.getNamespaceURI());
+        assertEquals("1", first.attributeValue(id));
+        assertEquals("a", first.elementText("name"));
+
+        Element second = results.get(1);
+        assertEquals("urn:d", second.getNamespaceURI());
+        assertEquals("2", second.attributeValue(id));
+        assertEquals("b & c", second.element(QName.get("name", "urn:d"))
+                .getText());
+    }
+
+    public void testUnmarshallerReleased() throws Exception {
+        final List<Unmarshaller> borrowed = new ArrayList<Unmarshaller>();
+        final List<Unmarshaller> released = new ArrayList<Unmarshaller>();
+        JAXBReader reader = new JAXBReader("org.dom4j.jaxb") {
+            Unmarshaller borrowUnmarshaller() {
+                Unmarshaller unmarshaller = new ElementUnmarshaller();
+                borrowed.add(unmarshaller);
+
+                return unmarshaller;
+            }
+
+            void releaseUnmarshaller(Unmarshaller unmarshaller) {
+                released.add(unmarshaller);
+            }
+        };
+        reader.addObjectHandler("/order/item", new JAXBObjectHandler() {
+            public void handleObject(jakarta.xml.bind.Element jaxbElement) {
+            }
+        });
+        reader.setStreaming(true);
+
+        reader.read(new StringReader(XML));
+        assertEquals(2, borrowed.size());
+        assertEquals(borrowed, released);
+    }
+
+    private static JAXBReader createReader(final List<Element> results) {
+        JAXBReader reader = new JAXBReader("org.dom4j.jaxb") {
+            Unmarshaller borrowUnmarshaller() {
+                return new ElementUnmarshaller();
+            }
+
+            void releaseUnmarshaller(Unmarshaller unmarshaller) {
+            }
+        };
+
+        reader.addObjectHandler("/order/item", new JAXBObjectHandler() {
+            public void handleObject(jakarta.xml.bind.Element jaxbElement) {
+                results.add(((Result) jaxbElement).element);
+            }
+        });
+
+        return reader;
+    }
+
+    /**
+     * Hands out a new {@link ElementUnmarshallerHandler}.
+     */
+    private static class ElementUnmarshaller extends AbstractUnmarshallerImpl {
+        public UnmarshallerHandler getUnmarshallerHandler() {
+            return new ElementUnmarshallerHandler();
+        }
+
+        public Object unmarshal(org.w3c.dom.Node node) {
+            throw new UnsupportedOperationException();
+        }
+
+        protected Object unmarshal(XMLReader reader, InputSource source) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Builds a DOM4J element from the events of the unmarshalled fragment.
+     */
+    private static class ElementUnmarshallerHandler extends SAXContentHandler
+            implements UnmarshallerHandler {
+        public Object getResult() {
+            return new Result(getDocument().getRootElement());
+        }
+    }
+
+    private static class Result implements jakarta.xml.bind.Element {
+        private final Element element;
+
+        Result(Element element) {
+            this.element = element;
+        }
+    }
+}
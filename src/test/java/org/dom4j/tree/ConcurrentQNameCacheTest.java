@@ -0,0 +1,92 @@
+package org.dom4j.tree;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.dom4j.AbstractTestCase;
+import org.dom4j.DocumentFactory;
+import org.dom4j.Namespace;
+import org.dom4j.QName;
+
+/**
+ * Tests the shared {@link ConcurrentQNameCache}.
+ */
+public class ConcurrentQNameCacheTest extends AbstractTestCase {
+    private static final int THREADCOUNT = 16;
+
+    public void testSameInstanceAcrossThreads() throws Exception {
+        final DocumentFactory factory = new DocumentFactory();
+        factory.setSharedQNameCache(true);
+        assertTrue(factory.isSharedQNameCache());
+
+        final Namespace ns = Namespace.get("t", "urn:test");
+        ExecutorService executor = Executors.newFixedThreadPool(THREADCOUNT);
+
+        try {
+            Future<QName[]>[] results = new Future[THREADCOUNT];
+
+            for (int i = 0; i < THREADCOUNT; i++) {
+                results[i] = executor.submit(new Callable<QName[]>() {
+                    public QName[] call() {
+                        return new QName[] {factory.createQName("a"),
+                                factory.createQName("b", ns),
+                                factory.createQName("t:c", "urn:test")};
+                    }
+                });
+            }
+
+            QName[] first = results[0].get();
+
+            for (int i = 1; i < THREADCOUNT; i++) {
+                QName[] other = results[i].get();
+
+                for (int j = 0; j < first.length; j++) {
+                    assertSame(first[j], other[j]);
+                }
+            }
+
+            assertSame(factory, first[1].getDocumentFactory());
+            assertEquals("t:c", first[2].getQualifiedName());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testThreadLocalByDefault() throws Exception {
+        final DocumentFactory factory = new DocumentFactory();
+        assertFalse(factory.isSharedQNameCache());
+
+        QName local = factory.createQName("a");
+        final QName[] other = new QName[1];
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                other[0] = factory.createQName("a");
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertSame(local, factory.createQName("a"));
+        assertEquals(local, other[0]);
+        // each thread interns the names in its own cache
+        assertNotSame(local, other[0]);
+    }
+
+    public void testMaxSize() {
+        ConcurrentQNameCache cache = new ConcurrentQNameCache(null, 2);
+        QName a = cache.get("a");
+        QName b = cache.get("b", Namespace.get("urn:b"));
+
+        assertEquals(2, cache.size());
+        assertSame(a, cache.get("a"));
+        assertSame(b, cache.get("b", Namespace.get("urn:b")));
+
+        QName c = cache.get("c");
+        assertEquals("c", c.getName());
+        assertNotSame(c, cache.get("c"));
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getQNames().size());
+    }
+}
@@ -72,6 +72,95 @@ public class DefaultElementTest extends AbstractTestCase {
         assertEquals(2, namespaces.size());
     }
 
+    public void testIndexedLookupInWideElement() throws Exception {
+        Element root = DocumentHelper.createElement("root");
+        Namespace ns = Namespace.get("n", "urn:n");
+
+        for (int i = 0; i < 200; i++) {
+            root.addElement("child" + (i % 100)).addAttribute("pos", String.valueOf(i));
+            root.addAttribute("a" + i, String.valueOf(i));
+        }
+
+        root.addElement(QName.get("child5", ns));
+        root.add(Namespace.get("p", "urn:p"));
+
+        assertEquals("5", root.element("child5").attributeValue("pos"));
+        assertEquals("5", root.element(QName.get("child5")).attributeValue("pos"));
+        assertEquals(ns, root.element(QName.get("child5", ns)).getNamespace());
+        assertNull(root.element("missing"));
+        assertEquals("150", root.attributeValue("a150"));
+        assertEquals("urn:p", root.getNamespaceForPrefix("p").getURI());
+
+        // appended nodes are picked up by the existing index
+        root.addElement("late");
+        assertNotNull(root.element("late"));
+
+        // removal through the content facade
+        root.content().remove(root.element("child5"));
+        assertEquals("105", root.element("child5").attributeValue("pos"));
+
+        // removal through a BackedList
+        root.elements("child6").remove(0);
+        assertEquals("106", root.element("child6").attributeValue("pos"));
+
+        // insertion before the first match
+        Element first = DocumentHelper.createElement("child7");
+        root.content().add(0, first);
+        assertSame(first, root.element("child7"));
+
+        // replacement
+        Element replacement = DocumentHelper.createElement("replaced");
+        root.content().set(0, replacement);
+        assertSame(replacement, root.element("replaced"));
+        assertEquals("7", root.element("child7").attributeValue("pos"));
+
+        // detach and rename
+        root.element("child8").detach();
+        assertEquals("108", root.element("child8").attributeValue("pos"));
+        root.element("child9").setName("renamed");
+        assertEquals("9", root.element("renamed").attributeValue("pos"));
+        assertEquals("109", root.element("child9").attributeValue("pos"));
+
+        // rename of a BaseElement
+        Element base = new BaseElement("base");
+        root.add(base);
+        assertSame(base, root.element("base"));
+        base.setName("renamedBase");
+        assertSame(base, root.element("renamedBase"));
+        assertNull(root.element("base"));
+
+        // rename of an element class with its own name
+        Element custom = new BaseElement("custom") {
+            private QName name = super.getQName();
+
+            public QName getQName() {
+                return name;
+            }
+
+            public void setQName(QName qName) {
+                name = qName;
+            }
+        };
+        root.add(custom);
+        assertSame(custom, root.element("custom"));
+        custom.setName("renamedCustom");
+        assertSame(custom, root.element("renamedCustom"));
+        assertSame(custom, root.element(QName.get("renamedCustom")));
+        assertNull(root.element("custom"));
+        root.remove(custom);
+
+        // attributes
+        root.remove(root.attribute("a150"));
+        assertNull(root.attribute("a150"));
+        root.addAttribute("a151", null);
+        assertNull(root.attribute("a151"));
+        assertEquals("152", root.attribute(QName.get("a152")).getValue());
+
+        // clearing the content
+        root.clearContent();
+        assertNull(root.element("child10"));
+    }
+
     public void testDeclaredNamespaces() throws Exception {
         String xml = "<a xmlns:ns1=\"uri1\">" + "    <ns1:b/>"
                 + "    <ns2:c xmlns:ns2=\"uri2\"/>" + "</a>";
@@ -0,0 +1,85 @@
+package org.dom4j.tree;
+
+import org.dom4j.AbstractTestCase;
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.QName;
+
+/**
+ * Tests the resolution of element names by the {@link NamespaceStack}.
+ */
+public class NamespaceStackTest extends AbstractTestCase {
+
+    public void testElementQNames() {
+        NamespaceStack stack = new NamespaceStack();
+        stack.push("", "urn:default");
+        stack.push("a", "urn:a");
+
+        QName root = stack.getQName("urn:default", "root", "root");
+        assertEquals("root", root.getName());
+        assertEquals("urn:default", root.getNamespaceURI());
+        assertSame(root, stack.getQName("urn:default", "root", "root"));
+
+        QName item = stack.getQName("urn:a", "item", "a:item");
+        assertEquals("item", item.getName());
+        assertEquals("a", item.getNamespacePrefix());
+        assertEquals("urn:a", item.getNamespaceURI());
+        assertSame(item, stack.getQName("urn:a", "item", "a:item"));
+
+        // names from a parser which is not namespace aware
+        QName plain = stack.getQName(null, "", "a:item");
+        assertEquals("item", plain.getName());
+        assertEquals("", plain.getNamespaceURI());
+    }
+
+    public void testRebindPrefix() {
+        NamespaceStack stack = new NamespaceStack();
+        stack.push("a", "urn:a");
+
+        QName outer = stack.getQName("urn:a", "item", "a:item");
+
+        stack.push("a", "urn:b");
+
+        QName inner = stack.getQName("urn:b", "item", "a:item");
+        assertEquals("urn:b", inner.getNamespaceURI());
+
+        stack.pop("a");
+        assertSame(outer, stack.getQName("urn:a", "item", "a:item"));
+    }
+
+    public void testRedeclaredPrefixSharesCache() {
+        NamespaceStack stack = new NamespaceStack();
+        stack.push("a", "urn:a");
+
+        QName item = stack.getQName("urn:a", "item", "a:item");
+
+        stack.push("a", "urn:a");
+        assertSame(item, stack.getQName("urn:a", "item", "a:item"));
+
+        stack.push("b", "urn:b");
+        assertSame(item, stack.getQName("urn:a", "item", "a:item"));
+
+        stack.pop("b");
+        stack.pop("a");
+        assertSame(item, stack.getQName("urn:a", "item", "a:item"));
+    }
+
+    public void testParseRebindPrefix() throws Exception {
+        Document doc = DocumentHelper.parseText("<a:root xmlns:a='urn:a'>"
+                + "<a:item/><a:item xmlns:a='urn:b'><a:item/></a:item>"
+                + "<a:item xmlns:a='urn:a'/><a:item/></a:root>");
+
+        Element root = doc.getRootElement();
+        assertEquals("urn:a", root.getNamespaceURI());
+
+        Element[] items = root.elements().toArray(new Element[0]);
+        assertEquals(4, items.length);
+        assertEquals("urn:a", items[0].getNamespaceURI());
+        assertEquals("urn:b", items[1].getNamespaceURI());
+        assertEquals("urn:b", items[1].element("item").getNamespaceURI());
+        assertEquals("urn:a", items[2].getNamespaceURI());
+        assertEquals("urn:a", items[3].getNamespaceURI());
+        assertSame(items[0].getQName(), items[3].getQName());
+    }
+}
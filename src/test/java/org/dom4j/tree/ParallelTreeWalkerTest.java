@@ -0,0 +1,228 @@
+package org.dom4j.tree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.dom4j.AbstractTestCase;
+import org.dom4j.Attribute;
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.Node;
+import org.dom4j.Text;
+import org.dom4j.Visitor;
+import org.dom4j.VisitorSupport;
+
+/**
+ * Tests the {@link ContentSpliterator} and the {@link ParallelTreeWalker}.
+ */
+public class ParallelTreeWalkerTest extends AbstractTestCase {
+
+    public void testSpliterator() {
+        Element root = createWideElement(100);
+        ContentSpliterator spliterator = new ContentSpliterator(root, 10);
+
+        assertEquals(200L, spliterator.estimateSize());
+        assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED));
+
+        Spliterator<Node> prefix = spliterator.trySplit();
+        assertEquals(100L, prefix.estimateSize());
+        assertEquals(100L, spliterator.estimateSize());
+
+        final List<Node> nodes = new ArrayList<Node>();
+        prefix.tryAdvance(new Consumer<Node>() {
+            public void accept(Node node) {
+                nodes.add(node);
+            }
+        });
+        assertSame(root.node(0), nodes.get(0));
+        assertEquals(99L, prefix.estimateSize());
+
+        assertEquals(50L, spliterator.trySplit().estimateSize());
+        assertEquals(25L, spliterator.trySplit().estimateSize());
+        assertEquals(12L, spliterator.trySplit().estimateSize());
+        assertNull(spliterator.trySplit());
+        assertEquals(13L, spliterator.estimateSize());
+
+        List<Node> sequential = new ParallelTreeWalker(10).stream(root)
+                .sequential().collect(Collectors.<Node>toList());
+        assertEquals(root.content(), sequential);
+        assertEquals(200L, new ParallelTreeWalker(1).stream(root).count());
+    }
+
+    public void testWalk() throws Exception {
+        Document doc = DocumentHelper.createDocument();
+        doc.addDocType("root", null, null);
+        doc.addComment("before");
+
+        Element root = createWideElement(200);
+        doc.add(root);
+        root.element("item").add(createWideElement(100));
+        // a wide child of a split range is split as well
+        root.add(createWideElement(100));
+
+        Map<Node, Integer> expected = new IdentityHashMap<Node, Integer>();
+        doc.accept(new RecordingVisitor(expected));
+
+        Map<Node, Integer> visited = Collections
+                .synchronizedMap(new IdentityHashMap<Node, Integer>());
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            new ParallelTreeWalker(pool, 8).walk(doc,
+                    new RecordingVisitor(visited));
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(expected.size(), visited.size());
+        assertEquals(expected, visited);
+    }
+
+    public void testWalkOverriddenAccept() {
+        final List<String> custom = Collections
+                .synchronizedList(new ArrayList<String>());
+        Element root = new DefaultElement("custom") {
+            public void accept(Visitor visitor) {
+                custom.add(getName());
+            }
+        };
+        Element wide = new DefaultElement("wide") {
+            public void accept(Visitor visitor) {
+                custom.add(getName());
+            }
+        };
+
+        for (int i = 0; i < 100; i++) {
+            root.addElement("item");
+            wide.addElement("item");
+        }
+
+        Document doc = new DefaultDocument() {
+            public void accept(Visitor visitor) {
+                custom.add("document");
+            }
+        };
+        doc.add(createWideElement(100));
+
+        Map<Node, Integer> visited = Collections
+                .synchronizedMap(new IdentityHashMap<Node, Integer>());
+        ParallelTreeWalker walker = new ParallelTreeWalker(8);
+        walker.walk(root, new RecordingVisitor(visited));
+        walker.walk(doc, new RecordingVisitor(visited));
+        assertEquals("[custom, document]", custom.toString());
+        assertTrue(visited.isEmpty());
+
+        Element parent = createWideElement(100);
+        parent.add(wide);
+        walker.walk(parent, new RecordingVisitor(visited));
+        assertEquals("[custom, document, wide]", custom.toString());
+        assertFalse(visited.containsKey(wide));
+        assertFalse(visited.containsKey(wide.element("item")));
+        assertEquals(Integer.valueOf(1), visited.get(parent));
+    }
+
+    public void testWalkLeaf() {
+        Text text = DocumentHelper.createText("text");
+        Map<Node, Integer> visited = new IdentityHashMap<Node, Integer>();
+        new ParallelTreeWalker().walk(text, new RecordingVisitor(visited));
+
+        assertEquals(1, visited.size());
+        assertEquals(Integer.valueOf(1), visited.get(text));
+    }
+
+    public void testWalkFailure() {
+        Visitor visitor = new VisitorSupport() {
+            public void visit(Attribute node) {
+                if (node.getValue().equals("i150")) {
+                    throw new IllegalStateException(node.getValue());
+                }
+            }
+        };
+
+        try {
+            new ParallelTreeWalker(4).walk(createWideElement(200), visitor);
+            fail("The exception of the visitor should be rethrown");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("i150"));
+        }
+    }
+
+    public void testInvalidSplitSize() {
+        try {
+            new ParallelTreeWalker(0);
+            fail("A minimum split size of 0 should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            new ContentSpliterator(createWideElement(1), -1);
+            fail("A negative minimum split size should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static Element createWideElement(int size) {
+        Element root = DocumentHelper.createElement("root");
+
+        for (int i = 0; i < size; i++) {
+            Element item = root.addElement("item");
+            item.addAttribute("id", "i" + i);
+            item.addText("text " + i);
+            root.addComment("comment " + i);
+        }
+
+        return root;
+    }
+
+    /**
+     * Counts how many times each node is visited.
+     */
+    private static final class RecordingVisitor extends VisitorSupport {
+        private final Map<Node, Integer> visited;
+
+        RecordingVisitor(Map<Node, Integer> visited) {
+            this.visited = visited;
+        }
+
+        public void visit(Document node) {
+            record(node);
+        }
+
+        public void visit(org.dom4j.DocumentType node) {
+            record(node);
+        }
+
+        public void visit(Element node) {
+            record(node);
+        }
+
+        public void visit(Attribute node) {
+            record(node);
+        }
+
+        public void visit(org.dom4j.Comment node) {
+            record(node);
+        }
+
+        public void visit(Text node) {
+            record(node);
+        }
+
+        private void record(Node node) {
+            synchronized (visited) {
+                Integer count = visited.get(node);
+                visited.put(node, (count != null) ? (count + 1) : 1);
+            }
+        }
+    }
+}
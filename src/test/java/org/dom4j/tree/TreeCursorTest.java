@@ -0,0 +1,297 @@
+package org.dom4j.tree;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dom4j.AbstractTestCase;
+import org.dom4j.Attribute;
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.Node;
+import org.dom4j.VisitorSupport;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.XMLWriter;
+
+/**
+ * Tests the walks of the {@link TreeCursor} and the operations built on it,
+ * on trees too deep for recursion.
+ */
+public class TreeCursorTest extends AbstractTestCase {
+    private static final int DEPTH = 50000;
+
+    public void testWalk() throws Exception {
+        Document doc = DocumentHelper.parseText("<a x='1'><b>t</b><!--c-->"
+                + "<d><e/></d></a>");
+        List<String> events = new ArrayList<String>();
+        TreeCursor cursor = new TreeCursor(doc);
+
+        while (cursor.next()) {
+            Node node = cursor.getNode();
+            String name = (node.getNodeType() == Node.ELEMENT_NODE) ? node
+                    .getName() : node.getNodeTypeName();
+            events.add((cursor.isEnd() ? "/" : "") + name + ":"
+                    + cursor.getDepth());
+        }
+
+        assertEquals("[Document:0, a:1, b:2, Text:3, /b:2, Comment:2, d:2, "
+                + "e:3, /e:3, /d:2, /a:1, /Document:0]", events.toString());
+        assertFalse(cursor.next());
+        assertNull(cursor.getNode());
+    }
+
+    public void testSkipContent() throws Exception {
+        Document doc = DocumentHelper.parseText("<a><b><c/></b><d/></a>");
+        List<String> events = new ArrayList<String>();
+        TreeCursor cursor = new TreeCursor(doc.getRootElement());
+
+        while (cursor.next()) {
+            Node node = cursor.getNode();
+            events.add((cursor.isEnd() ? "/" : "") + node.getName());
+
+            if (!cursor.isEnd() && node.getName().equals("b")) {
+                cursor.skipContent();
+            }
+        }
+
+        assertEquals("[a, b, /b, d, /d, /a]", events.toString());
+    }
+
+    public void testDeepAccept() {
+        Element root = createDeepTree();
+        final int[] counts = new int[3];
+
+        root.accept(new VisitorSupport() {
+            public void visit(Element node) {
+                counts[0]++;
+            }
+
+            public void visit(Attribute node) {
+                counts[1]++;
+            }
+
+            public void visit(org.dom4j.Text node) {
+                counts[2]++;
+            }
+        });
+
+        assertEquals(DEPTH + 1, counts[0]);
+        assertEquals(DEPTH + 1, counts[1]);
+        assertEquals(DEPTH + 1, counts[2]);
+    }
+
+    public void testDeepStringValue() {
+        Element root = createDeepTree();
+        String value = root.getStringValue();
+
+        assertEquals(DEPTH + 1, value.length());
+        assertEquals("x", root.element("node").getStringValue().substring(0,
+                1));
+    }
+
+    public void testDeepElementByID() {
+        Document doc = DocumentHelper.createDocument(createDeepTree());
+
+        Element element = doc.elementByID("n" + DEPTH);
+        assertNotNull(element);
+        assertEquals(0, element.elements().size());
+        assertNull(doc.elementByID("missing"));
+        assertNull(element.elementByID("n" + DEPTH));
+    }
+
+    public void testDeepNormalize() {
+        Element root = createDeepTree();
+        Element leaf = root;
+
+        while (leaf.element("node") != null) {
+            leaf = leaf.element("node");
+        }
+
+        leaf.addText("y");
+        leaf.addText("");
+        leaf.addText("z");
+        root.normalize();
+
+        assertEquals(1, leaf.nodeCount());
+        assertEquals("xyz", leaf.getText());
+    }
+
+    public void testDeepWrite() throws Exception {
+        Element root = createDeepTree();
+        StringWriter out = new StringWriter();
+        XMLWriter writer = new XMLWriter(out, OutputFormat.createCompactFormat());
+        writer.write(root);
+        writer.flush();
+
+        String xml = out.toString();
+        assertTrue(xml.startsWith("<node ID=\"n0\">x<node ID=\"n1\">x"));
+        assertTrue(xml.contains("<node ID=\"n" + DEPTH + "\">x</node></node>"));
+        assertTrue(xml.endsWith("</node></node>"));
+
+        Document doc = DocumentHelper.createDocument(createTree(3));
+        assertEquals(DocumentHelper.parseText(doc.asXML()).asXML(), doc
+                .asXML());
+    }
+
+    public void testWriteMatchesRecursiveWriter() throws Exception {
+        Document doc = DocumentHelper.parseText("<a xmlns:p='urn:p'>  text "
+                + "<b p:x='1'> one </b> two <!-- c --><c/><p:d>"
+                + "<e xml:space='preserve'>  kept  </e></p:d>  </a>");
+        OutputFormat[] formats = {new OutputFormat(),
+                OutputFormat.createPrettyPrint(),
+                OutputFormat.createCompactFormat()};
+
+        for (OutputFormat format : formats) {
+            StringWriter iterative = new StringWriter();
+            new XMLWriter(iterative, format).write(doc);
+
+            // overriding writeNode() makes the writer recurse through it
+            StringWriter recursive = new StringWriter();
+            new XMLWriter(recursive, format) {
+                protected void writeNode(Node node) throws java.io.IOException {
+                    super.writeNode(node);
+                }
+            }.write(doc);
+
+            assertEquals(recursive.toString(), iterative.toString());
+        }
+    }
+
+    public void testOverriddenMethodsAreUsed() throws Exception {
+        Element root = DocumentHelper.parseText("<a>x<b>y</b>z</a>")
+                .getRootElement();
+        Element custom = new DefaultElement("custom") {
+            public void accept(org.dom4j.Visitor visitor) {
+                visitor.visit(DocumentHelper.createComment("custom"));
+            }
+
+            public String getStringValue() {
+                return "C";
+            }
+        };
+        custom.addElement("hidden").addText("h");
+        root.element("b").add(custom);
+
+        final List<String> visited = new ArrayList<String>();
+        root.accept(new VisitorSupport() {
+            public void visit(Element node) {
+                visited.add(node.getName());
+            }
+
+            public void visit(org.dom4j.Comment node) {
+                visited.add(node.getText());
+            }
+        });
+
+        assertEquals("[a, b, custom]", visited.toString());
+        assertEquals("xyCz", root.getStringValue());
+    }
+
+    public void testOverriddenNormalizeAndSearchAreUsed() throws Exception {
+        Document doc = DocumentHelper.parseText(
+                "<a><b><c id='c'/></b><d ID='d'/></a>");
+        Element b = doc.getRootElement().element("b");
+        final List<String> normalized = new ArrayList<String>();
+        Element custom = new DefaultElement("custom") {
+            public void normalize() {
+                normalized.add(getName());
+            }
+
+            protected String elementID(Element element) {
+                return element.attributeValue("id");
+            }
+        };
+        custom.addElement("hidden").addAttribute("id", "h");
+        custom.addText("x");
+        custom.addText("y");
+        b.add(custom);
+
+        doc.normalize();
+        assertEquals("[custom]", normalized.toString());
+        assertEquals(3, custom.nodeCount());
+
+        assertSame(custom.element("hidden"), doc.elementByID("h"));
+        assertSame(custom.element("hidden"), b.elementByID("h"));
+        assertNull(doc.elementByID("c"));
+        assertSame(doc.getRootElement().element("d"), doc.elementByID("d"));
+    }
+
+    public void testStringValueSeparator() throws Exception {
+        Element root = DocumentHelper.parseText("<a>x<b>y<c/><d>z<e>w</e>"
+                + "</d></b><!--c--><f/>v<g><h>u</h>t</g></a>")
+                .getRootElement();
+        root.element("b").addText("s");
+        root.element("g").add(new DefaultElement("custom") {
+            public String getStringValue() {
+                return "C D";
+            }
+        });
+
+        String value = ((AbstractElement) root).getDescendantStringValue(" ");
+        assertEquals(joinChildStringValues(root, " "), value);
+        assertEquals("x y z w s v u t C D", value);
+        assertEquals("xyzwsvutC D", ((AbstractElement) root)
+                .getDescendantStringValue(null));
+    }
+
+    /**
+     * Joins the non empty string values of the children of the given element
+     * with a separator, recursively.
+     */
+    private static String joinChildStringValues(Element element,
+            String separator) {
+        StringBuilder buffer = new StringBuilder();
+
+        for (int i = 0, size = element.nodeCount(); i < size; i++) {
+            Node node = element.node(i);
+            String string;
+
+            switch (node.getNodeType()) {
+                case Node.ELEMENT_NODE:
+                    string = (node.getClass() == DefaultElement.class)
+                            ? joinChildStringValues((Element) node, separator)
+                            : node.getStringValue();
+
+                    break;
+
+                case Node.TEXT_NODE:
+                    string = node.getText();
+
+                    break;
+
+                default:
+                    string = "";
+            }
+
+            if (string.length() > 0) {
+                if (buffer.length() > 0) {
+                    buffer.append(separator);
+                }
+
+                buffer.append(string);
+            }
+        }
+
+        return buffer.toString();
+    }
+
+    private static Element createDeepTree() {
+        return createTree(DEPTH);
+    }
+
+    private static Element createTree(int depth) {
+        Element root = DocumentHelper.createElement("node");
+        Element element = root;
+        element.addAttribute("ID", "n0");
+        element.addText("x");
+
+        for (int i = 1; i <= depth; i++) {
+            element = element.addElement("node");
+            element.addAttribute("ID", "n" + i);
+            element.addText("x");
+        }
+
+        return root;
+    }
+}
@@ -0,0 +1,140 @@
+package org.dom4j.xpath;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.dom4j.AbstractTestCase;
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.XPath;
+import org.jaxen.SimpleVariableContext;
+
+/**
+ * Tests the immutable {@link CompiledXPath} and the evaluation of shared
+ * {@link DefaultXPath} instances from several threads.
+ */
+public class CompiledXPathTest extends AbstractTestCase {
+    private static final int THREADCOUNT = 8;
+
+    private static final int ITERATIONS = 500;
+
+    public void testPerCallNamespaces() throws Exception {
+        Document doc = DocumentHelper.parseText("<root xmlns:a='urn:a' "
+                + "xmlns:b='urn:b'><a:item/><b:item/><b:item/></root>");
+        CompiledXPath xpath = DocumentHelper.compileXPath("//x:item");
+
+        assertEquals(1, xpath.selectNodes(doc,
+                new XPathContext(Collections.singletonMap("x", "urn:a")))
+                .size());
+        assertEquals(2, xpath.selectNodes(doc,
+                new XPathContext(Collections.singletonMap("x", "urn:b")))
+                .size());
+        assertEquals("//x:item", xpath.getText());
+    }
+
+    public void testContextNodeNamespaces() throws Exception {
+        Document doc = DocumentHelper.parseText("<root xmlns:a='urn:a'>"
+                + "<a:item>x</a:item></root>");
+        CompiledXPath xpath = new CompiledXPath("string(/root/a:item)");
+
+        assertEquals("x", xpath.valueOf(doc));
+        assertEquals("x", xpath.evaluate(doc));
+        assertTrue(new CompiledXPath("count(//a:item) = 1")
+                .booleanValueOf(doc));
+    }
+
+    public void testPerCallVariables() throws Exception {
+        Document doc = DocumentHelper.parseText("<root><item n='1'/>"
+                + "<item n='2'/></root>");
+        CompiledXPath xpath = new CompiledXPath("//item[@n = $n]");
+
+        for (int i = 1; i <= 2; i++) {
+            SimpleVariableContext variables = new SimpleVariableContext();
+            variables.setVariableValue("n", String.valueOf(i));
+
+            Element item = (Element) xpath.selectSingleNode(doc,
+                    XPathContext.DEFAULT.withVariableContext(variables));
+            assertEquals(String.valueOf(i), item.attributeValue("n"));
+        }
+
+        assertEquals(2, new CompiledXPath("count(//item)").numberValueOf(doc)
+                .intValue());
+    }
+
+    public void testSharedCompiledXPath() throws Exception {
+        final CompiledXPath xpath = new CompiledXPath("//p:item");
+
+        assertConcurrentResults(new Evaluator() {
+            public int evaluate(Document doc) {
+                return xpath.selectNodes(doc).size();
+            }
+        });
+    }
+
+    public void testSharedDefaultXPath() throws Exception {
+        final XPath xpath = DocumentHelper.createXPath("//p:item");
+
+        assertConcurrentResults(new Evaluator() {
+            public int evaluate(Document doc) {
+                return xpath.selectNodes(doc).size();
+            }
+        });
+    }
+
+    /**
+     * Evaluates the expression from several threads at once against documents
+     * which bind the prefix p to different namespaces, so that any namespace
+     * context leaking from one evaluation into another changes the result.
+     */
+    private void assertConcurrentResults(final Evaluator evaluator)
+            throws Exception {
+        final Document[] documents = new Document[THREADCOUNT];
+
+        for (int i = 0; i < THREADCOUNT; i++) {
+            StringBuilder xml = new StringBuilder("<root xmlns:p='urn:" + i
+                    + "' xmlns:q='urn:" + (i + 1) + "'>");
+
+            for (int j = 0; j <= i; j++) {
+                xml.append("<p:item/>");
+            }
+
+            xml.append("<q:item/></root>");
+            documents[i] = DocumentHelper.parseText(xml.toString());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADCOUNT);
+
+        try {
+            Future<Boolean>[] results = new Future[THREADCOUNT];
+
+            for (int i = 0; i < THREADCOUNT; i++) {
+                final int index = i;
+                results[i] = executor.submit(new Callable<Boolean>() {
+                    public Boolean call() {
+                        for (int j = 0; j < ITERATIONS; j++) {
+                            if (evaluator.evaluate(documents[index]) != index + 1) {
+                                return false;
+                            }
+                        }
+
+                        return true;
+                    }
+                });
+            }
+
+            for (Future<Boolean> result : results) {
+                assertTrue("Consistent results", result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private interface Evaluator {
+        int evaluate(Document doc);
+    }
+}
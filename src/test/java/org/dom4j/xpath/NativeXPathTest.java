@@ -0,0 +1,111 @@
+package org.dom4j.xpath;
+
+import java.util.List;
+
+import org.dom4j.AbstractTestCase;
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.Node;
+import org.jaxen.dom4j.Dom4jXPath;
+
+/**
+ * Checks that the native evaluation of simple paths gives exactly the same
+ * results as jaxen.
+ */
+public class NativeXPathTest extends AbstractTestCase {
+    private static final String XML = "<feed xmlns:a='urn:a'>"
+            + "<entry id='1' type='x'><title>One</title><a:link a:rel='self'/>"
+            + "<entry id='1.1'><title>Nested</title></entry></entry>"
+            + "<entry id='2'><title>Two</title><a:link a:rel='alt' href='h'/></entry>"
+            + "<group><entry id='3' type='x'><title>Three</title></entry></group>"
+            + "<a:entry id='4'/></feed>";
+
+    private static final String[] NATIVE_PATHS = {"/feed", "/feed/entry",
+            "//entry", "//title", "/feed/*/entry", "//entry/@id", "//@id",
+            "entry", "entry/title", "*", "//a:entry", "//a:*", "//*",
+            "//a:link/@a:rel", "//a:link/@*", "//entry[@type='x']",
+            "//entry[@type=\"x\"]/title", "//entry[@type]",
+            "//entry[ title = 'Two' ]/@id", "//entry[title]", "/feed//title",
+            "//entry[@type='x'][title='Three']", "//a:link[@a:rel='alt']/@href",
+            "//entry/title", "//entry/@*", "/missing", "//xml:lang",
+            "//entry[@id='nothing']", "feed/entry"};
+
+    private static final String[] JAXEN_PATHS = {"/", ".", "..",
+            "//entry[1]", "//entry[@id=1]", "count(//entry)",
+            "//title/text()", "//entry | //title", "child::entry",
+            "//entry[@id='1' and @type]", "//entry[title/text()='One']",
+            "/feed / entry", "$var", "name(/feed)"};
+
+    public void testNativeMatchesJaxen() throws Exception {
+        Document doc = DocumentHelper.parseText(XML);
+        Element root = doc.getRootElement();
+        Node[] contexts = {doc, root, root.element("entry"),
+                root.element("group")};
+
+        for (String path : NATIVE_PATHS) {
+            CompiledXPath xpath = new CompiledXPath(path);
+            assertTrue("Native: " + path, xpath.isNative());
+
+            for (Node context : contexts) {
+                assertEquals(path + " from " + context.getPath(), jaxen(path,
+                        context), xpath.selectNodes(context));
+                assertEquals(path, jaxenValue(path, context), xpath
+                        .valueOf(context));
+            }
+        }
+    }
+
+    public void testFallbackToJaxen() throws Exception {
+        for (String path : JAXEN_PATHS) {
+            assertFalse("Jaxen: " + path, new CompiledXPath(path).isNative());
+        }
+    }
+
+    public void testNestedMatchesKeepDocumentOrder() throws Exception {
+        Document doc = DocumentHelper.parseText("<a><b id='1'><c n='1'/>"
+                + "<b id='2'><c n='2'/></b><c n='3'/></b></a>");
+
+        for (String path : new String[] {"//b/c", "//b//c", "//b/@id",
+                "//b/c/@n"}) {
+            assertEquals(path, jaxen(path, doc), new CompiledXPath(path)
+                    .selectNodes(doc));
+        }
+    }
+
+    public void testUnresolvablePrefixFails() throws Exception {
+        Document doc = DocumentHelper.parseText(XML);
+
+        try {
+            new CompiledXPath("//b:entry").selectNodes(doc);
+            fail("Unresolvable prefix");
+        } catch (org.dom4j.XPathException e) {
+            // expected, as with jaxen
+        }
+    }
+
+    public void testDefaultXPathUsesNamespaceURIs() throws Exception {
+        Document doc = DocumentHelper.parseText(XML);
+        org.dom4j.XPath xpath = DocumentHelper.createXPath("//x:link/@x:rel");
+        xpath.setNamespaceURIs(java.util.Collections.singletonMap("x", "urn:a"));
+
+        assertEquals("self", xpath.valueOf(doc));
+        assertEquals(2, xpath.selectNodes(doc).size());
+        assertTrue(xpath.booleanValueOf(doc));
+    }
+
+    private static List<?> jaxen(String path, Node context) throws Exception {
+        Dom4jXPath xpath = new Dom4jXPath(path);
+        xpath.setNamespaceContext(DefaultNamespaceContext.create(context));
+
+        return xpath.selectNodes(context);
+    }
+
+    private static String jaxenValue(String path, Node context)
+            throws Exception {
+        Dom4jXPath xpath = new Dom4jXPath(path);
+        xpath.setNamespaceContext(DefaultNamespaceContext.create(context));
+
+        return xpath.stringValueOf(context);
+    }
+}
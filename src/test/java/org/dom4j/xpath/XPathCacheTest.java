@@ -0,0 +1,124 @@
+package org.dom4j.xpath;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.dom4j.AbstractTestCase;
+import org.dom4j.Document;
+import org.dom4j.DocumentFactory;
+import org.dom4j.XPath;
+
+/**
+ * Tests the {@link XPathCache} used by the XPath convenience methods.
+ */
+public class XPathCacheTest extends AbstractTestCase {
+
+    public void testConvenienceMethodsUseCache() throws Exception {
+        DocumentFactory factory = new DocumentFactory();
+        XPathCache cache = factory.getXPathCache();
+        Document doc = createDocument(factory);
+
+        assertNotNull(cache);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(2, doc.selectNodes("//item").size());
+            assertEquals("1", doc.valueOf("//item/@n"));
+            assertNotNull(doc.selectSingleNode("//item"));
+        }
+
+        assertEquals(2, cache.size());
+        assertEquals(2L, cache.getMissCount());
+        assertEquals(28L, cache.getHitCount());
+        assertSame(factory.compileXPath("//item"), factory
+                .compileXPath("//item"));
+    }
+
+    public void testEviction() throws Exception {
+        XPathCache cache = new XPathCache(2);
+
+        CompiledXPath a = cache.get("a", null);
+        cache.get("b", null);
+        assertSame(a, cache.get("a", null));
+        cache.get("c", null);
+
+        assertEquals(2, cache.size());
+        assertEquals(1L, cache.getEvictionCount());
+        assertSame(a, cache.get("a", null));
+        assertEquals(4L, cache.getMissCount() + cache.getEvictionCount());
+    }
+
+    public void testNamespaceURIsArePartOfKey() throws Exception {
+        DocumentFactory factory = new DocumentFactory();
+        Document doc = factory.createDocument();
+        doc.addElement("root").addElement("x:item", "urn:x");
+        doc.getRootElement().addElement("y:item", "urn:y");
+
+        Map<String, String> uris = new HashMap<String, String>();
+        uris.put("p", "urn:x");
+        factory.setXPathNamespaceURIs(uris);
+        assertEquals("item", doc.valueOf("local-name(//p:item)"));
+        assertEquals("urn:x", doc.valueOf("namespace-uri(//p:item)"));
+
+        uris.put("p", "urn:y");
+        factory.setXPathNamespaceURIs(uris);
+        assertEquals("urn:y", doc.valueOf("namespace-uri(//p:item)"));
+        assertEquals(3L, factory.getXPathCache().getMissCount());
+
+        // a changed map passed to the cache causes a miss as well
+        XPathCache cache = new XPathCache();
+        CompiledXPath xpath = cache.get("//p:item", uris);
+        assertSame(xpath, cache.get("//p:item", new HashMap<String, String>(
+                uris)));
+        assertSame(xpath, cache.get("//p:item", new XPathCache.NamespaceURIs(
+                uris)));
+        assertEquals(new XPathCache.NamespaceURIs(uris), uris);
+        uris.put("p", "urn:x");
+        assertNotSame(xpath, cache.get("//p:item", uris));
+        assertEquals(2L, cache.getMissCount());
+    }
+
+    public void testUsedEntriesSurviveEviction() throws Exception {
+        XPathCache cache = new XPathCache(8);
+        CompiledXPath used = cache.get("used", null);
+
+        for (int i = 0; i < 100; i++) {
+            assertSame(used, cache.get("used", null));
+            cache.get("item" + i, null);
+            assertTrue(cache.size() <= 8);
+        }
+
+        assertEquals(93L, cache.getEvictionCount());
+        assertEquals(100L, cache.getHitCount());
+    }
+
+    public void testDisabledCache() throws Exception {
+        DocumentFactory factory = new DocumentFactory();
+        factory.setXPathCache(null);
+
+        assertEquals(2, createDocument(factory).selectNodes("//item").size());
+        assertNull(factory.getCachedXPath("//item"));
+    }
+
+    public void testOverriddenCreateXPathIsUsed() throws Exception {
+        final int[] created = new int[1];
+        DocumentFactory factory = new DocumentFactory() {
+            public XPath createXPath(String xpathExpression) {
+                created[0]++;
+
+                return super.createXPath(xpathExpression);
+            }
+        };
+
+        createDocument(factory).selectNodes("//item");
+        assertEquals(1, created[0]);
+        assertEquals(0, factory.getXPathCache().size());
+    }
+
+    private Document createDocument(DocumentFactory factory) {
+        Document doc = factory.createDocument();
+        doc.addElement("root").addElement("item").addAttribute("n", "1")
+                .getParent().addElement("item");
+
+        return doc;
+    }
+}